@@ -10,6 +10,7 @@
 package org.eclipse.tracecompass.analysis.os.linux.core.inputoutput;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -205,6 +206,20 @@ public class DisksIODataProvider extends AbstractTreeCommonXDataProvider<InputOu
             }
         }
 
+        /*
+         * The requested times are sorted, query the full states at all the
+         * times within the state system's range in one pass.
+         */
+        int first = 1;
+        while (first < xValues.length && xValues[first] < ss.getStartTime()) {
+            first++;
+        }
+        int last = first;
+        while (last < xValues.length && xValues[last] <= currentEnd) {
+            last++;
+        }
+        List<List<ITmfStateInterval>> fullStates = ss.queryFullStates(Arrays.copyOfRange(xValues, first, last));
+
         for (int i = 1; i < xValues.length; i++) {
             if (monitor != null && monitor.isCanceled()) {
                 return null;
@@ -214,7 +229,7 @@ public class DisksIODataProvider extends AbstractTreeCommonXDataProvider<InputOu
                 break;
             } else if (time >= ss.getStartTime()) {
                 // reuse the results from the full query
-                List<ITmfStateInterval> states = ss.queryFullState(time);
+                List<ITmfStateInterval> states = fullStates.get(i - first);
 
                 for (DiskBuilder entry : builders) {
                     double count = Disk.extractCount(entry.fSectorQuark, ss, states, time);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2012, 2015 Ericsson
+ * Copyright (c) 2012, 2018 Ericsson
  * Copyright (c) 2010, 2011 École Polytechnique de Montréal
  * Copyright (c) 2010, 2011 Alexandre Montplaisir <alexandre.montplaisir@gmail.com>
  *
@@ -13,6 +13,7 @@
 package org.eclipse.tracecompass.internal.analysis.os.linux.core.kernel;
 
 import java.util.Map;
+import java.util.function.Predicate;
 
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.analysis.os.linux.core.trace.IKernelAnalysisEventLayout;
@@ -171,6 +172,15 @@ public class KernelStateProvider extends AbstractTmfStateProvider {
         return new KernelStateProvider(this.getTrace(), fLayout);
     }
 
+    /**
+     * Only the events with a handler, including the system calls, are read
+     * entirely.
+     */
+    @Override
+    public @Nullable Predicate<String> getEventTypeFilter() {
+        return eventName -> fEventNames.containsKey(eventName) || isSyscallEntry(eventName) || isSyscallExit(eventName);
+    }
+
     @Override
     protected void eventHandle(@Nullable ITmfEvent event) {
         if (event == null) {
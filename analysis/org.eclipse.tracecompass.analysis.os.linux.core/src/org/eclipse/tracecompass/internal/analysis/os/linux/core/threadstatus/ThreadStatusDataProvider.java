@@ -179,12 +179,13 @@ public class ThreadStatusDataProvider extends AbstractTmfTraceDataProvider imple
                 List<Integer> quarks = new ArrayList<>(ss.getQuarks(Attributes.THREADS, WILDCARD, Attributes.EXEC_NAME));
                 quarks.addAll(ss.getQuarks(Attributes.THREADS, WILDCARD, Attributes.PPID));
                 try {
-                    for (ITmfStateInterval interval : ss.query2D(quarks, Long.min(fLastEnd, end), end)) {
-                        if (monitor != null && monitor.isCanceled()) {
-                            return new TmfModelResponse<>(null, ITmfResponse.Status.CANCELLED, CommonStatusMessage.TASK_CANCELLED);
-                        }
+                    for (ITmfStateInterval interval : ss.query2D(quarks, Long.min(fLastEnd, end), end, monitor)) {
                         execNamesPPIDs.put(interval.getAttribute(), interval);
                     }
+                    /* The query stops early if the monitor is canceled */
+                    if (monitor != null && monitor.isCanceled()) {
+                        return new TmfModelResponse<>(null, ITmfResponse.Status.CANCELLED, CommonStatusMessage.TASK_CANCELLED);
+                    }
                 } catch (TimeRangeException | StateSystemDisposedException e) {
                     return new TmfModelResponse<>(null, ITmfResponse.Status.FAILED, e.getClass().getName() + ':' + String.valueOf(e.getMessage()));
                 }
@@ -371,12 +372,12 @@ public class ThreadStatusDataProvider extends AbstractTmfTraceDataProvider imple
         Collection<Long> times = getTimes(ss, filter);
         try {
             /* Do the actual query */
-            for (ITmfStateInterval interval : ss.query2D(stateAndSyscallQuarks, times)) {
-                if (monitor != null && monitor.isCanceled()) {
-                    return new TmfModelResponse<>(null, ITmfResponse.Status.CANCELLED, CommonStatusMessage.TASK_CANCELLED);
-                }
+            for (ITmfStateInterval interval : ss.query2D(stateAndSyscallQuarks, times, monitor)) {
                 intervals.put(interval.getAttribute(), interval);
             }
+            if (monitor != null && monitor.isCanceled()) {
+                return new TmfModelResponse<>(null, ITmfResponse.Status.CANCELLED, CommonStatusMessage.TASK_CANCELLED);
+            }
         } catch (TimeRangeException | StateSystemDisposedException e) {
             return new TmfModelResponse<>(null, ITmfResponse.Status.FAILED, String.valueOf(e.getMessage()));
         }
@@ -481,12 +482,12 @@ public class ThreadStatusDataProvider extends AbstractTmfTraceDataProvider imple
         Collection<Long> times = getTimes(ss, filter);
         try {
             /* Do the actual query */
-            for (ITmfStateInterval interval : ss.query2D(quarks, times)) {
-                if (monitor != null && monitor.isCanceled()) {
-                    return new TmfModelResponse<>(null, ITmfResponse.Status.CANCELLED, CommonStatusMessage.TASK_CANCELLED);
-                }
+            for (ITmfStateInterval interval : ss.query2D(quarks, times, monitor)) {
                 currentThreadIntervalsMap.put(interval.getAttribute(), interval);
             }
+            if (monitor != null && monitor.isCanceled()) {
+                return new TmfModelResponse<>(null, ITmfResponse.Status.CANCELLED, CommonStatusMessage.TASK_CANCELLED);
+            }
 
             /* Get the arrows. */
             for (Collection<ITmfStateInterval> currentThreadIntervals : currentThreadIntervalsMap.asMap().values()) {
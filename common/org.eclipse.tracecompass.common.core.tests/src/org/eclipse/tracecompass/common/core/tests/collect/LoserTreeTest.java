@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.common.core.tests.collect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.eclipse.tracecompass.common.core.collect.LoserTree;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+
+/**
+ * Test suite for the {@link LoserTree}
+ */
+public class LoserTreeTest {
+
+    /**
+     * Mutable source of sorted values, like a reader
+     */
+    private static class Source {
+        private final List<Long> fValues;
+        private int fPos = 0;
+
+        public Source(List<Long> values) {
+            fValues = values;
+        }
+
+        public long current() {
+            return fValues.get(fPos);
+        }
+
+        public boolean advance() {
+            fPos++;
+            return fPos < fValues.size();
+        }
+    }
+
+    private static final Comparator<Source> COMPARATOR = Comparator.comparingLong(Source::current);
+
+    private static List<Source> createSources(Random random, int nbSources, int maxLength, int range) {
+        List<Source> sources = new ArrayList<>();
+        for (int i = 0; i < nbSources; i++) {
+            List<Long> values = new ArrayList<>();
+            int length = random.nextInt(maxLength + 1);
+            for (int j = 0; j < length; j++) {
+                values.add((long) random.nextInt(range));
+            }
+            Collections.sort(values);
+            sources.add(new Source(values));
+        }
+        return sources;
+    }
+
+    private static List<Long> merge(LoserTree<Source> tree) {
+        List<Long> merged = new ArrayList<>();
+        Source winner = tree.getWinner();
+        while (winner != null) {
+            merged.add(winner.current());
+            tree.replaceWinner(winner.advance() ? winner : null);
+            winner = tree.getWinner();
+        }
+        return merged;
+    }
+
+    /**
+     * Test an empty tree
+     */
+    @Test
+    public void testEmpty() {
+        LoserTree<Source> tree = new LoserTree<>(COMPARATOR);
+        assertEquals(0, tree.size());
+        assertTrue(tree.isEmpty());
+        assertEquals(-1, tree.getWinnerIndex());
+        assertNull(tree.getWinner());
+        assertTrue(Iterables.isEmpty(tree));
+    }
+
+    /**
+     * Test that replacing the winner of an empty tree fails
+     */
+    @Test(expected = NoSuchElementException.class)
+    public void testReplaceEmpty() {
+        LoserTree<Source> tree = new LoserTree<>(COMPARATOR);
+        tree.add(null);
+        tree.replaceWinner(null);
+    }
+
+    /**
+     * Test merging sources of random values against sorting them, for
+     * different numbers of sources
+     */
+    @Test
+    public void testMerge() {
+        Random random = new Random(42);
+        for (int nbSources : new int[] { 1, 2, 3, 5, 8, 13, 100, 257 }) {
+            List<Source> sources = createSources(random, nbSources, 50, 1000);
+            List<Long> expected = new ArrayList<>();
+            LoserTree<Source> tree = new LoserTree<>(COMPARATOR);
+            for (Source source : sources) {
+                expected.addAll(source.fValues);
+                tree.add(source.fValues.isEmpty() ? null : source);
+            }
+            Collections.sort(expected);
+            assertEquals(nbSources, tree.size());
+            assertEquals(expected, merge(tree));
+            assertTrue(tree.isEmpty());
+        }
+    }
+
+    /**
+     * Test that ties are won by the source with the smallest slot index
+     */
+    @Test
+    public void testTies() {
+        LoserTree<Source> tree = new LoserTree<>(COMPARATOR);
+        List<Source> sources = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            Source source = new Source(ImmutableList.of(1L, 1L, 2L));
+            sources.add(source);
+            tree.add(source);
+        }
+        List<Integer> order = new ArrayList<>();
+        while (!tree.isEmpty()) {
+            int index = tree.getWinnerIndex();
+            order.add(index);
+            Source winner = sources.get(index);
+            tree.replaceWinner(winner.advance() ? winner : null);
+        }
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            expected.add(i);
+            expected.add(i);
+        }
+        for (int i = 0; i < 7; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, order);
+    }
+
+    /**
+     * Test setting the sources, like after a seek, and adding sources while
+     * merging
+     */
+    @Test
+    public void testSetAndAdd() {
+        LoserTree<Source> tree = new LoserTree<>(COMPARATOR);
+        Source a = new Source(ImmutableList.of(1L, 4L, 7L));
+        Source b = new Source(ImmutableList.of(2L, 5L, 8L));
+        tree.add(a);
+        tree.add(b);
+        assertEquals(a, tree.getWinner());
+        tree.replaceWinner(a.advance() ? a : null);
+        assertEquals(b, tree.getWinner());
+
+        /* Set a source which is not the winner */
+        tree.set(0, new Source(ImmutableList.of(0L)));
+        assertEquals(0, tree.getWinnerIndex());
+
+        /* Set the winner */
+        tree.set(0, null);
+        assertEquals(1, tree.getWinnerIndex());
+        assertNull(tree.get(0));
+
+        /* Add a new source */
+        assertEquals(2, tree.add(new Source(ImmutableList.of(3L, 6L))));
+        assertEquals(ImmutableList.of(2L, 3L, 5L, 6L, 8L), merge(tree));
+
+        tree.set(1, new Source(ImmutableList.of(9L)));
+        assertFalse(tree.isEmpty());
+        assertEquals(1, Iterables.size(tree));
+        tree.clear();
+        assertTrue(tree.isEmpty());
+        assertEquals(3, tree.size());
+    }
+
+    /**
+     * Test iterating on the sources which are not exhausted
+     */
+    @Test
+    public void testIterator() {
+        LoserTree<String> tree = new LoserTree<>(Comparator.naturalOrder());
+        tree.add("c");
+        tree.add(null);
+        tree.add("a");
+        tree.add(null);
+        tree.add("b");
+        assertEquals(ImmutableList.of("c", "a", "b"), ImmutableList.copyOf(tree));
+        assertEquals("a", tree.getWinner());
+    }
+}
@@ -0,0 +1,338 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.common.core.collect;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Tournament tree (loser tree) to merge k ordered sources, such as the streams
+ * of a trace or the traces of an experiment.
+ * <p>
+ * Each source has a slot, which contains its current element, or null if the
+ * source is exhausted. The winner is the smallest element according to the
+ * comparator, ties being won by the source with the smallest slot index, so
+ * the merge order does not depend on the history of the tree. Each internal
+ * node of the tree keeps the loser of the match played there, so when the
+ * winner is replaced by the next element of its source, only the matches on
+ * the path from its leaf to the root are played again, in O(log k), without
+ * removing and inserting the source like with a binary heap.
+ * <p>
+ * The tree also keeps the runner-up, the best of the losers on the path of
+ * the winner. As long as the next element of the winner's source still beats
+ * it, which is common when one source has a burst of elements, the winner is
+ * replaced with a single comparison.
+ * <p>
+ * The elements may be mutable, for example a reader whose current position
+ * gives its order: replacing the winner by itself replays its matches once it
+ * moved. Other slots must not change order without being {@link #set}.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @param <T>
+ *            The type of the elements
+ * @since 3.1
+ */
+public final class LoserTree<T> implements Iterable<T> {
+
+    private static final int NONE = -1;
+    private static final int MIN_CAPACITY = 4;
+
+    private final Comparator<? super T> fComparator;
+
+    /** Current element of each source, null if the source is exhausted */
+    private @Nullable Object[] fValues;
+    private int fSize = 0;
+
+    /**
+     * Slot index of the loser of each internal node, 1 to size - 1, the leaf
+     * of slot i being the node size + i. The node 0 contains the winner.
+     */
+    private int[] fTree;
+    private int fRunnerUp = NONE;
+
+    /** The tree must be built again before it is used */
+    private boolean fDirty = true;
+
+    /**
+     * Constructor
+     *
+     * @param comparator
+     *            The comparator of the elements
+     */
+    public LoserTree(Comparator<? super T> comparator) {
+        fComparator = comparator;
+        fValues = new Object[MIN_CAPACITY];
+        fTree = new int[MIN_CAPACITY];
+    }
+
+    /**
+     * Get the number of sources, exhausted or not
+     *
+     * @return The number of slots
+     */
+    public int size() {
+        return fSize;
+    }
+
+    /**
+     * Add a source to the tree. The tree is built again, in O(k), the next time
+     * it is used.
+     *
+     * @param value
+     *            The current element of the source, or null if it is exhausted
+     * @return The slot index of the source
+     */
+    public int add(@Nullable T value) {
+        if (fSize == fValues.length) {
+            fValues = Arrays.copyOf(fValues, fSize * 2);
+        }
+        fValues[fSize] = value;
+        fDirty = true;
+        return fSize++;
+    }
+
+    /**
+     * Set the element of a source. Setting the element of the winner replays
+     * its matches, like {@link #replaceWinner}, otherwise the tree is built
+     * again the next time it is used, so setting all the slots, like after a
+     * seek, costs O(k).
+     *
+     * @param index
+     *            The slot index of the source
+     * @param value
+     *            The current element of the source, or null if it is exhausted
+     */
+    public void set(int index, @Nullable T value) {
+        checkIndex(index);
+        if (!fDirty && index == fTree[0] && fValues[index] != null) {
+            replaceWinner(value);
+            return;
+        }
+        fValues[index] = value;
+        fDirty = true;
+    }
+
+    /**
+     * Get the element of a source
+     *
+     * @param index
+     *            The slot index of the source
+     * @return The current element of the source, or null if it is exhausted
+     */
+    public @Nullable T get(int index) {
+        checkIndex(index);
+        return element(index);
+    }
+
+    /**
+     * Set all the sources as exhausted, keeping their slots
+     */
+    public void clear() {
+        Arrays.fill(fValues, 0, fSize, null);
+        fDirty = true;
+    }
+
+    /**
+     * Whether all the sources are exhausted
+     *
+     * @return true if there is no winner
+     */
+    public boolean isEmpty() {
+        return getWinner() == null;
+    }
+
+    /**
+     * Get the slot index of the winner
+     *
+     * @return The slot index of the smallest element, or -1 if all the
+     *         sources are exhausted
+     */
+    public int getWinnerIndex() {
+        if (fSize == 0) {
+            return NONE;
+        }
+        build();
+        int winner = fTree[0];
+        return fValues[winner] == null ? NONE : winner;
+    }
+
+    /**
+     * Get the winner
+     *
+     * @return The smallest element, or null if all the sources are exhausted
+     */
+    public @Nullable T getWinner() {
+        int winner = getWinnerIndex();
+        return winner == NONE ? null : element(winner);
+    }
+
+    /**
+     * Replace the winner by the next element of its source, and find the new
+     * winner. This costs a single comparison if the source still wins,
+     * O(log k) comparisons otherwise.
+     *
+     * @param value
+     *            The next element of the winner's source, which may be the
+     *            same mutable element, or null if the source is exhausted
+     * @throws NoSuchElementException
+     *             If all the sources are exhausted
+     */
+    public void replaceWinner(@Nullable T value) {
+        int winner = getWinnerIndex();
+        if (winner == NONE) {
+            throw new NoSuchElementException();
+        }
+        fValues[winner] = value;
+        if (fRunnerUp == NONE || (value != null && beats(winner, fRunnerUp))) {
+            /* Still the winner, none of the stored losers change */
+            return;
+        }
+        replay(winner);
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private int fNext = nextSource(0);
+
+            private int nextSource(int from) {
+                int i = from;
+                while (i < fSize && fValues[i] == null) {
+                    i++;
+                }
+                return i;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return fNext < fSize;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                T value = element(fNext);
+                fNext = nextSource(fNext + 1);
+                if (value == null) {
+                    throw new NoSuchElementException();
+                }
+                return value;
+            }
+        };
+    }
+
+    // ------------------------------------------------------------------------
+    // Helpers
+    // ------------------------------------------------------------------------
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= fSize) {
+            throw new IndexOutOfBoundsException("Invalid slot " + index); //$NON-NLS-1$
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private @Nullable T element(int index) {
+        return (T) fValues[index];
+    }
+
+    /**
+     * Whether the source a beats the source b. Exhausted sources lose against
+     * all the others, and ties are won by the smallest slot index.
+     */
+    private boolean beats(int a, int b) {
+        T valueA = element(a);
+        T valueB = element(b);
+        if (valueA == null) {
+            return valueB == null && a < b;
+        }
+        if (valueB == null) {
+            return true;
+        }
+        int cmp = fComparator.compare(valueA, valueB);
+        return cmp < 0 || (cmp == 0 && a < b);
+    }
+
+    /**
+     * Play all the matches, bottom-up, in O(k)
+     */
+    private void build() {
+        if (!fDirty) {
+            return;
+        }
+        fDirty = false;
+        int k = fSize;
+        if (fTree.length < k) {
+            fTree = new int[fValues.length];
+        }
+        if (k == 1) {
+            fTree[0] = 0;
+            fRunnerUp = NONE;
+            return;
+        }
+        /* Winner of each node, the leaves being the sources themselves */
+        int[] winners = new int[2 * k];
+        for (int i = 0; i < k; i++) {
+            winners[k + i] = i;
+        }
+        for (int node = k - 1; node > 0; node--) {
+            int a = winners[2 * node];
+            int b = winners[2 * node + 1];
+            if (beats(a, b)) {
+                winners[node] = a;
+                fTree[node] = b;
+            } else {
+                winners[node] = b;
+                fTree[node] = a;
+            }
+        }
+        fTree[0] = winners[1];
+        updateRunnerUp();
+    }
+
+    /**
+     * Play again the matches on the path from the leaf of a source to the
+     * root, in O(log k)
+     */
+    private void replay(int source) {
+        int candidate = source;
+        for (int node = (fSize + source) >>> 1; node > 0; node >>>= 1) {
+            int loser = fTree[node];
+            if (beats(loser, candidate)) {
+                fTree[node] = candidate;
+                candidate = loser;
+            }
+        }
+        fTree[0] = candidate;
+        updateRunnerUp();
+    }
+
+    /**
+     * The second smallest element lost directly against the winner, so it is
+     * the best of the losers on the path of the winner.
+     */
+    private void updateRunnerUp() {
+        int runnerUp = NONE;
+        for (int node = (fSize + fTree[0]) >>> 1; node > 0; node >>>= 1) {
+            int loser = fTree[node];
+            if (runnerUp == NONE || beats(loser, runnerUp)) {
+                runnerUp = loser;
+            }
+        }
+        fRunnerUp = runnerUp;
+    }
+}
@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.ctf.core.tests.perf.io;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.test.performance.Dimension;
+import org.eclipse.test.performance.Performance;
+import org.eclipse.test.performance.PerformanceMeter;
+import org.eclipse.tracecompass.ctf.core.CTFException;
+import org.eclipse.tracecompass.ctf.core.event.io.BitBuffer;
+import org.eclipse.tracecompass.ctf.core.event.types.IntegerDeclaration;
+import org.eclipse.tracecompass.internal.ctf.core.event.types.ArrayDeclaration;
+import org.junit.Test;
+
+/**
+ * Microbenchmarks of the decoding of integers by the {@link BitBuffer}: one
+ * integer at a time, in bulk, and as the elements of an array field. Each
+ * scenario also measures the generic path, with integers that are not
+ * byte-aligned, as a baseline.
+ */
+public class BitBufferBenchmark {
+
+    private static final String TEST_SUITE_NAME = "CTF BitBuffer Benchmark";
+    private static final String TEST_ID = "org.eclipse.linuxtools#" + TEST_SUITE_NAME;
+    private static final int LOOP_COUNT = 25;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int ARRAY_LENGTH = 64;
+
+    private static final @NonNull ByteBuffer BUFFER = createBuffer();
+
+    private static @NonNull ByteBuffer createBuffer() {
+        byte[] bytes = new byte[BUFFER_SIZE];
+        new Random(42).nextBytes(bytes);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer == null) {
+            throw new IllegalStateException();
+        }
+        return buffer;
+    }
+
+    /**
+     * Read 8-bit integers
+     *
+     * @throws CTFException
+     *             Should not happen
+     */
+    @Test
+    public void testInt8() throws CTFException {
+        readIntegers(8, false);
+    }
+
+    /**
+     * Read 16-bit integers
+     *
+     * @throws CTFException
+     *             Should not happen
+     */
+    @Test
+    public void testInt16() throws CTFException {
+        readIntegers(16, false);
+    }
+
+    /**
+     * Read 32-bit integers
+     *
+     * @throws CTFException
+     *             Should not happen
+     */
+    @Test
+    public void testInt32() throws CTFException {
+        readIntegers(32, true);
+    }
+
+    /**
+     * Read 64-bit integers
+     *
+     * @throws CTFException
+     *             Should not happen
+     */
+    @Test
+    public void testInt64() throws CTFException {
+        readIntegers(64, true);
+    }
+
+    /**
+     * Read arrays of 32-bit integers
+     *
+     * @throws CTFException
+     *             Should not happen
+     */
+    @Test
+    public void testArrayInt32() throws CTFException {
+        readArrays(32);
+    }
+
+    /**
+     * Read arrays of 64-bit integers
+     *
+     * @throws CTFException
+     *             Should not happen
+     */
+    @Test
+    public void testArrayInt64() throws CTFException {
+        readArrays(64);
+    }
+
+    private static PerformanceMeter createMeter(String testName, boolean inGlobalSummary) {
+        Performance perf = Performance.getDefault();
+        PerformanceMeter pm = perf.createPerformanceMeter(TEST_ID + '#' + testName);
+        perf.tagAsSummary(pm, TEST_SUITE_NAME + ':' + testName, Dimension.CPU_TIME);
+        if (inGlobalSummary) {
+            perf.tagAsGlobalSummary(pm, TEST_SUITE_NAME + ':' + testName, Dimension.CPU_TIME);
+        }
+        return pm;
+    }
+
+    /**
+     * Read the buffer as integers one at a time, in bulk, and one at a time
+     * from an unaligned position.
+     */
+    private static void readIntegers(int length, boolean inGlobalSummary) throws CTFException {
+        String testName = "int" + length;
+        PerformanceMeter single = createMeter(testName + "-single", false);
+        PerformanceMeter bulk = createMeter(testName + "-bulk", inGlobalSummary);
+        PerformanceMeter unaligned = createMeter(testName + "-unaligned", false);
+        int count = (BUFFER_SIZE * Byte.SIZE) / length - 1;
+        long[] values = new long[count];
+
+        for (int loop = 0; loop < LOOP_COUNT; loop++) {
+            BitBuffer input = new BitBuffer(BUFFER, ByteOrder.LITTLE_ENDIAN);
+            single.start();
+            long sum = 0;
+            for (int i = 0; i < count; i++) {
+                sum += input.get(length, false);
+            }
+            single.stop();
+
+            input.position(0);
+            bulk.start();
+            input.get(values, length, false);
+            long bulkSum = 0;
+            for (long value : values) {
+                bulkSum += value;
+            }
+            bulk.stop();
+            assertEquals(sum, bulkSum);
+
+            input.position(1);
+            unaligned.start();
+            for (int i = 0; i < count; i++) {
+                sum += input.get(length, false);
+            }
+            unaligned.stop();
+        }
+        single.commit();
+        bulk.commit();
+        unaligned.commit();
+    }
+
+    /**
+     * Decode array fields of integers, which are read in bulk, and of
+     * integers which are not byte-aligned, which are read one at a time
+     */
+    private static void readArrays(int length) throws CTFException {
+        String testName = "array-int" + length;
+        PerformanceMeter aligned = createMeter(testName, false);
+        PerformanceMeter unaligned = createMeter(testName + "-unaligned", false);
+        ArrayDeclaration alignedDecl = new ArrayDeclaration(ARRAY_LENGTH,
+                IntegerDeclaration.createDeclaration(length, false, 16, ByteOrder.LITTLE_ENDIAN, IntegerDeclaration.Encoding.NONE, "", 8));
+        ArrayDeclaration unalignedDecl = new ArrayDeclaration(ARRAY_LENGTH,
+                IntegerDeclaration.createDeclaration(length - 1, false, 16, ByteOrder.LITTLE_ENDIAN, IntegerDeclaration.Encoding.NONE, "", 1));
+        int count = (BUFFER_SIZE * Byte.SIZE) / (length * ARRAY_LENGTH) - 1;
+
+        for (int loop = 0; loop < LOOP_COUNT; loop++) {
+            BitBuffer input = new BitBuffer(BUFFER, ByteOrder.LITTLE_ENDIAN);
+            aligned.start();
+            for (int i = 0; i < count; i++) {
+                alignedDecl.createDefinition(null, "array", input);
+            }
+            aligned.stop();
+
+            input.position(1);
+            unaligned.start();
+            for (int i = 0; i < count; i++) {
+                unalignedDecl.createDefinition(null, "array", input);
+            }
+            unaligned.stop();
+        }
+        aligned.commit();
+        unaligned.commit();
+    }
+}
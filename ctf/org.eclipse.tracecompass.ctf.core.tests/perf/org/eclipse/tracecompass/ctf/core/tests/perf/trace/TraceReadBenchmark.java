@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2012, 2014 Ericsson
+ * Copyright (c) 2012, 2018 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -13,11 +13,17 @@
 
 package org.eclipse.tracecompass.ctf.core.tests.perf.trace;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Random;
+
 import org.eclipse.test.performance.Dimension;
 import org.eclipse.test.performance.Performance;
 import org.eclipse.test.performance.PerformanceMeter;
+import org.eclipse.tracecompass.common.core.collect.LoserTree;
 import org.eclipse.tracecompass.ctf.core.CTFException;
 import org.eclipse.tracecompass.ctf.core.event.IEventDefinition;
 import org.eclipse.tracecompass.ctf.core.tests.shared.CtfTestTraceUtils;
@@ -37,6 +43,8 @@ public class TraceReadBenchmark {
     private static final String TEST_SUITE_NAME = "CTF Read Benchmark";
     private static final String TEST_ID = "org.eclipse.linuxtools#" + TEST_SUITE_NAME;
     private static final int LOOP_COUNT = 100;
+    private static final int MERGE_LOOP_COUNT = 10;
+    private static final int MERGE_EVENTS = 2000000;
 
     /**
      * Benchmark reading the trace "kernel"
@@ -54,6 +62,111 @@ public class TraceReadBenchmark {
         readTrace(CtfTestTrace.KERNEL_VM, "trace-kernel-vm", false);
     }
 
+    /**
+     * Benchmark ordering the events of 16 streams, like a small trace
+     */
+    @Test
+    public void testMerge16Streams() {
+        mergeStreams(16, true);
+    }
+
+    /**
+     * Benchmark ordering the events of 256 streams, like a trace of a large
+     * machine with a few buffers per CPU
+     */
+    @Test
+    public void testMerge256Streams() {
+        mergeStreams(256, true);
+    }
+
+    /**
+     * Benchmark ordering the events of 1024 streams
+     */
+    @Test
+    public void testMerge1024Streams() {
+        mergeStreams(1024, false);
+    }
+
+    /**
+     * Synthetic stream, whose events come in bursts, like the packets of a CPU
+     * recording its events while the others are idle
+     */
+    private static class SyntheticStream {
+        private final Random fRandom;
+        private long fTimestamp;
+        private int fBurst = 0;
+
+        public SyntheticStream(long seed) {
+            fRandom = new Random(seed);
+            fTimestamp = fRandom.nextInt(1000);
+        }
+
+        public long getTimestamp() {
+            return fTimestamp;
+        }
+
+        public void advance() {
+            if (fBurst > 0) {
+                fBurst--;
+                fTimestamp += 1 + fRandom.nextInt(10);
+            } else {
+                fBurst = fRandom.nextInt(100);
+                fTimestamp += 1 + fRandom.nextInt(10000);
+            }
+        }
+    }
+
+    private static final Comparator<SyntheticStream> STREAM_COMPARATOR = (a, b) -> Long.compareUnsigned(a.getTimestamp(), b.getTimestamp());
+
+    /**
+     * Order the events of synthetic streams with the tournament tree of the
+     * trace reader, and with a priority queue as a baseline, without the cost
+     * of reading the events.
+     */
+    private static void mergeStreams(int nbStreams, boolean inGlobalSummary) {
+        Performance perf = Performance.getDefault();
+        String testName = "merge-" + nbStreams + "-streams";
+        PerformanceMeter pm = perf.createPerformanceMeter(TEST_ID + '#' + testName);
+        perf.tagAsSummary(pm, TEST_SUITE_NAME + ':' + testName, Dimension.CPU_TIME);
+        if (inGlobalSummary) {
+            perf.tagAsGlobalSummary(pm, TEST_SUITE_NAME + ':' + testName, Dimension.CPU_TIME);
+        }
+        PerformanceMeter baseline = perf.createPerformanceMeter(TEST_ID + '#' + testName + "-priority-queue");
+
+        for (int loop = 0; loop < MERGE_LOOP_COUNT; loop++) {
+            pm.start();
+            LoserTree<SyntheticStream> tree = new LoserTree<>(STREAM_COMPARATOR);
+            for (int i = 0; i < nbStreams; i++) {
+                tree.add(new SyntheticStream(i));
+            }
+            long last = 0;
+            for (int i = 0; i < MERGE_EVENTS; i++) {
+                SyntheticStream top = tree.getWinner();
+                last = Math.max(last, top.getTimestamp());
+                top.advance();
+                tree.replaceWinner(top);
+            }
+            pm.stop();
+
+            baseline.start();
+            PriorityQueue<SyntheticStream> prio = new PriorityQueue<>(nbStreams, STREAM_COMPARATOR);
+            for (int i = 0; i < nbStreams; i++) {
+                prio.add(new SyntheticStream(i));
+            }
+            long lastBaseline = 0;
+            for (int i = 0; i < MERGE_EVENTS; i++) {
+                SyntheticStream top = prio.poll();
+                lastBaseline = Math.max(lastBaseline, top.getTimestamp());
+                top.advance();
+                prio.add(top);
+            }
+            baseline.stop();
+            assertEquals(lastBaseline, last);
+        }
+        pm.commit();
+        baseline.commit();
+    }
+
     private static void readTrace(CtfTestTrace testTrace, String testName, boolean inGlobalSummary) {
         Performance perf = Performance.getDefault();
         PerformanceMeter pm = perf.createPerformanceMeter(TEST_ID + '#' + testName);
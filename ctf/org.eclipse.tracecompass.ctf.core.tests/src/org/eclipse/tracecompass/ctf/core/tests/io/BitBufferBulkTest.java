@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.ctf.core.tests.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.eclipse.tracecompass.ctf.core.CTFException;
+import org.eclipse.tracecompass.ctf.core.event.io.BitBuffer;
+import org.junit.Test;
+
+/**
+ * Part of the {@link BitBuffer} tests which test the bulk reads of integers,
+ * against reading them one at a time.
+ */
+public class BitBufferBulkTest {
+
+    private static final int SIZE = 256;
+    private static final int COUNT = 24;
+
+    private static BitBuffer createBuffer(ByteOrder order) {
+        byte[] bytes = new byte[SIZE];
+        new Random(42).nextBytes(bytes);
+        ByteBuffer wrap = ByteBuffer.wrap(bytes);
+        return new BitBuffer(wrap, order);
+    }
+
+    /**
+     * Read the integers with the bulk readers and one at a time from the same
+     * position, and compare the values and the positions after the reads
+     */
+    private static void testRead(ByteOrder order, int position, int length, boolean signed) throws CTFException {
+        BitBuffer buffer = createBuffer(order);
+        long[] expected = new long[COUNT];
+        buffer.position(position);
+        for (int i = 0; i < COUNT; i++) {
+            expected[i] = buffer.get(length, signed);
+        }
+        long end = buffer.position();
+
+        long[] values = new long[COUNT];
+        buffer.position(position);
+        buffer.get(values, length, signed);
+        assertArrayEquals(expected, values);
+        assertEquals(end, buffer.position());
+
+        if (length <= Integer.SIZE) {
+            int[] intValues = new int[COUNT];
+            buffer.position(position);
+            buffer.get(intValues, length, signed);
+            for (int i = 0; i < COUNT; i++) {
+                assertEquals((int) expected[i], intValues[i]);
+            }
+            assertEquals(end, buffer.position());
+        }
+    }
+
+    private static void testRead(int length) throws CTFException {
+        for (ByteOrder order : new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+            for (int position : new int[] { 0, 8, 3 }) {
+                testRead(order, position, length, false);
+                testRead(order, position, length, true);
+            }
+        }
+    }
+
+    /**
+     * Test reading 8-bit integers
+     *
+     * @throws CTFException
+     *             Not expected
+     */
+    @Test
+    public void testGet8() throws CTFException {
+        testRead(8);
+    }
+
+    /**
+     * Test reading 16-bit integers
+     *
+     * @throws CTFException
+     *             Not expected
+     */
+    @Test
+    public void testGet16() throws CTFException {
+        testRead(16);
+    }
+
+    /**
+     * Test reading 32-bit integers
+     *
+     * @throws CTFException
+     *             Not expected
+     */
+    @Test
+    public void testGet32() throws CTFException {
+        testRead(32);
+    }
+
+    /**
+     * Test reading 64-bit integers
+     *
+     * @throws CTFException
+     *             Not expected
+     */
+    @Test
+    public void testGet64() throws CTFException {
+        testRead(64);
+    }
+
+    /**
+     * Test reading integers which are not a whole number of bytes
+     *
+     * @throws CTFException
+     *             Not expected
+     */
+    @Test
+    public void testGetOddLengths() throws CTFException {
+        testRead(5);
+        testRead(24);
+        testRead(35);
+    }
+
+    /**
+     * Test reading a 64-bit integer against its known value
+     *
+     * @throws CTFException
+     *             Not expected
+     */
+    @Test
+    public void testGet64Value() throws CTFException {
+        byte[] bytes = { 0, 1, 2, 3, 4, 5, 6, 7, 8 };
+        BitBuffer buffer = new BitBuffer(ByteBuffer.wrap(bytes), ByteOrder.BIG_ENDIAN);
+        buffer.position(8);
+        assertEquals(0x0102030405060708L, buffer.get(64, false));
+        buffer.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(8);
+        assertEquals(0x0807060504030201L, buffer.get(64, true));
+    }
+
+    /**
+     * Test reading more integers than the buffer contains. An exception
+     * should be thrown and the position should not change.
+     *
+     * @throws CTFException
+     *             Expected
+     */
+    @Test(expected = CTFException.class)
+    public void testGetUnderflow() throws CTFException {
+        BitBuffer buffer = createBuffer(ByteOrder.BIG_ENDIAN);
+        buffer.position(8);
+        buffer.get(new long[SIZE / 4], 32, false);
+    }
+
+    /**
+     * Test reading integers which are too long for an int. An exception should
+     * be thrown.
+     *
+     * @throws CTFException
+     *             Expected
+     */
+    @Test(expected = CTFException.class)
+    public void testGetIntTooLong() throws CTFException {
+        BitBuffer buffer = createBuffer(ByteOrder.BIG_ENDIAN);
+        buffer.get(new int[1], 33, false);
+    }
+}
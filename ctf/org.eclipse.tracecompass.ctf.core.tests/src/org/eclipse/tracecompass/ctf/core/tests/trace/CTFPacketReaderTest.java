@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2015 Ericsson
+ * Copyright (c) 2015, 2018 Ericsson
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -14,9 +14,11 @@ package org.eclipse.tracecompass.ctf.core.tests.trace;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.nio.ByteBuffer;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
 
@@ -141,6 +143,47 @@ public class CTFPacketReaderTest {
         assertFalse(cpr.hasMoreEvents());
     }
 
+    /**
+     * Test a packet whose events are skipped, they must still be read with
+     * their timestamp, but without their context and fields
+     *
+     * @throws CTFException
+     *             won't happen
+     */
+    @Test
+    public void testPacketSkippedEvents() throws CTFException {
+        byte[] bytes = { (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x01, (byte) 0xff, (byte) 0xff, (byte) 0xa5 };
+        BitBuffer input = createBitBuffer(bytes);
+        ICTFPacketDescriptor packetContext = new StreamInputPacketIndexEntry(0, EMPTY_STRUCT.createDefinition(null, ILexicalScope.TRACE, new BitBuffer()), 8, 0, 0);
+        StructDeclaration eventHeaderDeclaration = new StructDeclaration(8);
+        eventHeaderDeclaration.addField("timestamp", IntegerDeclaration.INT_8_DECL);
+        final EventDeclaration eventDec = new EventDeclaration();
+        eventDec.setName("Hello");
+        StructDeclaration context = new StructDeclaration(8);
+        context.addField("field1", IntegerDeclaration.UINT_16L_DECL);
+        StructDeclaration fields = new StructDeclaration(8);
+        fields.addField("field2", IntegerDeclaration.UINT_8_DECL);
+        eventDec.setContext(context);
+        eventDec.setFields(fields);
+        List<@Nullable IEventDeclaration> declarations = Collections.singletonList(eventDec);
+        CTFTrace trace = new CTFTrace();
+        CTFPacketReader cpr = new CTFPacketReader(input, packetContext, declarations, eventHeaderDeclaration, null, null, trace);
+        BitSet skippedEvents = new BitSet();
+        skippedEvents.set(0);
+        cpr.setSkippedEvents(skippedEvents);
+        assertTrue(cpr.hasMoreEvents());
+        EventDefinition event = cpr.readNextEvent();
+        assertEquals(0L, event.getTimestamp());
+        assertEquals(eventDec, event.getDeclaration());
+        assertNull(event.getContext());
+        assertNull(event.getFields());
+        assertTrue(cpr.hasMoreEvents());
+        event = cpr.readNextEvent();
+        assertEquals(1L, event.getTimestamp());
+        assertNull(event.getFields());
+        assertFalse(cpr.hasMoreEvents());
+    }
+
     /**
      * Test a packet with fields and no header (a odd but acceptable packet)
      *
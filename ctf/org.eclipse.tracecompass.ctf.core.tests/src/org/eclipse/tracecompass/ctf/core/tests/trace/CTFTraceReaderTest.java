@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013, 2014 Ericsson
+ * Copyright (c) 2013, 2018 Ericsson
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -298,6 +298,43 @@ public class CTFTraceReaderTest {
         assertTrue(result);
     }
 
+    /**
+     * Test that the events are read in the same order when the streams are
+     * decoded ahead, including after a seek and after turning it off.
+     *
+     * @throws CTFException
+     *             error
+     */
+    @Test
+    public void testReadAhead() throws CTFException {
+        CTFTrace trace = CtfTestTraceUtils.getTrace(testTrace);
+        try (CTFTraceReader reader = new CTFTraceReader(trace);
+                CTFTraceReader readAheadReader = new CTFTraceReader(trace)) {
+            readAheadReader.setReadAhead(true);
+            assertTrue(readAheadReader.isReadAhead());
+            assertSameEvents(reader, readAheadReader, 20000);
+
+            long timestamp = reader.getCurrentEventDef().getTimestamp() - 1000;
+            assertEquals(reader.seek(timestamp), readAheadReader.seek(timestamp));
+            assertSameEvents(reader, readAheadReader, 1000);
+
+            readAheadReader.setReadAhead(false);
+            assertSameEvents(reader, readAheadReader, 1000);
+        }
+    }
+
+    private static void assertSameEvents(CTFTraceReader expected, CTFTraceReader actual, int nbEvents) throws CTFException {
+        for (int i = 0; i < nbEvents && expected.hasMoreEvents(); i++) {
+            IEventDefinition expectedEvent = expected.getCurrentEventDef();
+            IEventDefinition actualEvent = actual.getCurrentEventDef();
+            assertNotNull(actualEvent);
+            assertEquals(expectedEvent.getTimestamp(), actualEvent.getTimestamp());
+            assertEquals(expectedEvent.getCPU(), actualEvent.getCPU());
+            assertEquals(expectedEvent.getDeclaration().getName(), actualEvent.getDeclaration().getName());
+            assertEquals(expected.advance(), actual.advance());
+        }
+    }
+
     /**
      * @return
      */
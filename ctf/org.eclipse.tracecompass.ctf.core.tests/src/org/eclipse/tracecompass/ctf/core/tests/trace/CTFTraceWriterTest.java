@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2015 Ericsson
+ * Copyright (c) 2015, 2018 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -174,10 +174,12 @@ public class CTFTraceWriterTest {
                 CTFTrace trace = CtfTestTraceUtils.getTrace(CtfTestTrace.KERNEL);
                 CTFTraceWriter ctfWriter = new CTFTraceWriter(checkNotNull(trace));
                 String traceName = createTraceName(fName);
+                long estimate = ctfWriter.estimateSize(fStartTime, fEndTime);
                 ctfWriter.copyPackets(fStartTime, fEndTime, traceName);
 
                 File metadata = new File(traceName + Utils.SEPARATOR + "metadata");
                 assertTrue("metadata", metadata.exists());
+                assertEquals("estimated size", estimate, getSize(traceName));
 
                 CTFTrace outTrace = new CTFTrace(traceName);
                 int count = 0;
@@ -214,6 +216,64 @@ public class CTFTraceWriterTest {
             }
     }
 
+    /**
+     * Test cutting the first and last packets at the events of the time range
+     */
+    @Test
+    public void testKernelTraceExact() {
+        try {
+            CTFTrace trace = CtfTestTraceUtils.getTrace(CtfTestTrace.KERNEL);
+            long clockOffset = trace.getClock().getClockOffset();
+            int expectedInRange = 0;
+            try (CTFTraceReader reader = new CTFTraceReader(trace)) {
+                while (reader.hasMoreEvents()) {
+                    long time = clockOffset + reader.getCurrentEventDef().getTimestamp();
+                    if (time >= fStartTime && time <= fEndTime) {
+                        expectedInRange++;
+                    }
+                    reader.advance();
+                }
+            }
+
+            CTFTraceWriter ctfWriter = new CTFTraceWriter(checkNotNull(trace));
+            String traceName = createTraceName(fName + "_EXACT");
+            long estimate = ctfWriter.estimateSize(fStartTime, fEndTime);
+            ctfWriter.copyPackets(fStartTime, fEndTime, traceName, true);
+            assertTrue("estimated size", getSize(traceName) <= estimate);
+
+            CTFTrace outTrace = new CTFTrace(traceName);
+            int count = 0;
+            int inRange = 0;
+            try (CTFTraceReader reader = new CTFTraceReader(outTrace)) {
+                while (reader.hasMoreEvents()) {
+                    long time = outTrace.getClock().getClockOffset() + reader.getCurrentEventDef().getTimestamp();
+                    assertTrue("event after the end time", time <= fEndTime);
+                    if (time >= fStartTime) {
+                        inRange++;
+                    }
+                    count++;
+                    reader.advance();
+                }
+            }
+            /* Events before the start time may remain to keep the alignment */
+            assertEquals("events in range", expectedInRange, inRange);
+            assertTrue("events copied", count <= fNbEvents);
+        } catch (CTFException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    private static long getSize(String path) {
+        long size = 0;
+        File[] files = new File(path).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+
     private static File getChannelFile(String path, int id) {
         File channel = new File(path + Utils.SEPARATOR + "channel_" + String.valueOf(id));
         return channel;
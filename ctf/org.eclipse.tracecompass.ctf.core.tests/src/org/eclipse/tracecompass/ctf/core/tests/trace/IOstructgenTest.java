@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013, 2014 Ericsson
+ * Copyright (c) 2013, 2018 Ericsson
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -14,6 +14,7 @@ package org.eclipse.tracecompass.ctf.core.tests.trace;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -30,6 +31,7 @@ import org.eclipse.tracecompass.ctf.core.tests.CtfCoreTestPlugin;
 import org.eclipse.tracecompass.ctf.core.trace.CTFTrace;
 import org.eclipse.tracecompass.internal.ctf.core.event.EventDeclaration;
 import org.eclipse.tracecompass.internal.ctf.core.event.metadata.IOStructGen;
+import org.eclipse.tracecompass.internal.ctf.core.event.metadata.MetadataTreeFile;
 import org.junit.Test;
 
 /**
@@ -508,4 +510,47 @@ public class IOstructgenTest {
                 eventDeclaration.getCustomAttribute("model.emf.uri"));
     }
 
+    /**
+     * Test that a trace whose parsed metadata is read from its cache file has
+     * the same declarations as when the metadata is parsed, and that an
+     * invalid cache file is written again
+     *
+     * @throws CTFException
+     *             something wrong happened
+     * @throws IOException
+     *             the cache file cannot be overwritten
+     */
+    @Test
+    public void TSDLCachedTest() throws CTFException, IOException {
+        createDummyTrace(allDressedTSDL);
+        File cacheFile = new File(tempTraceDir + ".tree");
+        cacheFile.delete();
+        try {
+            CTFTrace parsed = new CTFTrace(new File(tempTraceDir), cacheFile);
+            assertTrue(cacheFile.isFile());
+            assertSameDeclarations(parsed, new CTFTrace(new File(tempTraceDir), cacheFile));
+
+            try (FileWriter fw = new FileWriter(cacheFile);) {
+                fw.write("not a metadata tree");
+            }
+            assertSameDeclarations(parsed, new CTFTrace(new File(tempTraceDir), cacheFile));
+            assertNotNull(MetadataTreeFile.read(cacheFile, MetadataTreeFile.hash(allDressedTSDL)));
+        } finally {
+            cacheFile.delete();
+        }
+    }
+
+    private static void assertSameDeclarations(CTFTrace expected, CTFTrace actual) {
+        assertEquals(expected.getEnvironment(), actual.getEnvironment());
+        assertEquals(expected.getClock().getName(), actual.getClock().getName());
+        assertEquals(expected.getClock().getClockOffset(), actual.getClock().getClockOffset());
+        List<IEventDeclaration> expectedEvents = new ArrayList<>(expected.getEventDeclarations(0L));
+        List<IEventDeclaration> actualEvents = new ArrayList<>(actual.getEventDeclarations(0L));
+        assertEquals(expectedEvents.size(), actualEvents.size());
+        for (int i = 0; i < expectedEvents.size(); i++) {
+            assertEquals(expectedEvents.get(i).getName(), actualEvents.get(i).getName());
+            assertEquals(expectedEvents.get(i).getId(), actualEvents.get(i).getId());
+            assertEquals(expectedEvents.get(i).getFields(), actualEvents.get(i).getFields());
+        }
+    }
 }
@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.ctf.core.tests.trace;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.tree.CommonTree;
+import org.eclipse.tracecompass.internal.ctf.core.event.metadata.MetadataTreeFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the metadata tree files, which save the parsed tree of a TSDL metadata
+ * text
+ */
+public class MetadataTreeFileTest {
+
+    private static final int ROOT = 1;
+    private static final int EXPRESSION = 2;
+    private static final int IDENTIFIER = 200;
+    private static final int LITERAL = 1000;
+
+    private File fTreeFile;
+
+    /**
+     * Create the file name
+     *
+     * @throws IOException
+     *             If the file cannot be created
+     */
+    @Before
+    public void setUp() throws IOException {
+        fTreeFile = File.createTempFile("MetadataTreeFileTest", ".tree");
+        fTreeFile.delete();
+    }
+
+    /**
+     * Delete the file
+     */
+    @After
+    public void tearDown() {
+        fTreeFile.delete();
+    }
+
+    private static CommonTree node(int type, String text, int line, CommonTree... children) {
+        CommonToken token = new CommonToken(type, text);
+        token.setLine(line);
+        token.setCharPositionInLine(line * 2);
+        CommonTree node = new CommonTree(token);
+        for (CommonTree child : children) {
+            node.addChild(child);
+        }
+        return node;
+    }
+
+    /**
+     * Tree of "a = b; c = 10;", with repeated texts and an additional empty
+     * node, the token types being arbitrary
+     */
+    private static CommonTree createTree() {
+        CommonTree expressions = node(EXPRESSION, "EXPRESSION", 1,
+                node(EXPRESSION, "EXPRESSION", 1,
+                        node(IDENTIFIER, "a", 1),
+                        node(IDENTIFIER, "b", 1)),
+                node(EXPRESSION, "EXPRESSION", 2,
+                        node(IDENTIFIER, "c", 2),
+                        node(LITERAL, "10", 2)));
+        return node(ROOT, "ROOT", 0, expressions, node(IDENTIFIER, "", 300));
+    }
+
+    private static void assertSameTree(CommonTree expected, CommonTree actual) {
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getText(), actual.getText());
+        assertEquals(expected.getLine(), actual.getLine());
+        assertEquals(expected.getCharPositionInLine(), actual.getCharPositionInLine());
+        assertEquals(expected.getChildCount(), actual.getChildCount());
+        for (int i = 0; i < expected.getChildCount(); i++) {
+            assertSameTree((CommonTree) expected.getChild(i), (CommonTree) actual.getChild(i));
+        }
+    }
+
+    /**
+     * Test serializing and deserializing a tree
+     *
+     * @throws IOException
+     *             Not expected
+     */
+    @Test
+    public void testSerialize() throws IOException {
+        CommonTree tree = createTree();
+        byte[] data = MetadataTreeFile.serialize(tree);
+        assertSameTree(tree, MetadataTreeFile.deserialize(data));
+
+        /* A tree without any token */
+        CommonTree nil = new CommonTree();
+        assertSameTree(nil, MetadataTreeFile.deserialize(MetadataTreeFile.serialize(nil)));
+    }
+
+    /**
+     * Test serializing a tree with a string literal longer than 64 KiB, which
+     * has non-ASCII characters
+     *
+     * @throws IOException
+     *             Not expected
+     */
+    @Test
+    public void testSerializeLongText() throws IOException {
+        char[] chars = new char[70000];
+        Arrays.fill(chars, 'x');
+        chars[0] = '\u00e9';
+        chars[chars.length - 1] = '\u4e2d';
+        String text = new String(chars);
+        CommonTree tree = node(ROOT, "ROOT", 0,
+                node(EXPRESSION, "EXPRESSION", 1,
+                        node(IDENTIFIER, "a", 1),
+                        node(LITERAL, text, 1)));
+        CommonTree read = MetadataTreeFile.deserialize(MetadataTreeFile.serialize(tree));
+        assertSameTree(tree, read);
+        assertEquals(text, read.getChild(0).getChild(1).getText());
+    }
+
+        /**
+     * Test that a truncated tree is not deserialized
+     *
+     * @throws IOException
+     *             Expected
+     */
+    @Test(expected = IOException.class)
+    public void testTruncated() throws IOException {
+        byte[] data = MetadataTreeFile.serialize(createTree());
+        MetadataTreeFile.deserialize(Arrays.copyOf(data, data.length - 1));
+    }
+
+    /**
+     * Test the hash of the metadata texts
+     */
+    @Test
+    public void testHash() {
+        String text = "clock { name = monotonic; };";
+        assertEquals(MetadataTreeFile.hash(text), MetadataTreeFile.hash(new String(text)));
+        assertNotEquals(MetadataTreeFile.hash(text), MetadataTreeFile.hash(text + ' '));
+        assertEquals(64, MetadataTreeFile.hash("").length());
+    }
+
+    /**
+     * Test writing and reading a tree file
+     *
+     * @throws IOException
+     *             Not expected
+     */
+    @Test
+    public void testFile() throws IOException {
+        String hash = MetadataTreeFile.hash("metadata");
+        byte[] data = MetadataTreeFile.serialize(createTree());
+        assertNull(MetadataTreeFile.read(fTreeFile, hash));
+
+        MetadataTreeFile.write(fTreeFile, hash, data);
+        assertTrue(fTreeFile.isFile());
+        byte[] read = MetadataTreeFile.read(fTreeFile, hash);
+        assertNotNull(read);
+        assertArrayEquals(data, read);
+
+        /* Tree of another metadata text */
+        assertNull(MetadataTreeFile.read(fTreeFile, MetadataTreeFile.hash("other metadata")));
+
+        /* Replace the file */
+        byte[] other = MetadataTreeFile.serialize(new CommonTree());
+        MetadataTreeFile.write(fTreeFile, hash, other);
+        read = MetadataTreeFile.read(fTreeFile, hash);
+        assertNotNull(read);
+        assertArrayEquals(other, read);
+
+        /* Truncated file */
+        try (RandomAccessFile raf = new RandomAccessFile(fTreeFile, "rw")) {
+            raf.setLength(raf.length() - 1);
+        }
+        assertNull(MetadataTreeFile.read(fTreeFile, hash));
+    }
+}
@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.ctf.core.tests.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.AbstractMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.tracecompass.ctf.core.trace.ICTFPacketDescriptor;
+import org.eclipse.tracecompass.internal.ctf.core.trace.PacketIndexFile;
+import org.eclipse.tracecompass.internal.ctf.core.trace.StreamInputPacketIndex;
+import org.eclipse.tracecompass.internal.ctf.core.trace.StreamInputPacketIndexEntry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Test the packet index files, which save the packet index of a stream file
+ */
+public class PacketIndexFileTest {
+
+    private static final long PACKET_SIZE = 4096 * Byte.SIZE;
+
+    private File fIndexFile;
+    private File fStreamFile;
+
+    /**
+     * Create the files
+     *
+     * @throws IOException
+     *             If the files cannot be created
+     */
+    @Before
+    public void setUp() throws IOException {
+        fIndexFile = File.createTempFile("PacketIndexFileTest", ".idx");
+        fIndexFile.delete();
+        fStreamFile = File.createTempFile("PacketIndexFileTest", "_0");
+    }
+
+    /**
+     * Delete the files
+     */
+    @After
+    public void tearDown() {
+        fIndexFile.delete();
+        fStreamFile.delete();
+    }
+
+    private static ICTFPacketDescriptor createPacket(int i) {
+        Map<String, Object> attributes = ImmutableMap.of(
+                "timestamp_begin", (long) i * 100,
+                "cpu_id", 1L,
+                "ratio", 0.5,
+                "host", "localhost",
+                "mode", new AbstractMap.SimpleImmutableEntry<>("USER", 2L));
+        return new StreamInputPacketIndexEntry(i * PACKET_SIZE, PACKET_SIZE, PACKET_SIZE - i, 256,
+                i * 100, i * 100 + 99, i % 3, (i % 2 == 0) ? "cpu" : null, 1, attributes);
+    }
+
+    private static void assertSamePacket(ICTFPacketDescriptor expected, ICTFPacketDescriptor actual) {
+        assertEquals(expected.getOffsetBits(), actual.getOffsetBits());
+        assertEquals(expected.getOffsetBytes(), actual.getOffsetBytes());
+        assertEquals(expected.getPacketSizeBits(), actual.getPacketSizeBits());
+        assertEquals(expected.getContentSizeBits(), actual.getContentSizeBits());
+        assertEquals(expected.getPayloadStartBits(), actual.getPayloadStartBits());
+        assertEquals(expected.getTimestampBegin(), actual.getTimestampBegin());
+        assertEquals(expected.getTimestampEnd(), actual.getTimestampEnd());
+        assertEquals(expected.getLostEvents(), actual.getLostEvents());
+        assertEquals(expected.getTarget(), actual.getTarget());
+        assertEquals(expected.getTargetId(), actual.getTargetId());
+        assertEquals(expected.getAttributes(), actual.getAttributes());
+    }
+
+    private void assertSameIndex(StreamInputPacketIndex expected, long lostSoFar) {
+        PacketIndexFile file = PacketIndexFile.read(fIndexFile);
+        assertNotNull(file);
+        assertEquals(fStreamFile.length(), file.getStreamSize());
+        assertEquals(fStreamFile.lastModified(), file.getStreamModified());
+        assertEquals(lostSoFar, file.getLostSoFar());
+        List<ICTFPacketDescriptor> entries = file.getEntries();
+        assertEquals(expected.size(), entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertSamePacket(expected.getElement(i), entries.get(i));
+        }
+    }
+
+    /**
+     * Test writing an index and reading it back
+     *
+     * @throws IOException
+     *             If the file cannot be written
+     */
+    @Test
+    public void testWriteRead() throws IOException {
+        StreamInputPacketIndex index = new StreamInputPacketIndex();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(index.append(createPacket(i)));
+        }
+        assertTrue(PacketIndexFile.write(fIndexFile, fStreamFile, index, 0, 42));
+        assertSameIndex(index, 42);
+    }
+
+    /**
+     * Test appending the new packets of a growing stream
+     *
+     * @throws IOException
+     *             If the file cannot be written
+     */
+    @Test
+    public void testAppend() throws IOException {
+        StreamInputPacketIndex index = new StreamInputPacketIndex();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(index.append(createPacket(i)));
+        }
+        assertTrue(PacketIndexFile.write(fIndexFile, fStreamFile, index, 0, 4));
+        long length = fIndexFile.length();
+
+        for (int i = 5; i < 12; i++) {
+            assertTrue(index.append(createPacket(i)));
+        }
+        try (RandomAccessFile stream = new RandomAccessFile(fStreamFile, "rw")) {
+            stream.setLength(12 * PACKET_SIZE / Byte.SIZE);
+        }
+        assertTrue(PacketIndexFile.write(fIndexFile, fStreamFile, index, 5, 11));
+        assertTrue(fIndexFile.length() > length);
+        assertSameIndex(index, 11);
+
+        /* A wrong number of written entries rewrites the whole file */
+        assertTrue(PacketIndexFile.write(fIndexFile, fStreamFile, index, 3, 11));
+        assertSameIndex(index, 11);
+    }
+
+    /**
+     * Test that invalid files are not read
+     *
+     * @throws IOException
+     *             If the file cannot be written
+     */
+    @Test
+    public void testInvalidFile() throws IOException {
+        assertNull(PacketIndexFile.read(fIndexFile));
+
+        StreamInputPacketIndex index = new StreamInputPacketIndex();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(index.append(createPacket(i)));
+        }
+        assertTrue(PacketIndexFile.write(fIndexFile, fStreamFile, index, 0, 0));
+        try (RandomAccessFile file = new RandomAccessFile(fIndexFile, "rw")) {
+            /* Truncated file */
+            file.setLength(file.length() - 1);
+            assertNull(PacketIndexFile.read(fIndexFile));
+            /* Wrong magic number */
+            file.seek(0);
+            file.writeInt(0);
+            assertNull(PacketIndexFile.read(fIndexFile));
+        }
+    }
+
+    /**
+     * Test that attributes of an unsupported type are refused
+     *
+     * @throws IOException
+     *             If the file cannot be written
+     */
+    @Test
+    public void testUnsupportedAttribute() throws IOException {
+        StreamInputPacketIndex index = new StreamInputPacketIndex();
+        Map<String, Object> attributes = ImmutableMap.of("list", new Object());
+        assertTrue(index.append(new StreamInputPacketIndexEntry(0, PACKET_SIZE, PACKET_SIZE, 256, 0, 10, 0, null, 0, attributes)));
+        assertFalse(PacketIndexFile.write(fIndexFile, fStreamFile, index, 0, 0));
+        assertNull(PacketIndexFile.read(fIndexFile));
+    }
+}
@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.ctf.core.tests.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.tracecompass.ctf.core.CTFException;
+import org.eclipse.tracecompass.ctf.core.event.IEventDefinition;
+import org.eclipse.tracecompass.internal.ctf.core.event.EventDeclaration;
+import org.eclipse.tracecompass.internal.ctf.core.event.EventDefinition;
+import org.eclipse.tracecompass.internal.ctf.core.trace.StreamInputReadAhead;
+import org.eclipse.tracecompass.internal.ctf.core.trace.StreamInputReadAhead.IEventDecoder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the buffer of events decoded ahead by worker threads
+ */
+public class StreamInputReadAheadTest {
+
+    private static final int CAPACITY = 100;
+    private static final EventDeclaration DECLARATION = new EventDeclaration();
+
+    private ExecutorService fExecutor;
+
+    /**
+     * Create the worker threads
+     */
+    @Before
+    public void setUp() {
+        fExecutor = Executors.newFixedThreadPool(2);
+    }
+
+    /**
+     * Stop the worker threads
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting for the threads
+     */
+    @After
+    public void tearDown() throws InterruptedException {
+        fExecutor.shutdown();
+        assertTrue(fExecutor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Decoder of a stream of events with increasing timestamps, which can grow
+     */
+    private static class StreamDecoder implements IEventDecoder {
+        private final AtomicLong fNext = new AtomicLong();
+        private volatile long fEnd;
+        private volatile long fMaxAhead = 0;
+        private volatile long fConsumed = 0;
+
+        public StreamDecoder(long end) {
+            fEnd = end;
+        }
+
+        @Override
+        public IEventDefinition decode() throws CTFException {
+            long next = fNext.get();
+            if (next >= fEnd) {
+                return null;
+            }
+            fMaxAhead = Math.max(fMaxAhead, next - fConsumed);
+            fNext.incrementAndGet();
+            return new EventDefinition(DECLARATION, 0, next, null, null, null, null, null, null);
+        }
+    }
+
+    /**
+     * Test that the events are returned in order, with a bounded number of
+     * events decoded ahead
+     *
+     * @throws CTFException
+     *             Fails the test
+     */
+    @Test
+    public void testOrder() throws CTFException {
+        StreamDecoder decoder = new StreamDecoder(10000);
+        StreamInputReadAhead readAhead = new StreamInputReadAhead(decoder, CAPACITY, fExecutor);
+        for (long i = 0; i < 10000; i++) {
+            IEventDefinition event = readAhead.next();
+            assertNotNull(event);
+            assertEquals(i, event.getTimestamp());
+            decoder.fConsumed = i + 1;
+        }
+        assertNull(readAhead.next());
+        assertTrue(decoder.fMaxAhead <= CAPACITY + 1);
+    }
+
+    /**
+     * Test that the events of a growing stream are read after the end was
+     * reached
+     *
+     * @throws CTFException
+     *             Fails the test
+     */
+    @Test
+    public void testGrowing() throws CTFException {
+        StreamDecoder decoder = new StreamDecoder(10);
+        StreamInputReadAhead readAhead = new StreamInputReadAhead(decoder, CAPACITY, fExecutor);
+        for (long i = 0; i < 10; i++) {
+            IEventDefinition event = readAhead.next();
+            assertNotNull(event);
+            assertEquals(i, event.getTimestamp());
+        }
+        assertNull(readAhead.next());
+        decoder.fEnd = 15;
+        for (long i = 10; i < 15; i++) {
+            IEventDefinition event = readAhead.next();
+            assertNotNull(event);
+            assertEquals(i, event.getTimestamp());
+        }
+        assertNull(readAhead.next());
+    }
+
+    /**
+     * Test that stopping discards the events decoded ahead, and that the
+     * decoding starts again from the position of the decoder
+     *
+     * @throws CTFException
+     *             Fails the test
+     */
+    @Test
+    public void testStop() throws CTFException {
+        StreamDecoder decoder = new StreamDecoder(10000);
+        StreamInputReadAhead readAhead = new StreamInputReadAhead(decoder, CAPACITY, fExecutor);
+        IEventDefinition event = readAhead.next();
+        assertNotNull(event);
+        assertEquals(0, event.getTimestamp());
+        readAhead.stop();
+        /* Move the decoder, as a seek would */
+        decoder.fNext.set(5000);
+        event = readAhead.next();
+        assertNotNull(event);
+        assertEquals(5000, event.getTimestamp());
+    }
+
+    /**
+     * Test that a decoding error is given to the reader after the events
+     * decoded before it
+     *
+     * @throws CTFException
+     *             Fails the test
+     */
+    @Test
+    public void testError() throws CTFException {
+        StreamDecoder valid = new StreamDecoder(3);
+        IEventDecoder decoder = () -> {
+            IEventDefinition event = valid.decode();
+            if (event == null) {
+                throw new CTFException("invalid packet");
+            }
+            return event;
+        };
+        StreamInputReadAhead readAhead = new StreamInputReadAhead(decoder, CAPACITY, fExecutor);
+        for (long i = 0; i < 3; i++) {
+            IEventDefinition event = readAhead.next();
+            assertNotNull(event);
+            assertEquals(i, event.getTimestamp());
+        }
+        try {
+            readAhead.next();
+            fail();
+        } catch (CTFException e) {
+            assertEquals("invalid packet", e.getMessage());
+        }
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013, 2014 Ericsson
+ * Copyright (c) 2013, 2018 Ericsson
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,6 +15,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.nio.ByteBuffer;
@@ -26,11 +27,14 @@ import org.eclipse.tracecompass.ctf.core.event.scope.IDefinitionScope;
 import org.eclipse.tracecompass.ctf.core.event.types.AbstractArrayDefinition;
 import org.eclipse.tracecompass.ctf.core.event.types.CompoundDeclaration;
 import org.eclipse.tracecompass.ctf.core.event.types.Encoding;
+import org.eclipse.tracecompass.ctf.core.event.types.Definition;
 import org.eclipse.tracecompass.ctf.core.event.types.IDeclaration;
+import org.eclipse.tracecompass.ctf.core.event.types.IntegerDefinition;
 import org.eclipse.tracecompass.ctf.core.event.types.IntegerDeclaration;
 import org.eclipse.tracecompass.ctf.core.event.types.StringDeclaration;
 import org.eclipse.tracecompass.ctf.core.tests.io.Util;
 import org.eclipse.tracecompass.internal.ctf.core.event.types.ArrayDeclaration;
+import org.eclipse.tracecompass.internal.ctf.core.event.types.IntegerArrayDefinition;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -88,6 +92,35 @@ public class ArrayDeclaration2Test {
         assertNotNull(result);
     }
 
+    /**
+     * Test that an array of integers is read in bulk, and that its element
+     * definitions have the values read
+     *
+     * @throws CTFException
+     *             error in the bitbuffer
+     */
+    @Test
+    public void testCreateDefinitionIntegers() throws CTFException {
+        IntegerDeclaration id = IntegerDeclaration.createDeclaration(16, true, 10,
+                ByteOrder.LITTLE_ENDIAN, Encoding.NONE, "", 8);
+        ArrayDeclaration ad = new ArrayDeclaration(3, id);
+        byte[] array = { 1, 0, 2, 0, (byte) 0xff, (byte) 0xff };
+        BitBuffer bb = new BitBuffer(Util.testMemory(ByteBuffer.wrap(array)));
+        AbstractArrayDefinition result = ad.createDefinition(null, "ints", bb);
+
+        assertTrue(result instanceof IntegerArrayDefinition);
+        assertEquals(3, result.getLength());
+        assertEquals(48, bb.position());
+        long[] expected = { 1, 2, -1 };
+        for (int i = 0; i < expected.length; i++) {
+            Definition def = result.getDefinitions().get(i);
+            assertEquals(expected[i], ((IntegerDefinition) def).getValue());
+            assertEquals(expected[i], ((IntegerArrayDefinition) result).getValue(i));
+        }
+        assertSame(result.getDefinitions(), result.getDefinitions());
+        assertEquals("[1, 2, -1]", result.toString());
+    }
+
     /**
      * Run the Declaration getElementType() method test.
      */
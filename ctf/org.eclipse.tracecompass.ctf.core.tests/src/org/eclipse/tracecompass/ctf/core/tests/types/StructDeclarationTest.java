@@ -12,16 +12,20 @@
 package org.eclipse.tracecompass.ctf.core.tests.types;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import org.eclipse.tracecompass.ctf.core.CTFException;
 import org.eclipse.tracecompass.ctf.core.event.io.BitBuffer;
+import org.eclipse.tracecompass.ctf.core.event.types.Definition;
 import org.eclipse.tracecompass.ctf.core.event.types.Encoding;
+import org.eclipse.tracecompass.ctf.core.event.types.EnumDeclaration;
 import org.eclipse.tracecompass.ctf.core.event.types.IDeclaration;
 import org.eclipse.tracecompass.ctf.core.event.types.IntegerDeclaration;
 import org.eclipse.tracecompass.ctf.core.event.types.StringDeclaration;
@@ -87,6 +91,96 @@ public class StructDeclarationTest {
         assertNotNull(result);
     }
 
+    /**
+     * Test that a structure of integers and enumerations, read with its
+     * precomputed layout, has the same values as its fields read one by one
+     *
+     * @throws CTFException
+     *             out of bounds
+     */
+    @Test
+    public void testCreateIntegerFieldsDefinition() throws CTFException {
+        EnumDeclaration enumDeclaration = new EnumDeclaration(IntegerDeclaration.UINT_16L_DECL);
+        enumDeclaration.add(0, 0x1000, "low");
+        enumDeclaration.add(0x1001, 0xFFFF, "high");
+        IDeclaration[] fields = new IDeclaration[] {
+                IntegerDeclaration.UINT_8_DECL,
+                IntegerDeclaration.INT_32L_DECL,
+                IntegerDeclaration.UINT_5B_DECL,
+                IntegerDeclaration.UINT_27L_DECL,
+                IntegerDeclaration.createDeclaration(64, true, 10, ByteOrder.BIG_ENDIAN, Encoding.NONE, "", 64),
+                enumDeclaration,
+                IntegerDeclaration.createDeclaration(3, false, 16, ByteOrder.LITTLE_ENDIAN, Encoding.NONE, "", 1)
+        };
+        StructDeclaration declaration = new StructDeclaration(8);
+        for (int i = 0; i < fields.length; i++) {
+            declaration.addField("f" + i, fields[i]);
+        }
+
+        ByteBuffer data = ByteBuffer.allocate(64);
+        for (int i = 0; i < data.capacity(); i++) {
+            data.put(i, (byte) (i * 37 + 11));
+        }
+        BitBuffer input = new BitBuffer(data);
+        input.position(3);
+        StructDefinition result = declaration.createDefinition(null, "", input);
+
+        /* Read the same fields one by one */
+        BitBuffer expectedInput = new BitBuffer(data);
+        expectedInput.position(64);
+        for (int i = 0; i < fields.length; i++) {
+            Definition expected = fields[i].createDefinition(null, "f" + i, expectedInput);
+            Definition actual = result.getDefinition("f" + i);
+            assertNotNull(actual);
+            assertEquals(fields[i], actual.getDeclaration());
+            assertEquals(expected.getClass(), actual.getClass());
+            assertEquals(expected.toString(), actual.toString());
+            assertEquals(actual, result.lookupDefinition("f" + i));
+        }
+        assertEquals(expectedInput.position(), input.position());
+        assertEquals(ByteOrder.BIG_ENDIAN, input.getByteOrder());
+    }
+
+    /**
+     * Test skipping a structure of integers, which must leave the buffer where
+     * reading it would
+     *
+     * @throws CTFException
+     *             out of bounds
+     */
+    @Test
+    public void testSkip() throws CTFException {
+        StructDeclaration declaration = new StructDeclaration(8);
+        declaration.addField("f0", IntegerDeclaration.UINT_8_DECL);
+        declaration.addField("f1", IntegerDeclaration.INT_32L_DECL);
+        declaration.addField("f2", IntegerDeclaration.UINT_5B_DECL);
+        assertTrue(declaration.isFixedSize());
+
+        ByteBuffer data = ByteBuffer.allocate(32);
+        BitBuffer input = new BitBuffer(data);
+        input.position(3);
+        declaration.skip(input);
+        BitBuffer expectedInput = new BitBuffer(data);
+        expectedInput.position(3);
+        declaration.createDefinition(null, "", expectedInput);
+        assertEquals(expectedInput.position(), input.position());
+    }
+
+    /**
+     * Test that a structure with a string cannot be skipped
+     *
+     * @throws CTFException
+     *             expected
+     */
+    @Test(expected = CTFException.class)
+    public void testSkipString() throws CTFException {
+        StructDeclaration declaration = new StructDeclaration(8);
+        declaration.addField("f0", IntegerDeclaration.UINT_8_DECL);
+        declaration.addField("f1", StringDeclaration.getStringDeclaration(Encoding.UTF8));
+        assertFalse(declaration.isFixedSize());
+        declaration.skip(new BitBuffer(ByteBuffer.allocate(32)));
+    }
+
     /**
      * Run the Declaration getField(String) method test.
      */
@@ -1,5 +1,5 @@
 /*******************************************************************************.
- * Copyright (c) 2011, 2014 Ericsson, Ecole Polytechnique de Montreal and others
+ * Copyright (c) 2011, 2018 Ericsson, Ecole Polytechnique de Montreal and others
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -149,6 +149,17 @@ public final class BitBuffer {
         if (length > BIT_LONG) {
             throw new CTFException("Cannot read a long longer than 64 bits. Rquested: " + length); //$NON-NLS-1$
         }
+        if (length == BIT_LONG && (fPosition & (BIT_CHAR - 1)) == 0) {
+            /* Byte-aligned quad word, read it at once */
+            if (!canRead(length)) {
+                throw new CTFException("Cannot read the long, " + //$NON-NLS-1$
+                        "the buffer does not have enough remaining space. " + //$NON-NLS-1$
+                        "Requested:" + length + " Available:" + (fBitCapacity - fPosition)); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            long retVal = fBuffer.getLong((int) (fPosition / BIT_CHAR));
+            fPosition += length;
+            return retVal;
+        }
         if (length > BIT_INT) {
             final int highShift = length - BIT_INT;
             long a = getInt();
@@ -191,6 +202,142 @@ public final class BitBuffer {
         fPosition += dst.length * BIT_CHAR;
     }
 
+    /**
+     * Relative bulk <i>get</i> method for reading consecutive integers of
+     * <i>length</i> bits.
+     *
+     * Fills the destination array with integers read like with
+     * {@link #get(int, boolean)}, starting at the current position, without
+     * padding between them. When the position is byte-aligned and the integers
+     * are 8, 16, 32 or 64 bits wide, they are read directly from the byte
+     * buffer. The current position is increased of <i>length</i> bits for each
+     * integer.
+     *
+     * @param dst
+     *            The array to fill
+     * @param length
+     *            The length in bits of each integer
+     * @param signed
+     *            The sign extended flag
+     * @throws CTFException
+     *             An error occurred reading the data. If more than 64 bits at a
+     *             time are read, or the buffer is read beyond its end, this
+     *             exception will be raised.
+     * @since 2.3
+     */
+    public void get(long @NonNull [] dst, int length, boolean signed) throws CTFException {
+        if (length > BIT_LONG) {
+            throw new CTFException("Cannot read a long longer than 64 bits. Rquested: " + length); //$NON-NLS-1$
+        }
+        checkBulkRead(dst.length, length);
+        if ((fPosition & (BIT_CHAR - 1)) != 0) {
+            for (int i = 0; i < dst.length; i++) {
+                dst[i] = get(length, signed);
+            }
+            return;
+        }
+        int index = (int) (fPosition / BIT_CHAR);
+        switch (length) {
+        case BIT_CHAR:
+            for (int i = 0; i < dst.length; i++) {
+                byte val = fBuffer.get(index + i);
+                dst[i] = signed ? val : (val & BYTE_MASK);
+            }
+            break;
+        case BIT_SHORT:
+            for (int i = 0; i < dst.length; i++) {
+                short val = fBuffer.getShort(index + i * Short.BYTES);
+                dst[i] = signed ? val : (val & SHORT_MASK);
+            }
+            break;
+        case BIT_INT:
+            for (int i = 0; i < dst.length; i++) {
+                int val = fBuffer.getInt(index + i * Integer.BYTES);
+                dst[i] = signed ? val : (val & INT_MASK);
+            }
+            break;
+        case BIT_LONG:
+            for (int i = 0; i < dst.length; i++) {
+                dst[i] = fBuffer.getLong(index + i * Long.BYTES);
+            }
+            break;
+        default:
+            for (int i = 0; i < dst.length; i++) {
+                dst[i] = get(length, signed);
+            }
+            return;
+        }
+        fPosition += (long) dst.length * length;
+    }
+
+    /**
+     * Relative bulk <i>get</i> method for reading consecutive integers of up to
+     * 32 bits.
+     *
+     * Same as {@link #get(long[], int, boolean)}, for integers which fit in an
+     * int. Unsigned 32-bit integers are stored with the same bits, so they
+     * appear negative above {@link Integer#MAX_VALUE}.
+     *
+     * @param dst
+     *            The array to fill
+     * @param length
+     *            The length in bits of each integer
+     * @param signed
+     *            The sign extended flag
+     * @throws CTFException
+     *             An error occurred reading the data. If more than 32 bits at a
+     *             time are read, or the buffer is read beyond its end, this
+     *             exception will be raised.
+     * @since 2.3
+     */
+    public void get(int @NonNull [] dst, int length, boolean signed) throws CTFException {
+        if (length > BIT_INT) {
+            throw new CTFException("Cannot read an int longer than 32 bits. Requested: " + length); //$NON-NLS-1$
+        }
+        checkBulkRead(dst.length, length);
+        if ((fPosition & (BIT_CHAR - 1)) != 0) {
+            for (int i = 0; i < dst.length; i++) {
+                dst[i] = getInt(length, signed);
+            }
+            return;
+        }
+        int index = (int) (fPosition / BIT_CHAR);
+        switch (length) {
+        case BIT_CHAR:
+            for (int i = 0; i < dst.length; i++) {
+                byte val = fBuffer.get(index + i);
+                dst[i] = signed ? val : (val & BYTE_MASK);
+            }
+            break;
+        case BIT_SHORT:
+            for (int i = 0; i < dst.length; i++) {
+                short val = fBuffer.getShort(index + i * Short.BYTES);
+                dst[i] = signed ? val : (val & SHORT_MASK);
+            }
+            break;
+        case BIT_INT:
+            for (int i = 0; i < dst.length; i++) {
+                dst[i] = fBuffer.getInt(index + i * Integer.BYTES);
+            }
+            break;
+        default:
+            for (int i = 0; i < dst.length; i++) {
+                dst[i] = getInt(length, signed);
+            }
+            return;
+        }
+        fPosition += (long) dst.length * length;
+    }
+
+    private void checkBulkRead(int count, int length) throws CTFException {
+        long bits = (long) count * length;
+        if (fPosition + bits > fBitCapacity) {
+            throw new CTFException("Cannot read the integers, " + //$NON-NLS-1$
+                    "the buffer does not have enough remaining space. " + //$NON-NLS-1$
+                    "Requested:" + bits + " Available:" + (fBitCapacity - fPosition)); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+
     /**
      * Relative <i>get</i> method for reading integer of <i>length</i> bits.
      *
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.ctf.core.event.types;
+
+import java.nio.ByteOrder;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.ctf.core.CTFException;
+import org.eclipse.tracecompass.ctf.core.event.io.BitBuffer;
+import org.eclipse.tracecompass.ctf.core.event.scope.IDefinitionScope;
+
+/**
+ * Precomputed layout of a structure whose fields are all integers or
+ * enumerations, like the payload of most kernel events.
+ *
+ * Since the structure is aligned on the largest alignment of its fields, the
+ * offset of each field from the start of the structure does not depend on
+ * where the structure is in the packet. The values are then read directly at
+ * these offsets into an array, and the field definitions are only created if
+ * they are needed, see {@link StructDefinition}.
+ *
+ * Structures with other types of fields, like strings, sequences or variants,
+ * whose size or layout depends on the data, are read by their declarations.
+ */
+final class FlatStructLayout {
+
+    /** Declarations of the fields, integers or enumerations */
+    private final IDeclaration[] fDeclarations;
+    /** Offset of each field, in bits from the start of the structure */
+    private final long[] fOffsets;
+    private final int[] fLengths;
+    private final boolean[] fSigned;
+    private final ByteOrder[] fByteOrders;
+    /** Size of the structure in bits, including the padding between fields */
+    private final long fSize;
+
+    private FlatStructLayout(IDeclaration[] declarations, long[] offsets, int[] lengths, boolean[] signed, ByteOrder[] byteOrders, long size) {
+        fDeclarations = declarations;
+        fOffsets = offsets;
+        fLengths = lengths;
+        fSigned = signed;
+        fByteOrders = byteOrders;
+        fSize = size;
+    }
+
+    /**
+     * Compute the layout of a structure, if its fields allow it
+     *
+     * @param alignment
+     *            The alignment of the structure
+     * @param fields
+     *            The declarations of the fields of the structure
+     * @return The layout, or null if the fields are not all integers or
+     *         enumerations, or if their alignments do not allow a fixed layout
+     */
+    public static @Nullable FlatStructLayout compile(long alignment, IDeclaration[] fields) {
+        if (fields.length == 0 || !isPowerOfTwo(alignment)) {
+            return null;
+        }
+        int nbFields = fields.length;
+        long[] offsets = new long[nbFields];
+        int[] lengths = new int[nbFields];
+        boolean[] signed = new boolean[nbFields];
+        ByteOrder[] byteOrders = new ByteOrder[nbFields];
+        long offset = 0;
+        for (int i = 0; i < nbFields; i++) {
+            IDeclaration field = fields[i];
+            IntegerDeclaration integer;
+            if (field instanceof IntegerDeclaration) {
+                integer = (IntegerDeclaration) field;
+            } else if (field instanceof EnumDeclaration) {
+                integer = ((EnumDeclaration) field).getContainerType();
+            } else {
+                return null;
+            }
+            long fieldAlignment = Math.max(1, integer.getAlignment());
+            if (!isPowerOfTwo(fieldAlignment) || fieldAlignment > alignment || integer.getLength() > Long.SIZE) {
+                return null;
+            }
+            long mask = fieldAlignment - 1;
+            offset = (offset + mask) & ~mask;
+            offsets[i] = offset;
+            lengths[i] = integer.getLength();
+            signed[i] = integer.isSigned();
+            byteOrders[i] = integer.getByteOrder();
+            offset += integer.getLength();
+        }
+        return new FlatStructLayout(fields, offsets, lengths, signed, byteOrders, offset);
+    }
+
+    private static boolean isPowerOfTwo(long value) {
+        return value > 0 && Long.bitCount(value) == 1;
+    }
+
+    /**
+     * Get the size of the structure
+     *
+     * @return The size in bits, including the padding between fields
+     */
+    public long getSize() {
+        return fSize;
+    }
+
+    /**
+     * Read the values of the fields. The buffer must be at the start of the
+     * structure, already aligned, and is left at its end.
+     *
+     * @param input
+     *            The buffer to read from
+     * @return The values of the fields, in the order of the declaration
+     * @throws CTFException
+     *             If the buffer is too short
+     */
+    public long[] read(@NonNull BitBuffer input) throws CTFException {
+        long start = input.position();
+        ByteOrder previousByteOrder = input.getByteOrder();
+        long[] values = new long[fOffsets.length];
+        try {
+            for (int i = 0; i < values.length; i++) {
+                input.position(start + fOffsets[i]);
+                input.setByteOrder(fByteOrders[i]);
+                values[i] = input.get(fLengths[i], fSigned[i]);
+            }
+            input.position(start + fSize);
+        } finally {
+            input.setByteOrder(previousByteOrder);
+        }
+        return values;
+    }
+
+    /**
+     * Create the definition of a field from its value
+     *
+     * @param index
+     *            The index of the field
+     * @param definitionScope
+     *            The definition of the structure
+     * @param fieldName
+     *            The name of the field
+     * @param value
+     *            The value read for this field
+     * @return The definition of the field, as the declaration would have read
+     *         it
+     */
+    public Definition createDefinition(int index, IDefinitionScope definitionScope, @NonNull String fieldName, long value) {
+        IDeclaration declaration = fDeclarations[index];
+        if (declaration instanceof EnumDeclaration) {
+            EnumDeclaration enumDeclaration = (EnumDeclaration) declaration;
+            IntegerDefinition integer = new IntegerDefinition(enumDeclaration.getContainerType(), definitionScope, fieldName, value);
+            return new EnumDefinition(enumDeclaration, definitionScope, fieldName, integer);
+        }
+        return new IntegerDefinition((IntegerDeclaration) declaration, definitionScope, fieldName, value);
+    }
+}
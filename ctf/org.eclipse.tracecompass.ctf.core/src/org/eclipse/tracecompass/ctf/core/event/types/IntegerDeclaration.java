@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2014 Ericsson, Ecole Polytechnique de Montreal and others
+ * Copyright (c) 2011, 2018 Ericsson, Ecole Polytechnique de Montreal and others
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -359,6 +359,43 @@ public final class IntegerDeclaration extends Declaration implements ISimpleData
         return new IntegerDefinition(this, definitionScope, fieldName, value);
     }
 
+    /**
+     * Read consecutive integers of this declaration, like the elements of an
+     * array or a sequence, without creating a definition for each one. When
+     * the length of the integers is a multiple of their alignment, there is
+     * no padding between them, so they are read in bulk.
+     *
+     * @param input
+     *            the buffer to read from
+     * @param values
+     *            the array to fill with the values of the integers
+     * @throws CTFException
+     *             if the integers cannot be read
+     * @since 2.3
+     */
+    public void readValues(BitBuffer input, long[] values) throws CTFException {
+        if (fLength > SIZE_64) {
+            throw new CTFException("Cannot read an integer with over 64 bits. Length given: " + fLength); //$NON-NLS-1$
+        }
+        if (values.length == 0) {
+            return;
+        }
+        if (fLength % fAlignment != 0) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = read(input);
+            }
+            return;
+        }
+        alignRead(input);
+        ByteOrder previousByteOrder = input.getByteOrder();
+        input.setByteOrder(fByteOrder);
+        try {
+            input.get(values, fLength, fSigned);
+        } finally {
+            input.setByteOrder(previousByteOrder);
+        }
+    }
+
     @Override
     public String toString() {
         return "[declaration] integer[length:" + fLength + (fSigned ? " " : " un") + "signed" + " base:" + fBase + " byteOrder:" + fByteOrder + " encoding:" + fEncoding + " alignment:" + fAlignment + "  clock:" + fClock + "]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$
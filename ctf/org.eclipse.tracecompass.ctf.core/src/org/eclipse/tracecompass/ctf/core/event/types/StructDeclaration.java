@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2014 Ericsson, Ecole Polytechnique de Montreal and others
+ * Copyright (c) 2011, 2018 Ericsson, Ecole Polytechnique de Montreal and others
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -57,6 +57,14 @@ public class StructDeclaration extends Declaration {
     /** maximum bit alignment */
     private long fMaxAlign;
 
+    /**
+     * Layout of the fields if they are all integers, computed on the first
+     * read. A thread reading a null layout while another computes it simply
+     * reads the fields one by one.
+     */
+    private @Nullable FlatStructLayout fLayout = null;
+    private boolean fLayoutCompiled = false;
+
     // ------------------------------------------------------------------------
     // Constructors
     // ------------------------------------------------------------------------
@@ -209,9 +217,56 @@ public class StructDeclaration extends Declaration {
         fFieldNames = names;
         fFields = fields;
         fMaxAlign = Math.max(fMaxAlign, declaration.getAlignment());
+        fLayout = null;
+        fLayoutCompiled = false;
+    }
+
+    private @Nullable FlatStructLayout getLayout() {
+        if (!fLayoutCompiled) {
+            fLayout = FlatStructLayout.compile(fMaxAlign, fFields);
+            fLayoutCompiled = true;
+        }
+        return fLayout;
+    }
+
+    /**
+     * Check if this structure always takes the same size in a packet, so that
+     * it can be skipped without reading its fields. This is the case when all
+     * its fields are integers or enumerations.
+     *
+     * @return true if {@link #skip(BitBuffer)} can be used on this structure
+     * @since 2.3
+     */
+    public boolean isFixedSize() {
+        return getLayout() != null;
+    }
+
+    /**
+     * Move a buffer after this structure without reading its fields
+     *
+     * @param input
+     *            the input {@link BitBuffer}, at the start of the structure
+     * @throws CTFException
+     *             if the structure is not of fixed size, see
+     *             {@link #isFixedSize()}, or if the buffer is too short
+     * @since 2.3
+     */
+    public void skip(@NonNull BitBuffer input) throws CTFException {
+        FlatStructLayout layout = getLayout();
+        if (layout == null) {
+            throw new CTFException("Cannot skip a structure that is not of fixed size"); //$NON-NLS-1$
+        }
+        alignRead(input);
+        input.position(input.position() + layout.getSize());
     }
 
     private void fillStruct(@NonNull BitBuffer input, final IDefinition[] myFields, StructDefinition structDefinition) throws CTFException {
+        FlatStructLayout layout = getLayout();
+        if (layout != null) {
+            /* Only read the values, the definitions are created when needed */
+            structDefinition.setFlatValues(layout, layout.read(input));
+            return;
+        }
         final @NonNull String[] fieldNames = fFieldNames;
         final @NonNull IDeclaration[] fields = fFields;
         for (int i = 0; i < fields.length; i++) {
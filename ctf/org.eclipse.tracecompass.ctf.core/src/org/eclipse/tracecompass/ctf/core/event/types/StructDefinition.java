@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2014 Ericsson, Ecole Polytechnique de Montreal and others
+ * Copyright (c) 2011, 2018 Ericsson, Ecole Polytechnique de Montreal and others
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -18,6 +18,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.ctf.core.event.scope.IDefinitionScope;
 import org.eclipse.tracecompass.ctf.core.event.scope.ILexicalScope;
 import org.eclipse.tracecompass.ctf.core.event.types.StructDeclaration.InternalDef;
@@ -50,6 +51,13 @@ public final class StructDefinition extends ScopedDefinition implements IComposi
     private final Definition[] fDefinitions;
     private Map<String, Definition> fDefinitionsMap = null;
 
+    /*
+     * Values of the fields of a structure with only integer fields, whose
+     * definitions are created on their first access
+     */
+    private @Nullable FlatStructLayout fLayout = null;
+    private long @Nullable [] fValues = null;
+
     // ------------------------------------------------------------------------
     // Constructors
     // ------------------------------------------------------------------------
@@ -121,8 +129,9 @@ public final class StructDefinition extends ScopedDefinition implements IComposi
             /* Build the definitions map */
             Builder<String, Definition> mapBuilder = new ImmutableMap.Builder<>();
             for (int i = 0; i < fFieldNames.size(); i++) {
-                if (fDefinitions[i] != null) {
-                    mapBuilder.put(fFieldNames.get(i), fDefinitions[i]);
+                Definition definition = getField(i);
+                if (definition != null) {
+                    mapBuilder.put(fFieldNames.get(i), definition);
                 }
             }
             fDefinitionsMap = mapBuilder.build();
@@ -130,6 +139,26 @@ public final class StructDefinition extends ScopedDefinition implements IComposi
         return fDefinitionsMap.get(fieldName);
     }
 
+    /**
+     * Set the values of the fields, read with the layout of the declaration.
+     * Must be called before the definition is used.
+     */
+    void setFlatValues(FlatStructLayout layout, long[] values) {
+        fLayout = layout;
+        fValues = values;
+    }
+
+    private @Nullable Definition getField(int index) {
+        Definition definition = fDefinitions[index];
+        FlatStructLayout layout = fLayout;
+        long[] values = fValues;
+        if (definition == null && layout != null && values != null) {
+            definition = layout.createDefinition(index, this, fFieldNames.get(index), values[index]);
+            fDefinitions[index] = definition;
+        }
+        return definition;
+    }
+
     @Override
     public @NonNull List<@NonNull String> getFieldNames() {
         return fFieldNames;
@@ -186,19 +215,22 @@ public final class StructDefinition extends ScopedDefinition implements IComposi
          */
         int val = fFieldNames.indexOf(lookupPath);
         if (val != -1) {
-            return fDefinitions[val];
+            return getField(val);
         }
         String lookupUnderscored = "_" + lookupPath; //$NON-NLS-1$
         val = fFieldNames.indexOf(lookupUnderscored);
         if (val != -1) {
-            return fDefinitions[val];
+            return getField(val);
         }
-        for (IDefinition child : fDefinitions) {
-            if (child instanceof ScopedDefinition) {
-                if (!child.equals(defintionToExclude)) {
-                    IDefinition def = ((ScopedDefinition) child).lookupDefinition(lookupPath);
-                    if (def instanceof Definition) {
-                        return (Definition) def;
+        /* The fields of a flat structure have no children */
+        if (fLayout == null) {
+            for (IDefinition child : fDefinitions) {
+                if (child instanceof ScopedDefinition) {
+                    if (!child.equals(defintionToExclude)) {
+                        IDefinition def = ((ScopedDefinition) child).lookupDefinition(lookupPath);
+                        if (def instanceof Definition) {
+                            return (Definition) def;
+                        }
                     }
                 }
             }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2014 Ericsson, Ecole Polytechnique de Montreal and others
+ * Copyright (c) 2011, 2018 Ericsson, Ecole Polytechnique de Montreal and others
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -18,11 +18,15 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.common.core.NonNullUtils;
 import org.eclipse.tracecompass.ctf.core.CTFException;
 import org.eclipse.tracecompass.ctf.core.event.io.BitBuffer;
 import org.eclipse.tracecompass.ctf.core.event.scope.IDefinitionScope;
@@ -35,6 +39,7 @@ import org.eclipse.tracecompass.ctf.core.event.types.StructDeclaration;
 import org.eclipse.tracecompass.ctf.core.event.types.StructDefinition;
 import org.eclipse.tracecompass.internal.ctf.core.Activator;
 import org.eclipse.tracecompass.internal.ctf.core.SafeMappedByteBuffer;
+import org.eclipse.tracecompass.internal.ctf.core.trace.PacketIndexFile;
 import org.eclipse.tracecompass.internal.ctf.core.trace.StreamInputPacketIndex;
 import org.eclipse.tracecompass.internal.ctf.core.trace.StreamInputPacketIndexEntry;
 import org.eclipse.tracecompass.internal.ctf.core.trace.Utils;
@@ -53,6 +58,13 @@ public class CTFStreamInput implements IDefinitionScope {
 
     private static final int MAP_SIZE = 4096;
 
+    private static final String PACKET_INDEX_FILE_EXTENSION = ".idx"; //$NON-NLS-1$
+
+    /**
+     * Number of packet buffers kept for the readers of this stream input
+     */
+    private static final int MAX_CACHED_PACKETS = 8;
+
     /**
      * The associated Stream
      */
@@ -92,6 +104,29 @@ public class CTFStreamInput implements IDefinitionScope {
 
     private boolean fUUIDMismatchWarning = false;
 
+    /**
+     * Whether the packet index file was already read
+     */
+    private volatile boolean fCacheLoaded = false;
+
+    /**
+     * Number of entries of the index that are in the packet index file
+     */
+    private int fNbCached = 0;
+
+    /**
+     * Buffers of the packets read last, by offset in bytes, shared by all the
+     * readers of this stream input, in access order
+     */
+    private final Map<Long, ByteBuffer> fPacketBuffers = new LinkedHashMap<Long, ByteBuffer>(MAX_CACHED_PACKETS, 0.75f, true) {
+        private static final long serialVersionUID = -1429347512245931463L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.@Nullable Entry<Long, ByteBuffer> eldest) {
+            return size() > MAX_CACHED_PACKETS;
+        }
+    };
+
     // ------------------------------------------------------------------------
     // Constructors
     // ------------------------------------------------------------------------
@@ -148,6 +183,9 @@ public class CTFStreamInput implements IDefinitionScope {
      * @return the stream input Index
      */
     StreamInputPacketIndex getIndex() {
+        if (!fCacheLoaded) {
+            loadPacketIndexCache();
+        }
         return fIndex;
     }
 
@@ -222,7 +260,10 @@ public class CTFStreamInput implements IDefinitionScope {
      * @throws CTFException
      *             If there was a problem reading the packed header
      */
-    public boolean addPacketHeaderIndex() throws CTFException {
+    public synchronized boolean addPacketHeaderIndex() throws CTFException {
+        if (!fCacheLoaded) {
+            loadPacketIndexCache();
+        }
         long currentPosBits = 0L;
         if (!fIndex.isEmpty()) {
             ICTFPacketDescriptor pos = fIndex.lastElement();
@@ -231,12 +272,95 @@ public class CTFStreamInput implements IDefinitionScope {
             }
             currentPosBits = pos.getOffsetBits() + pos.getPacketSizeBits();
         }
-        if (currentPosBits < getStreamSizeBits()) {
-            return fIndex.append(createPacketIndexEntry(currentPosBits));
+        if (currentPosBits < getStreamSizeBits() && fIndex.append(createPacketIndexEntry(currentPosBits))) {
+            return true;
         }
+        /* All the packets available for now are indexed */
+        savePacketIndexCache();
         return false;
     }
 
+    private @Nullable File getPacketIndexCacheFile() {
+        File directory = getStream().getTrace().getPacketIndexCacheDirectory();
+        if (directory == null) {
+            return null;
+        }
+        return new File(directory, fFileName + PACKET_INDEX_FILE_EXTENSION);
+    }
+
+    /**
+     * Fill the index from the packet index file of a previous session. The
+     * cached entries are used as is if the stream file did not change. If it
+     * grew, as a live trace does, the last cached packet is read again to make
+     * sure it is the same file, and the new packets are then indexed as usual.
+     */
+    private synchronized void loadPacketIndexCache() {
+        if (fCacheLoaded) {
+            return;
+        }
+        fCacheLoaded = true;
+        File cacheFile = getPacketIndexCacheFile();
+        if (cacheFile == null || !fIndex.isEmpty()) {
+            return;
+        }
+        PacketIndexFile cache = PacketIndexFile.read(cacheFile);
+        if (cache == null || cache.getEntries().isEmpty()) {
+            return;
+        }
+        List<ICTFPacketDescriptor> entries = cache.getEntries();
+        ICTFPacketDescriptor last = entries.get(entries.size() - 1);
+        long size = fFile.length();
+        if (size < cache.getStreamSize()) {
+            return;
+        }
+        if (size != cache.getStreamSize() || fFile.lastModified() != cache.getStreamModified()) {
+            fLostSoFar = cache.getLostSoFar() - last.getLostEvents();
+            try {
+                ICTFPacketDescriptor packet = createPacketIndexEntry(last.getOffsetBits());
+                if (!isSamePacket(packet, last)) {
+                    fLostSoFar = 0;
+                    return;
+                }
+            } catch (CTFException e) {
+                fLostSoFar = 0;
+                return;
+            }
+        }
+        fIndex.appendAll(entries);
+        fLostSoFar = cache.getLostSoFar();
+        setTimestampEnd(last.getTimestampEnd());
+        fNbCached = entries.size();
+    }
+
+    private static boolean isSamePacket(ICTFPacketDescriptor packet, ICTFPacketDescriptor cached) {
+        long timestampEnd = packet.getTimestampBegin() > packet.getTimestampEnd() ? Long.MAX_VALUE : packet.getTimestampEnd();
+        return packet.getOffsetBits() == cached.getOffsetBits() &&
+                packet.getPacketSizeBits() == cached.getPacketSizeBits() &&
+                packet.getContentSizeBits() == cached.getContentSizeBits() &&
+                packet.getPayloadStartBits() == cached.getPayloadStartBits() &&
+                packet.getTimestampBegin() == cached.getTimestampBegin() &&
+                timestampEnd == cached.getTimestampEnd() &&
+                packet.getLostEvents() == cached.getLostEvents();
+    }
+
+    private void savePacketIndexCache() {
+        File cacheFile = getPacketIndexCacheFile();
+        if (cacheFile == null || fIndex.size() <= fNbCached) {
+            return;
+        }
+        try {
+            if (PacketIndexFile.write(cacheFile, fFile, fIndex, fNbCached, fLostSoFar)) {
+                fNbCached = fIndex.size();
+            } else {
+                /* Do not try again for this stream */
+                fNbCached = Integer.MAX_VALUE;
+            }
+        } catch (IOException e) {
+            Activator.log(IStatus.WARNING, "Cannot write the packet index file " + cacheFile + ": " + e.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+            fNbCached = Integer.MAX_VALUE;
+        }
+    }
+
     private long getStreamSizeBits() {
         return fFile.length() * Byte.SIZE;
     }
@@ -284,6 +408,37 @@ public class CTFStreamInput implements IDefinitionScope {
         return bitBuffer;
     }
 
+    /**
+     * Get the contents of a packet. The buffer mapped for a packet is shared by
+     * all the readers of this stream input, so that the iterators of a trace
+     * reading the same region, like a view and an analysis, do not map it
+     * again.
+     *
+     * @param fc
+     *            the file channel of the reader, to map the packet if needed
+     * @param offsetBytes
+     *            the offset of the packet in the file, in bytes
+     * @param sizeBytes
+     *            the size to map, in bytes
+     * @return a buffer of the packet, with its own position and byte order
+     * @throws CTFException
+     *             if the packet cannot be mapped
+     */
+    ByteBuffer getPacketBuffer(FileChannel fc, long offsetBytes, long sizeBytes) throws CTFException {
+        synchronized (fPacketBuffers) {
+            ByteBuffer buffer = fPacketBuffers.get(offsetBytes);
+            if (buffer == null || buffer.capacity() != sizeBytes) {
+                try {
+                    buffer = getByteBufferAt(fc, offsetBytes, sizeBytes);
+                } catch (IOException e) {
+                    throw new CTFIOException(e.getMessage(), e);
+                }
+                fPacketBuffers.put(offsetBytes, buffer);
+            }
+            return NonNullUtils.checkNotNull(buffer.duplicate());
+        }
+    }
+
     private static ByteBuffer getByteBufferAt(FileChannel fc, long position, long size) throws CTFException, IOException {
         ByteBuffer map = SafeMappedByteBuffer.map(fc, MapMode.READ_ONLY, position, size);
         if (map == null) {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2015 Ericsson, Ecole Polytechnique de Montreal and others
+ * Copyright (c) 2011, 2018 Ericsson, Ecole Polytechnique de Montreal and others
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -18,7 +18,9 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
 import java.util.List;
+import java.util.function.Predicate;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
@@ -33,6 +35,7 @@ import org.eclipse.tracecompass.internal.ctf.core.Activator;
 import org.eclipse.tracecompass.internal.ctf.core.SafeMappedByteBuffer;
 import org.eclipse.tracecompass.internal.ctf.core.trace.CTFPacketReader;
 import org.eclipse.tracecompass.internal.ctf.core.trace.NullPacketReader;
+import org.eclipse.tracecompass.internal.ctf.core.trace.StreamInputReadAhead;
 
 /**
  * A CTF trace event reader. Reads the events of a trace file.
@@ -77,10 +80,35 @@ public class CTFStreamInputReader implements AutoCloseable {
 
     private int fId;
 
+    /**
+     * Number of events before the current one with the same timestamp, to
+     * find the current event again after a seek
+     */
+    private long fSameTimestampRank = 0;
+
     /**
      * Live trace reading
      */
-    private boolean fLive = false;
+    private volatile boolean fLive = false;
+
+    /**
+     * Events decoded ahead by a worker thread, null if the events are decoded
+     * when they are read
+     */
+    private @Nullable StreamInputReadAhead fReadAhead = null;
+
+    /**
+     * Filter on the names of the events to read entirely, null to read all the
+     * events
+     */
+    private @Nullable Predicate<String> fEventFilter = null;
+
+    /**
+     * Ids of the events rejected by the filter, computed for the number of
+     * declarations in {@link #fNbDeclarations}, as live traces may add some
+     */
+    private @Nullable BitSet fSkippedEvents = null;
+    private int fNbDeclarations = 0;
 
     // ------------------------------------------------------------------------
     // Constructors
@@ -136,15 +164,37 @@ public class CTFStreamInputReader implements AutoCloseable {
             if (size < 0) {
                 throw new CTFIOException("Cannot have negative sized buffers."); //$NON-NLS-1$
             }
-            BitBuffer bitBuffer = new BitBuffer(getByteBufferAt(packet.getOffsetBits(), size));
+            BitBuffer bitBuffer = new BitBuffer(getPacketBuffer(packet.getOffsetBits(), size));
             bitBuffer.position(packet.getPayloadStartBits());
             IDeclaration eventHeaderDeclaration = getStreamInput().getStream().getEventHeaderDeclaration();
             CTFTrace trace = getStreamInput().getStream().getTrace();
-            ctfPacketReader = new CTFPacketReader(bitBuffer, packet, getEventDeclarations(), eventHeaderDeclaration, getStreamEventContextDecl(), trace.getPacketHeaderDef(), trace);
+            CTFPacketReader reader = new CTFPacketReader(bitBuffer, packet, getEventDeclarations(), eventHeaderDeclaration, getStreamEventContextDecl(), trace.getPacketHeaderDef(), trace);
+            reader.setSkippedEvents(getSkippedEvents());
+            ctfPacketReader = reader;
         }
         return ctfPacketReader;
     }
 
+    /**
+     * Get the contents of a packet, shared with the other readers of the stream
+     * input
+     *
+     * @param position
+     *            start offset in bits
+     * @param size
+     *            size of the packet contents in bits
+     * @return a byte buffer
+     * @throws CTFException
+     *             if the map failed in its allocation
+     */
+    private ByteBuffer getPacketBuffer(long position, long size) throws CTFException {
+        FileChannel fileChannel = fFileChannel;
+        if (fileChannel == null) {
+            return getByteBufferAt(position, size);
+        }
+        return fStreamInput.getPacketBuffer(fileChannel, position / BITS_PER_BYTE, (size + BITS_PER_BYTE - 1) / BITS_PER_BYTE);
+    }
+
     /**
      * Get a bytebuffer map of the file
      *
@@ -180,6 +230,10 @@ public class CTFStreamInputReader implements AutoCloseable {
      */
     @Override
     public void close() throws IOException {
+        StreamInputReadAhead readAhead = fReadAhead;
+        if (readAhead != null) {
+            readAhead.stop();
+        }
         if (fFileChannel != null) {
             fFileChannel.close();
         }
@@ -227,6 +281,11 @@ public class CTFStreamInputReader implements AutoCloseable {
      * @return The CPU id (a number)
      */
     public int getCPU() {
+        IEventDefinition currentEvent = fCurrentEvent;
+        if (fReadAhead != null && currentEvent != null) {
+            /* The packet reader is ahead of the current event */
+            return currentEvent.getCPU();
+        }
         return fPacketReader.getCPU();
     }
 
@@ -275,6 +334,119 @@ public class CTFStreamInputReader implements AutoCloseable {
         return fLive;
     }
 
+    /**
+     * Set the types of events that need to be read entirely. The other events
+     * are still read, with their header, timestamp and type, but their contexts
+     * and payload may be skipped without being decoded, in which case their
+     * fields are null. The current event, already read, is not affected, but
+     * the events decoded ahead are decoded again.
+     *
+     * @param eventFilter
+     *            predicate on the names of the events to read entirely, or
+     *            null to read all the events entirely
+     * @since 2.3
+     */
+    public void setEventFilter(@Nullable Predicate<String> eventFilter) {
+        StreamInputReadAhead readAhead = fReadAhead;
+        if (readAhead != null) {
+            readAhead.stop();
+        }
+        fEventFilter = eventFilter;
+        fSkippedEvents = null;
+        fNbDeclarations = 0;
+        IPacketReader packetReader = fPacketReader;
+        if (packetReader instanceof CTFPacketReader) {
+            ((CTFPacketReader) packetReader).setSkippedEvents(getSkippedEvents());
+        }
+        if (readAhead != null) {
+            repositionAfterReadAhead();
+        }
+    }
+
+    /**
+     * Set whether the events of this stream are decoded ahead by a worker
+     * thread, into a bounded buffer. This lets the streams of a trace be
+     * decoded in parallel while the trace reader takes their events in order,
+     * which speeds up reading a whole trace on multiple cores. It is not worth
+     * it for short reads, since the events decoded ahead are thrown away on a
+     * seek.
+     *
+     * While the events are decoded ahead, {@link #getCurrentPacketReader()}
+     * returns the packet reader used by the worker thread, which can be ahead
+     * of the current event.
+     *
+     * @param readAhead
+     *            true to decode the events ahead, false to decode them when
+     *            they are read
+     * @since 2.3
+     */
+    public void setReadAhead(boolean readAhead) {
+        StreamInputReadAhead current = fReadAhead;
+        if (readAhead == (current != null)) {
+            return;
+        }
+        if (readAhead) {
+            /* The packet reader is right after the current event */
+            fReadAhead = new StreamInputReadAhead(this::decodeNextEvent, StreamInputReadAhead.DEFAULT_CAPACITY);
+        } else if (current != null) {
+            current.stop();
+            fReadAhead = null;
+            repositionAfterReadAhead();
+        }
+    }
+
+    /**
+     * Get whether the events of this stream are decoded ahead by a worker
+     * thread
+     *
+     * @return true if the events are decoded ahead
+     * @since 2.3
+     */
+    public boolean isReadAhead() {
+        return fReadAhead != null;
+    }
+
+    /**
+     * Bring the packet reader, which was ahead, back right after the current
+     * event, once the decoding task is stopped.
+     */
+    private void repositionAfterReadAhead() {
+        IEventDefinition currentEvent = fCurrentEvent;
+        if (currentEvent == null) {
+            return;
+        }
+        long rank = fSameTimestampRank;
+        try {
+            seek(currentEvent.getTimestamp());
+            for (long i = 0; i < rank; i++) {
+                setNextEvent(decodeNextEvent());
+            }
+        } catch (CTFException e) {
+            Activator.logError("Cannot go back to the current event of " + getFilename(), e); //$NON-NLS-1$
+        }
+    }
+
+    private @Nullable BitSet getSkippedEvents() {
+        Predicate<String> eventFilter = fEventFilter;
+        if (eventFilter == null) {
+            return null;
+        }
+        List<@Nullable IEventDeclaration> declarations = getEventDeclarations();
+        BitSet skippedEvents = fSkippedEvents;
+        if (skippedEvents == null || fNbDeclarations != declarations.size()) {
+            skippedEvents = new BitSet(declarations.size());
+            for (int i = 0; i < declarations.size(); i++) {
+                IEventDeclaration declaration = declarations.get(i);
+                if (declaration != null && !eventFilter.test(declaration.getName())) {
+                    skippedEvents.set(i);
+                }
+            }
+            fSkippedEvents = skippedEvents;
+            fNbDeclarations = declarations.size();
+        }
+        return skippedEvents;
+    }
+
     /**
      * Get the event context of the stream
      *
@@ -295,7 +467,29 @@ public class CTFStreamInputReader implements AutoCloseable {
      *             if an error occurs
      */
     public CTFResponse readNextEvent() throws CTFException {
+        StreamInputReadAhead readAhead = fReadAhead;
+        return setNextEvent(readAhead != null ? readAhead.next() : decodeNextEvent());
+    }
 
+    private CTFResponse setNextEvent(@Nullable IEventDefinition event) {
+        IEventDefinition previous = fCurrentEvent;
+        if (event != null && previous != null && event.getTimestamp() == previous.getTimestamp()) {
+            fSameTimestampRank++;
+        } else {
+            fSameTimestampRank = 0;
+        }
+        fCurrentEvent = event;
+        if (event != null) {
+            return CTFResponse.OK;
+        }
+        return fLive ? CTFResponse.WAIT : CTFResponse.FINISH;
+    }
+
+    /**
+     * Decode the next event with the packet reader, called by the worker
+     * thread when reading ahead
+     */
+    private @Nullable IEventDefinition decodeNextEvent() throws CTFException {
         /*
          * Change packet if needed
          */
@@ -314,11 +508,9 @@ public class CTFStreamInputReader implements AutoCloseable {
          * If an event is available, read it.
          */
         if (fPacketReader.hasMoreEvents()) {
-            setCurrentEvent(fPacketReader.readNextEvent());
-            return CTFResponse.OK;
+            return fPacketReader.readNextEvent();
         }
-        this.setCurrentEvent(null);
-        return fLive ? CTFResponse.WAIT : CTFResponse.FINISH;
+        return null;
     }
 
     /**
@@ -364,6 +556,10 @@ public class CTFStreamInputReader implements AutoCloseable {
      */
     public long seek(long timestamp) throws CTFException {
         long offset = 0;
+        StreamInputReadAhead readAhead = fReadAhead;
+        if (readAhead != null) {
+            readAhead.stop();
+        }
 
         gotoPacket(timestamp);
 
@@ -393,10 +589,11 @@ public class CTFStreamInputReader implements AutoCloseable {
          * - found the first event with a timestamp greater or equal the given
          * timestamp.
          */
-        readNextEvent();
+        fCurrentEvent = null;
+        setNextEvent(decodeNextEvent());
         IEventDefinition currentEvent = getCurrentEvent();
         while (currentEvent != null && (currentEvent.getTimestamp() < timestamp)) {
-            readNextEvent();
+            setNextEvent(decodeNextEvent());
             currentEvent = getCurrentEvent();
             offset++;
         }
@@ -472,7 +669,7 @@ public class CTFStreamInputReader implements AutoCloseable {
         IEventDefinition prevEvent = null;
         while (fCurrentEvent != null) {
             prevEvent = fCurrentEvent;
-            readNextEvent();
+            setNextEvent(decodeNextEvent());
         }
         /*
          * Go back to the previous event
@@ -489,6 +686,7 @@ public class CTFStreamInputReader implements AutoCloseable {
      */
     public void setCurrentEvent(@Nullable IEventDefinition currentEvent) {
         fCurrentEvent = currentEvent;
+        fSameTimestampRank = 0;
     }
 
     /**
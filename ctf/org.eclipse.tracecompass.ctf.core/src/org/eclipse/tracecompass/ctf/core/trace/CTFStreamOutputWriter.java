@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2015 Ericsson
+ * Copyright (c) 2015, 2018 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -18,7 +18,6 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
-import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -27,7 +26,7 @@ import java.nio.file.StandardOpenOption;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.ctf.core.CTFException;
-import org.eclipse.tracecompass.internal.ctf.core.SafeMappedByteBuffer;
+import org.eclipse.tracecompass.internal.ctf.core.trace.CTFPacketTrimmer;
 import org.eclipse.tracecompass.internal.ctf.core.trace.StreamInputPacketIndex;
 
 /**
@@ -96,6 +95,33 @@ public class CTFStreamOutputWriter {
      * @since 1.0
      */
     public void copyPackets(long startTime, long endTime) throws CTFException {
+        copyPackets(startTime, endTime, false);
+    }
+
+    /**
+     * Copies packets from the relevant input this input stream to a
+     * corresponding output stream based on a given time range. The packets
+     * written are the same as for {@link #copyPackets(long, long)}. Consecutive
+     * packets are transferred directly from the input file to the output file.
+     *
+     * If the cut is exact, the events of the first and last packets that are
+     * outside of the time range are removed from these packets, when the
+     * layout of their packet context allows it. Events before the start time
+     * may remain when removing them would change the alignment of the events
+     * that follow.
+     *
+     * @param startTime
+     *            the start time for packets to be written
+     * @param endTime
+     *            the end time for packets to be written
+     * @param exact
+     *            true to remove the events outside of the time range from the
+     *            first and last packets
+     * @throws CTFException
+     *             if a reading or writing error occurs
+     * @since 2.3
+     */
+    public void copyPackets(long startTime, long endTime, boolean exact) throws CTFException {
         CTFStreamInput streamInput = fStreamInput;
         if (streamInput == null) {
             throw new CTFIOException("StreamInput is null. Can't copy packets"); //$NON-NLS-1$
@@ -103,16 +129,33 @@ public class CTFStreamOutputWriter {
 
         try (FileChannel fc = checkNotNull(FileChannel.open(fOutFile.toPath(), StandardOpenOption.WRITE))) {
             StreamInputPacketIndex index = streamInput.getIndex();
+            CTFPacketTrimmer trimmer = exact ? new CTFPacketTrimmer(streamInput) : null;
             int count = 0;
             try (FileChannel source = FileChannel.open(streamInput.getFile().toPath(), StandardOpenOption.READ)) {
+                /* Range of consecutive packets not written yet */
+                long runStart = 0;
+                long runEnd = 0;
                 for (int i = 0; i < index.size(); i++) {
                     ICTFPacketDescriptor entry = index.getElement(i);
                     if ((entry.getTimestampEnd() >= startTime) && (entry.getTimestampBegin() <= endTime)) {
-                        ByteBuffer buffer = SafeMappedByteBuffer.map(source, MapMode.READ_ONLY, entry.getOffsetBytes(), entry.getPacketSizeBits() / Byte.SIZE);
-                        fStreamPacketOutputWriter.writePacket(buffer, fc);
-                        count++;
+                        ByteBuffer trimmed = (trimmer == null) ? null : trimmer.trim(checkNotNull(source), entry, startTime, endTime);
+                        if (trimmed == null) {
+                            long offset = entry.getOffsetBytes();
+                            if (offset != runEnd) {
+                                fStreamPacketOutputWriter.writePackets(source, runStart, runEnd - runStart, fc);
+                                runStart = offset;
+                            }
+                            runEnd = offset + entry.getPacketSizeBits() / Byte.SIZE;
+                            count++;
+                        } else if (trimmed.hasRemaining()) {
+                            fStreamPacketOutputWriter.writePackets(source, runStart, runEnd - runStart, fc);
+                            runStart = runEnd;
+                            fStreamPacketOutputWriter.writePacket(trimmed, fc);
+                            count++;
+                        }
                     }
                 }
+                fStreamPacketOutputWriter.writePackets(source, runStart, runEnd - runStart, fc);
             }
 
             if (count == 0 && fOutFile.exists()) {
@@ -126,6 +169,32 @@ public class CTFStreamOutputWriter {
         }
     }
 
+    /**
+     * Get the size of the packets which would be copied from a stream input
+     * for a given time range, without copying them. The packets are selected
+     * as for {@link #copyPackets(long, long)}.
+     *
+     * @param streamInput
+     *            the stream input, with its packet index
+     * @param startTime
+     *            the start time for packets to be written
+     * @param endTime
+     *            the end time for packets to be written
+     * @return the size of the packets, in bytes
+     * @since 2.3
+     */
+    public static long estimateSize(@NonNull CTFStreamInput streamInput, long startTime, long endTime) {
+        StreamInputPacketIndex index = streamInput.getIndex();
+        long size = 0;
+        for (int i = 0; i < index.size(); i++) {
+            ICTFPacketDescriptor entry = index.getElement(i);
+            if ((entry.getTimestampEnd() >= startTime) && (entry.getTimestampBegin() <= endTime)) {
+                size += entry.getPacketSizeBits() / Byte.SIZE;
+            }
+        }
+        return size;
+    }
+
     /**
      * Get the stream file to write.
      *
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2015 Ericsson
+ * Copyright (c) 2015, 2018 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -35,7 +35,38 @@ public class CTFStreamPacketOutputWriter {
      *            if a reading or writing error occurs
      */
     public void writePacket(ByteBuffer byteBuffer, FileChannel fc) throws IOException {
-        fc.write(byteBuffer);
+        while (byteBuffer.hasRemaining()) {
+            fc.write(byteBuffer);
+        }
+    }
+
+    /**
+     * Writes stream packets to the output file channel by transferring them
+     * directly from the input file channel, without copying them through a
+     * buffer.
+     *
+     * @param source
+     *            the file channel of the input stream
+     * @param offset
+     *            the offset of the first packet in the input stream, in bytes
+     * @param size
+     *            the size of the packets to write, in bytes
+     * @param fc
+     *            a file channel
+     * @throws IOException
+     *             if a reading or writing error occurs
+     * @since 2.3
+     */
+    public void writePackets(FileChannel source, long offset, long size, FileChannel fc) throws IOException {
+        long position = offset;
+        long end = offset + size;
+        while (position < end) {
+            long transferred = source.transferTo(position, end - position, fc);
+            if (transferred <= 0) {
+                throw new IOException("Unexpected end of stream at offset " + position); //$NON-NLS-1$
+            }
+            position += transferred;
+        }
     }
 
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2014 Ericsson, Ecole Polytechnique de Montreal and others
+ * Copyright (c) 2011, 2018 Ericsson, Ecole Polytechnique de Montreal and others
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -36,6 +36,7 @@ import java.util.UUID;
 
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.ctf.core.CTFException;
 import org.eclipse.tracecompass.ctf.core.CTFStrings;
 import org.eclipse.tracecompass.ctf.core.event.CTFClock;
@@ -147,6 +148,16 @@ public class CTFTrace implements IDefinitionScope {
 
     private boolean fUUIDMismatchWarning = false;
 
+    /**
+     * Directory where the packet indexes of the stream files are cached
+     */
+    private @Nullable File fPacketIndexCacheDirectory = null;
+
+    /**
+     * File where the parsed metadata is cached
+     */
+    private @Nullable File fMetadataCacheFile = null;
+
     // ------------------------------------------------------------------------
     // Constructors
     // ------------------------------------------------------------------------
@@ -172,7 +183,26 @@ public class CTFTrace implements IDefinitionScope {
      *             If no CTF trace was found at the path
      */
     public CTFTrace(File path) throws CTFException {
+        this(path, null);
+    }
+
+    /**
+     * Trace constructor, which saves the parsed metadata in a cache file, so
+     * that it does not have to be parsed again when a trace with the same
+     * metadata is opened.
+     *
+     * @param path
+     *            Filesystem path of the trace directory.
+     * @param metadataCacheFile
+     *            the file where the parsed metadata is saved, or null to not
+     *            save it
+     * @throws CTFException
+     *             If no CTF trace was found at the path
+     * @since 2.3
+     */
+    public CTFTrace(File path, @Nullable File metadataCacheFile) throws CTFException {
         fPath = path;
+        fMetadataCacheFile = metadataCacheFile;
         final Metadata metadata = new Metadata(this);
 
         /* Set up the internal containers for this trace */
@@ -430,6 +460,43 @@ public class CTFTrace implements IDefinitionScope {
         return (fPath != null) ? fPath.getPath() : ""; //$NON-NLS-1$
     }
 
+    /**
+     * Set the directory where the packet indexes of the stream files are
+     * saved, so that the packets do not have to be indexed again when the
+     * trace is re-opened. It must be set before the stream files are read.
+     *
+     * @param directory
+     *            the directory of the packet index files, or null to not cache
+     *            the packet indexes
+     * @since 2.3
+     */
+    public void setPacketIndexCacheDirectory(@Nullable File directory) {
+        fPacketIndexCacheDirectory = directory;
+    }
+
+    /**
+     * Get the directory where the packet indexes of the stream files are
+     * saved
+     *
+     * @return the directory of the packet index files, or null if the packet
+     *         indexes are not cached
+     * @since 2.3
+     */
+    public @Nullable File getPacketIndexCacheDirectory() {
+        return fPacketIndexCacheDirectory;
+    }
+
+    /**
+     * Get the file where the parsed metadata of the trace is saved
+     *
+     * @return the metadata cache file, or null if the parsed metadata is not
+     *         saved
+     * @since 2.3
+     */
+    public @Nullable File getMetadataCacheFile() {
+        return fMetadataCacheFile;
+    }
+
     // ------------------------------------------------------------------------
     // Operations
     // ------------------------------------------------------------------------
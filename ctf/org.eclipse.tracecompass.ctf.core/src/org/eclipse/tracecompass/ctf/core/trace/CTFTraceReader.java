@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2014 Ericsson, Ecole Polytechnique de Montreal and others
+ * Copyright (c) 2011, 2018 Ericsson, Ecole Polytechnique de Montreal and others
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -22,7 +22,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.function.Predicate;
 
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.common.core.collect.LoserTree;
 import org.eclipse.tracecompass.ctf.core.CTFException;
 import org.eclipse.tracecompass.ctf.core.event.IEventDeclaration;
 import org.eclipse.tracecompass.ctf.core.event.IEventDefinition;
@@ -40,8 +43,6 @@ public class CTFTraceReader implements AutoCloseable {
 
     private static final int LINE_LENGTH = 60;
 
-    private static final int MIN_PRIO_SIZE = 16;
-
     // ------------------------------------------------------------------------
     // Attributes
     // ------------------------------------------------------------------------
@@ -57,9 +58,11 @@ public class CTFTraceReader implements AutoCloseable {
     private final List<CTFStreamInputReader> fStreamInputReaders = Collections.synchronizedList(new ArrayList<CTFStreamInputReader>());
 
     /**
-     * Priority queue to order the trace file readers by timestamp.
+     * Tournament tree to order the trace file readers by timestamp. The slot of
+     * each reader is its index in {@link #fStreamInputReaders}, it is empty
+     * when the reader has no more events.
      */
-    private PriorityQueue<CTFStreamInputReader> fPrio;
+    private final LoserTree<CTFStreamInputReader> fMergeTree = new LoserTree<>(new StreamInputReaderTimestampComparator());
 
     /**
      * Array to count the number of event per trace file.
@@ -81,6 +84,17 @@ public class CTFTraceReader implements AutoCloseable {
      */
     private boolean fClosed = false;
 
+    /**
+     * Filter on the names of the events to read entirely, given to the stream
+     * input readers
+     */
+    private @Nullable Predicate<String> fEventFilter = null;
+
+    /**
+     * Whether the stream input readers decode their events ahead
+     */
+    private boolean fReadAhead = false;
+
     // ------------------------------------------------------------------------
     // Constructors
     // ------------------------------------------------------------------------
@@ -103,7 +117,7 @@ public class CTFTraceReader implements AutoCloseable {
         createStreamInputReaders();
 
         /**
-         * Populate the timestamp-based priority queue.
+         * Populate the timestamp-based tournament tree.
          */
         populateStreamInputReaderHeap();
 
@@ -131,6 +145,8 @@ public class CTFTraceReader implements AutoCloseable {
         newReader = new CTFTraceReader(fTrace);
         newReader.fStartTime = fStartTime;
         newReader.fEndTime = fEndTime;
+        newReader.setEventFilter(fEventFilter);
+        newReader.setReadAhead(fReadAhead);
         return newReader;
     }
 
@@ -151,7 +167,7 @@ public class CTFTraceReader implements AutoCloseable {
             }
             fStreamInputReaders.clear();
         }
-        fPrio.clear();
+        fMergeTree.clear();
         fClosed = true;
     }
 
@@ -179,13 +195,83 @@ public class CTFTraceReader implements AutoCloseable {
         fEndTime = endTime;
     }
 
+    /**
+     * Set the types of events that need to be read entirely. The other events
+     * are still returned, in order and with their timestamp, but their contexts
+     * and payload may be skipped without being decoded, in which case their
+     * fields are null. The events already read by the stream input readers are
+     * not affected.
+     *
+     * @param eventFilter
+     *            predicate on the names of the events to read entirely, or
+     *            null to read all the events entirely
+     * @since 2.3
+     */
+    public void setEventFilter(@Nullable Predicate<String> eventFilter) {
+        fEventFilter = eventFilter;
+        synchronized (fStreamInputReaders) {
+            for (CTFStreamInputReader reader : fStreamInputReaders) {
+                reader.setEventFilter(eventFilter);
+            }
+        }
+    }
+
+    /**
+     * Get the filter on the names of the events to read entirely
+     *
+     * @return the filter, or null if all the events are read entirely
+     * @since 2.3
+     */
+    public @Nullable Predicate<String> getEventFilter() {
+        return fEventFilter;
+    }
+
+    /**
+     * Set whether the stream input readers decode their events ahead, each in
+     * a worker thread, while this reader merges them in order. This is meant
+     * for reading large parts of a trace with many streams, such as a whole
+     * trace, since the streams are then decoded in parallel. The order of the
+     * events is the same either way.
+     *
+     * @param readAhead
+     *            true to decode the events of the streams ahead
+     * @since 2.3
+     */
+    public void setReadAhead(boolean readAhead) {
+        fReadAhead = readAhead;
+        synchronized (fStreamInputReaders) {
+            for (CTFStreamInputReader reader : fStreamInputReaders) {
+                reader.setReadAhead(readAhead);
+            }
+        }
+    }
+
+    /**
+     * Get whether the stream input readers decode their events ahead
+     *
+     * @return true if the events are decoded ahead
+     * @since 2.3
+     */
+    public boolean isReadAhead() {
+        return fReadAhead;
+    }
+
     /**
      * Get the priority queue of this trace reader.
      *
-     * @return The priority queue of input readers
+     * @return A priority queue of the input readers that have events, which is
+     *         a copy of the current state of the reader
+     * @deprecated The readers are now ordered by a {@link LoserTree}, use
+     *             {@link #getTopStream()} to get the reader of the current
+     *             event
      */
+    @Deprecated
     protected PriorityQueue<CTFStreamInputReader> getPrio() {
-        return fPrio;
+        PriorityQueue<CTFStreamInputReader> prio = new PriorityQueue<>(Math.max(1, fMergeTree.size()), new StreamInputReaderTimestampComparator());
+        for (CTFStreamInputReader reader : fMergeTree) {
+            prio.add(reader);
+        }
+        return prio;
     }
 
     // ------------------------------------------------------------------------
@@ -234,7 +320,7 @@ public class CTFTraceReader implements AutoCloseable {
     }
 
     /**
-     * Update the priority queue to make it match the parent trace
+     * Update the ordered readers to make them match the parent trace
      *
      * @throws CTFException
      *             An error occured
@@ -251,8 +337,11 @@ public class CTFTraceReader implements AutoCloseable {
                 try (CTFStreamInputReader streamInputReader = new CTFStreamInputReader(checkNotNull(streamInput))) {
                     if (!fStreamInputReaders.contains(streamInputReader)) {
                         CTFStreamInputReader streamInputReaderToAdd = new CTFStreamInputReader(checkNotNull(streamInput));
+                        streamInputReaderToAdd.setEventFilter(fEventFilter);
+                        streamInputReaderToAdd.setReadAhead(fReadAhead);
                         streamInputReaderToAdd.readNextEvent();
                         fStreamInputReaders.add(streamInputReaderToAdd);
+                        fMergeTree.add(streamInputReaderToAdd);
                         readers.add(streamInputReaderToAdd);
                     }
                 } catch (IOException e) {
@@ -262,9 +351,6 @@ public class CTFTraceReader implements AutoCloseable {
         }
         long[] temp = fEventCountPerTraceFile;
         fEventCountPerTraceFile = new long[readers.size() + temp.length];
-        for (CTFStreamInputReader reader : readers) {
-            fPrio.add(reader);
-        }
         System.arraycopy(temp, 0, fEventCountPerTraceFile, 0, temp.length);
     }
 
@@ -283,42 +369,30 @@ public class CTFTraceReader implements AutoCloseable {
     }
 
     /**
-     * Initializes the priority queue used to choose the trace file with the lower
-     * next event timestamp.
+     * Initializes the tournament tree used to choose the trace file with the
+     * lower next event timestamp.
      *
      * @throws CTFException
      *             if an error occurs
      */
     private void populateStreamInputReaderHeap() throws CTFException {
-        if (fStreamInputReaders.isEmpty()) {
-            fPrio = new PriorityQueue<>(MIN_PRIO_SIZE,
-                    new StreamInputReaderTimestampComparator());
-            return;
-        }
-
-        /*
-         * Create the priority queue with a size twice as bigger as the number of reader
-         * in order to avoid constant resizing.
-         */
-        fPrio = new PriorityQueue<>(
-                Math.max(fStreamInputReaders.size() * 2, MIN_PRIO_SIZE),
-                new StreamInputReaderTimestampComparator());
-
         int pos = 0;
 
         for (CTFStreamInputReader reader : fStreamInputReaders) {
             /*
-             * Add each trace file reader in the priority queue, if we are able to read an
-             * event from it.
+             * Add each trace file reader in the tree, if we are able to read an
+             * event from it. The others keep an empty slot.
              */
             CTFResponse readNextEvent = reader.readNextEvent();
             if (readNextEvent == CTFResponse.OK || readNextEvent == CTFResponse.WAIT) {
-                fPrio.add(reader);
+                fMergeTree.add(reader);
 
                 fEventCountPerTraceFile[pos] = 0;
                 reader.setName(pos);
 
                 pos++;
+            } else {
+                fMergeTree.add(null);
             }
         }
     }
@@ -345,12 +419,12 @@ public class CTFTraceReader implements AutoCloseable {
      */
     public boolean advance() throws CTFException {
         /*
-         * Remove the reader from the top of the priority queue.
+         * Get the reader at the top of the tree.
          */
-        CTFStreamInputReader top = fPrio.poll();
+        CTFStreamInputReader top = fMergeTree.getWinner();
 
         /*
-         * If the queue was empty.
+         * If all the readers reached their end.
          */
         if (top == null) {
             return false;
@@ -361,9 +435,10 @@ public class CTFTraceReader implements AutoCloseable {
         switch (top.readNextEvent()) {
         case OK: {
             /*
-             * Add it back in the queue.
+             * Replay its matches, if it is still at the top this is a single
+             * comparison.
              */
-            fPrio.add(top);
+            fMergeTree.replaceWinner(top);
             /*
              * We're in OK, there's a guaranteed top#getCurrentEvent() unless another thread
              * does something bad.
@@ -375,17 +450,19 @@ public class CTFTraceReader implements AutoCloseable {
             break;
         }
         case WAIT: {
-            fPrio.add(top);
+            fMergeTree.replaceWinner(top);
             break;
         }
         case FINISH:
+            fMergeTree.replaceWinner(null);
             break;
         case ERROR:
         default:
             // something bad happend
+            fMergeTree.replaceWinner(null);
         }
         /*
-         * If there is no reader in the queue, it means the trace reader reached the end
+         * If there is no reader in the tree, it means the trace reader reached the end
          * of the trace.
          */
         return hasMoreEvents();
@@ -399,7 +476,7 @@ public class CTFTraceReader implements AutoCloseable {
      */
     public void goToLastEvent() throws CTFException {
         long endTime = Long.MIN_VALUE;
-        for (CTFStreamInputReader sir : fPrio) {
+        for (CTFStreamInputReader sir : fMergeTree) {
             sir.goToLastEvent();
             IEventDefinition currentEvent = sir.getCurrentEvent();
             if (currentEvent != null) {
@@ -430,20 +507,20 @@ public class CTFTraceReader implements AutoCloseable {
      */
     public boolean seek(long timestamp) throws CTFException {
         /*
-         * Remove all the trace readers from the priority queue
+         * The tree is built again once all the slots are set
          */
-        fPrio.clear();
-        for (CTFStreamInputReader streamInputReader : fStreamInputReaders) {
-            /*
-             * Seek the trace reader.
-             */
-            streamInputReader.seek(timestamp);
+        synchronized (fStreamInputReaders) {
+            for (int i = 0; i < fStreamInputReaders.size(); i++) {
+                CTFStreamInputReader streamInputReader = fStreamInputReaders.get(i);
+                /*
+                 * Seek the trace reader.
+                 */
+                streamInputReader.seek(timestamp);
 
-            /*
-             * Add it to the priority queue if there is a current event.
-             */
-            if (streamInputReader.getCurrentEvent() != null) {
-                fPrio.add(streamInputReader);
+                /*
+                 * Keep it in the tree if there is a current event.
+                 */
+                fMergeTree.set(i, streamInputReader.getCurrentEvent() != null ? streamInputReader : null);
             }
         }
         return hasMoreEvents();
@@ -455,7 +532,7 @@ public class CTFTraceReader implements AutoCloseable {
      * @return the stream with the oldest event
      */
     public CTFStreamInputReader getTopStream() {
-        return fPrio.peek();
+        return fMergeTree.getWinner();
     }
 
     /**
@@ -464,7 +541,7 @@ public class CTFTraceReader implements AutoCloseable {
      * @return true if yes.
      */
     public final boolean hasMoreEvents() {
-        return !fPrio.isEmpty();
+        return !fMergeTree.isEmpty();
     }
 
     /**
@@ -530,7 +607,7 @@ public class CTFTraceReader implements AutoCloseable {
      *            whether the trace is live
      */
     public void setLive(boolean live) {
-        for (CTFStreamInputReader s : fPrio) {
+        for (CTFStreamInputReader s : fMergeTree) {
             s.setLive(live);
         }
     }
@@ -605,7 +682,7 @@ public class CTFTraceReader implements AutoCloseable {
      * @since 1.0
      */
     public void populateIndex() throws CTFException {
-        for (CTFStreamInputReader sir : fPrio) {
+        for (CTFStreamInputReader sir : fMergeTree) {
             sir.goToLastEvent();
         }
         seek(0);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2015 Ericsson
+ * Copyright (c) 2015, 2018 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -16,7 +16,13 @@ import static org.eclipse.tracecompass.common.core.NonNullUtils.checkNotNull;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
@@ -34,6 +40,8 @@ public class CTFTraceWriter {
     // Attributes
     // ------------------------------------------------------------------------
 
+    private static final String METADATA_FILENAME = "metadata"; //$NON-NLS-1$
+
     /**
      * The trace to read from.
      */
@@ -75,6 +83,32 @@ public class CTFTraceWriter {
      *             If a reading or writing error occurs
      */
     public void copyPackets(long startTime, long endTime, String newTracePath) throws CTFException {
+        copyPackets(startTime, endTime, newTracePath, false);
+    }
+
+    /**
+     * Copies packets from the relevant input to the output trace based on a
+     * given time range, like {@link #copyPackets(long, long, String)}. The
+     * streams are written in parallel.
+     *
+     * If the cut is exact, the events which are outside of the time range are
+     * also removed from the first and last packets of each stream, see
+     * {@link CTFStreamOutputWriter#copyPackets(long, long, boolean)}.
+     *
+     * @param startTime
+     *            start time of packets to be included in output trace
+     * @param endTime
+     *            end time of packets to be included in the output trace
+     * @param newTracePath
+     *            the path of the new trace to be written
+     * @param exact
+     *            true to remove the events outside of the time range from the
+     *            first and last packets of the streams
+     * @throws CTFException
+     *             If a reading or writing error occurs
+     * @since 2.3
+     */
+    public void copyPackets(long startTime, long endTime, String newTracePath, boolean exact) throws CTFException {
         CTFTrace trace = fInTrace;
         if (trace != null) {
             long adjustedStart = trace.timestampNanoToCycles(startTime);
@@ -99,13 +133,93 @@ public class CTFTraceWriter {
             }
 
             // Copy packets
+            List<CTFStreamOutputWriter> writers = new ArrayList<>();
             for (ICTFStream stream : trace.getStreams()) {
                 Set<CTFStreamInput> inputs = stream.getStreamInputs();
                 for (CTFStreamInput s : inputs) {
-                    CTFStreamOutputWriter streamOutputwriter = new CTFStreamOutputWriter(checkNotNull(s), out);
-                    streamOutputwriter.copyPackets(adjustedStart, adjustedEnd);
+                    writers.add(new CTFStreamOutputWriter(checkNotNull(s), out));
+                }
+            }
+            copyPackets(writers, adjustedStart, adjustedEnd, exact);
+        }
+    }
+
+    /**
+     * Write the streams, each in its own task, on at most one thread per
+     * processor. The streams are independent files, and copying a stream is
+     * mostly waiting for the file system.
+     */
+    private static void copyPackets(List<CTFStreamOutputWriter> writers, long startTime, long endTime, boolean exact) throws CTFException {
+        int nbThreads = Math.min(writers.size(), Runtime.getRuntime().availableProcessors());
+        if (nbThreads <= 1) {
+            for (CTFStreamOutputWriter writer : writers) {
+                writer.copyPackets(startTime, endTime, exact);
+            }
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(nbThreads, runnable -> {
+            Thread thread = new Thread(runnable, "CTF Trace Writer"); //$NON-NLS-1$
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (CTFStreamOutputWriter writer : writers) {
+                results.add(executor.submit(() -> {
+                    writer.copyPackets(startTime, endTime, exact);
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof CTFException) {
+                        throw (CTFException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    /* Only checked exception of the tasks is CTFException */
+                    throw (RuntimeException) cause;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CTFIOException("Interrupted while copying packets", e); //$NON-NLS-1$
                 }
             }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Get the size of the trace which would be written by
+     * {@link #copyPackets(long, long, String)} for a given time range, from
+     * the packet index, without writing it. This is the size of the metadata
+     * and of the packets to copy. With an exact cut, the trace written may be
+     * smaller.
+     *
+     * @param startTime
+     *            start time of packets to be included in output trace
+     * @param endTime
+     *            end time of packets to be included in the output trace
+     * @return the size of the output trace, in bytes
+     * @since 2.3
+     */
+    public long estimateSize(long startTime, long endTime) {
+        CTFTrace trace = fInTrace;
+        if (trace == null) {
+            return 0;
+        }
+        long adjustedStart = trace.timestampNanoToCycles(startTime);
+        long adjustedEnd = trace.timestampNanoToCycles(endTime);
+        long size = new File(trace.getTraceDirectory(), METADATA_FILENAME).length();
+        for (ICTFStream stream : trace.getStreams()) {
+            for (CTFStreamInput s : stream.getStreamInputs()) {
+                size += CTFStreamOutputWriter.estimateSize(checkNotNull(s), adjustedStart, adjustedEnd);
+            }
         }
+        return size;
     }
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2014 Ericsson, Ecole Polytechnique de Montreal and others
+ * Copyright (c) 2011, 2018 Ericsson, Ecole Polytechnique de Montreal and others
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -37,16 +37,22 @@ import org.antlr.runtime.CommonTokenStream;
 import org.antlr.runtime.RecognitionException;
 import org.antlr.runtime.tree.CommonTree;
 import org.antlr.runtime.tree.RewriteCardinalityException;
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.tracecompass.common.core.NonNullUtils;
 import org.eclipse.tracecompass.ctf.core.CTFException;
 import org.eclipse.tracecompass.ctf.parser.CTFLexer;
 import org.eclipse.tracecompass.ctf.parser.CTFParser;
 import org.eclipse.tracecompass.ctf.parser.CTFParser.parse_return;
+import org.eclipse.tracecompass.internal.ctf.core.Activator;
 import org.eclipse.tracecompass.internal.ctf.core.event.metadata.CtfAntlrException;
 import org.eclipse.tracecompass.internal.ctf.core.event.metadata.IOStructGen;
+import org.eclipse.tracecompass.internal.ctf.core.event.metadata.MetadataTreeFile;
 import org.eclipse.tracecompass.internal.ctf.core.event.metadata.ParseException;
 import org.eclipse.tracecompass.internal.ctf.core.trace.Utils;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 /**
  * The CTF trace metadata TSDL file
  *
@@ -78,6 +84,22 @@ public class Metadata {
      */
     private static final int METADATA_PACKET_HEADER_SIZE = 37;
 
+    /**
+     * Maximum size, in bytes, of the parsed metadata trees kept in memory
+     */
+    private static final long TREE_CACHE_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * Parsed metadata trees, in their binary form, by hash of the metadata
+     * text. The traces of a same session or of a same application usually
+     * have the same metadata, which is then only parsed once.
+     */
+    private static final Cache<String, byte[]> TREE_CACHE = CacheBuilder.newBuilder()
+            .maximumWeight(TREE_CACHE_SIZE)
+            .weigher((String hash, byte[] tree) -> tree.length)
+            .softValues()
+            .build();
+
     // ------------------------------------------------------------------------
     // Attributes
     // ------------------------------------------------------------------------
@@ -149,20 +171,15 @@ public class Metadata {
      */
     public void parseFile() throws CTFException {
 
-        /*
-         * Reader. It will contain a StringReader if we are using packet-based metadata
-         * and it will contain a FileReader if we have text-based metadata.
-         */
-
         File metadataFile = new File(getMetadataPath());
         ByteOrder byteOrder = CTFTrace.startsWithMagicNumber(metadataFile, Utils.TSDL_MAGIC);
         fDetectedByteOrder = byteOrder;
         try (FileInputStream fis = new FileInputStream(metadataFile);
-                FileChannel metadataFileChannel = fis.getChannel();
-                /* Check if metadata is packet-based, if not it is text based */
-                Reader metadataTextInput = ( byteOrder!= null ? readBinaryMetaData(metadataFileChannel) : new FileReader(metadataFile));) {
+                FileChannel metadataFileChannel = fis.getChannel();) {
 
-            readMetaDataText(metadataTextInput);
+            /* Check if metadata is packet-based, if not it is text based */
+            String metadataText = (byteOrder != null ? readBinaryMetaData(metadataFileChannel) : readTextMetaData(metadataFile));
+            readMetaDataText(metadataText);
 
         } catch (FileNotFoundException e) {
             throw new CTFException("Cannot find metadata file!", e); //$NON-NLS-1$
@@ -176,7 +193,7 @@ public class Metadata {
 
     }
 
-    private Reader readBinaryMetaData(FileChannel metadataFileChannel) throws CTFException {
+    private String readBinaryMetaData(FileChannel metadataFileChannel) throws CTFException {
         /* Create StringBuffer to receive metadata text */
         StringBuffer metadataText = new StringBuffer();
 
@@ -190,8 +207,20 @@ public class Metadata {
                     metadataText);
         }
 
-        /* Wrap the metadata string with a StringReader */
-        return new StringReader(metadataText.toString());
+        return metadataText.toString();
+    }
+
+    private static String readTextMetaData(File metadataFile) throws IOException {
+        StringBuilder metadataText = new StringBuilder((int) metadataFile.length());
+        char[] buffer = new char[8192];
+        try (Reader reader = new FileReader(metadataFile)) {
+            int read = reader.read(buffer);
+            while (read >= 0) {
+                metadataText.append(buffer, 0, read);
+                read = reader.read(buffer);
+            }
+        }
+        return metadataText.toString();
     }
 
     /**
@@ -238,9 +267,8 @@ public class Metadata {
      *             parsing a TSDL file
      */
     public void parseText(String data) throws CTFException {
-        Reader metadataTextInput = new StringReader(data);
         try {
-            readMetaDataText(metadataTextInput);
+            readMetaDataText(data);
         } catch (IOException | ParseException e) {
             throw new CTFException(e);
         } catch (RecognitionException | RewriteCardinalityException e) {
@@ -249,8 +277,8 @@ public class Metadata {
 
     }
 
-    private void readMetaDataText(Reader metadataTextInput) throws IOException, RecognitionException, ParseException {
-        CommonTree tree = createAST(metadataTextInput);
+    private void readMetaDataText(String metadataText) throws IOException, RecognitionException, ParseException {
+        CommonTree tree = getTree(metadataText);
 
         /* Generate IO structures (declarations) */
         fTreeParser = new IOStructGen(tree, NonNullUtils.checkNotNull(fTrace));
@@ -289,6 +317,47 @@ public class Metadata {
         fTreeParser.generateFragment();
     }
 
+    /**
+     * Get the tree of a metadata text. The text is only parsed if its tree is
+     * neither in the metadata cache file of the trace nor in memory, and the
+     * tree is then kept in both.
+     */
+    private CommonTree getTree(String metadataText) throws IOException, RecognitionException {
+        String hash = MetadataTreeFile.hash(metadataText);
+        File cacheFile = fTrace.getMetadataCacheFile();
+        byte[] data = (cacheFile != null ? MetadataTreeFile.read(cacheFile, hash) : null);
+        boolean inFile = (data != null);
+        if (data == null) {
+            data = TREE_CACHE.getIfPresent(hash);
+        }
+        CommonTree tree = null;
+        if (data != null) {
+            try {
+                tree = MetadataTreeFile.deserialize(data);
+            } catch (IOException e) {
+                /* Corrupted tree, parse the text again */
+                inFile = false;
+            }
+        }
+        if (tree == null) {
+            tree = createAST(new StringReader(metadataText));
+            data = MetadataTreeFile.serialize(tree);
+        }
+        TREE_CACHE.put(hash, data);
+        if (cacheFile != null && !inFile) {
+            writeTree(cacheFile, hash, data);
+        }
+        return tree;
+    }
+
+    private static void writeTree(File cacheFile, String hash, byte[] data) {
+        try {
+            MetadataTreeFile.write(cacheFile, hash, data);
+        } catch (IOException e) {
+            Activator.log(IStatus.WARNING, "Cannot write the metadata cache file " + cacheFile + ": " + e.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+
     private static CommonTree createAST(Reader metadataTextInput) throws IOException,
             RecognitionException {
         /* Create an ANTLR reader */
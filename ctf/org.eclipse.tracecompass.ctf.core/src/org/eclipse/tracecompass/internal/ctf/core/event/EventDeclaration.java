@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2014 Ericsson, Ecole Polytechnique de Montreal and others
+ * Copyright (c) 2011, 2018 Ericsson, Ecole Polytechnique de Montreal and others
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -140,6 +140,71 @@ public class EventDeclaration implements IEventDeclaration {
                 packetDescriptor);
     }
 
+    /**
+     * Creates an instance of EventDefinition with only the event header, for
+     * events whose contexts and payload are not needed. The contexts and the
+     * payload are skipped in the input without being read, which is only
+     * possible if they are of fixed size and if the timestamp is in the event
+     * header.
+     *
+     * @param streamEventContextDecl
+     *            event context
+     * @param packetDescriptor
+     *            current packet
+     * @param packetContext
+     *            packet context
+     * @param eventHeaderDef
+     *            The event header definition
+     * @param input
+     *            the bitbuffer input source
+     * @param prevTimestamp
+     *            The timestamp when the event was taken
+     * @return A new EventDefinition without contexts nor payload, or null if
+     *         the event cannot be skipped, in which case the input was not
+     *         moved and the event should be read with
+     *         {@link #createDefinition(StructDeclaration, ICTFPacketDescriptor, ICompositeDefinition, ICompositeDefinition, BitBuffer, long)}
+     * @throws CTFException
+     *             As a bitbuffer is used to read, it could have wrapped
+     *             IOExceptions.
+     */
+    public @Nullable EventDefinition createHeaderDefinition(@Nullable StructDeclaration streamEventContextDecl, ICTFPacketDescriptor packetDescriptor, ICompositeDefinition packetContext, ICompositeDefinition eventHeaderDef, @NonNull BitBuffer input, long prevTimestamp)
+            throws CTFException {
+        if (!isSkippable(streamEventContextDecl) || !isSkippable(fContext) || !isSkippable(fFields)) {
+            return null;
+        }
+        if (!(eventHeaderDef instanceof EventHeaderDefinition) &&
+                !(eventHeaderDef instanceof StructDefinition && ((StructDefinition) eventHeaderDef).lookupDefinition(CTFStrings.TIMESTAMP) instanceof IntegerDefinition)) {
+            /* The timestamp would be read from the context or the payload */
+            return null;
+        }
+        if (streamEventContextDecl != null) {
+            streamEventContextDecl.skip(input);
+        }
+        if (fContext != null) {
+            fContext.skip(input);
+        }
+        if (fFields != null) {
+            fFields.skip(input);
+        }
+        long timestamp = calculateTimestamp(eventHeaderDef, prevTimestamp, null, null);
+
+        int cpu = (int) packetDescriptor.getTargetId();
+        return new EventDefinition(
+                this,
+                cpu,
+                timestamp,
+                eventHeaderDef,
+                null,
+                null,
+                packetContext,
+                null,
+                packetDescriptor);
+    }
+
+    private static boolean isSkippable(@Nullable StructDeclaration declaration) {
+        return declaration == null || declaration.isFixedSize();
+    }
+
     private static long calculateTimestamp(@Nullable ICompositeDefinition eventHeaderDef, long prevTimestamp, StructDefinition eventPayload, StructDefinition eventContext) throws CTFIOException {
         long timestamp = 0;
         Definition def = null;
@@ -0,0 +1,306 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.ctf.core.event.metadata;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.tree.CommonTree;
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Compact binary form of the tree parsed from the TSDL metadata, and the file
+ * where it is saved, so that the metadata of a trace does not have to go
+ * through the lexer and parser again every time the trace is opened.
+ *
+ * The tree is keyed by a hash of the metadata text, so it is only used for
+ * the exact text it was parsed from. The texts of the nodes are stored once in
+ * a string table, followed by the nodes in pre-order, each with its type, text
+ * index, position and number of children.
+ */
+@NonNullByDefault
+public final class MetadataTreeFile {
+
+    private static final int MAGIC = 0x43544654;
+    private static final int VERSION = 2;
+
+    private static final String HASH_ALGORITHM = "SHA-256"; //$NON-NLS-1$
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray(); //$NON-NLS-1$
+
+    /** Text index of the nodes without a token, such as a nil root */
+    private static final int NO_TOKEN = 0;
+
+    private MetadataTreeFile() {
+    }
+
+    /**
+     * Compute the hash of a metadata text, which identifies its tree
+     *
+     * @param text
+     *            the TSDL metadata text
+     * @return the hash, as an hexadecimal string
+     */
+    public static String hash(String text) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            /* Every Java platform supports SHA-256 */
+            throw new IllegalStateException(e);
+        }
+        byte[] bytes = digest.digest(text.getBytes(StandardCharsets.UTF_8));
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Serialize a metadata tree
+     *
+     * @param tree
+     *            the tree returned by the parser
+     * @return the binary form of the tree
+     */
+    public static byte[] serialize(CommonTree tree) {
+        Map<String, Integer> textIndexes = new HashMap<>();
+        List<String> texts = new ArrayList<>();
+        ByteArrayOutputStream nodes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(nodes)) {
+            int count = writeNode(output, tree, textIndexes, texts);
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(nodes.size() + 16 * texts.size());
+            try (DataOutputStream header = new DataOutputStream(buffer)) {
+                writeVarInt(header, texts.size());
+                for (String text : texts) {
+                    writeText(header, text);
+                }
+                writeVarInt(header, count);
+                output.flush();
+                nodes.writeTo(header);
+            }
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            /* Only writes to memory */
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Deserialize a metadata tree
+     *
+     * @param data
+     *            the binary form of the tree
+     * @return a new tree, equivalent to the serialized one
+     * @throws IOException
+     *             if the data is not a valid tree
+     */
+    public static CommonTree deserialize(byte[] data) throws IOException {
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(data))) {
+            int nbTexts = readVarInt(input);
+            String[] texts = new String[nbTexts];
+            for (int i = 0; i < nbTexts; i++) {
+                texts[i] = readText(input);
+            }
+            int[] remaining = { readVarInt(input) };
+            CommonTree tree = readNode(input, texts, remaining);
+            if (remaining[0] != 0 || input.available() != 0) {
+                throw new IOException("Invalid metadata tree size"); //$NON-NLS-1$
+            }
+            return tree;
+        }
+    }
+
+    /**
+     * Read the serialized tree of a metadata file
+     *
+     * @param file
+     *            the metadata tree file
+     * @param hash
+     *            the hash of the metadata text
+     * @return the binary form of the tree, or null if the file does not exist,
+     *         is not valid or was saved for another metadata text
+     */
+    public static byte @Nullable [] read(File file, String hash) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(file.toPath()));
+                DataInputStream input = new DataInputStream(stream)) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION || !input.readUTF().equals(hash)) {
+                return null;
+            }
+            int length = input.readInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] data = new byte[length];
+            input.readFully(data);
+            return data;
+        } catch (IOException e) {
+            /* Truncated or corrupted file, the metadata will be parsed again */
+            return null;
+        }
+    }
+
+    /**
+     * Write the serialized tree of a metadata text to a file. The file is
+     * written next to the destination and then moved, so a reader never sees
+     * a partial file.
+     *
+     * @param file
+     *            the metadata tree file
+     * @param hash
+     *            the hash of the metadata text
+     * @param data
+     *            the binary form of the tree
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public static void write(File file, String hash, byte[] data) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent == null || (!parent.isDirectory() && !parent.mkdirs())) {
+            throw new IOException("Cannot create the directory of " + file); //$NON-NLS-1$
+        }
+        Path tmp = Files.createTempFile(parent.toPath(), file.getName(), ".tmp"); //$NON-NLS-1$
+        try {
+            try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(tmp));
+                    DataOutputStream output = new DataOutputStream(stream)) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeUTF(hash);
+                output.writeInt(data.length);
+                output.write(data);
+            }
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Helpers
+    // ------------------------------------------------------------------------
+
+    private static int writeNode(DataOutputStream output, CommonTree node, Map<String, Integer> textIndexes, List<String> texts) throws IOException {
+        Token token = node.getToken();
+        writeVarInt(output, node.getType());
+        if (token == null) {
+            writeVarInt(output, NO_TOKEN);
+        } else {
+            String text = String.valueOf(token.getText());
+            Integer index = textIndexes.get(text);
+            if (index == null) {
+                texts.add(text);
+                /* 0 is reserved for NO_TOKEN */
+                index = texts.size();
+                textIndexes.put(text, index);
+            }
+            writeVarInt(output, index);
+            writeVarInt(output, token.getLine());
+            writeVarInt(output, token.getCharPositionInLine() + 1);
+        }
+        int childCount = node.getChildCount();
+        writeVarInt(output, childCount);
+        int count = 1;
+        for (int i = 0; i < childCount; i++) {
+            count += writeNode(output, (CommonTree) node.getChild(i), textIndexes, texts);
+        }
+        return count;
+    }
+
+    private static CommonTree readNode(DataInputStream input, String[] texts, int[] remaining) throws IOException {
+        if (remaining[0]-- <= 0) {
+            throw new IOException("Invalid metadata tree size"); //$NON-NLS-1$
+        }
+        int type = readVarInt(input);
+        int textIndex = readVarInt(input);
+        CommonTree node;
+        if (textIndex == NO_TOKEN) {
+            node = new CommonTree();
+        } else {
+            if (textIndex > texts.length) {
+                throw new IOException("Invalid metadata tree text " + textIndex); //$NON-NLS-1$
+            }
+            CommonToken token = new CommonToken(type, texts[textIndex - 1]);
+            token.setLine(readVarInt(input));
+            token.setCharPositionInLine(readVarInt(input) - 1);
+            node = new CommonTree(token);
+        }
+        int childCount = readVarInt(input);
+        for (int i = 0; i < childCount; i++) {
+            node.addChild(readNode(input, texts, remaining));
+        }
+        return node;
+    }
+
+    /*
+     * The texts are not written with writeUTF(), which is limited to 64 KiB,
+     * while a string literal or an enumeration label can be longer.
+     */
+    private static void writeText(DataOutputStream output, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(output, bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readText(DataInputStream input) throws IOException {
+        int length = readVarInt(input);
+        if (length < 0 || length > input.available()) {
+            throw new IOException("Invalid metadata tree text length " + length); //$NON-NLS-1$
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarInt(DataOutputStream output, int value) throws IOException {
+        int v = value;
+        while ((v & ~0x7f) != 0) {
+            output.writeByte((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        output.writeByte(v);
+    }
+
+    private static int readVarInt(DataInputStream input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+            int b = input.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid metadata tree integer"); //$NON-NLS-1$
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2014 Ericsson
+ * Copyright (c) 2014, 2018 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -23,6 +23,7 @@ import org.eclipse.tracecompass.ctf.core.event.types.AbstractArrayDefinition;
 import org.eclipse.tracecompass.ctf.core.event.types.CompoundDeclaration;
 import org.eclipse.tracecompass.ctf.core.event.types.Definition;
 import org.eclipse.tracecompass.ctf.core.event.types.IDeclaration;
+import org.eclipse.tracecompass.ctf.core.event.types.IntegerDeclaration;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
@@ -111,6 +112,11 @@ public final class ArrayDeclaration extends CompoundDeclaration {
 
             return new ByteArrayDefinition(this, definitionScope, fieldName, data);
         }
+        if (fElemType instanceof IntegerDeclaration && !((IntegerDeclaration) fElemType).isCharacter()) {
+            long[] values = new long[fLength];
+            ((IntegerDeclaration) fElemType).readValues(input, values);
+            return new IntegerArrayDefinition(this, definitionScope, fieldName, values);
+        }
         @NonNull List<@NonNull Definition> definitions = read(input, definitionScope, fieldName);
         return new ArrayDefinition(this, definitionScope, fieldName, definitions);
     }
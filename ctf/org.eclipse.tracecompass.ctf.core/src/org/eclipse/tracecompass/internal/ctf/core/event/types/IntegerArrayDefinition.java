@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.ctf.core.event.types;
+
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.ctf.core.event.scope.IDefinitionScope;
+import org.eclipse.tracecompass.ctf.core.event.types.AbstractArrayDefinition;
+import org.eclipse.tracecompass.ctf.core.event.types.CompoundDeclaration;
+import org.eclipse.tracecompass.ctf.core.event.types.Definition;
+import org.eclipse.tracecompass.ctf.core.event.types.IntegerDeclaration;
+import org.eclipse.tracecompass.ctf.core.event.types.IntegerDefinition;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * An array or a sequence of integers, read in bulk. The definitions of the
+ * elements are only created if they are requested.
+ */
+@NonNullByDefault
+public final class IntegerArrayDefinition extends AbstractArrayDefinition {
+
+    private final long[] fValues;
+    private transient @Nullable List<Definition> fDefs;
+
+    /**
+     * Constructor
+     *
+     * @param declaration
+     *            the array or sequence declaration, whose elements are
+     *            integers
+     * @param definitionScope
+     *            the definition scope
+     * @param fieldName
+     *            the field name
+     * @param values
+     *            the values of the integers
+     */
+    public IntegerArrayDefinition(CompoundDeclaration declaration,
+            @Nullable IDefinitionScope definitionScope,
+            String fieldName,
+            long[] values) {
+        super(declaration, definitionScope, fieldName);
+        fValues = values;
+    }
+
+    @Override
+    public int getLength() {
+        return fValues.length;
+    }
+
+    @Override
+    public synchronized List<Definition> getDefinitions() {
+        List<Definition> defs = fDefs;
+        if (defs == null) {
+            IntegerDeclaration elemType = (IntegerDeclaration) ((CompoundDeclaration) getDeclaration()).getElementType();
+            ImmutableList.Builder<Definition> builder = new ImmutableList.Builder<>();
+            for (int i = 0; i < fValues.length; i++) {
+                String fieldName = getFieldName() + '[' + i + ']';
+                builder.add(new IntegerDefinition(elemType, getDefinitionScope(), fieldName, fValues[i]));
+            }
+            defs = builder.build();
+            fDefs = defs;
+        }
+        return defs;
+    }
+
+    /**
+     * Get the value of an integer of the array
+     *
+     * @param index
+     *            the index of the integer
+     * @return the value
+     */
+    public long getValue(int index) {
+        return fValues[index];
+    }
+
+    /**
+     * Get the values of the integers of the array
+     *
+     * @return a copy of the values
+     */
+    public long[] getValues() {
+        return fValues.clone();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        b.append('[');
+        Joiner.on(", ").appendTo(b, getDefinitions()); //$NON-NLS-1$
+        b.append(']');
+        return b.toString();
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2014 Ericsson, Ecole Polytechnique de Montreal and others
+ * Copyright (c) 2014, 2018 Ericsson, Ecole Polytechnique de Montreal and others
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -26,6 +26,7 @@ import org.eclipse.tracecompass.ctf.core.event.types.CompoundDeclaration;
 import org.eclipse.tracecompass.ctf.core.event.types.Definition;
 import org.eclipse.tracecompass.ctf.core.event.types.IDeclaration;
 import org.eclipse.tracecompass.ctf.core.event.types.IDefinition;
+import org.eclipse.tracecompass.ctf.core.event.types.IntegerDeclaration;
 import org.eclipse.tracecompass.ctf.core.event.types.IntegerDefinition;
 
 import com.google.common.collect.ArrayListMultimap;
@@ -124,6 +125,11 @@ public class SequenceDeclaration extends CompoundDeclaration {
             input.get(data);
             return new ByteArrayDefinition(this, definitionScope, fieldName, data);
         }
+        if (fElemType instanceof IntegerDeclaration && !((IntegerDeclaration) fElemType).isCharacter()) {
+            long[] values = new long[(int) length];
+            ((IntegerDeclaration) fElemType).readValues(input, values);
+            return new IntegerArrayDefinition(this, definitionScope, fieldName, values);
+        }
         Collection<String> collection = fPaths.get(fieldName);
         while (collection.size() < length) {
             fPaths.put(fieldName, fieldName + '[' + collection.size() + ']');
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2015 Ericsson
+ * Copyright (c) 2015, 2018 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -12,6 +12,7 @@
 
 package org.eclipse.tracecompass.internal.ctf.core.trace;
 
+import java.util.BitSet;
 import java.util.List;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
@@ -75,6 +76,8 @@ public final class CTFPacketReader implements IPacketReader, IDefinitionScope {
 
     private @Nullable ICompositeDefinition fEventHeader;
 
+    private @Nullable BitSet fSkippedEvents = null;
+
     /**
      * Constructor
      *
@@ -108,6 +111,19 @@ public final class CTFPacketReader implements IPacketReader, IDefinitionScope {
         fTracePacketHeader = packetHeader;
     }
 
+    /**
+     * Set the types of events whose contexts and payload are not needed. These
+     * events are still returned, with their header only, so that they keep
+     * their rank, but their contexts and payload are skipped without being
+     * read when their layout allows it.
+     *
+     * @param skippedEvents
+     *            the ids of the events to skip, or null to read all the events
+     */
+    public void setSkippedEvents(@Nullable BitSet skippedEvents) {
+        fSkippedEvents = skippedEvents;
+    }
+
     @Override
     public int getCPU() {
         return (int) fPacketContext.getTargetId();
@@ -184,7 +200,14 @@ public final class CTFPacketReader implements IPacketReader, IDefinitionScope {
             throw new CTFIOException("Invalid event id : " + eventID); //$NON-NLS-1$
         }
         EventDeclaration declaration = (EventDeclaration) eventDeclaration;
-        EventDefinition eventDef = declaration.createDefinition(fStreamContext, fPacketContext, fTracePacketHeader, fEventHeader, fInput, fLastTimestamp);
+        EventDefinition eventDef = null;
+        BitSet skippedEvents = fSkippedEvents;
+        if (skippedEvents != null && skippedEvents.get(eventID)) {
+            eventDef = declaration.createHeaderDefinition(fStreamContext, fPacketContext, fTracePacketHeader, fEventHeader, fInput, fLastTimestamp);
+        }
+        if (eventDef == null) {
+            eventDef = declaration.createDefinition(fStreamContext, fPacketContext, fTracePacketHeader, fEventHeader, fInput, fLastTimestamp);
+        }
         fLastTimestamp = eventDef.getTimestamp();
         /*
          * Set the event timestamp using the timestamp calculated by updateTimestamp.
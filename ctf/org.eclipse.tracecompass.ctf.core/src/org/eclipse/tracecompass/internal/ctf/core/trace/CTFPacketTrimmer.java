@@ -0,0 +1,293 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.ctf.core.trace;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.ctf.core.CTFException;
+import org.eclipse.tracecompass.ctf.core.CTFStrings;
+import org.eclipse.tracecompass.ctf.core.event.IEventDeclaration;
+import org.eclipse.tracecompass.ctf.core.event.io.BitBuffer;
+import org.eclipse.tracecompass.ctf.core.event.scope.ILexicalScope;
+import org.eclipse.tracecompass.ctf.core.event.types.CompoundDeclaration;
+import org.eclipse.tracecompass.ctf.core.event.types.IDeclaration;
+import org.eclipse.tracecompass.ctf.core.event.types.IntegerDeclaration;
+import org.eclipse.tracecompass.ctf.core.event.types.StructDeclaration;
+import org.eclipse.tracecompass.ctf.core.event.types.VariantDeclaration;
+import org.eclipse.tracecompass.ctf.core.trace.CTFIOException;
+import org.eclipse.tracecompass.ctf.core.trace.CTFStreamInput;
+import org.eclipse.tracecompass.ctf.core.trace.CTFTrace;
+import org.eclipse.tracecompass.ctf.core.trace.ICTFPacketDescriptor;
+import org.eclipse.tracecompass.ctf.core.trace.ICTFStream;
+import org.eclipse.tracecompass.internal.ctf.core.SafeMappedByteBuffer;
+import org.eclipse.tracecompass.internal.ctf.core.event.EventDefinition;
+
+/**
+ * Cuts the events outside of a time range from a packet, for the first and
+ * last packets of a trimmed trace.
+ *
+ * The events after the end of the range are removed by reducing the content
+ * and packet sizes of the packet context. The events before the start of the
+ * range are removed by moving the following events to the start of the
+ * payload, which is only possible when this keeps every field of the events
+ * at the same alignment. The events are cut at the last event boundary where
+ * this is the case, so a few events before the start of the range may remain
+ * in traces with aligned fields. The timestamp_begin of the packet is set to
+ * the timestamp of the last removed event, so that the compact timestamps of
+ * the remaining events are still extended from the same value.
+ *
+ * The packet is copied as is when the fields of its context which need to be
+ * changed are not byte-aligned integers.
+ */
+@NonNullByDefault
+public final class CTFPacketTrimmer {
+
+    private final ICTFStream fStream;
+    private final CTFTrace fTrace;
+    /** Largest alignment of the fields of the events, in bits */
+    private final long fEventAlignment;
+
+    /**
+     * Constructor
+     *
+     * @param streamInput
+     *            the stream input whose packets are trimmed
+     */
+    public CTFPacketTrimmer(CTFStreamInput streamInput) {
+        fStream = streamInput.getStream();
+        fTrace = fStream.getTrace();
+        long alignment = Math.max(Byte.SIZE, getMaximumAlignment(fStream.getEventHeaderDeclaration()));
+        alignment = Math.max(alignment, getMaximumAlignment(fStream.getEventContextDecl()));
+        for (IEventDeclaration declaration : fStream.getEventDeclarations()) {
+            if (declaration != null) {
+                alignment = Math.max(alignment, getMaximumAlignment(declaration.getContext()));
+                alignment = Math.max(alignment, getMaximumAlignment(declaration.getFields()));
+            }
+        }
+        fEventAlignment = alignment;
+    }
+
+    /**
+     * Trim a packet to the events of a time range
+     *
+     * @param source
+     *            the file channel of the stream input
+     * @param packet
+     *            the packet to trim
+     * @param startTime
+     *            the start of the range, in cycles
+     * @param endTime
+     *            the end of the range, in cycles
+     * @return the trimmed packet, an empty buffer if none of the events of the
+     *         packet are in the range, or null if the whole packet must be
+     *         copied
+     * @throws CTFException
+     *             if the packet cannot be read
+     */
+    public @Nullable ByteBuffer trim(FileChannel source, ICTFPacketDescriptor packet, long startTime, long endTime) throws CTFException {
+        if (packet.getTimestampBegin() >= startTime && packet.getTimestampEnd() <= endTime) {
+            return null;
+        }
+        ByteBuffer buffer;
+        try {
+            buffer = SafeMappedByteBuffer.map(source, MapMode.READ_ONLY, packet.getOffsetBytes(), packet.getPacketSizeBits() / Byte.SIZE);
+        } catch (IOException e) {
+            throw new CTFIOException(e.getMessage(), e);
+        }
+        if (buffer == null) {
+            throw new CTFIOException("Failed to allocate mapped byte buffer"); //$NON-NLS-1$
+        }
+        BitBuffer input = new BitBuffer(buffer, fTrace.getByteOrder());
+        Map<String, ContextField> fields = getContextFields(input, packet);
+        ContextField contentSize = fields.get(CTFStrings.CONTENT_SIZE);
+        ContextField packetSize = fields.get(CTFStrings.PACKET_SIZE);
+        if (contentSize == null || packetSize == null) {
+            return null;
+        }
+
+        /* Find the boundaries of the events to keep */
+        long payloadStart = packet.getPayloadStartBits();
+        long cutStart = payloadStart;
+        long cutTimestamp = packet.getTimestampBegin();
+        long keptEnd = payloadStart;
+        long lastKeptTimestamp = packet.getTimestampEnd();
+        boolean kept = false;
+        boolean cutEnd = false;
+        input.position(payloadStart);
+        CTFPacketReader reader = new CTFPacketReader(input, packet, fStream.getEventDeclarations(), fStream.getEventHeaderDeclaration(),
+                fStream.getEventContextDecl(), fTrace.getPacketHeaderDef(), fTrace);
+        while (input.position() < packet.getContentSizeBits()) {
+            EventDefinition event = reader.readNextEvent();
+            long timestamp = event.getTimestamp();
+            long end = input.position();
+            if (timestamp < startTime) {
+                if ((end - payloadStart) % fEventAlignment == 0) {
+                    cutStart = end;
+                    cutTimestamp = timestamp;
+                }
+            } else if (timestamp <= endTime) {
+                kept = true;
+                keptEnd = end;
+                lastKeptTimestamp = timestamp;
+            } else {
+                cutEnd = true;
+                break;
+            }
+        }
+        if (!kept) {
+            return ByteBuffer.allocate(0);
+        }
+
+        ContextField timestampBegin = fields.get(CTFStrings.TIMESTAMP_BEGIN);
+        if (timestampBegin == null || !timestampBegin.fits(cutTimestamp) || payloadStart % Byte.SIZE != 0) {
+            cutStart = payloadStart;
+        }
+        long removed = cutStart - payloadStart;
+        if (removed == 0 && !cutEnd) {
+            return null;
+        }
+        long newContentSize = keptEnd - removed;
+        long newPacketBytes = (newContentSize + Byte.SIZE - 1) / Byte.SIZE;
+        if (!contentSize.fits(newContentSize) || !packetSize.fits(newPacketBytes * Byte.SIZE)) {
+            return null;
+        }
+
+        /* Copy the headers and the remaining events */
+        int headerBytes = (int) (payloadStart / Byte.SIZE);
+        ByteBuffer packetBytes = buffer.duplicate();
+        packetBytes.clear();
+        ByteBuffer trimmed = ByteBuffer.allocate((int) newPacketBytes);
+        packetBytes.limit(headerBytes);
+        trimmed.put(packetBytes);
+        packetBytes.limit((int) ((keptEnd + Byte.SIZE - 1) / Byte.SIZE));
+        packetBytes.position((int) (cutStart / Byte.SIZE));
+        trimmed.put(packetBytes);
+
+        contentSize.write(trimmed, newContentSize);
+        packetSize.write(trimmed, newPacketBytes * Byte.SIZE);
+        if (removed != 0 && timestampBegin != null) {
+            timestampBegin.write(trimmed, cutTimestamp);
+        }
+        ContextField timestampEnd = fields.get(CTFStrings.TIMESTAMP_END);
+        if (cutEnd && timestampEnd != null && timestampEnd.fits(lastKeptTimestamp)) {
+            timestampEnd.write(trimmed, lastKeptTimestamp);
+        }
+        trimmed.flip();
+        return trimmed;
+    }
+
+    /**
+     * Get the position of the integer fields of the packet context which can
+     * be rewritten in place
+     */
+    private Map<String, ContextField> getContextFields(BitBuffer input, ICTFPacketDescriptor packet) throws CTFException {
+        Map<String, ContextField> fields = new HashMap<>();
+        StructDeclaration context = fStream.getPacketContextDecl();
+        if (context == null) {
+            return fields;
+        }
+        StructDeclaration header = fTrace.getPacketHeader();
+        input.position(0);
+        if (header != null) {
+            header.createDefinition(fTrace, ILexicalScope.TRACE_PACKET_HEADER, input);
+        }
+        long position = align(input.position(), context.getAlignment());
+        for (String name : context.getFieldsList()) {
+            IDeclaration declaration = context.getField(name);
+            if (!(declaration instanceof IntegerDeclaration)) {
+                return new HashMap<>();
+            }
+            IntegerDeclaration integer = (IntegerDeclaration) declaration;
+            position = align(position, integer.getAlignment());
+            if (position % Byte.SIZE == 0 && integer.getLength() % Byte.SIZE == 0) {
+                fields.put(name, new ContextField((int) (position / Byte.SIZE), integer));
+            }
+            position += integer.getLength();
+        }
+        if (position != packet.getPayloadStartBits()) {
+            /* Padding after the context, the layout is not the expected one */
+            return new HashMap<>();
+        }
+        return fields;
+    }
+
+    private static long align(long position, long alignment) {
+        long mask = Math.max(alignment, 1) - 1;
+        return (position + mask) & ~mask;
+    }
+
+    /**
+     * Get the largest alignment of a declaration and of the declarations it
+     * contains
+     */
+    private static long getMaximumAlignment(@Nullable IDeclaration declaration) {
+        if (declaration == null) {
+            return 1;
+        }
+        long alignment = declaration.getAlignment();
+        if (declaration instanceof StructDeclaration) {
+            StructDeclaration struct = (StructDeclaration) declaration;
+            for (String name : struct.getFieldsList()) {
+                alignment = Math.max(alignment, getMaximumAlignment(struct.getField(name)));
+            }
+        } else if (declaration instanceof VariantDeclaration) {
+            for (IDeclaration field : ((VariantDeclaration) declaration).getFields().values()) {
+                alignment = Math.max(alignment, getMaximumAlignment(field));
+            }
+        } else if (declaration instanceof CompoundDeclaration) {
+            alignment = Math.max(alignment, getMaximumAlignment(((CompoundDeclaration) declaration).getElementType()));
+        }
+        return alignment;
+    }
+
+    /**
+     * A byte-aligned integer of the packet context
+     */
+    private static final class ContextField {
+        private final int fOffset;
+        private final int fLength;
+        private final ByteOrder fByteOrder;
+        private final boolean fSigned;
+
+        public ContextField(int offset, IntegerDeclaration declaration) {
+            fOffset = offset;
+            fLength = declaration.getLength();
+            fByteOrder = declaration.getByteOrder();
+            fSigned = declaration.isSigned();
+        }
+
+        public boolean fits(long value) {
+            if (fLength >= Long.SIZE) {
+                return fLength == Long.SIZE;
+            }
+            if (fSigned) {
+                long limit = 1L << (fLength - 1);
+                return value >= -limit && value < limit;
+            }
+            return value >= 0 && value < (1L << fLength);
+        }
+
+        public void write(ByteBuffer buffer, long value) {
+            int nbBytes = fLength / Byte.SIZE;
+            for (int i = 0; i < nbBytes; i++) {
+                int index = (fByteOrder == ByteOrder.LITTLE_ENDIAN) ? fOffset + i : fOffset + nbBytes - 1 - i;
+                buffer.put(index, (byte) (value >>> (i * Byte.SIZE)));
+            }
+        }
+    }
+}
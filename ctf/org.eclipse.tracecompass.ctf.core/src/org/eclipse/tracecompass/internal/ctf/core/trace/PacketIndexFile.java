@@ -0,0 +1,287 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.ctf.core.trace;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.ctf.core.trace.ICTFPacketDescriptor;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Side-car file containing the packet index of a stream file, so that the
+ * packet headers and contexts do not have to be read again every time the
+ * trace is opened.
+ *
+ * The file starts with a header containing the size and modification time of
+ * the stream file when it was indexed, followed by the packet descriptors in
+ * the order of the index. New packets of a growing stream file are appended
+ * after the existing ones, and the header is updated last, so an interrupted
+ * write only loses the new packets.
+ */
+@NonNullByDefault
+public final class PacketIndexFile {
+
+    private static final int MAGIC = 0x43544658;
+    private static final int VERSION = 1;
+
+    /*
+     * Magic and version (int), stream size and modification time (long), lost
+     * events so far (long), number of entries (int), end of the entries (long)
+     */
+    private static final int HEADER_SIZE = 2 * Integer.BYTES + 3 * Long.BYTES + Integer.BYTES + Long.BYTES;
+
+    private static final byte NULL_VALUE = 0;
+    private static final byte LONG_VALUE = 1;
+    private static final byte DOUBLE_VALUE = 2;
+    private static final byte STRING_VALUE = 3;
+    private static final byte ENUM_VALUE = 4;
+
+    private final List<ICTFPacketDescriptor> fEntries;
+    private final long fStreamSize;
+    private final long fStreamModified;
+    private final long fLostSoFar;
+
+    private PacketIndexFile(List<ICTFPacketDescriptor> entries, long streamSize, long streamModified, long lostSoFar) {
+        fEntries = entries;
+        fStreamSize = streamSize;
+        fStreamModified = streamModified;
+        fLostSoFar = lostSoFar;
+    }
+
+    /**
+     * Get the packet descriptors read from the file
+     *
+     * @return the packet descriptors, in the order of the index
+     */
+    public List<ICTFPacketDescriptor> getEntries() {
+        return fEntries;
+    }
+
+    /**
+     * Get the size of the stream file when it was indexed
+     *
+     * @return the size in bytes
+     */
+    public long getStreamSize() {
+        return fStreamSize;
+    }
+
+    /**
+     * Get the modification time of the stream file when it was indexed
+     *
+     * @return the modification time, as returned by {@link File#lastModified()}
+     */
+    public long getStreamModified() {
+        return fStreamModified;
+    }
+
+    /**
+     * Get the total number of lost events in the indexed packets
+     *
+     * @return the number of lost events
+     */
+    public long getLostSoFar() {
+        return fLostSoFar;
+    }
+
+    /**
+     * Read a packet index file
+     *
+     * @param file
+     *            the packet index file
+     * @return the contents of the file, or null if it does not exist or is not
+     *         a valid packet index file of this version
+     */
+    public static @Nullable PacketIndexFile read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(file.toPath()));
+                DataInputStream input = new DataInputStream(stream)) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                return null;
+            }
+            long streamSize = input.readLong();
+            long streamModified = input.readLong();
+            long lostSoFar = input.readLong();
+            int count = input.readInt();
+            input.readLong();
+            if (count < 0) {
+                return null;
+            }
+            List<ICTFPacketDescriptor> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                entries.add(readEntry(input));
+            }
+            return new PacketIndexFile(Collections.unmodifiableList(entries), streamSize, streamModified, lostSoFar);
+        } catch (IOException e) {
+            /* Truncated or corrupted file, the stream will be indexed again */
+            return null;
+        }
+    }
+
+    /**
+     * Write the new entries of an index to a packet index file. If the file
+     * already contains the first entries of the index, only the following ones
+     * are appended, otherwise the file is written again.
+     *
+     * @param file
+     *            the packet index file
+     * @param streamFile
+     *            the indexed stream file
+     * @param index
+     *            the packet index of the stream file
+     * @param nbWritten
+     *            the number of entries of the index already in the file
+     * @param lostSoFar
+     *            the total number of lost events in the indexed packets
+     * @return false if the entries cannot be written in a packet index file,
+     *         because some packet attributes are of an unsupported type
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public static boolean write(File file, File streamFile, StreamInputPacketIndex index, int nbWritten, long lostSoFar) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create the directory of " + file); //$NON-NLS-1$
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) { //$NON-NLS-1$
+            int from = 0;
+            long dataEnd = HEADER_SIZE;
+            if (nbWritten > 0 && raf.length() >= HEADER_SIZE) {
+                raf.seek(HEADER_SIZE - Integer.BYTES - Long.BYTES);
+                if (raf.readInt() == nbWritten) {
+                    from = nbWritten;
+                    dataEnd = raf.readLong();
+                }
+            }
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            try (DataOutputStream output = new DataOutputStream(buffer)) {
+                for (int i = from; i < index.size(); i++) {
+                    if (!writeEntry(output, index.getElement(i))) {
+                        raf.setLength(0);
+                        return false;
+                    }
+                }
+            }
+            if (from == 0) {
+                raf.setLength(0);
+            }
+            raf.seek(dataEnd);
+            raf.write(buffer.toByteArray());
+            long newDataEnd = raf.getFilePointer();
+            /* Update the header once the entries are on disk */
+            raf.getFD().sync();
+            raf.seek(0);
+            raf.writeInt(MAGIC);
+            raf.writeInt(VERSION);
+            raf.writeLong(streamFile.length());
+            raf.writeLong(streamFile.lastModified());
+            raf.writeLong(lostSoFar);
+            raf.writeInt(index.size());
+            raf.writeLong(newDataEnd);
+        }
+        return true;
+    }
+
+    private static ICTFPacketDescriptor readEntry(DataInputStream input) throws IOException {
+        long offsetBits = input.readLong();
+        long packetSizeBits = input.readLong();
+        long contentSizeBits = input.readLong();
+        long payloadStartBits = input.readLong();
+        long timestampBegin = input.readLong();
+        long timestampEnd = input.readLong();
+        long lostEvents = input.readLong();
+        long targetId = input.readLong();
+        String target = input.readBoolean() ? input.readUTF() : null;
+        int nbAttributes = input.readInt();
+        ImmutableMap.Builder<String, Object> attributes = ImmutableMap.builder();
+        for (int i = 0; i < nbAttributes; i++) {
+            String name = input.readUTF();
+            byte type = input.readByte();
+            switch (type) {
+            case LONG_VALUE:
+                attributes.put(name, input.readLong());
+                break;
+            case DOUBLE_VALUE:
+                attributes.put(name, input.readDouble());
+                break;
+            case STRING_VALUE:
+                attributes.put(name, input.readUTF());
+                break;
+            case ENUM_VALUE:
+                String label = input.readUTF();
+                attributes.put(name, new AbstractMap.SimpleImmutableEntry<>(label, input.readLong()));
+                break;
+            case NULL_VALUE:
+            default:
+                throw new IOException("Invalid packet attribute type " + type); //$NON-NLS-1$
+            }
+        }
+        return new StreamInputPacketIndexEntry(offsetBits, packetSizeBits, contentSizeBits, payloadStartBits,
+                timestampBegin, timestampEnd, lostEvents, target, targetId, attributes.build());
+    }
+
+    private static boolean writeEntry(DataOutputStream output, ICTFPacketDescriptor entry) throws IOException {
+        output.writeLong(entry.getOffsetBits());
+        output.writeLong(entry.getPacketSizeBits());
+        output.writeLong(entry.getContentSizeBits());
+        output.writeLong(entry.getPayloadStartBits());
+        output.writeLong(entry.getTimestampBegin());
+        output.writeLong(entry.getTimestampEnd());
+        output.writeLong(entry.getLostEvents());
+        output.writeLong(entry.getTargetId());
+        String target = entry.getTarget();
+        output.writeBoolean(target != null);
+        if (target != null) {
+            output.writeUTF(target);
+        }
+        Map<String, Object> attributes = entry.getAttributes();
+        output.writeInt(attributes.size());
+        for (Entry<String, Object> attribute : attributes.entrySet()) {
+            output.writeUTF(attribute.getKey());
+            Object value = attribute.getValue();
+            if (value instanceof Long) {
+                output.writeByte(LONG_VALUE);
+                output.writeLong((Long) value);
+            } else if (value instanceof Double) {
+                output.writeByte(DOUBLE_VALUE);
+                output.writeDouble((Double) value);
+            } else if (value instanceof String) {
+                output.writeByte(STRING_VALUE);
+                output.writeUTF((String) value);
+            } else if (value instanceof Entry && ((Entry<?, ?>) value).getKey() instanceof String && ((Entry<?, ?>) value).getValue() instanceof Long) {
+                output.writeByte(ENUM_VALUE);
+                output.writeUTF((String) ((Entry<?, ?>) value).getKey());
+                output.writeLong((Long) ((Entry<?, ?>) value).getValue());
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+}
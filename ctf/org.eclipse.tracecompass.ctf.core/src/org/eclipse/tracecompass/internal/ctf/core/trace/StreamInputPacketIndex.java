@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2014 Ericsson, Ecole Polytechnique de Montreal and others
+ * Copyright (c) 2011, 2018 Ericsson, Ecole Polytechnique de Montreal and others
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -32,7 +32,8 @@ import org.eclipse.tracecompass.internal.ctf.core.Activator;
  * <b><u>StreamInputPacketIndex</u></b>
  * <p>
  * This is a data structure containing entries, you may append to this and read
- * it. It is not thread safe.
+ * it. It can be read while it is being built, for example by the stream readers
+ * decoding ahead in other threads.
  */
 public class StreamInputPacketIndex {
 
@@ -57,7 +58,7 @@ public class StreamInputPacketIndex {
      *
      * @return the number of elements in this data structure
      */
-    public int size() {
+    public synchronized int size() {
         return fEntries.size();
     }
 
@@ -66,7 +67,7 @@ public class StreamInputPacketIndex {
      *
      * @return {@code true} if this data structure contains no elements
      */
-    public boolean isEmpty() {
+    public synchronized boolean isEmpty() {
         return fEntries.isEmpty();
     }
 
@@ -121,7 +122,7 @@ public class StreamInputPacketIndex {
      *            The timestamp to look for.
      * @return The index of the desired packet
      */
-    public int search(final long timestamp) {
+    public synchronized int search(final long timestamp) {
         /*
          * Search using binary search.
          *
@@ -155,7 +156,7 @@ public class StreamInputPacketIndex {
      *
      * @return the last element in the index
      */
-    public ICTFPacketDescriptor lastElement() {
+    public synchronized ICTFPacketDescriptor lastElement() {
         return fEntries.get(fEntries.size() - 1);
     }
 
@@ -169,7 +170,7 @@ public class StreamInputPacketIndex {
      *             if the index is out of range (
      *             {@code index < 0 || index >= size()})
      */
-    public ICTFPacketDescriptor getElement(int index) {
+    public synchronized ICTFPacketDescriptor getElement(int index) {
         return fEntries.get(index);
     }
 
@@ -199,7 +200,7 @@ public class StreamInputPacketIndex {
      *             not permit null elements (
      *             <a href="Collection.html#optional-restrictions">optional</a>)
      */
-    public int indexOf(ICTFPacketDescriptor element) {
+    public synchronized int indexOf(ICTFPacketDescriptor element) {
         int indexOf = -1;
         if (element != null) {
             indexOf = Collections.binarySearch(fEntries, element, Comparator.comparingLong(ICTFPacketDescriptor::getOffsetBytes));
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2015 Ericsson, Ecole Polytechnique de Montreal and others
+ * Copyright (c) 2011, 2018 Ericsson, Ecole Polytechnique de Montreal and others
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -200,6 +200,45 @@ public class StreamInputPacketIndexEntry implements ICTFPacketDescriptor {
         fLostEvents = entryToAdd.getLostEvents();
     }
 
+    /**
+     * Constructor from the values of an entry, as saved in a packet index file
+     *
+     * @param offsetBits
+     *            offset in the file of the start of the packet in bits
+     * @param packetSizeBits
+     *            packet size in bits
+     * @param contentSizeBits
+     *            content size in bits
+     * @param payloadStartBits
+     *            end of the packet headers, relative to the packet, in bits
+     * @param timestampBegin
+     *            begin timestamp
+     * @param timestampEnd
+     *            end timestamp
+     * @param lostEvents
+     *            number of events lost in this packet
+     * @param target
+     *            the target being traced
+     * @param targetId
+     *            the number of the target being traced
+     * @param attributes
+     *            the attributes of the packet context
+     */
+    public StreamInputPacketIndexEntry(long offsetBits, long packetSizeBits, long contentSizeBits, long payloadStartBits,
+            long timestampBegin, long timestampEnd, long lostEvents, String target, long targetId, @NonNull Map<String, Object> attributes) {
+        fEndPacketHeaderBits = payloadStartBits;
+        fAttributes = attributes;
+        fContentSizeBits = contentSizeBits;
+        fPacketSizeBits = packetSizeBits;
+        fTimestampBegin = timestampBegin;
+        fTimestampEnd = timestampEnd;
+        fOffsetBits = offsetBits;
+        fOffsetBytes = offsetBits / Byte.SIZE;
+        fTarget = target;
+        fTargetID = targetId;
+        fLostEvents = lostEvents;
+    }
+
     private static @NonNull Map<String, Object> computeAttributeMap(StructDefinition streamPacketContextDef) {
         Builder<String, Object> attributeBuilder = ImmutableMap.<String, Object> builder();
         for (String field : streamPacketContextDef.getDeclaration().getFieldsList()) {
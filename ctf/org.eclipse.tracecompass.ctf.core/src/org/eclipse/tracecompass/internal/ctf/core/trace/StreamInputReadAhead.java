@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.ctf.core.trace;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.ctf.core.CTFException;
+import org.eclipse.tracecompass.ctf.core.event.IEventDefinition;
+
+/**
+ * Bounded buffer of the events of a stream input, decoded ahead of the reader
+ * by a worker thread.
+ *
+ * The decoding tasks of all the streams share a pool with one thread per
+ * processor. A task decodes events until the buffer is full and then returns,
+ * so a stream that is not consumed does not hold a thread. It is submitted
+ * again when the reader has taken enough events from the buffer. The events
+ * are returned in the order of the stream, the order between the streams is
+ * still decided by the trace reader.
+ */
+@NonNullByDefault
+public final class StreamInputReadAhead implements Runnable {
+
+    /**
+     * Decoder of the events of a stream input, called by the worker threads
+     */
+    @FunctionalInterface
+    public interface IEventDecoder {
+        /**
+         * Decode the next event of the stream
+         *
+         * @return the event, or null if there are no more events for now
+         * @throws CTFException
+         *             if the event cannot be read
+         */
+        @Nullable IEventDefinition decode() throws CTFException;
+    }
+
+    /** Default number of events decoded ahead for each stream */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /** Maximum number of events decoded before adding them to the buffer */
+    private static final int BATCH_SIZE = 64;
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+        Thread thread = new Thread(runnable, "CTF Read-Ahead Worker"); //$NON-NLS-1$
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final IEventDecoder fDecoder;
+    private final Executor fExecutor;
+    private final int fCapacity;
+
+    /* All the following fields are guarded by this */
+    private final ArrayDeque<IEventDefinition> fBuffer;
+    /** A decoding task is submitted or running */
+    private boolean fRunning = false;
+    /** The decoder reached the end of the available events */
+    private boolean fEnd = false;
+    private @Nullable CTFException fError = null;
+    /** The decoding task must stop as soon as possible */
+    private boolean fStopping = false;
+
+    /**
+     * Constructor, using the shared pool of worker threads
+     *
+     * @param decoder
+     *            the decoder of the events of the stream
+     * @param capacity
+     *            the maximum number of events decoded ahead
+     */
+    public StreamInputReadAhead(IEventDecoder decoder, int capacity) {
+        this(decoder, capacity, EXECUTOR);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param decoder
+     *            the decoder of the events of the stream
+     * @param capacity
+     *            the maximum number of events decoded ahead
+     * @param executor
+     *            the executor running the decoding tasks
+     */
+    public StreamInputReadAhead(IEventDecoder decoder, int capacity, Executor executor) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity); //$NON-NLS-1$
+        }
+        fDecoder = decoder;
+        fCapacity = capacity;
+        fExecutor = executor;
+        fBuffer = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * Get the next event of the stream, waiting for it to be decoded if needed
+     *
+     * @return the next event, or null if there are no more events for now. In
+     *         that case, the next call will try to decode events again, for
+     *         streams that are still growing.
+     * @throws CTFException
+     *             if the decoder failed to read the event
+     */
+    public synchronized @Nullable IEventDefinition next() throws CTFException {
+        boolean interrupted = false;
+        try {
+            while (fBuffer.isEmpty() && !fEnd) {
+                schedule();
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        IEventDefinition event = fBuffer.poll();
+        if (event != null) {
+            /* Refill once half of the buffer is consumed */
+            if (!fEnd && fBuffer.size() <= fCapacity / 2) {
+                schedule();
+            }
+            return event;
+        }
+        /* End of the available events, start again on the next call */
+        fEnd = false;
+        CTFException error = fError;
+        fError = null;
+        if (error != null) {
+            throw error;
+        }
+        return null;
+    }
+
+    /**
+     * Stop the decoding task and discard the events decoded ahead. Returns once
+     * the decoder is not used by the worker threads anymore, so that the reader
+     * can change its position.
+     */
+    public synchronized void stop() {
+        fStopping = true;
+        boolean interrupted = false;
+        while (fRunning) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        fStopping = false;
+        fBuffer.clear();
+        fEnd = false;
+        fError = null;
+    }
+
+    private void schedule() {
+        if (fRunning) {
+            return;
+        }
+        fRunning = true;
+        try {
+            fExecutor.execute(this);
+        } catch (RejectedExecutionException e) {
+            /* Decode in the reader's thread instead */
+            run();
+        }
+    }
+
+    @Override
+    public void run() {
+        List<IEventDefinition> batch = new ArrayList<>(BATCH_SIZE);
+        while (true) {
+            int toDecode;
+            synchronized (this) {
+                toDecode = Math.min(BATCH_SIZE, fCapacity - fBuffer.size());
+                if (fStopping || toDecode <= 0) {
+                    fRunning = false;
+                    notifyAll();
+                    return;
+                }
+            }
+            boolean end = false;
+            CTFException error = null;
+            try {
+                while (batch.size() < toDecode) {
+                    IEventDefinition event = fDecoder.decode();
+                    if (event == null) {
+                        end = true;
+                        break;
+                    }
+                    batch.add(event);
+                }
+            } catch (CTFException e) {
+                end = true;
+                error = e;
+            } catch (RuntimeException e) {
+                end = true;
+                error = new CTFException(e.getMessage(), e);
+            }
+            synchronized (this) {
+                if (!fStopping) {
+                    fBuffer.addAll(batch);
+                    fEnd = end;
+                    fError = error;
+                }
+                batch.clear();
+                notifyAll();
+                if (end || fStopping) {
+                    fRunning = false;
+                    return;
+                }
+            }
+        }
+    }
+}
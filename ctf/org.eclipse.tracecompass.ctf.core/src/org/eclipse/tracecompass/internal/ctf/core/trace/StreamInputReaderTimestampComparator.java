@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2015 Ericsson, Ecole Polytechnique de Montreal and others
+ * Copyright (c) 2011, 2018 Ericsson, Ecole Polytechnique de Montreal and others
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -39,14 +39,19 @@ public class StreamInputReaderTimestampComparator implements
     // ------------------------------------------------------------------------
 
     /**
+     * Readers without a current event, which are waiting for the data of a
+     * live trace, come after the others.
+     *
      * @throws NullPointerException
-     *             If any {@link CTFStreamInputReader} parameter is null, of if
-     *             any of them does not contain a current event.
+     *             If any {@link CTFStreamInputReader} parameter is null
      */
     @Override
     public int compare(CTFStreamInputReader a, CTFStreamInputReader b) {
-        IEventDefinition eventA = checkNotNull(a.getCurrentEvent());
-        IEventDefinition eventB = checkNotNull(b.getCurrentEvent());
+        IEventDefinition eventA = checkNotNull(a).getCurrentEvent();
+        IEventDefinition eventB = checkNotNull(b).getCurrentEvent();
+        if (eventA == null || eventB == null) {
+            return Boolean.compare(eventA == null, eventB == null);
+        }
 
         long ta = eventA.getTimestamp();
         long tb = eventB.getTimestamp();
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2014 Ericsson
+ * Copyright (c) 2014, 2018 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -30,6 +30,7 @@ import org.eclipse.tracecompass.tmf.core.exceptions.TmfTraceException;
 import org.eclipse.tracecompass.tmf.core.request.ITmfEventRequest;
 import org.eclipse.tracecompass.tmf.core.request.ITmfEventRequest.ExecutionType;
 import org.eclipse.tracecompass.tmf.core.request.TmfEventRequest;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfContext;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
 import org.eclipse.tracecompass.tmf.ctf.core.trace.CtfTmfTrace;
 import org.eclipse.tracecompass.tmf.tests.stubs.trace.TmfExperimentStub;
@@ -106,6 +107,45 @@ public class ExperimentBenchmark {
         }
     }
 
+    /**
+     * Benchmark reading the events of the experiment in order directly,
+     * without requests, so that the ordering of the events of the traces
+     * weighs more than with the concurrent requests above
+     */
+    @Test
+    public void benchmarkExperimentRead() {
+        Performance perf = Performance.getDefault();
+
+        for (int numTraces = 1; numTraces < MAX_TRACES; numTraces = (int) (1.6 * (numTraces + 1))) {
+            PerformanceMeter pm = perf.createPerformanceMeter(TEST_ID + "read " + numTraces + " traces");
+            perf.tagAsSummary(pm, "Experiment Read Benchmark:" + numTraces + " traces", Dimension.CPU_TIME);
+
+            int sampleSize = SAMPLE_SIZE;
+            if (numTraces > 20) {
+                sampleSize = SAMPLE_SIZE_SLOW;
+            }
+
+            for (int s = 0; s < sampleSize; s++) {
+                init(numTraces);
+
+                pm.start();
+                ITmfContext context = fExperiment.seekEvent(0L);
+                long count = 0;
+                while (fExperiment.getNext(context) != null) {
+                    count++;
+                }
+                context.dispose();
+                pm.stop();
+
+                if (count == 0) {
+                    System.err.println("No events read!");
+                }
+                fExperiment.dispose();
+            }
+            pm.commit();
+        }
+    }
+
     /**
      * Initialization
      *
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.tmf.ctf.core.tests.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.tracecompass.testtraces.ctf.CtfTestTrace;
+import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
+import org.eclipse.tracecompass.tmf.core.request.ITmfEventRequest;
+import org.eclipse.tracecompass.tmf.core.request.TmfEventRequest;
+import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimeRange;
+import org.eclipse.tracecompass.tmf.ctf.core.context.CtfTmfContext;
+import org.eclipse.tracecompass.tmf.ctf.core.event.CtfTmfEvent;
+import org.eclipse.tracecompass.tmf.ctf.core.tests.shared.CtfTmfTestTraceUtils;
+import org.eclipse.tracecompass.tmf.ctf.core.trace.CtfTmfTrace;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the events recycled for the requests which do not keep them
+ */
+public class CtfTmfRecycledEventTest {
+
+    private static final @NonNull CtfTestTrace TEST_TRACE = CtfTestTrace.KERNEL;
+    private static final int NB_EVENTS = 1000;
+
+    private CtfTmfTrace fTrace;
+
+    /**
+     * Open the trace
+     */
+    @Before
+    public void setUp() {
+        fTrace = CtfTmfTestTraceUtils.getTrace(TEST_TRACE);
+    }
+
+    /**
+     * Close the trace
+     */
+    @After
+    public void tearDown() {
+        fTrace.dispose();
+    }
+
+    private List<CtfTmfEvent> read() {
+        List<CtfTmfEvent> events = new ArrayList<>();
+        CtfTmfContext context = (CtfTmfContext) fTrace.seekEvent(0L);
+        for (int i = 0; i < NB_EVENTS; i++) {
+            CtfTmfEvent event = fTrace.getNext(context);
+            assertNotNull(event);
+            events.add(event);
+        }
+        context.dispose();
+        return events;
+    }
+
+    /**
+     * Test that the copies of the recycled events are the events read without
+     * recycling, and that the event objects are reused
+     */
+    @Test
+    public void testCopy() {
+        List<CtfTmfEvent> expected = read();
+        for (CtfTmfEvent event : expected) {
+            assertSame(event, event.copy());
+        }
+
+        CtfTmfContext context = new CtfTmfContext(fTrace);
+        context.setRecycleEvents(true);
+        context.seek(0L);
+        List<CtfTmfEvent> recycled = new ArrayList<>();
+        for (int i = 0; i < NB_EVENTS; i++) {
+            CtfTmfEvent event = fTrace.getNext(context);
+            assertNotNull(event);
+            CtfTmfEvent copy = event.copy();
+            assertNotSame(event, copy);
+            assertEquals(expected.get(i), copy);
+            assertEquals(expected.get(i).getContent(), event.getContent());
+            assertEquals(expected.get(i).getTimestamp(), event.getTimestamp());
+            recycled.add(event);
+        }
+        context.dispose();
+
+        /* Only a few event objects are used in turn */
+        assertNotSame(recycled.get(0), recycled.get(1));
+        assertSame(recycled.get(0), recycled.get(3));
+    }
+
+    /**
+     * Test that a request which allows recycling receives the same events, by
+     * copying them
+     *
+     * @throws InterruptedException
+     *             Fails the test
+     */
+    @Test
+    public void testRequest() throws InterruptedException {
+        List<CtfTmfEvent> expected = read();
+        List<ITmfEvent> actual = new ArrayList<>();
+        TmfEventRequest request = new TmfEventRequest(ITmfEvent.class, TmfTimeRange.ETERNITY, 0, NB_EVENTS, ITmfEventRequest.ExecutionType.FOREGROUND) {
+            @Override
+            public boolean isEventRecyclingAllowed() {
+                return true;
+            }
+
+            @Override
+            public void handleData(ITmfEvent event) {
+                super.handleData(event);
+                actual.add(event.copy());
+            }
+        };
+        fTrace.sendRequest(request);
+        request.waitForCompletion();
+        assertEquals(expected, actual);
+    }
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.tmf.ctf.core.tests.iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.tracecompass.internal.tmf.ctf.core.trace.iterator.CtfIterator;
+import org.eclipse.tracecompass.internal.tmf.ctf.core.trace.iterator.CtfIteratorManager;
+import org.eclipse.tracecompass.testtraces.ctf.CtfTestTrace;
+import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfContext;
+import org.eclipse.tracecompass.tmf.ctf.core.context.CtfLocation;
+import org.eclipse.tracecompass.tmf.ctf.core.context.CtfLocationInfo;
+import org.eclipse.tracecompass.tmf.ctf.core.context.CtfTmfContext;
+import org.eclipse.tracecompass.tmf.ctf.core.tests.shared.CtfTmfTestTraceUtils;
+import org.eclipse.tracecompass.tmf.ctf.core.trace.CtfTmfTrace;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the {@link CtfIteratorManager}, which lends the iterators of a trace to
+ * its contexts
+ */
+public class CtfIteratorManagerTest {
+
+    private static final @NonNull CtfTestTrace TEST_TRACE = CtfTestTrace.KERNEL;
+    private static final int PAGE_SIZE = 50;
+
+    private CtfTmfTrace fTrace;
+
+    /**
+     * Open the trace
+     */
+    @Before
+    public void setUp() {
+        fTrace = CtfTmfTestTraceUtils.getTrace(TEST_TRACE);
+    }
+
+    /**
+     * Close the trace
+     */
+    @After
+    public void tearDown() {
+        fTrace.dispose();
+    }
+
+    /**
+     * Test that the iterator of a disposed context is lent to the next one,
+     * which reads forward to its location and then reads the same events as
+     * after a seek
+     */
+    @Test
+    public void testReuseDisposed() {
+        CtfTmfContext first = new CtfTmfContext(fTrace);
+        first.seek(0L);
+        CtfIterator iterator = (CtfIterator) fTrace.createIteratorFromContext(first);
+        assertNotNull(iterator);
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            first.advance();
+        }
+        CtfLocationInfo further;
+        try (CtfIterator reference = (CtfIterator) fTrace.createIterator()) {
+            reference.seek(((CtfLocation) first.getLocation()).getLocationInfo());
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                reference.advance();
+            }
+            further = reference.getLocation().getLocationInfo();
+            first.dispose();
+
+            /* The next page is read with the same iterator */
+            CtfTmfContext second = new CtfTmfContext(fTrace);
+            second.seek(further);
+            assertSame(iterator, fTrace.createIteratorFromContext(second));
+            assertEquals(further, second.getLocation().getLocationInfo());
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                assertEquals(reference.getCurrentEvent(), second.getCurrentEvent());
+                reference.advance();
+                second.advance();
+            }
+            second.dispose();
+        }
+    }
+
+    /**
+     * Test that reading pages of events with contexts created and disposed for
+     * each page gives the same events as reading the trace in one pass
+     */
+    @Test
+    public void testPages() {
+        List<ITmfEvent> expected = new ArrayList<>();
+        ITmfContext context = fTrace.seekEvent(0L);
+        for (int i = 0; i < 10 * PAGE_SIZE; i++) {
+            expected.add(fTrace.getNext(context));
+        }
+        context.dispose();
+
+        List<ITmfEvent> actual = new ArrayList<>();
+        for (int page = 0; page < 10; page++) {
+            ITmfContext pageContext = fTrace.seekEvent((long) page * PAGE_SIZE);
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                actual.add(fTrace.getNext(pageContext));
+            }
+            pageContext.dispose();
+        }
+        assertEquals(expected, actual);
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2012, 2014 Ericsson, École Polytechnique de Montréal
+ * Copyright (c) 2012, 2018 Ericsson, École Polytechnique de Montréal
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -16,8 +16,10 @@ package org.eclipse.tracecompass.internal.tmf.ctf.core.trace.iterator;
 import static org.eclipse.tracecompass.common.core.NonNullUtils.checkNotNull;
 
 import java.util.Objects;
+import java.util.function.Predicate;
 
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.ctf.core.CTFException;
 import org.eclipse.tracecompass.ctf.core.event.IEventDefinition;
 import org.eclipse.tracecompass.ctf.core.trace.CTFStreamInputReader;
@@ -45,6 +47,19 @@ public class CtfIterator extends CTFTraceReader
     /** An invalid location */
     public static final CtfLocation NULL_LOCATION = new CtfLocation(CtfLocation.INVALID_LOCATION);
 
+    /**
+     * Maximum number of events read to reach a location a bit further, before
+     * seeking instead. This is about the number of events of a small packet.
+     */
+    private static final int MAX_SEEK_ADVANCE = 1000;
+
+    /**
+     * Number of recycled event objects used in turn. When the trace gives an
+     * event, its context already built the next one. An experiment also keeps
+     * the next event of each trace while the previous one is handled.
+     */
+    private static final int RECYCLED_EVENTS = 3;
+
     private final @NonNull CtfTmfTrace fTrace;
 
     private CtfLocation fCurLocation;
@@ -53,6 +68,10 @@ public class CtfIterator extends CTFTraceReader
     private CtfLocation fPreviousLocation;
     private CtfTmfEvent fPreviousEvent;
 
+    /** Events reused in turn, or null if the events are not recycled */
+    private CtfTmfEvent @Nullable [] fRecycledEvents = null;
+    private int fNextRecycledEvent = 0;
+
     // ------------------------------------------------------------------------
     // Constructors
     // ------------------------------------------------------------------------
@@ -144,17 +163,69 @@ public class CtfIterator extends CTFTraceReader
      * @return CtfTmfEvent The current event
      */
     public synchronized CtfTmfEvent getCurrentEvent() {
-        final CTFStreamInputReader top = super.getPrio().peek();
+        final CTFStreamInputReader top = getTopStream();
         if (top != null) {
             if (!fCurLocation.equals(fPreviousLocation)) {
                 fPreviousLocation = fCurLocation;
-                fPreviousEvent = fTrace.getEventFactory().createEvent(fTrace, checkNotNull(top.getCurrentEvent()), top.getFilename());
+                fPreviousEvent = createEvent(top);
             }
             return fPreviousEvent;
         }
         return null;
     }
 
+    private CtfTmfEvent createEvent(CTFStreamInputReader top) {
+        IEventDefinition definition = checkNotNull(top.getCurrentEvent());
+        CtfTmfEvent[] recycledEvents = fRecycledEvents;
+        if (recycledEvents == null) {
+            return fTrace.getEventFactory().createEvent(fTrace, definition, top.getFilename());
+        }
+        int index = fNextRecycledEvent;
+        fNextRecycledEvent = (index + 1) % recycledEvents.length;
+        CtfTmfEvent event = fTrace.getEventFactory().recycleEvent(fTrace, definition, top.getFilename(), recycledEvents[index]);
+        recycledEvents[index] = event;
+        return event;
+    }
+
+    /**
+     * Sets whether the events returned by {@link #getCurrentEvent()} are
+     * recycled, to read the trace for requests which do not keep the events.
+     * The events recycled so far are never reused again, so this must also be
+     * called when the iterator is lent to another context.
+     *
+     * @param recycleEvents
+     *            true to recycle the events
+     */
+    public synchronized void setRecycleEvents(boolean recycleEvents) {
+        fRecycledEvents = recycleEvents ? new CtfTmfEvent[RECYCLED_EVENTS] : null;
+        fNextRecycledEvent = 0;
+    }
+
+    /**
+     * Gets whether the events returned by {@link #getCurrentEvent()} are
+     * recycled
+     *
+     * @return true if the events are recycled
+     */
+    public synchronized boolean isRecycleEvents() {
+        return fRecycledEvents != null;
+    }
+
+    /**
+     * The events already read with a filter may be missing fields needed with
+     * the new one, so the next seek reads them again, even at the current
+     * location.
+     */
+    @Override
+    public synchronized void setEventFilter(@Nullable Predicate<String> eventFilter) {
+        Predicate<String> previousFilter = getEventFilter();
+        super.setEventFilter(eventFilter);
+        if (previousFilter != null && previousFilter != eventFilter) {
+            fCurLocation = NULL_LOCATION;
+            fPreviousLocation = null;
+        }
+    }
+
     /**
      * Return the current timestamp location pointed to by the iterator. This is
      * the timestamp for use in CtfLocation, not the event timestamp.
@@ -162,7 +233,7 @@ public class CtfIterator extends CTFTraceReader
      * @return long The current timestamp location
      */
     public synchronized long getCurrentTimestamp() {
-        final CTFStreamInputReader top = super.getPrio().peek();
+        final CTFStreamInputReader top = getTopStream();
         if (top != null) {
             IEventDefinition currentEvent = top.getCurrentEvent();
             if (currentEvent != null) {
@@ -192,21 +263,22 @@ public class CtfIterator extends CTFTraceReader
         if (fCurLocation.getLocationInfo().equals(ctfLocationData)) {
             return super.hasMoreEvents();
         }
-        /* Update location to make sure the current event is updated */
-        fCurLocation = new CtfLocation(ctfLocationData);
 
         /* Adjust the timestamp depending on the trace's offset */
         long currTimestamp = ctfLocationData.getTimestamp();
-        final long offsetTimestamp = this.getCtfTmfTrace().timestampNanoToCycles(currTimestamp);
+        final long offsetTimestamp = Math.max(0L, this.getCtfTmfTrace().timestampNanoToCycles(currTimestamp));
         try {
-            if (offsetTimestamp < 0) {
-                ret = super.seek(0L);
+            if (advanceTo(offsetTimestamp)) {
+                ret = true;
             } else {
                 ret = super.seek(offsetTimestamp);
             }
         } catch (CTFException e) {
             Activator.getDefault().logError(e.getMessage(), e);
             return false;
+        } finally {
+            /* Update location to make sure the current event is updated */
+            fCurLocation = new CtfLocation(ctfLocationData);
         }
         /*
          * Check if there is already one or more events for that timestamp, and
@@ -238,6 +310,41 @@ public class CtfIterator extends CTFTraceReader
         return ret;
     }
 
+    /**
+     * Advance to the first event at or after a timestamp, if it is at most a
+     * few events after the current one, like when a view reads the next page
+     * or when a context borrows an iterator near its location. Reading these
+     * events is cheaper than seeking, which reads the packets of all the
+     * streams again from their start. Since the streams are merged in a
+     * deterministic order, the iterator is then in the same state as after a
+     * seek.
+     *
+     * @param timestamp
+     *            the timestamp to reach, in cycles
+     * @return true if the iterator is at the first event at or after the
+     *         timestamp, false if it was not before it or if it is too far
+     */
+    private boolean advanceTo(long timestamp) {
+        if (fCurLocation.getLocationInfo().equals(CtfLocation.INVALID_LOCATION)) {
+            return false;
+        }
+        for (int i = 0; i <= MAX_SEEK_ADVANCE; i++) {
+            CTFStreamInputReader top = getTopStream();
+            IEventDefinition currentEvent = (top == null) ? null : top.getCurrentEvent();
+            if (currentEvent == null) {
+                return false;
+            }
+            if (Long.compareUnsigned(currentEvent.getTimestamp(), timestamp) >= 0) {
+                /* The events before the current one may be at the timestamp */
+                return i > 0;
+            }
+            if (i == MAX_SEEK_ADVANCE || !advance()) {
+                return false;
+            }
+        }
+        return false;
+    }
+
     // ------------------------------------------------------------------------
     // CTFTraceReader
     // ------------------------------------------------------------------------
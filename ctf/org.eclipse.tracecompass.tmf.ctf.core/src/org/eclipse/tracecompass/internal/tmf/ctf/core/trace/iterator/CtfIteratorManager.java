@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2014 Ericsson
+ * Copyright (c) 2014, 2018 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -12,18 +12,18 @@
 
 package org.eclipse.tracecompass.internal.tmf.ctf.core.trace.iterator;
 
-import static org.eclipse.tracecompass.common.core.NonNullUtils.checkNotNull;
-
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.Map.Entry;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.internal.tmf.ctf.core.Activator;
+import org.eclipse.tracecompass.tmf.ctf.core.context.CtfLocation;
 import org.eclipse.tracecompass.tmf.ctf.core.context.CtfLocationInfo;
 import org.eclipse.tracecompass.tmf.ctf.core.context.CtfTmfContext;
 import org.eclipse.tracecompass.tmf.ctf.core.trace.CtfTmfTrace;
@@ -44,11 +44,23 @@ public class CtfIteratorManager {
      */
     private static final int MAX_SIZE = 100;
 
-    /** The map of the cache */
+    /**
+     * Number of iterators of disposed contexts kept open, to be borrowed by the
+     * next contexts
+     */
+    private static final int MAX_IDLE = 16;
+
+    /**
+     * Number of least recently used contexts among which the iterator nearest
+     * the location of a new context is taken, when the cache is full
+     */
+    private static final int EVICTION_CANDIDATES = 8;
+
+    /** The map of the cache, in access order, the least recently used first */
     private final Map<CtfTmfContext, CtfIterator> fMap;
 
-    /** An array pointing to the same cache. this allows fast "random" accesses */
-    private final List<CtfTmfContext> fRandomAccess;
+    /** Iterators of the disposed contexts, the least recently used first */
+    private final List<CtfIterator> fIdle;
 
     /** Lock for when we access the two previous data structures */
     private final Lock fAccessLock = new ReentrantLock();
@@ -56,9 +68,6 @@ public class CtfIteratorManager {
     /** The parent trace */
     private final CtfTmfTrace fTrace;
 
-    /** Random number generator */
-    private final Random fRnd;
-
     /**
      * Constructor
      *
@@ -66,67 +75,78 @@ public class CtfIteratorManager {
      *            The trace whose iterators this manager will manage
      */
     public CtfIteratorManager(CtfTmfTrace trace) {
-        fMap = new HashMap<>();
-        fRandomAccess = new ArrayList<>();
-        fRnd = new Random(System.nanoTime());
+        fMap = new LinkedHashMap<>(MAX_SIZE, 0.75f, true);
+        fIdle = new ArrayList<>();
         fTrace = trace;
     }
 
     /**
-     * This needs explaining: the iterator table is effectively a cache. Originally
-     * the contexts had a 1 to 1 structure with the file handles of a trace. This
-     * failed since there is a limit to how many file handles we can have opened
-     * simultaneously. Then a round-robin scheme was implemented, this lead up to a
-     * two competing contexts syncing up and using the same file handler, causing
-     * horrible slowdowns. Now a random replacement algorithm is selected. This is
-     * the same as used by arm processors, and it works quite well when many cores
-     * so this looks promising for very multi-threaded systems.
+     * This needs explaining: the iterator table is effectively a cache.
+     * Originally the contexts had a 1 to 1 structure with the file handles of a
+     * trace. This failed since there is a limit to how many file handles we can
+     * have opened simultaneously. Then a round-robin scheme was implemented,
+     * this lead up to a two competing contexts syncing up and using the same
+     * file handler, causing horrible slowdowns. Then a random replacement was
+     * used, which still made the views and analyses reading the same trace
+     * discard each other's iterators and seek again from the index.
+     * <p>
+     * Now a context without an iterator borrows the iterator of a disposed
+     * context, or of one of the least recently used contexts once the cache is
+     * full, choosing the one whose current location is the nearest before its
+     * own. The iterator can then often read forward to the location instead of
+     * seeking, like when a view reads the next page of events.
      *
      * @param context
      *            the context to look up
      * @return the iterator referring to the context or null in the case of an error
      */
     public @Nullable CtfIterator getIterator(final CtfTmfContext context) {
-        /*
-         * if the element is in the map, we don't need to do anything else.
-         */
-        CtfIterator iter = fMap.get(context);
-        if (iter == null) {
-
-            fAccessLock.lock();
-            try {
-                /*
-                 * Assign an iterator to a context.
-                 */
-                if (fRandomAccess.size() < MAX_SIZE) {
-                    /*
-                     * if we're not full yet, just add an element.
-                     */
-                    iter = (CtfIterator) fTrace.createIterator();
-                    if (iter == null) {
-                        return null;
+        fAccessLock.lock();
+        try {
+            /*
+             * if the element is in the map, we don't need to do anything else.
+             */
+            CtfIterator iter = fMap.get(context);
+            if (iter != null) {
+                if (iter.getEventFilter() != context.getEventTypeFilter()) {
+                    /* The request reading this context changed */
+                    iter.setEventFilter(context.getEventTypeFilter());
+                    if (context.getLocation() != null) {
+                        iter.seek((CtfLocationInfo) context.getLocation().getLocationInfo());
                     }
-                    addElement(context, iter);
-
-                } else {
-                    /*
-                     * if we're full, randomly replace an element
-                     */
-                    iter = replaceRandomElement(context);
                 }
-                if (context.getLocation() != null) {
-                    final CtfLocationInfo location = (CtfLocationInfo) context.getLocation().getLocationInfo();
-                    iter.seek(location);
+                iter.setReadAhead(context.isReadAhead());
+                if (iter.isRecycleEvents() != context.isRecycleEvents()) {
+                    iter.setRecycleEvents(context.isRecycleEvents());
                 }
-            } finally {
-                fAccessLock.unlock();
+                return iter;
             }
+
+            /*
+             * Assign an iterator to a context.
+             */
+            CtfLocationInfo location = (context.getLocation() != null) ? (CtfLocationInfo) context.getLocation().getLocationInfo() : null;
+            iter = borrowIterator(location);
+            if (iter == null) {
+                return null;
+            }
+            fMap.put(context, iter);
+            iter.setEventFilter(context.getEventTypeFilter());
+            iter.setReadAhead(context.isReadAhead());
+            /* The events of the previous context may still be used */
+            iter.setRecycleEvents(context.isRecycleEvents());
+            if (location != null) {
+                iter.seek(location);
+            }
+            return iter;
+        } finally {
+            fAccessLock.unlock();
         }
-        return iter;
     }
 
     /**
-     * Remove an iterator from this manager
+     * Remove an iterator from this manager. It is kept open for the next
+     * contexts, unless too many are.
      *
      * @param context
      *            The context of the iterator to remove
@@ -134,77 +154,115 @@ public class CtfIteratorManager {
     public void removeIterator(CtfTmfContext context) {
         fAccessLock.lock();
         try {
-            /* The try below is only to auto-call CtfIterator.close() */
-            try (CtfIterator removed = fMap.remove(context)) {
-                // try with resource
+            CtfIterator removed = fMap.remove(context);
+            if (removed == null) {
+                return;
+            }
+            if (removed.isClosed()) {
+                removed.dispose();
+                return;
+            }
+            /* Do not keep worker threads decoding for nobody */
+            removed.setReadAhead(false);
+            fIdle.add(removed);
+            if (fIdle.size() > MAX_IDLE) {
+                fIdle.remove(0).dispose();
             }
-            fRandomAccess.remove(context);
-
         } finally {
             fAccessLock.unlock();
         }
     }
 
     /**
-     * Add a pair of context and element to the hashmap and the arraylist.
+     * Get an iterator for a new context: an idle one, a new one if the cache
+     * is not full, or else the one of a least recently used context. Must be
+     * called with the lock.
      *
-     * @param context
-     *            the context
-     * @param elem
-     *            the iterator
+     * @param location
+     *            the location of the new context, or null
+     * @return the iterator, or null if it could not be created
      */
-    private void addElement(final CtfTmfContext context,
-            final CtfIterator elem) {
-        fAccessLock.lock();
-        try {
-            fMap.put(context, elem);
-            fRandomAccess.add(context);
+    private @Nullable CtfIterator borrowIterator(@Nullable CtfLocationInfo location) {
+        /* Iterators of disposed contexts */
+        int best = nearest(fIdle, location);
+        while (best >= 0) {
+            CtfIterator iter = fIdle.remove(best);
+            if (!iter.isClosed()) {
+                return iter;
+            }
+            iter.dispose();
+            best = nearest(fIdle, location);
+        }
 
-        } finally {
-            fAccessLock.unlock();
+        /* if we're not full yet, just add an element. */
+        if (fMap.size() + fIdle.size() < MAX_SIZE) {
+            return (CtfIterator) fTrace.createIterator();
+        }
+
+        /* if we're full, take the iterator of a least recently used context */
+        List<CtfIterator> candidates = new ArrayList<>(EVICTION_CANDIDATES);
+        List<CtfTmfContext> contexts = new ArrayList<>(EVICTION_CANDIDATES);
+        Iterator<Entry<CtfTmfContext, CtfIterator>> entries = fMap.entrySet().iterator();
+        while (entries.hasNext() && candidates.size() < EVICTION_CANDIDATES) {
+            Entry<CtfTmfContext, CtfIterator> entry = entries.next();
+            contexts.add(entry.getKey());
+            candidates.add(entry.getValue());
+        }
+        best = nearest(candidates, location);
+        if (best < 0) {
+            return (CtfIterator) fTrace.createIterator();
         }
+        /*
+         * The victim keeps its location, it will get another iterator the next
+         * time it is used.
+         */
+        CtfIterator iter = fMap.remove(contexts.get(best));
+        if (iter == null || iter.isClosed()) {
+            /*
+             * In case the iterator streams have been closed, we need to replace
+             * it by a fresh new one to access the trace.
+             */
+            if (iter != null) {
+                Activator.getDefault().logError("Found closed iterator in iterator manager for trace " + fTrace); //$NON-NLS-1$
+                iter.dispose();
+            }
+            return (CtfIterator) fTrace.createIterator();
+        }
+        return iter;
     }
 
     /**
-     * Replace a random element
+     * Find the iterator whose current location is the nearest before a
+     * location, so it may read forward to it instead of seeking. If none is
+     * before it, the least recently used one is chosen.
      *
-     * @param context
-     *            the context to swap in
-     * @return the iterator of the removed elements.
+     * @param iterators
+     *            the candidate iterators, the least recently used first
+     * @param location
+     *            the location to reach, or null
+     * @return the index of the chosen iterator, or -1 if there are none
      */
-    private CtfIterator replaceRandomElement(final CtfTmfContext context) {
-        /*
-         * This needs some explanation too: We need to select a random victim
-         * and remove it. The order of the elements is not important, so instead
-         * of just calling arraylist.remove(element) which has an O(n)
-         * complexity, we pick an random number. The element is swapped out of
-         * the array and removed and replaced in the hashmap.
-         */
-        fAccessLock.lock(); // just in case, should only be called when already locked
-        try {
-            final int size = fRandomAccess.size();
-            final int pos = fRnd.nextInt(size);
-            final CtfTmfContext victim = fRandomAccess.get(pos);
-            fRandomAccess.set(pos, context);
-            CtfIterator elem = checkNotNull(fMap.remove(victim));
-            if (elem.isClosed()) {
-                /*
-                 * In case the iterator streams have been closed, we need to
-                 * replace it by a fresh new one to access the trace. We also
-                 * report that as an error as it should not happen.
-                 */
-                Activator.getDefault().logError("Found closed iterator in iterator manager for trace " + victim.getTrace()); //$NON-NLS-1$
-
-                elem.dispose();
-                elem = (CtfIterator) fTrace.createIterator();
+    private static int nearest(List<CtfIterator> iterators, @Nullable CtfLocationInfo location) {
+        if (iterators.isEmpty()) {
+            return -1;
+        }
+        if (location == null || location.equals(CtfLocation.INVALID_LOCATION)) {
+            return 0;
+        }
+        int best = 0;
+        long bestDistance = Long.MAX_VALUE;
+        for (int i = 0; i < iterators.size(); i++) {
+            CtfLocationInfo current = iterators.get(i).getLocation().getLocationInfo();
+            if (current.equals(CtfLocation.INVALID_LOCATION) || current.compareTo(location) > 0) {
+                continue;
+            }
+            long distance = location.getTimestamp() - current.getTimestamp();
+            if (distance < bestDistance) {
+                best = i;
+                bestDistance = distance;
             }
-            fMap.put(context, elem);
-            victim.dispose();
-            return elem;
-
-        } finally {
-            fAccessLock.unlock();
         }
+        return best;
     }
 
     /**
@@ -218,10 +276,12 @@ public class CtfIteratorManager {
                 iterator.dispose();
             }
             fMap.clear();
-            fRandomAccess.clear();
-
+            for (CtfIterator iterator : fIdle) {
+                iterator.dispose();
+            }
+            fIdle.clear();
         } finally {
             fAccessLock.unlock();
         }
     }
-}
\ No newline at end of file
+}
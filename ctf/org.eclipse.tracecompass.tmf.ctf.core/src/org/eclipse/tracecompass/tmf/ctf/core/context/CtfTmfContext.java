@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2012, 2014 Ericsson
+ * Copyright (c) 2012, 2018 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -13,6 +13,8 @@
 
 package org.eclipse.tracecompass.tmf.ctf.core.context;
 
+import java.util.function.Predicate;
+
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.internal.tmf.ctf.core.trace.iterator.CtfIterator;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfContext;
@@ -37,6 +39,12 @@ public class CtfTmfContext implements ITmfContext {
 
     private final CtfTmfTrace fTrace;
 
+    private @Nullable Predicate<String> fEventTypeFilter = null;
+
+    private boolean fReadAhead = false;
+
+    private boolean fRecycleEvents = false;
+
     // -------------------------------------------
     // Constructor
     // -------------------------------------------
@@ -116,6 +124,81 @@ public class CtfTmfContext implements ITmfContext {
         return fTrace;
     }
 
+    /**
+     * Gets the types of events whose fields are read by the iterator of this
+     * context.
+     *
+     * @return a predicate on the event type names, or null if the fields of
+     *         all the events are read
+     * @since 3.1
+     */
+    public @Nullable Predicate<String> getEventTypeFilter() {
+        return fEventTypeFilter;
+    }
+
+    /**
+     * Sets the types of events whose fields are read by the iterator of this
+     * context. The events of the other types are still read, but may come
+     * without their fields.
+     *
+     * @param eventTypeFilter
+     *            a predicate on the event type names, or null to read the
+     *            fields of all the events
+     * @since 3.1
+     */
+    public void setEventTypeFilter(@Nullable Predicate<String> eventTypeFilter) {
+        fEventTypeFilter = eventTypeFilter;
+    }
+
+    /**
+     * Gets whether the iterator of this context decodes the streams ahead, in
+     * parallel.
+     *
+     * @return true if the streams are decoded ahead
+     * @since 3.1
+     */
+    public boolean isReadAhead() {
+        return fReadAhead;
+    }
+
+    /**
+     * Sets whether the iterator of this context decodes the streams ahead, in
+     * parallel. This is faster to read a large part of the trace, but slower
+     * for short reads.
+     *
+     * @param readAhead
+     *            true to decode the streams ahead
+     * @since 3.1
+     */
+    public void setReadAhead(boolean readAhead) {
+        fReadAhead = readAhead;
+    }
+
+    /**
+     * Gets whether the iterator of this context recycles the event objects
+     *
+     * @return true if the events are recycled
+     * @since 3.1
+     */
+    public boolean isRecycleEvents() {
+        return fRecycleEvents;
+    }
+
+    /**
+     * Sets whether the iterator of this context recycles the event objects,
+     * instead of creating a new one for each event. A recycled event changes
+     * once a few more events are read, so this is only for the requests which
+     * do not keep the events, see
+     * {@link org.eclipse.tracecompass.tmf.core.request.ITmfEventRequest#isEventRecyclingAllowed()}.
+     *
+     * @param recycleEvents
+     *            true to recycle the events
+     * @since 3.1
+     */
+    public void setRecycleEvents(boolean recycleEvents) {
+        fRecycleEvents = recycleEvents;
+    }
+
     /**
      * Gets the current event. Wrapper to help CtfTmfTrace
      *
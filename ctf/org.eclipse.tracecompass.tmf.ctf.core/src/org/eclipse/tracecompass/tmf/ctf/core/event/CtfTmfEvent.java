@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2015 Ericsson
+ * Copyright (c) 2011, 2018 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -64,24 +64,24 @@ public class CtfTmfEvent extends TmfEvent
     // ------------------------------------------------------------------------
     // Support attributes
     // Not part of this event's "definition", but used to populate lazy-loaded
-    // fields.
+    // fields. They are only modified by reset(), for recycled events.
     // ------------------------------------------------------------------------
 
-    private final @Nullable IEventDeclaration fEventDeclaration;
-    private final IEventDefinition fEvent;
+    private @Nullable IEventDeclaration fEventDeclaration;
+    private IEventDefinition fEvent;
 
     // ------------------------------------------------------------------------
     // Attributes
     // ------------------------------------------------------------------------
 
     /* Fields that are introduced by and part of this event's definition. */
-    private final int fSourceCpu;
-    private final String fChannel;
+    private int fSourceCpu;
+    private String fChannel;
 
     /**
      * Field to override {@link TmfEvent#getName()}, to bypass the type-getting
      */
-    private final String fEventName;
+    private String fEventName;
 
     /** Lazy-loaded field containing the event's payload */
     private transient @Nullable ITmfEventField fContent;
@@ -89,8 +89,8 @@ public class CtfTmfEvent extends TmfEvent
     /** Lazy-loaded field for the type, overriding TmfEvent's field */
     private transient @Nullable CtfTmfEventType fEventType;
 
-    private final @Nullable ICTFStream fStream;
-    private final Map<String, Object> fPacketAttributes;
+    private @Nullable ICTFStream fStream;
+    private Map<String, Object> fPacketAttributes;
 
     // ------------------------------------------------------------------------
     // Constructors
@@ -194,6 +194,49 @@ public class CtfTmfEvent extends TmfEvent
         fPacketAttributes = Collections.EMPTY_MAP;
     }
 
+    /**
+     * Reset this event to represent another event definition, see
+     * {@link CtfTmfRecycledEvent}. The lazy-loaded fields are read again.
+     *
+     * @param channel
+     *            The CTF channel of the event
+     * @param cpu
+     *            The event's CPU
+     * @param declaration
+     *            The event declaration
+     * @param eventDefinition
+     *            The event definition
+     */
+    synchronized void reset(String channel, int cpu, IEventDeclaration declaration, IEventDefinition eventDefinition) {
+        fEventDeclaration = declaration;
+        fSourceCpu = cpu;
+        fEventName = checkNotNull(declaration.getName());
+        fEvent = eventDefinition;
+        fChannel = channel;
+        fStream = eventDefinition.getDeclaration().getStream();
+        fPacketAttributes = eventDefinition.getPacketAttributes();
+        fContent = null;
+        fEventType = null;
+    }
+
+    /**
+     * Get the event declaration, used to copy the event
+     *
+     * @return the declaration, or null for null events
+     */
+    @Nullable IEventDeclaration getEventDeclaration() {
+        return fEventDeclaration;
+    }
+
+    /**
+     * Get the event definition, used to copy the event
+     *
+     * @return the definition
+     */
+    IEventDefinition getEventDefinition() {
+        return fEvent;
+    }
+
     // ------------------------------------------------------------------------
     // Getters/Setters/Predicates
     // ------------------------------------------------------------------------
@@ -263,19 +306,40 @@ public class CtfTmfEvent extends TmfEvent
 
             /*
              * Register the event type in the owning trace, but only if there is
-             * one
+             * one, and if the fields were read, see
+             * ITmfEventRequest#getEventTypeFilter()
              */
-            getTrace().registerEventType(type);
+            if (!isHollow()) {
+                getTrace().registerEventType(type);
+            }
             fEventType = type;
         }
         return type;
     }
 
+    /**
+     * Check if the payload of this event was skipped when reading it, because
+     * the request that read it did not need it
+     */
+    private boolean isHollow() {
+        IEventDeclaration declaration = fEventDeclaration;
+        return declaration != null && declaration.getFields() != null && fEvent.getFields() == null;
+    }
+
     @Override
     public String getName() {
         return fEventName;
     }
 
+    /**
+     * CTF events are immutable, except the events recycled for the requests
+     * which allow it, which are copied.
+     */
+    @Override
+    public CtfTmfEvent copy() {
+        return this;
+    }
+
     @Override
     public synchronized ITmfEventField getContent() {
         ITmfEventField content = fContent;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013, 2015 Ericsson
+ * Copyright (c) 2013, 2018 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -102,6 +102,39 @@ public class CtfTmfEventFactory {
                 eventDef);
     }
 
+    /**
+     * Factory method to get CTF events which may be recycled, for the requests
+     * which do not keep the events. The event previously returned by this
+     * method is reset to represent the new event definition, instead of
+     * allocating a new event.
+     *
+     * The factories of sub-classes, and lost events, still create a new event.
+     *
+     * @param trace
+     *            The trace to which the event will belong
+     * @param eventDef
+     *            CTF EventDefinition object corresponding to this trace event
+     * @param fileName
+     *            The path to the trace file
+     * @param recycled
+     *            An event returned by this method earlier, which is not used
+     *            anymore, or null
+     * @return The recycled event, or a new one
+     * @since 3.1
+     */
+    public CtfTmfEvent recycleEvent(CtfTmfTrace trace, IEventDefinition eventDef, @Nullable String fileName, @Nullable CtfTmfEvent recycled) {
+        final IEventDeclaration eventDecl = eventDef.getDeclaration();
+        if (getClass() != CtfTmfEventFactory.class || eventDecl.getName().equals(CTFStrings.LOST_EVENT_NAME)) {
+            return createEvent(trace, eventDef, fileName);
+        }
+        String reference = (fileName == null ? NO_STREAM : fileName);
+        if (recycled instanceof CtfTmfRecycledEvent && recycled.getTrace() == trace) {
+            recycled.reset(reference, eventDef.getCPU(), eventDecl, eventDef);
+            return recycled;
+        }
+        return new CtfTmfRecycledEvent(trace, reference, eventDef.getCPU(), eventDecl, eventDef);
+    }
+
     /**
      * Create a new CTF lost event.
      *
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2014 Ericsson, École Polytechnique de Montréal
+ * Copyright (c) 2011, 2018 Ericsson, École Polytechnique de Montréal
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -38,6 +38,7 @@ import org.eclipse.tracecompass.ctf.core.event.types.IntegerDefinition;
 import org.eclipse.tracecompass.ctf.core.event.types.StringDefinition;
 import org.eclipse.tracecompass.ctf.core.event.types.VariantDefinition;
 import org.eclipse.tracecompass.internal.ctf.core.event.types.ByteArrayDefinition;
+import org.eclipse.tracecompass.internal.ctf.core.event.types.IntegerArrayDefinition;
 import org.eclipse.tracecompass.tmf.core.event.ITmfEventField;
 import org.eclipse.tracecompass.tmf.core.event.TmfEventField;
 import org.eclipse.tracecompass.tmf.ctf.core.CtfEnumPair;
@@ -147,6 +148,12 @@ public abstract class CtfTmfEventField extends TmfEventField {
                             elemIntType.getBase(),
                             elemIntType.isSigned());
 
+                } else if (arrayDef instanceof IntegerArrayDefinition) {
+                    /* The values were read in bulk */
+                    field = new CTFIntegerArrayField(fieldName, ((IntegerArrayDefinition) arrayDef).getValues(),
+                            elemIntType.getBase(),
+                            elemIntType.isSigned());
+
                 } else {
                     /* it's a CTFIntegerArrayField */
                     int size = arrayDef.getLength();
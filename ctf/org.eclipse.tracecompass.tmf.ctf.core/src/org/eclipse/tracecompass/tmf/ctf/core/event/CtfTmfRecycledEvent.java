@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.tmf.ctf.core.event;
+
+import static org.eclipse.tracecompass.common.core.NonNullUtils.checkNotNull;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.ctf.core.event.IEventDeclaration;
+import org.eclipse.tracecompass.ctf.core.event.IEventDefinition;
+import org.eclipse.tracecompass.tmf.core.timestamp.ITmfTimestamp;
+import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimestamp;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfContext;
+import org.eclipse.tracecompass.tmf.ctf.core.trace.CtfTmfTrace;
+
+/**
+ * CTF event whose object is reused for the next events read by the same
+ * iterator, for the requests which do not keep the events, see
+ * {@link org.eclipse.tracecompass.tmf.core.request.ITmfEventRequest#isEventRecyclingAllowed()}.
+ * Like the type and the content, the timestamp is only created when it is
+ * read. {@link #copy()} gives a standalone event, equal to the one read without
+ * recycling.
+ */
+@NonNullByDefault
+final class CtfTmfRecycledEvent extends CtfTmfEvent {
+
+    /** Lazy-loaded timestamp, overriding TmfEvent's field */
+    private @Nullable ITmfTimestamp fTimestamp = null;
+
+    /**
+     * Constructor
+     *
+     * @param trace
+     *            The trace to which this event belongs
+     * @param channel
+     *            The CTF channel of this event
+     * @param cpu
+     *            The event's CPU
+     * @param declaration
+     *            The event declaration
+     * @param eventDefinition
+     *            The event definition
+     */
+    CtfTmfRecycledEvent(CtfTmfTrace trace, String channel, int cpu, IEventDeclaration declaration, IEventDefinition eventDefinition) {
+        super(trace, ITmfContext.UNKNOWN_RANK, TmfTimestamp.ZERO, channel, cpu, declaration, eventDefinition);
+    }
+
+    @Override
+    synchronized void reset(String channel, int cpu, IEventDeclaration declaration, IEventDefinition eventDefinition) {
+        super.reset(channel, cpu, declaration, eventDefinition);
+        fTimestamp = null;
+    }
+
+    @Override
+    public synchronized ITmfTimestamp getTimestamp() {
+        ITmfTimestamp timestamp = fTimestamp;
+        if (timestamp == null) {
+            CtfTmfTrace trace = getTrace();
+            timestamp = trace.createTimestamp(trace.timestampCyclesToNanos(getUnscaledTime()));
+            fTimestamp = timestamp;
+        }
+        return timestamp;
+    }
+
+    @Override
+    public synchronized CtfTmfEvent copy() {
+        return new CtfTmfEvent(getTrace(),
+                getRank(),
+                getTimestamp(),
+                getChannel(),
+                getCPU(),
+                checkNotNull(getEventDeclaration()),
+                getEventDefinition());
+    }
+}
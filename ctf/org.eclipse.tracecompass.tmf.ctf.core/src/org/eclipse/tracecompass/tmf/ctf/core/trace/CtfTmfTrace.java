@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2012, 2017 Ericsson, École Polytechnique de Montréal
+ * Copyright (c) 2012, 2018 Ericsson, École Polytechnique de Montréal
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -16,6 +16,7 @@ package org.eclipse.tracecompass.tmf.ctf.core.trace;
 
 import static org.eclipse.tracecompass.common.core.NonNullUtils.checkNotNull;
 
+import java.io.File;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.file.Path;
@@ -59,6 +60,8 @@ import org.eclipse.tracecompass.tmf.core.event.aspect.ITmfEventAspect;
 import org.eclipse.tracecompass.tmf.core.event.aspect.TmfBaseAspects;
 import org.eclipse.tracecompass.tmf.core.exceptions.TmfTraceException;
 import org.eclipse.tracecompass.tmf.core.project.model.ITmfPropertiesProvider;
+import org.eclipse.tracecompass.tmf.core.request.ITmfEventRequest;
+import org.eclipse.tracecompass.tmf.core.request.ITmfEventRequest.ExecutionType;
 import org.eclipse.tracecompass.tmf.core.timestamp.ITmfTimestamp;
 import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimeRange;
 import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimestamp;
@@ -67,10 +70,11 @@ import org.eclipse.tracecompass.tmf.core.trace.ITmfContext;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfTraceKnownSize;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfTraceWithPreDefinedEvents;
 import org.eclipse.tracecompass.tmf.core.trace.TmfTrace;
+import org.eclipse.tracecompass.tmf.core.trace.TmfTraceManager;
 import org.eclipse.tracecompass.tmf.core.trace.TraceValidationStatus;
 import org.eclipse.tracecompass.tmf.core.trace.indexer.ITmfPersistentlyIndexable;
 import org.eclipse.tracecompass.tmf.core.trace.indexer.ITmfTraceIndexer;
-import org.eclipse.tracecompass.tmf.core.trace.indexer.TmfBTreeTraceIndexer;
+import org.eclipse.tracecompass.tmf.core.trace.indexer.TmfMappedArrayTraceIndexer;
 import org.eclipse.tracecompass.tmf.core.trace.indexer.checkpoint.ITmfCheckpoint;
 import org.eclipse.tracecompass.tmf.core.trace.indexer.checkpoint.TmfCheckpoint;
 import org.eclipse.tracecompass.tmf.core.trace.location.ITmfLocation;
@@ -149,6 +153,17 @@ public class CtfTmfTrace extends TmfTrace
      */
     private static final int CTF_AVG_EVENT_SIZE = 16;
 
+    /**
+     * Sub-directory of the supplementary files where the packet indexes of
+     * the stream files are saved
+     */
+    private static final String PACKET_INDEX_DIRECTORY = "packet-index"; //$NON-NLS-1$
+
+    /**
+     * Supplementary file where the parsed metadata is saved
+     */
+    private static final String METADATA_CACHE_FILE = "metadata.tree"; //$NON-NLS-1$
+
     // -------------------------------------------
     // Fields
     // -------------------------------------------
@@ -217,7 +232,17 @@ public class CtfTmfTrace extends TmfTrace
         super.initTrace(resource, path, eventType);
 
         try {
-            this.fTrace = new CTFTrace(path);
+            if (resource != null) {
+                /*
+                 * Keep the parsed metadata and the packet indexes of the
+                 * stream files for the next time the trace is opened
+                 */
+                String supplementaryDir = TmfTraceManager.getSupplementaryFileDir(this);
+                this.fTrace = new CTFTrace(new File(path), new File(supplementaryDir, METADATA_CACHE_FILE));
+                fTrace.setPacketIndexCacheDirectory(new File(supplementaryDir, PACKET_INDEX_DIRECTORY));
+            } else {
+                this.fTrace = new CTFTrace(path);
+            }
             CtfTmfContext ctx;
             /* Set the start and (current) end times for this trace */
             ctx = (CtfTmfContext) seekEvent(0L);
@@ -421,6 +446,26 @@ public class CtfTmfTrace extends TmfTrace
         return context;
     }
 
+    /**
+     * Pass the types of events needed by the request to the iterator, so that
+     * the fields of the other events are not read if possible. The streams are
+     * decoded ahead in parallel for the background requests that read the
+     * whole trace, like the indexing and the analyses. The event objects are
+     * recycled for the requests which do not keep them.
+     */
+    @Override
+    public synchronized ITmfContext armRequest(final ITmfEventRequest request) {
+        ITmfContext context = super.armRequest(request);
+        if (context instanceof CtfTmfContext) {
+            CtfTmfContext ctfContext = (CtfTmfContext) context;
+            ctfContext.setEventTypeFilter(request.getEventTypeFilter());
+            ctfContext.setReadAhead(request.getExecType() == ExecutionType.BACKGROUND &&
+                    request.getNbRequested() == ITmfEventRequest.ALL_DATA);
+            ctfContext.setRecycleEvents(request.isEventRecyclingAllowed());
+        }
+        return context;
+    }
+
     /**
      * Method readNextEvent.
      *
@@ -762,7 +807,8 @@ public class CtfTmfTrace extends TmfTrace
 
     @Override
     protected ITmfTraceIndexer createIndexer(int interval) {
-        return new TmfBTreeTraceIndexer(this, interval);
+        /* The events of a CTF trace are read in time stamp order */
+        return new TmfMappedArrayTraceIndexer(this, interval);
     }
 
     @Override
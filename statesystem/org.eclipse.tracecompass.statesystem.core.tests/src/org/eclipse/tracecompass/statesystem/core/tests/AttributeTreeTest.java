@@ -19,6 +19,7 @@ import static org.junit.Assert.assertNotEquals;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.List;
 
 import org.eclipse.tracecompass.internal.statesystem.core.AttributeTree;
 import org.eclipse.tracecompass.internal.statesystem.core.StateSystem;
@@ -123,4 +124,50 @@ public class AttributeTreeTest {
             file.delete();
         }
     }
+
+    /**
+     * Test that a sealed attribute tree answers the same queries as before it
+     * was sealed, and that attributes can still be added to it.
+     * <p>
+     * Tests {@link AttributeTree#seal()}.
+     */
+    @Test
+    public void testSealedAttributeTree() {
+        IStateHistoryBackend backend = StateHistoryBackendFactory.createNullBackend("test");
+        StateSystem ss = new StateSystem(backend);
+        try {
+            AttributeTree attributeTree = new AttributeTree(ss);
+            for (String name : NAMES) {
+                attributeTree.getQuarkAndAdd(-1, THREADS, name, STATUS);
+            }
+            int threadsQuark = attributeTree.getQuarkDontAdd(ITmfStateSystem.ROOT_ATTRIBUTE, THREADS);
+            int nbAttributes = attributeTree.getNbAttributes();
+            List<Integer> children = attributeTree.getSubAttributes(threadsQuark, false);
+            List<Integer> descendants = attributeTree.getSubAttributes(threadsQuark, true);
+
+            attributeTree.seal();
+
+            assertEquals(nbAttributes, attributeTree.getNbAttributes());
+            assertEquals(children, attributeTree.getSubAttributes(threadsQuark, false));
+            assertEquals(descendants, attributeTree.getSubAttributes(threadsQuark, true));
+            for (String name : NAMES) {
+                String[] path = new String[] { THREADS, name, STATUS };
+                int quark = attributeTree.getQuarkDontAdd(ITmfStateSystem.ROOT_ATTRIBUTE, path);
+                assertNotEquals(ITmfStateSystem.INVALID_ATTRIBUTE, quark);
+                assertEquals(quark, attributeTree.getQuarkAndAdd(ITmfStateSystem.ROOT_ATTRIBUTE, path));
+                assertArrayEquals(path, attributeTree.getFullAttributePathArray(quark));
+                assertEquals(name, attributeTree.getAttributeName(attributeTree.getParentAttributeQuark(quark)));
+            }
+            assertEquals(ITmfStateSystem.INVALID_ATTRIBUTE, attributeTree.getQuarkDontAdd(threadsQuark, "new"));
+
+            /* Attributes added after sealing are visible to the queries */
+            int newQuark = attributeTree.getQuarkAndAdd(threadsQuark, "new");
+            assertEquals(nbAttributes + 1, attributeTree.getNbAttributes());
+            assertEquals(newQuark, attributeTree.getQuarkDontAdd(threadsQuark, "new"));
+            assertEquals(threadsQuark, attributeTree.getParentAttributeQuark(newQuark));
+            assertEquals(children.size() + 1, attributeTree.getSubAttributes(threadsQuark, false).size());
+        } finally {
+            ss.dispose();
+        }
+    }
 }
@@ -22,6 +22,8 @@ import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.tracecompass.common.core.NonNullUtils;
 import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
@@ -156,6 +158,35 @@ public class StateSystem2DTest {
         testContinuous(iterable, quarks, START_TIME, end, 11);
     }
 
+    /**
+     * Test that the 2D queries with a progress monitor stop reading the history
+     * once the monitor is canceled.
+     *
+     * @throws AttributeNotFoundException
+     *             if the requested attribute simply did not exist in the system.
+     * @throws StateSystemDisposedException
+     *             If the query is sent after the state system has been disposed
+     */
+    @Test
+    public void testCanceled2DQuery() throws AttributeNotFoundException, StateSystemDisposedException {
+        ITmfStateSystem ss = fStateSystem;
+        assertNotNull(ss);
+        long end = ss.getCurrentEndTime();
+        int stringQuark = fStateSystem.getQuarkAbsolute(STRING_ATTRIBUTE);
+        int integerQuark = fStateSystem.getQuarkAbsolute(INTEGER_ATTRIBUTE);
+        Collection<Integer> quarks = ImmutableList.of(stringQuark, integerQuark);
+
+        /* The monitor is not canceled, all intervals are returned */
+        IProgressMonitor monitor = new NullProgressMonitor();
+        Iterable<ITmfStateInterval> iterable = ss.query2D(quarks, START_TIME, end, monitor);
+        testContinuous(iterable, quarks, START_TIME, end, 11);
+
+        /* The monitor is canceled, the history is not read */
+        monitor.setCanceled(true);
+        assertTrue(Iterables.isEmpty(ss.query2D(quarks, START_TIME, end, monitor)));
+        assertTrue(Iterables.isEmpty(ss.query2D(quarks, ImmutableList.of(START_TIME, end), monitor)));
+    }
+
     private static void testDiscrete(Iterable<ITmfStateInterval> iterable, Collection<Integer> quarks, Collection<Long> times, int totalCount) {
         Set<ITmfStateInterval> set = new HashSet<>();
         int countTimeStamps = 0;
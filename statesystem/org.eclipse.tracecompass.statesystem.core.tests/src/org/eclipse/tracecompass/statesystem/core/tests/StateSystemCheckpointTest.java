@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.statesystem.core.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystemBuilder;
+import org.eclipse.tracecompass.statesystem.core.StateSystemFactory;
+import org.eclipse.tracecompass.statesystem.core.backend.IStateHistoryBackend;
+import org.eclipse.tracecompass.statesystem.core.backend.StateHistoryBackendFactory;
+import org.eclipse.tracecompass.statesystem.core.exceptions.AttributeNotFoundException;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test resuming the construction of a state system from a checkpoint
+ */
+public class StateSystemCheckpointTest {
+
+    private static final String SSID = "checkpoint-test";
+    private static final int PROVIDER_VERSION = 3;
+    private static final int QUEUE_SIZE = 1000;
+    private static final int NB_ATTRIBUTES = 10;
+    private static final long END_TIME = 100000;
+    private static final long CHECKPOINT_TIME = END_TIME / 2;
+
+    private final List<ITmfStateSystem> fStateSystems = new ArrayList<>();
+    private File fHistoryFile;
+    private File fInterruptedFile;
+
+    /**
+     * Create the history files
+     *
+     * @throws IOException
+     *             If the files cannot be created
+     */
+    @Before
+    public void setUp() throws IOException {
+        fHistoryFile = File.createTempFile("StateSystemCheckpointTest", ".ht");
+        fInterruptedFile = File.createTempFile("StateSystemCheckpointTest", ".ht");
+    }
+
+    /**
+     * Dispose the state systems and delete the files
+     */
+    @After
+    public void tearDown() {
+        for (ITmfStateSystem ss : fStateSystems) {
+            ss.dispose();
+        }
+        fHistoryFile.delete();
+        fInterruptedFile.delete();
+    }
+
+    private ITmfStateSystemBuilder newStateSystem(File file) throws IOException {
+        IStateHistoryBackend backend = StateHistoryBackendFactory.createHistoryTreeBackendNewFile(SSID, file, PROVIDER_VERSION, 0, QUEUE_SIZE);
+        ITmfStateSystemBuilder ss = StateSystemFactory.newStateSystem(backend);
+        fStateSystems.add(ss);
+        return ss;
+    }
+
+    /*
+     * Insert enough state changes to fill many nodes, some of the attributes are
+     * only created after the checkpoint
+     */
+    private static void build(ITmfStateSystemBuilder ss, long start, long end) {
+        for (long t = start; t < end; t++) {
+            int i = (int) (t % NB_ATTRIBUTES);
+            if (t >= CHECKPOINT_TIME && t % 1000 == 0) {
+                int late = ss.getQuarkAbsoluteAndAdd("late", String.valueOf(t));
+                ss.modifyAttribute(t, t, late);
+            }
+            int quark = ss.getQuarkAbsoluteAndAdd("attributes", String.valueOf(i));
+            Object value = (i % 2 == 0) ? (Object) (int) t : "value" + (t % 7);
+            ss.modifyAttribute(t, value, quark);
+        }
+    }
+
+    private static void assertSameStates(ITmfStateSystem expected, ITmfStateSystem actual) throws StateSystemDisposedException {
+        assertEquals(expected.getNbAttributes(), actual.getNbAttributes());
+        for (int quark = 0; quark < expected.getNbAttributes(); quark++) {
+            assertEquals(expected.getFullAttributePath(quark), actual.getFullAttributePath(quark));
+        }
+        for (long t = 0; t <= END_TIME; t += 997) {
+            assertEquals(expected.queryFullState(t), actual.queryFullState(t));
+        }
+        assertEquals(expected.queryFullState(END_TIME), actual.queryFullState(END_TIME));
+    }
+
+    /**
+     * Build a history, write a checkpoint halfway, then resume the build from
+     * the checkpoint with the history file as it was after the checkpoint, as
+     * if the application had been stopped then. The resumed history must be
+     * the same as the one built at once, and be readable when re-opened.
+     *
+     * @throws IOException
+     *             If the files cannot be written
+     * @throws StateSystemDisposedException
+     *             Fails the test
+     * @throws AttributeNotFoundException
+     *             Fails the test
+     */
+    @Test
+    public void testResume() throws IOException, StateSystemDisposedException, AttributeNotFoundException {
+        ITmfStateSystemBuilder ss = newStateSystem(fHistoryFile);
+        build(ss, 0, CHECKPOINT_TIME);
+        ByteArrayOutputStream checkpoint = new ByteArrayOutputStream();
+        StateSystemFactory.writeCheckpoint(ss, new DataOutputStream(checkpoint));
+
+        /*
+         * Keep building, a later checkpoint waits for all the intervals to be
+         * in the file, which is then copied as it would be on a crash.
+         */
+        build(ss, CHECKPOINT_TIME, END_TIME);
+        StateSystemFactory.writeCheckpoint(ss, new DataOutputStream(new ByteArrayOutputStream()));
+        Files.copy(fHistoryFile.toPath(), fInterruptedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        ss.closeHistory(END_TIME);
+
+        resumeAndCompare(ss, checkpoint);
+    }
+
+    /**
+     * Resume the build with the history file as it was right after the
+     * checkpoint, before the nodes of the latest branch were written, as if
+     * the application had been stopped then.
+     *
+     * @throws IOException
+     *             If the files cannot be written
+     * @throws StateSystemDisposedException
+     *             Fails the test
+     * @throws AttributeNotFoundException
+     *             Fails the test
+     */
+    @Test
+    public void testResumeRightAfterCheckpoint() throws IOException, StateSystemDisposedException, AttributeNotFoundException {
+        ITmfStateSystemBuilder ss = newStateSystem(fHistoryFile);
+        build(ss, 0, CHECKPOINT_TIME);
+        ByteArrayOutputStream checkpoint = new ByteArrayOutputStream();
+        StateSystemFactory.writeCheckpoint(ss, new DataOutputStream(checkpoint));
+        Files.copy(fHistoryFile.toPath(), fInterruptedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        build(ss, CHECKPOINT_TIME, END_TIME);
+        ss.closeHistory(END_TIME);
+
+        resumeAndCompare(ss, checkpoint);
+    }
+
+    private void resumeAndCompare(ITmfStateSystem ss, ByteArrayOutputStream checkpoint) throws IOException, StateSystemDisposedException, AttributeNotFoundException {
+        ITmfStateSystemBuilder resumed = StateSystemFactory.resumeFromCheckpoint(SSID, fInterruptedFile,
+                PROVIDER_VERSION, QUEUE_SIZE, new DataInputStream(new ByteArrayInputStream(checkpoint.toByteArray())));
+        fStateSystems.add(resumed);
+        assertEquals(ss.getQuarkAbsolute("attributes", "4"), resumed.getQuarkAbsolute("attributes", "4"));
+        assertEquals((int) CHECKPOINT_TIME - 6, resumed.queryOngoing(resumed.getQuarkAbsolute("attributes", "4")));
+        assertEquals(CHECKPOINT_TIME - 6, resumed.getOngoingStartTime(resumed.getQuarkAbsolute("attributes", "4")));
+        build(resumed, CHECKPOINT_TIME, END_TIME);
+        resumed.closeHistory(END_TIME);
+        assertSameStates(ss, resumed);
+
+        /* The resumed file is a complete history */
+        IStateHistoryBackend backend = StateHistoryBackendFactory.createHistoryTreeBackendExistingFile(SSID, fInterruptedFile, PROVIDER_VERSION);
+        ITmfStateSystem reopened = StateSystemFactory.newStateSystem(backend, false);
+        fStateSystems.add(reopened);
+        assertSameStates(ss, reopened);
+    }
+
+    /**
+     * Test that a checkpoint is refused by another version of the provider
+     *
+     * @throws IOException
+     *             If the files cannot be written
+     */
+    @Test(expected = IOException.class)
+    public void testOtherProviderVersion() throws IOException {
+        ITmfStateSystemBuilder ss = newStateSystem(fHistoryFile);
+        build(ss, 0, 1000);
+        ByteArrayOutputStream checkpoint = new ByteArrayOutputStream();
+        StateSystemFactory.writeCheckpoint(ss, new DataOutputStream(checkpoint));
+        ss.closeHistory(1000);
+
+        StateSystemFactory.resumeFromCheckpoint(SSID, fHistoryFile, PROVIDER_VERSION + 1,
+                QUEUE_SIZE, new DataInputStream(new ByteArrayInputStream(checkpoint.toByteArray())));
+    }
+}
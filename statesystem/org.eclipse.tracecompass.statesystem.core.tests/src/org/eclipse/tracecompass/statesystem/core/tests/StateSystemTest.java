@@ -9,16 +9,20 @@
 
 package org.eclipse.tracecompass.statesystem.core.tests;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import org.eclipse.tracecompass.internal.statesystem.core.StateSystem;
 import org.eclipse.tracecompass.statesystem.core.ITmfStateSystemBuilder;
 import org.eclipse.tracecompass.statesystem.core.backend.IStateHistoryBackend;
 import org.eclipse.tracecompass.statesystem.core.backend.StateHistoryBackendFactory;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -79,4 +83,53 @@ public class StateSystemTest {
         assertTrue(ss.waitUntilBuilt(0));
     }
 
+    /**
+     * Test the {@link StateSystem#queryFullStates(long[])} method, while the
+     * state system is being built and once it is closed
+     *
+     * @throws StateSystemDisposedException
+     *             Exceptions thrown by the queries
+     */
+    @Test
+    public void testQueryFullStates() throws StateSystemDisposedException {
+        ITmfStateSystemBuilder ss = new StateSystem(StateHistoryBackendFactory.createInMemoryBackend("Test", 0));
+        int quark1 = ss.getQuarkAbsoluteAndAdd("a");
+        int quark2 = ss.getQuarkAbsoluteAndAdd("b");
+        ss.modifyAttribute(0, 1, quark1);
+        ss.modifyAttribute(0, 10, quark2);
+        ss.modifyAttribute(5, 2, quark1);
+        ss.modifyAttribute(10, 3, quark1);
+
+        long[] times = new long[] { 0, 4, 5, 9 };
+        List<List<ITmfStateInterval>> states = ss.queryFullStates(times);
+        assertEquals(times.length, states.size());
+        for (int i = 0; i < times.length; i++) {
+            assertSameState(ss.queryFullState(times[i]), states.get(i));
+        }
+        /* This state is still ongoing */
+        assertEquals(10, states.get(3).get(quark2).getValue());
+
+        ss.closeHistory(20);
+        states = ss.queryFullStates(times);
+        for (int i = 0; i < times.length; i++) {
+            assertSameState(ss.queryFullState(times[i]), states.get(i));
+        }
+        assertEquals(1, states.get(1).get(quark1).getValue());
+        assertEquals(2, states.get(2).get(quark1).getValue());
+        assertEquals(2, states.get(3).get(quark1).getValue());
+        assertEquals(10, states.get(3).get(quark2).getValue());
+    }
+
+    private static void assertSameState(List<ITmfStateInterval> expected, List<ITmfStateInterval> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            ITmfStateInterval expectedInterval = expected.get(i);
+            ITmfStateInterval actualInterval = actual.get(i);
+            assertEquals(expectedInterval.getStartTime(), actualInterval.getStartTime());
+            assertEquals(expectedInterval.getEndTime(), actualInterval.getEndTime());
+            assertEquals(expectedInterval.getAttribute(), actualInterval.getAttribute());
+            assertEquals(expectedInterval.getValue(), actualInterval.getValue());
+        }
+    }
+
 }
@@ -20,8 +20,12 @@ import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
+import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.internal.provisional.datastore.core.condition.IntegerRangeCondition;
+import org.eclipse.tracecompass.internal.provisional.datastore.core.condition.TimeRangeCondition;
 import org.eclipse.tracecompass.statesystem.core.backend.IStateHistoryBackend;
 import org.eclipse.tracecompass.statesystem.core.backend.StateHistoryBackendFactory;
 import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
@@ -33,6 +37,9 @@ import org.eclipse.tracecompass.statesystem.core.statevalue.TmfStateValue;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
 /**
  * Test cases for the in-memory backend
  *
@@ -262,4 +269,40 @@ public class InMemoryBackendTest extends StateHistoryBackendTestBase {
             fail(e.getMessage());
         }
     }
+
+    /**
+     * Test a history with more intervals than a chunk of the columns, with
+     * intervals of an attribute inserted out of order
+     *
+     * @throws StateSystemDisposedException
+     *             If the backend is disposed
+     */
+    @Test
+    public void testManyIntervals() throws StateSystemDisposedException {
+        IStateHistoryBackend backend = StateHistoryBackendFactory.createInMemoryBackend(SSID, 0);
+        final int nbIntervals = 200000;
+        for (int i = 0; i < nbIntervals; i++) {
+            backend.insertPastState(i * 10L, i * 10L + 9, i % 2, "value" + (i % 3));
+        }
+        /* An interval of a third attribute, older than the last one */
+        backend.insertPastState(100, 200, 2, 1.5);
+        backend.insertPastState(0, 99, 2, 2L);
+
+        ITmfStateInterval interval = backend.doSingularQuery(1234567, 0);
+        assertNotNull(interval);
+        assertEquals(1234560, interval.getStartTime());
+        assertEquals(1234569, interval.getEndTime());
+        assertEquals("value0", interval.getValue());
+        assertNull(backend.doSingularQuery(1234567, 1));
+
+        assertEquals(2L, backend.doSingularQuery(50, 2).getValue());
+        assertEquals(1.5, backend.doSingularQuery(150, 2).getValue());
+        assertNull(backend.doSingularQuery(250, 2));
+
+        Set<@NonNull Integer> quarks = ImmutableSet.of(0, 2);
+        List<ITmfStateInterval> intervals = Lists.newArrayList(backend.query2D(IntegerRangeCondition.forDiscreteRange(quarks),
+                TimeRangeCondition.forContinuousRange(95, 125)));
+        assertEquals(4, intervals.size());
+        backend.dispose();
+    }
 }
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.statesystem.core.tests.backend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.ShardedHistoryTreeBackend;
+import org.eclipse.tracecompass.statesystem.core.backend.IStateHistoryBackend;
+import org.eclipse.tracecompass.statesystem.core.backend.StateHistoryBackendFactory;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Test the {@link ShardedHistoryTreeBackend} class.
+ */
+@RunWith(Parameterized.class)
+public class ShardedHistoryTreeBackendTest extends StateHistoryBackendTestBase {
+
+    private static final String SSID = "test";
+    private static final int PROVIDER_VERSION = 0;
+    private static final int QUEUE_SIZE = 10;
+    private static final int NB_SHARDS = 3;
+
+    private final boolean fReOpen;
+    private final Set<File> fHistoryTreeFiles = new HashSet<>();
+    private final Map<IStateHistoryBackend, File> fBackendMap = new HashMap<>();
+
+    /**
+     * @return the test parameters
+     */
+    @Parameters(name = "ReOpen={0}")
+    public static Collection<Boolean> parameters() {
+        return Arrays.asList(Boolean.FALSE, Boolean.TRUE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param reOpen
+     *            True if the backend should be disposed and re-opened as a new
+     *            backend from the files, or false to use the backend as-is
+     */
+    public ShardedHistoryTreeBackendTest(Boolean reOpen) {
+        fReOpen = reOpen;
+    }
+
+    /**
+     * Test cleanup
+     */
+    @After
+    public void teardown() {
+        for (IStateHistoryBackend backend : fBackendMap.keySet()) {
+            backend.dispose();
+        }
+        for (File historyTreeFile : fHistoryTreeFiles) {
+            ShardedHistoryTreeBackend.deleteShardFiles(historyTreeFile, 1);
+            historyTreeFile.delete();
+        }
+    }
+
+    @Override
+    protected IStateHistoryBackend getBackendForBuilding(long startTime) throws IOException {
+        File historyTreeFile = File.createTempFile("ShardedHistoryTreeBackendTest", ".ht");
+        fHistoryTreeFiles.add(historyTreeFile);
+        ShardedHistoryTreeBackend backend = new ShardedHistoryTreeBackend(SSID, historyTreeFile, PROVIDER_VERSION, startTime, QUEUE_SIZE, NB_SHARDS);
+        fBackendMap.put(backend, historyTreeFile);
+        return backend;
+    }
+
+    @Override
+    protected IStateHistoryBackend getBackendForQuerying(IStateHistoryBackend backend) throws IOException {
+        if (!fReOpen) {
+            return backend;
+        }
+
+        File historyTreeFile = fBackendMap.remove(backend);
+        if (historyTreeFile == null) {
+            throw new IllegalStateException();
+        }
+
+        backend.dispose();
+        /* The factory should recognize the sharded history */
+        IStateHistoryBackend reOpenedBackend = StateHistoryBackendFactory.createHistoryTreeBackendExistingFile(SSID, historyTreeFile, PROVIDER_VERSION);
+        assertTrue(reOpenedBackend instanceof ShardedHistoryTreeBackend);
+        assertEquals(NB_SHARDS, ((ShardedHistoryTreeBackend) reOpenedBackend).getNbShards());
+        fBackendMap.put(reOpenedBackend, historyTreeFile);
+        return reOpenedBackend;
+    }
+
+    @Override
+    @Test
+    public void testIntervalBeforeStart() {
+        // Exception is thrown in a thread, so we can't catch it
+    }
+
+    /**
+     * Test that the shard files are written next to the history file and that
+     * creating a history that is not sharded removes them.
+     *
+     * @throws IOException
+     *             If the history files cannot be created
+     */
+    @Test
+    public void testShardFiles() throws IOException {
+        IStateHistoryBackend backend = getBackendForBuilding(0);
+        File historyTreeFile = fBackendMap.get(backend);
+        backend.insertPastState(0, 10, 0, 1);
+        backend.insertPastState(0, 10, 4, 2);
+        backend.finishedBuilding(10);
+        for (int i = 1; i < NB_SHARDS; i++) {
+            assertTrue(ShardedHistoryTreeBackend.getShardFile(historyTreeFile, i).exists());
+        }
+        assertEquals(NB_SHARDS, ShardedHistoryTreeBackend.countShards(historyTreeFile));
+
+        IStateHistoryBackend newBackend = StateHistoryBackendFactory.createHistoryTreeBackendNewFile(SSID, historyTreeFile, PROVIDER_VERSION, 0, QUEUE_SIZE);
+        fBackendMap.put(newBackend, historyTreeFile);
+        assertFalse(ShardedHistoryTreeBackend.getShardFile(historyTreeFile, 1).exists());
+        assertEquals(1, ShardedHistoryTreeBackend.countShards(historyTreeFile));
+    }
+}
@@ -223,6 +223,47 @@ public abstract class StateHistoryBackendTestBase {
         buildAndQueryFullRange(startTime, endTime, nbAttr, intervals, false);
     }
 
+    /**
+     * Test that the full queries at many timestamps at once return the same
+     * intervals as one full query per timestamp.
+     */
+    @Test
+    public void testFullQueries() {
+        final int nbAttr = 10;
+        final long duration = 10;
+        final long startTime = 0;
+        final long endTime = 1000;
+
+        List<ITmfStateInterval> intervals = new ArrayList<>();
+        for (long t = startTime + 1; t <= endTime + duration; t++) {
+            intervals.add(new TmfStateInterval(
+                    Math.max(startTime, t - duration),
+                    Math.min(endTime, t - 1),
+                    (int) t % nbAttr,
+                    t));
+        }
+        final IStateHistoryBackend backend = prepareBackend(startTime, endTime, intervals);
+        assertNotNull(backend);
+
+        /* Sampled timestamps, with a repeated one and one out of order */
+        long[] times = new long[] { 0, 3, 3, 250, 499, 500, 501, 999, 1000, 42 };
+        try {
+            List<List<@Nullable ITmfStateInterval>> stateInfos = new ArrayList<>();
+            for (int i = 0; i < times.length; i++) {
+                stateInfos.add(prepareIntervalList(nbAttr));
+            }
+            backend.doQuery(stateInfos, times);
+
+            for (int i = 0; i < times.length; i++) {
+                List<@Nullable ITmfStateInterval> expected = prepareIntervalList(nbAttr);
+                backend.doQuery(expected, times[i]);
+                assertEquals("Full state at t=" + times[i], expected, stateInfos.get(i));
+            }
+        } catch (StateSystemDisposedException e) {
+            fail(e.getMessage());
+        }
+    }
+
     /**
      * Test the full query method by filling a small backend with intervals that
      * take the full time range, like this:
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.statesystem.core.tests.backend.historytree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.HTConfig;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.HTInterval;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.HTNode;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.HTNodeCache;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.LeafNode;
+import org.eclipse.tracecompass.statesystem.core.statevalue.TmfStateValue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+
+/**
+ * Test the {@link HTNodeCache} class
+ */
+public class HTNodeCacheTest {
+
+    private static final long MEGABYTE = 1024L * 1024L;
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    /* Each interval with this value takes a bit more than 30000 bytes */
+    private static final TmfStateValue BIG_VALUE = TmfStateValue.newValueString(Strings.repeat("a", 30000));
+
+    private static final HTConfig CONFIG = new HTConfig(new File("cacheTest.ht"), BLOCK_SIZE, 3, 1, 0);
+
+    private long fInitialBudget;
+
+    /**
+     * Save the global budget before the test
+     */
+    @Before
+    public void setup() {
+        fInitialBudget = HTNodeCache.getMemoryBudget();
+    }
+
+    /**
+     * Restore the global budget after the test
+     */
+    @After
+    public void cleanup() {
+        HTNodeCache.setMemoryBudget(fInitialBudget);
+    }
+
+    private static HTNode createNode(int seqNumber) {
+        HTNode node = new LeafNode(CONFIG, seqNumber, -1, 0);
+        node.addInterval(new HTInterval(0, 10, 0, BIG_VALUE));
+        node.addInterval(new HTInterval(0, 10, 1, BIG_VALUE));
+        return node;
+    }
+
+    /**
+     * Test the hit and miss counts
+     *
+     * @throws Exception
+     *             Exceptions thrown by the cache
+     */
+    @Test
+    public void testHitsAndMisses() throws Exception {
+        HTNodeCache cache = new HTNodeCache("test");
+        try {
+            HTNode node = cache.get(0, HTNodeCacheTest::createNode);
+            assertEquals(0, cache.getHitCount());
+            assertEquals(1, cache.getMissCount());
+
+            assertSame(node, cache.get(0, HTNodeCacheTest::createNode));
+            assertSame(node, cache.getIfPresent(0));
+            assertEquals(2, cache.getHitCount());
+            assertEquals(1, cache.getMissCount());
+
+            assertNull(cache.getIfPresent(1));
+            assertEquals(node.getNodeUsedSpace(), cache.getWeight());
+        } finally {
+            cache.dispose();
+        }
+    }
+
+    /**
+     * Test that the cache evicts the least recently used nodes to stay within
+     * its share of the budget
+     *
+     * @throws Exception
+     *             Exceptions thrown by the cache
+     */
+    @Test
+    public void testEviction() throws Exception {
+        HTNodeCache.setMemoryBudget(MEGABYTE);
+        HTNodeCache cache = new HTNodeCache("test");
+        try {
+            cache.get(0, HTNodeCacheTest::createNode);
+            for (int i = 1; i < 40; i++) {
+                cache.get(i, HTNodeCacheTest::createNode);
+                /* Keep the first node recently used */
+                assertNotNull(cache.getIfPresent(0));
+            }
+            assertTrue(cache.getEvictionCount() > 0);
+            assertTrue(cache.getWeight() <= HTNodeCache.getFairShare());
+            assertNotNull(cache.getIfPresent(0));
+            assertNull(cache.getIfPresent(1));
+            assertEquals(40, cache.size() + cache.getEvictionCount());
+        } finally {
+            cache.dispose();
+        }
+    }
+
+    /**
+     * Test that the budget is shared between the opened caches
+     *
+     * @throws Exception
+     *             Exceptions thrown by the cache
+     */
+    @Test
+    public void testFairShare() throws Exception {
+        HTNodeCache.setMemoryBudget(1024 * MEGABYTE);
+        long initialShare = HTNodeCache.getFairShare();
+        HTNodeCache cache1 = new HTNodeCache("test1");
+        long share = HTNodeCache.getFairShare();
+        HTNodeCache cache2 = new HTNodeCache("test2");
+        try {
+            assertTrue(share <= initialShare);
+            assertTrue(HTNodeCache.getFairShare() < share);
+
+            /* The share of the opened caches shrinks with the budget */
+            HTNodeCache.setMemoryBudget(MEGABYTE);
+            HTNode node = cache2.get(0, HTNodeCacheTest::createNode);
+            for (int i = 0; i < 40; i++) {
+                cache1.get(i, HTNodeCacheTest::createNode);
+            }
+            assertTrue(cache1.getEvictionCount() > 0);
+            assertTrue(cache1.getWeight() <= HTNodeCache.getFairShare());
+
+            /* The second cache is not affected by the first one */
+            assertSame(node, cache2.getIfPresent(0));
+            assertEquals(0, cache2.getEvictionCount());
+        } finally {
+            cache1.dispose();
+            cache2.dispose();
+        }
+        HTNodeCache.setMemoryBudget(1024 * MEGABYTE);
+        assertEquals(initialShare, HTNodeCache.getFairShare());
+    }
+
+    /**
+     * Test that a disposed cache does not keep nodes
+     *
+     * @throws Exception
+     *             Exceptions thrown by the cache
+     */
+    @Test
+    public void testDispose() throws Exception {
+        HTNodeCache cache = new HTNodeCache("test");
+        cache.get(0, HTNodeCacheTest::createNode);
+        cache.dispose();
+        assertNull(cache.getIfPresent(0));
+        cache.put(createNode(1));
+        assertNull(cache.getIfPresent(1));
+        assertEquals(0, cache.getWeight());
+    }
+}
@@ -11,14 +11,20 @@ package org.eclipse.tracecompass.statesystem.core.tests.backend.historytree;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
+import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.internal.provisional.datastore.core.condition.IntegerRangeCondition;
+import org.eclipse.tracecompass.internal.provisional.datastore.core.condition.TimeRangeCondition;
 import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.HTConfig;
 import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.HTInterval;
 import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.HTNode;
@@ -29,6 +35,8 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.google.common.collect.Lists;
+
 /**
  * Tests the history tree
  *
@@ -85,15 +93,31 @@ public class HistoryTreeTest {
      *            option)
      */
     private HistoryTreeClassicStub setupSmallTree(int maxChildren) {
+        File newFile = fTempFile;
+        assertNotNull(newFile);
+        return setupSmallTree(newFile, maxChildren, false);
+    }
+
+    /**
+     * Setup a history tree in a given file.
+     *
+     * @param newFile
+     *            The history tree file
+     * @param maxChildren
+     *            The max number of children per node in the tree (tree config
+     *            option)
+     * @param compressed
+     *            Whether the nodes of the tree are compressed
+     */
+    private static HistoryTreeClassicStub setupSmallTree(File newFile, int maxChildren, boolean compressed) {
         HistoryTreeClassicStub ht = null;
         try {
-            File newFile = fTempFile;
-            assertNotNull(newFile);
             HTConfig config = new HTConfig(newFile,
                     BLOCK_SIZE,
                     maxChildren, /* Number of children */
                     1, /* Provider version */
-                    1); /* Start time */
+                    1, /* Start time */
+                    compressed);
             ht = new HistoryTreeClassicStub(config);
 
         } catch (IOException e) {
@@ -320,4 +344,110 @@ public class HistoryTreeTest {
         assertEquals( 5, branch.get(2).getSequenceNumber());
         assertEquals( 4, branch.get(2).getParentSequenceNumber());
     }
+
+    /**
+     * Test that the nodes of a finished tree, which are read from the file
+     * mapped in memory, are the same as the nodes that were written.
+     *
+     * @throws IOException
+     *             If the test fails
+     */
+    @Test
+    public void testReadFinishedTree() throws IOException {
+        long start = 1;
+        HistoryTreeClassicStub ht = setupSmallTree(2);
+        for (int i = 0; i < 3; i++) {
+            start = fillNextLeafNode(ht, start);
+            start = fillValues(ht, STRING_VALUE, 1, start);
+        }
+        ht.closeTree(start);
+
+        File file = fTempFile;
+        assertNotNull(file);
+        HistoryTreeClassicStub reopened = new HistoryTreeClassicStub(file, 1);
+        try {
+            assertEquals(ht.getNodeCount(), reopened.getNodeCount());
+            for (int i = 0; i < ht.getNodeCount(); i++) {
+                HTNode expected = ht.readNode(i);
+                HTNode actual = reopened.readNode(i);
+                assertEquals(expected.getNodeStart(), actual.getNodeStart());
+                assertEquals(expected.getNodeEnd(), actual.getNodeEnd());
+                assertEquals(expected.getParentSequenceNumber(), actual.getParentSequenceNumber());
+                assertEquals(expected.getNodeUsedSpace(), actual.getNodeUsedSpace());
+                assertEquals(expected.getRelevantInterval(1, expected.getNodeStart()),
+                        actual.getRelevantInterval(1, actual.getNodeStart()));
+            }
+        } finally {
+            reopened.closeFile();
+            ht.closeFile();
+        }
+    }
+
+    /**
+     * Test that a tree with compressed nodes needs fewer nodes than a classic
+     * tree for the same intervals, and that the intervals read back from the
+     * file are the ones that were inserted.
+     *
+     * @throws IOException
+     *             If the test fails
+     */
+    @Test
+    public void testCompressedTree() throws IOException {
+        File compressedFile = File.createTempFile("tmpCompressedStateSystem", null);
+        HistoryTreeClassicStub classic = setupSmallTree(3);
+        HistoryTreeClassicStub compressed = setupSmallTree(compressedFile, 3, true);
+        HistoryTreeClassicStub reopened = null;
+        try {
+            int nbQuarks = 10;
+            long time = 1;
+            for (int i = 0; i < 2000; i++) {
+                HTInterval interval = new HTInterval(time, time + i % 7, i % nbQuarks, getCompressionTestValue(i));
+                classic.insertInterval(interval);
+                compressed.insertInterval(interval);
+                time += i % 7 + 1;
+            }
+            classic.closeTree(time);
+            compressed.closeTree(time);
+            assertTrue(compressed.getNodeCount() < classic.getNodeCount());
+
+            reopened = new HistoryTreeClassicStub(compressedFile, 1);
+            assertEquals(compressed.getNodeCount(), reopened.getNodeCount());
+            Collection<@NonNull Integer> quarks = new ArrayList<>();
+            for (int quark = 0; quark < nbQuarks; quark++) {
+                quarks.add(quark);
+            }
+            IntegerRangeCondition quarkCondition = IntegerRangeCondition.forDiscreteRange(quarks);
+            for (int i = 0; i < compressed.getNodeCount(); i++) {
+                HTNode expected = compressed.readNode(i);
+                HTNode actual = reopened.readNode(i);
+                assertEquals(expected.getNodeUsedSpace(), actual.getNodeUsedSpace());
+                TimeRangeCondition timeCondition = TimeRangeCondition.forContinuousRange(expected.getNodeStart(), expected.getNodeEnd());
+                assertEquals(Lists.newArrayList(expected.iterable2D(quarkCondition, timeCondition)),
+                        Lists.newArrayList(actual.iterable2D(quarkCondition, timeCondition)));
+            }
+        } finally {
+            if (reopened != null) {
+                reopened.closeFile();
+            }
+            classic.closeFile();
+            compressed.closeFile();
+            compressedFile.delete();
+        }
+    }
+
+    private static @Nullable Object getCompressionTestValue(int i) {
+        switch (i % 5) {
+        case 0:
+            return null;
+        case 1:
+            return -i;
+        case 2:
+            return Long.MAX_VALUE - i;
+        case 3:
+            return i / 3.0;
+        default:
+            /* Few distinct strings, they are shared in the dictionary */
+            return "state" + (i % 4);
+        }
+    }
 }
@@ -110,7 +110,7 @@ public class HistoryTreeWithBackendTest {
              * Add an interval while there is still room for it or make sure the
              * node does not get written on disk in the meantime.
              */
-            while (interval.getSizeOnDisk() <= latestLeaf.getNodeFreeSpace() || latestLeaf.isOnDisk()) {
+            while (latestLeaf.getIntervalSize(interval) <= latestLeaf.getNodeFreeSpace() || latestLeaf.isOnDisk()) {
                 backend.insertPastState(
                         Math.max(startTime, time - duration),
                         time - 1,
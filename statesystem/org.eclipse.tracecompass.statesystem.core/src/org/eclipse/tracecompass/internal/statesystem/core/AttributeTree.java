@@ -20,6 +20,8 @@ import static org.eclipse.tracecompass.statesystem.core.ITmfStateSystem.INVALID_
 import static org.eclipse.tracecompass.statesystem.core.ITmfStateSystem.ROOT_ATTRIBUTE;
 
 import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -30,11 +32,16 @@ import java.io.PrintWriter;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
 /**
  * The Attribute Tree is the /proc-like filesystem used to organize attributes.
  * Each node of this tree is both like a file and a directory in the
@@ -59,6 +66,69 @@ public final class AttributeTree {
     private final Attribute fAttributeTreeRoot;
     private final ReentrantReadWriteLock fLock = new ReentrantReadWriteLock();
 
+    /*
+     * Immutable copy of the tree, available once the tree is sealed. Read
+     * accesses use it without taking the lock.
+     */
+    private volatile @Nullable Snapshot fSnapshot = null;
+
+    /**
+     * Immutable copy of the attributes and of their children
+     */
+    private static final class Snapshot {
+
+        private final List<Attribute> fAttributes;
+        /* Children by name of each attribute, at index quark + 1 (the root is at 0) */
+        private final List<Map<String, Attribute>> fChildren;
+
+        public Snapshot(Attribute root, List<Attribute> attributes) {
+            fAttributes = ImmutableList.copyOf(attributes);
+            ImmutableList.Builder<Map<String, Attribute>> builder = ImmutableList.builder();
+            builder.add(childrenOf(root));
+            for (Attribute attribute : attributes) {
+                builder.add(childrenOf(attribute));
+            }
+            fChildren = builder.build();
+        }
+
+        private static Map<String, Attribute> childrenOf(Attribute attribute) {
+            ImmutableMap.Builder<String, Attribute> builder = ImmutableMap.builder();
+            for (Attribute child : attribute.getSubAttributes()) {
+                builder.put(child.getName(), child);
+            }
+            return builder.build();
+        }
+
+        public Attribute getAttribute(int quark) {
+            return fAttributes.get(quark);
+        }
+
+        public Map<String, Attribute> getChildren(int quark) {
+            return fChildren.get(quark + 1);
+        }
+
+        public int getQuark(int startingNodeQuark, String... subPath) {
+            int quark = startingNodeQuark;
+            for (String element : subPath) {
+                Attribute child = getChildren(quark).get(element);
+                if (child == null) {
+                    return INVALID_ATTRIBUTE;
+                }
+                quark = child.getQuark();
+            }
+            return quark;
+        }
+
+        public void addSubAttributes(List<Integer> list, int quark, boolean recursive) {
+            for (Attribute child : getChildren(quark).values()) {
+                list.add(child.getQuark());
+                if (recursive) {
+                    addSubAttributes(list, child.getQuark(), true);
+                }
+            }
+        }
+    }
+
     /**
      * Standard constructor, create a new empty Attribute Tree
      *
@@ -151,6 +221,74 @@ public final class AttributeTree {
         }
     }
 
+    /**
+     * Write the attributes of a tree that is still being built, for a
+     * checkpoint of the state system.
+     *
+     * @param output
+     *            The output to write to
+     * @throws IOException
+     *             If there is a problem writing to the output
+     */
+    public void writeCheckpoint(DataOutput output) throws IOException {
+        fLock.readLock().lock();
+        try {
+            output.writeInt(ATTRIB_TREE_MAGIC_NUMBER);
+            output.writeInt(fAttributeList.size());
+            for (Attribute entry : fAttributeList) {
+                String[] fullAttribute = entry.getFullAttribute();
+                output.writeInt(fullAttribute.length);
+                for (String element : fullAttribute) {
+                    output.writeUTF(element);
+                }
+            }
+        } finally {
+            fLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Add the attributes written by {@link #writeCheckpoint(DataOutput)} to
+     * this empty tree. The attributes get back their quarks.
+     *
+     * @param input
+     *            The input to read from
+     * @throws IOException
+     *             If there is a problem reading from the input, or if the
+     *             attributes are not valid
+     */
+    public void readCheckpoint(DataInput input) throws IOException {
+        if (input.readInt() != ATTRIB_TREE_MAGIC_NUMBER) {
+            throw new IOException("The attribute tree checkpoint is either invalid or corrupted."); //$NON-NLS-1$
+        }
+        int nbAttributes = input.readInt();
+        for (int quark = 0; quark < nbAttributes; quark++) {
+            String[] fullAttribute = new String[input.readInt()];
+            for (int i = 0; i < fullAttribute.length; i++) {
+                fullAttribute[i] = input.readUTF();
+            }
+            /* Parents come before their children, so the quarks are the same */
+            if (getQuarkAndAdd(ROOT_ATTRIBUTE, fullAttribute) != quark) {
+                throw new IOException("The attribute tree checkpoint is either invalid or corrupted."); //$NON-NLS-1$
+            }
+        }
+    }
+
+    /**
+     * Seal the tree, once the state system is done building. Read accesses then
+     * go to an immutable copy of the tree and do not take the lock anymore.
+     * Attributes can still be added after this, but every addition copies the
+     * tree again, so this should be rare.
+     */
+    public void seal() {
+        fLock.writeLock().lock();
+        try {
+            fSnapshot = new Snapshot(fAttributeTreeRoot, fAttributeList);
+        } finally {
+            fLock.writeLock().unlock();
+        }
+    }
+
     /**
      * Avoid repeating path elements that are the same from one attribute to the
      * next, and replace identical path elements with "*".
@@ -213,6 +351,10 @@ public final class AttributeTree {
      * @return The current number of attributes in the tree
      */
     public int getNbAttributes() {
+        Snapshot snapshot = fSnapshot;
+        if (snapshot != null) {
+            return snapshot.fAttributes.size();
+        }
         fLock.readLock().lock();
         try {
             return fAttributeList.size();
@@ -244,6 +386,11 @@ public final class AttributeTree {
             return startingNodeQuark;
         }
 
+        Snapshot snapshot = fSnapshot;
+        if (snapshot != null) {
+            return snapshot.getQuark(startingNodeQuark, subPath);
+        }
+
         fLock.readLock().lock();
         try {
 
@@ -271,6 +418,14 @@ public final class AttributeTree {
      *             If the starting node quark is out of range
      */
     public int getQuarkAndAdd(int startingNodeQuark, String... subPath) {
+        Snapshot snapshot = fSnapshot;
+        if (snapshot != null) {
+            int quark = snapshot.getQuark(startingNodeQuark, subPath);
+            if (quark != INVALID_ATTRIBUTE) {
+                return quark;
+            }
+        }
+
         fLock.writeLock().lock();
         try {
             /* Get the "starting node" */
@@ -292,6 +447,9 @@ public final class AttributeTree {
                     }
                     prevNode = nextNode;
                 }
+                if (fSnapshot != null) {
+                    fSnapshot = new Snapshot(fAttributeTreeRoot, fAttributeList);
+                }
                 return fAttributeList.size() - 1;
             }
             /*
@@ -317,6 +475,12 @@ public final class AttributeTree {
      *             If the attribute quark is out of range
      */
     public @NonNull List<@NonNull Integer> getSubAttributes(int attributeQuark, boolean recursive) {
+        Snapshot snapshot = fSnapshot;
+        if (snapshot != null) {
+            List<@NonNull Integer> listOfChildren = new ArrayList<>();
+            snapshot.addSubAttributes(listOfChildren, attributeQuark, recursive);
+            return listOfChildren;
+        }
         fLock.readLock().lock();
         try {
             List<@NonNull Integer> listOfChildren = new ArrayList<>();
@@ -354,6 +518,10 @@ public final class AttributeTree {
         if (quark == ROOT_ATTRIBUTE) {
             return quark;
         }
+        Snapshot snapshot = fSnapshot;
+        if (snapshot != null) {
+            return snapshot.getAttribute(quark).getParentAttributeQuark();
+        }
         fLock.readLock().lock();
         try {
             return fAttributeList.get(quark).getParentAttributeQuark();
@@ -382,6 +550,10 @@ public final class AttributeTree {
      *             If the quark is out of range
      */
     public @NonNull String getAttributeName(int quark) {
+        Snapshot snapshot = fSnapshot;
+        if (snapshot != null) {
+            return snapshot.getAttribute(quark).getName();
+        }
         fLock.readLock().lock();
         try {
             return fAttributeList.get(quark).getName();
@@ -400,6 +572,10 @@ public final class AttributeTree {
      *             If the quark is out of range
      */
     public @NonNull String getFullAttributeName(int quark) {
+        Snapshot snapshot = fSnapshot;
+        if (snapshot != null) {
+            return snapshot.getAttribute(quark).getFullAttributeName();
+        }
         fLock.readLock().lock();
         try {
             return fAttributeList.get(quark).getFullAttributeName();
@@ -419,6 +595,10 @@ public final class AttributeTree {
      *             If the quark is out of range
      */
     public String @NonNull [] getFullAttributePathArray(int quark) {
+        Snapshot snapshot = fSnapshot;
+        if (snapshot != null) {
+            return snapshot.getAttribute(quark).getFullAttribute();
+        }
         fLock.readLock().lock();
         try {
             return fAttributeList.get(quark).getFullAttribute();
@@ -13,6 +13,8 @@
 
 package org.eclipse.tracecompass.internal.statesystem.core;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -26,6 +28,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.common.core.log.TraceCompassLog;
@@ -33,6 +36,9 @@ import org.eclipse.tracecompass.common.core.log.TraceCompassLogUtils;
 import org.eclipse.tracecompass.common.core.log.TraceCompassLogUtils.ScopeLog;
 import org.eclipse.tracecompass.internal.provisional.datastore.core.condition.IntegerRangeCondition;
 import org.eclipse.tracecompass.internal.provisional.datastore.core.condition.TimeRangeCondition;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.HistoryTreeBackend;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.ShardedHistoryTreeBackend;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.ThreadedHistoryTreeBackend;
 import org.eclipse.tracecompass.statesystem.core.ITmfStateSystemBuilder;
 import org.eclipse.tracecompass.statesystem.core.backend.IStateHistoryBackend;
 import org.eclipse.tracecompass.statesystem.core.exceptions.AttributeNotFoundException;
@@ -64,6 +70,8 @@ import com.google.common.collect.Iterables;
 public class StateSystem implements ITmfStateSystemBuilder {
 
     private static final int MAX_STACK_DEPTH = 100000;
+    /* "Magic number" of the checkpoints of state systems */
+    private static final int CHECKPOINT_MAGIC_NUMBER = 0x05FFA9C4;
     private static final String PARENT = ".."; //$NON-NLS-1$
     private static final String WILDCARD = "*"; //$NON-NLS-1$
 
@@ -115,10 +123,92 @@ public class StateSystem implements ITmfStateSystemBuilder {
             /* We're opening an existing file */
             this.attributeTree = new AttributeTree(this, backend.supplyAttributeTreeReader());
             transState.setInactive();
+            attributeTree.seal();
             finishedLatch.countDown(); /* The history is already built */
         }
     }
 
+    /**
+     * Resume the construction of a history tree state system from a checkpoint
+     * written by {@link #writeCheckpoint(DataOutput)}. The history file is
+     * brought back to its state at the time of the checkpoint, and the
+     * attribute tree and the ongoing states are restored.
+     *
+     * @param ssid
+     *            The state system's id
+     * @param stateFile
+     *            The history file of the interrupted construction
+     * @param providerVersion
+     *            Version of the state provider, it must be the one of the
+     *            checkpoint
+     * @param queueSize
+     *            The size of the interval insertion queue of the backend
+     * @param checkpoint
+     *            The input to read the checkpoint from
+     * @return The state system, ready to receive the state changes that come
+     *         after the checkpoint
+     * @throws IOException
+     *             If the checkpoint is not valid or the history file cannot be
+     *             opened
+     */
+    public static StateSystem resumeFromCheckpoint(@NonNull String ssid, @NonNull File stateFile,
+            int providerVersion, int queueSize, @NonNull DataInput checkpoint) throws IOException {
+        if (checkpoint.readInt() != CHECKPOINT_MAGIC_NUMBER) {
+            throw new IOException("Not a state system checkpoint"); //$NON-NLS-1$
+        }
+        IStateHistoryBackend backend;
+        if (checkpoint.readBoolean()) {
+            backend = new ShardedHistoryTreeBackend(ssid, stateFile, providerVersion, queueSize, checkpoint);
+        } else {
+            backend = new ThreadedHistoryTreeBackend(ssid, stateFile, providerVersion, queueSize, checkpoint);
+        }
+        try {
+            StateSystem ss = new StateSystem(backend);
+            ss.attributeTree.readCheckpoint(checkpoint);
+            ss.transState.readCheckpoint(checkpoint);
+            return ss;
+        } catch (IOException e) {
+            backend.dispose();
+            throw e;
+        }
+    }
+
+    /**
+     * Write a checkpoint of this state system while it is being built, from
+     * which its construction can be resumed with
+     * {@link #resumeFromCheckpoint}. Only the state systems backed by history
+     * trees support checkpoints.
+     *
+     * This must be called from the thread that modifies the state system,
+     * between two state changes.
+     *
+     * @param output
+     *            The output to write the checkpoint to
+     * @throws IOException
+     *             If the backend does not support checkpoints, if the history
+     *             is complete, or if the checkpoint could not be written
+     */
+    public void writeCheckpoint(@NonNull DataOutput output) throws IOException {
+        if (!transState.isActive()) {
+            throw new IOException("The state system is not being built"); //$NON-NLS-1$
+        }
+        try (ScopeLog log = new ScopeLog(LOGGER, Level.FINE, "StateSystem:WriteCheckpoint", "ssid", getSSID())) { //$NON-NLS-1$ //$NON-NLS-2$
+            output.writeInt(CHECKPOINT_MAGIC_NUMBER);
+            /* The backend comes first, it is needed to create the state system */
+            if (backend instanceof ShardedHistoryTreeBackend) {
+                output.writeBoolean(true);
+                ((ShardedHistoryTreeBackend) backend).writeCheckpoint(output);
+            } else if (backend instanceof HistoryTreeBackend) {
+                output.writeBoolean(false);
+                ((HistoryTreeBackend) backend).writeCheckpoint(output);
+            } else {
+                throw new IOException("The backend does not support checkpoints"); //$NON-NLS-1$
+            }
+            attributeTree.writeCheckpoint(output);
+            transState.writeCheckpoint(output);
+        }
+    }
+
     @Override
     public String getSSID() {
         return backend.getSSID();
@@ -242,6 +332,11 @@ public class StateSystem implements ITmfStateSystemBuilder {
              */
             getAttributeTree().writeSelf(attributeTreeFile, attributeTreeFilePos);
         }
+        /*
+         * The history cannot change anymore, queries can now run without
+         * locking the attribute tree or the transient state.
+         */
+        getAttributeTree().seal();
         finishedLatch.countDown(); /* Mark the history as finished building */
     }
 
@@ -591,6 +686,44 @@ public class StateSystem implements ITmfStateSystemBuilder {
         }
     }
 
+    @Override
+    public List<List<ITmfStateInterval>> queryFullStates(long[] times)
+            throws TimeRangeException, StateSystemDisposedException {
+        if (isDisposed) {
+            throw new StateSystemDisposedException();
+        }
+
+        try (ScopeLog log = new ScopeLog(LOGGER, Level.FINER, "StateSystem:FullQueries", //$NON-NLS-1$
+                "ssid", getSSID(), "nbTimes", times.length);) { //$NON-NLS-1$ //$NON-NLS-2$
+
+            final int nbAttr = getNbAttributes();
+            List<List<@Nullable ITmfStateInterval>> stateInfos = new ArrayList<>(times.length);
+            for (long t : times) {
+                List<@Nullable ITmfStateInterval> stateInfo = new ArrayList<>(Collections.nCopies(nbAttr, null));
+                if (transState.isActive()) {
+                    transState.doQuery(stateInfo, t);
+                }
+                stateInfos.add(stateInfo);
+            }
+
+            /* Query the storage backend once for all the timestamps */
+            backend.doQuery(stateInfos, times);
+
+            /*
+             * We should have previously inserted an interval for every
+             * attribute, at every timestamp.
+             */
+            for (List<@Nullable ITmfStateInterval> stateInfo : stateInfos) {
+                for (ITmfStateInterval interval : stateInfo) {
+                    if (interval == null) {
+                        throw new IllegalStateException("Incoherent interval storage"); //$NON-NLS-1$
+                    }
+                }
+            }
+            return stateInfos;
+        }
+    }
+
     @Override
     public ITmfStateInterval querySingleState(long t, int attributeQuark)
             throws TimeRangeException, StateSystemDisposedException {
@@ -624,6 +757,18 @@ public class StateSystem implements ITmfStateSystemBuilder {
     @Override
     public Iterable<@NonNull ITmfStateInterval> query2D(Collection<@NonNull Integer> quarks, Collection<@NonNull Long> times)
             throws StateSystemDisposedException, TimeRangeException, IndexOutOfBoundsException {
+        return query2D(quarks, times, null);
+    }
+
+    @Override
+    public Iterable<@NonNull ITmfStateInterval> query2D(Collection<@NonNull Integer> quarks, long start, long end)
+            throws StateSystemDisposedException, TimeRangeException, IndexOutOfBoundsException {
+        return query2D(quarks, start, end, null);
+    }
+
+    @Override
+    public Iterable<@NonNull ITmfStateInterval> query2D(Collection<@NonNull Integer> quarks, Collection<@NonNull Long> times, @Nullable IProgressMonitor monitor)
+            throws StateSystemDisposedException, TimeRangeException, IndexOutOfBoundsException {
         if (isDisposed) {
             throw new StateSystemDisposedException();
         }
@@ -632,21 +777,21 @@ public class StateSystem implements ITmfStateSystemBuilder {
         }
 
         TimeRangeCondition timeCondition = TimeRangeCondition.forDiscreteRange(times);
-        return query2D(quarks, timeCondition);
+        return query2D(quarks, timeCondition, monitor);
     }
 
     @Override
-    public Iterable<@NonNull ITmfStateInterval> query2D(Collection<@NonNull Integer> quarks, long start, long end)
+    public Iterable<@NonNull ITmfStateInterval> query2D(Collection<@NonNull Integer> quarks, long start, long end, @Nullable IProgressMonitor monitor)
             throws StateSystemDisposedException, TimeRangeException, IndexOutOfBoundsException {
         if (isDisposed) {
             throw new StateSystemDisposedException();
         }
 
         TimeRangeCondition timeCondition = TimeRangeCondition.forContinuousRange(start, end);
-        return query2D(quarks, timeCondition);
+        return query2D(quarks, timeCondition, monitor);
     }
 
-    private Iterable<@NonNull ITmfStateInterval> query2D(@NonNull Collection<@NonNull Integer> quarks, TimeRangeCondition timeCondition)
+    private Iterable<@NonNull ITmfStateInterval> query2D(@NonNull Collection<@NonNull Integer> quarks, TimeRangeCondition timeCondition, @Nullable IProgressMonitor monitor)
             throws TimeRangeException, IndexOutOfBoundsException {
         if (timeCondition.min() < getStartTime()) {
             throw new TimeRangeException("Time conditions " + timeCondition.min() + " is lower than state system start time: " + getStartTime());  //$NON-NLS-1$ //$NON-NLS-2$
@@ -661,8 +806,14 @@ public class StateSystem implements ITmfStateSystemBuilder {
             throw new IndexOutOfBoundsException();
         }
 
+        /*
+         * The ongoing states hold at most one interval per quark, they are
+         * copied now so that they are consistent with the state system at the
+         * time of the query. The backend intervals are read as the iterator
+         * advances.
+         */
         Iterable<@NonNull ITmfStateInterval> transStateIterable = transState.query2D(quarks, timeCondition);
-        Iterable<@NonNull ITmfStateInterval> backendIterable = backend.query2D(quarkCondition, timeCondition);
+        Iterable<@NonNull ITmfStateInterval> backendIterable = backend.query2D(quarkCondition, timeCondition, monitor);
 
         return Iterables.concat(transStateIterable, backendIterable);
     }
@@ -15,7 +15,11 @@
 
 package org.eclipse.tracecompass.internal.statesystem.core;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -30,6 +34,7 @@ import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.common.core.log.TraceCompassLog;
 import org.eclipse.tracecompass.common.core.log.TraceCompassLogUtils;
 import org.eclipse.tracecompass.internal.provisional.datastore.core.condition.TimeRangeCondition;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.HTInterval;
 import org.eclipse.tracecompass.statesystem.core.backend.IStateHistoryBackend;
 import org.eclipse.tracecompass.statesystem.core.exceptions.StateValueTypeException;
 import org.eclipse.tracecompass.statesystem.core.exceptions.TimeRangeException;
@@ -53,6 +58,14 @@ public class TransientState {
 
     private static final Logger LOGGER = TraceCompassLog.getLogger(TransientState.class);
 
+    /* Value types of the attributes in checkpoints */
+    private static final byte CHECKPOINT_TYPE_NONE = 0;
+    private static final byte CHECKPOINT_TYPE_INTEGER = 1;
+    private static final byte CHECKPOINT_TYPE_LONG = 2;
+    private static final byte CHECKPOINT_TYPE_DOUBLE = 3;
+    private static final byte CHECKPOINT_TYPE_STRING = 4;
+    private static final byte CHECKPOINT_TYPE_CUSTOM = 5;
+
     /* Indicates where to insert state changes that we generate */
     private final IStateHistoryBackend fBackend;
 
@@ -183,6 +196,10 @@ public class TransientState {
      *             If the quark is out of range
      */
     public @Nullable ITmfStateInterval getIntervalAt(long time, int quark) {
+        if (!fIsActive) {
+            /* Once closed, the transient state is empty and never changes */
+            return null;
+        }
         fRWLock.readLock().lock();
         try {
             if (!isActive() || time < fOngoingStateStartTimes.get(quark)) {
@@ -329,6 +346,103 @@ public class TransientState {
         }
     }
 
+    /**
+     * Write the ongoing state of all the attributes, for a checkpoint of the
+     * state system. The values are written like the intervals of the history
+     * tree.
+     *
+     * @param output
+     *            The output to write to
+     * @throws IOException
+     *             If there is a problem writing to the output
+     */
+    public void writeCheckpoint(DataOutput output) throws IOException {
+        fRWLock.readLock().lock();
+        try {
+            output.writeLong(fLatestTime);
+            output.writeInt(fOngoingStateInfo.size());
+            for (int quark = 0; quark < fOngoingStateInfo.size(); quark++) {
+                long start = fOngoingStateStartTimes.get(quark);
+                HTInterval interval = new HTInterval(start, Math.max(start, fLatestTime), quark, fOngoingStateInfo.get(quark));
+                ByteBuffer buffer = ByteBuffer.allocate(interval.getSizeOnDisk());
+                interval.writeInterval(buffer);
+                output.writeByte(getCheckpointType(fStateValueTypes.get(quark)));
+                output.writeInt(buffer.capacity());
+                output.write(buffer.array());
+            }
+        } finally {
+            fRWLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Restore the ongoing state written by {@link #writeCheckpoint(DataOutput)}.
+     * The attributes must have been restored first.
+     *
+     * @param input
+     *            The input to read from
+     * @throws IOException
+     *             If there is a problem reading from the input, or if the
+     *             state does not match the attributes
+     */
+    public void readCheckpoint(DataInput input) throws IOException {
+        fRWLock.writeLock().lock();
+        try {
+            long latestTime = input.readLong();
+            int nbAttributes = input.readInt();
+            if (nbAttributes != fOngoingStateInfo.size()) {
+                throw new IOException("The ongoing state does not match the attributes"); //$NON-NLS-1$
+            }
+            for (int quark = 0; quark < nbAttributes; quark++) {
+                byte type = input.readByte();
+                byte[] bytes = new byte[input.readInt()];
+                input.readFully(bytes);
+                HTInterval interval = HTInterval.readFrom(ByteBuffer.wrap(bytes));
+                Object value = interval.getValue();
+                fOngoingStateInfo.set(quark, value);
+                fOngoingStateStartTimes.set(quark, interval.getStartTime());
+                fStateValueTypes.set(quark, value != null ? value.getClass() : getCheckpointClass(type));
+            }
+            fLatestTime = latestTime;
+        } finally {
+            fRWLock.writeLock().unlock();
+        }
+    }
+
+    private static byte getCheckpointType(@Nullable Class<?> type) {
+        if (type == null) {
+            return CHECKPOINT_TYPE_NONE;
+        } else if (type == Integer.class) {
+            return CHECKPOINT_TYPE_INTEGER;
+        } else if (type == Long.class) {
+            return CHECKPOINT_TYPE_LONG;
+        } else if (type == Double.class) {
+            return CHECKPOINT_TYPE_DOUBLE;
+        } else if (type == String.class) {
+            return CHECKPOINT_TYPE_STRING;
+        }
+        return CHECKPOINT_TYPE_CUSTOM;
+    }
+
+    /*
+     * The class of a custom value cannot be restored while the attribute is
+     * null, the attribute then accepts any type again.
+     */
+    private static @Nullable Class<?> getCheckpointClass(byte type) {
+        switch (type) {
+        case CHECKPOINT_TYPE_INTEGER:
+            return Integer.class;
+        case CHECKPOINT_TYPE_LONG:
+            return Long.class;
+        case CHECKPOINT_TYPE_DOUBLE:
+            return Double.class;
+        case CHECKPOINT_TYPE_STRING:
+            return String.class;
+        default:
+            return null;
+        }
+    }
+
     /**
      * Run a "get state at time" query on the Transient State only.
      *
@@ -339,6 +453,9 @@ public class TransientState {
      *            The requested timestamp
      */
     public void doQuery(List<@Nullable ITmfStateInterval> stateInfo, long t) {
+        if (!fIsActive) {
+            return;
+        }
         fRWLock.readLock().lock();
         try {
             if (!this.fIsActive) {
@@ -376,6 +493,9 @@ public class TransientState {
      * @since 2.1
      */
     public Iterable<ITmfStateInterval> query2D(Collection<Integer> quarks, TimeRangeCondition timeCondition) {
+        if (!fIsActive) {
+            return Collections.EMPTY_LIST;
+        }
         fRWLock.readLock().lock();
         try (TraceCompassLogUtils.ScopeLog log = new TraceCompassLogUtils.ScopeLog(LOGGER, Level.FINEST, "TransientState:query2D", //$NON-NLS-1$
                 "ssid", fBackend.getSSID(), //$NON-NLS-1$
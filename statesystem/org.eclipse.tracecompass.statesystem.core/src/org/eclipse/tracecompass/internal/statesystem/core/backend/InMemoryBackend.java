@@ -16,15 +16,17 @@ package org.eclipse.tracecompass.internal.statesystem.core.backend;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.util.Comparator;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.NavigableSet;
-import java.util.TreeSet;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.common.core.log.TraceCompassLog;
 import org.eclipse.tracecompass.common.core.log.TraceCompassLogUtils;
 import org.eclipse.tracecompass.internal.provisional.datastore.core.condition.IntegerRangeCondition;
@@ -35,17 +37,23 @@ import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
 import org.eclipse.tracecompass.statesystem.core.interval.TmfStateInterval;
 import org.eclipse.tracecompass.statesystem.core.statevalue.ITmfStateValue;
 
-import com.google.common.collect.Iterables;
+import com.google.common.collect.AbstractIterator;
 
 /**
  * State history back-end that stores its intervals in RAM only. It cannot be
  * saved to disk, which means we need to rebuild it every time we re-open a
- * trace. But it's relatively quick to build, so this shouldn't be a problem in
- * most cases.
+ * trace.
  *
- * This should only be used with very small state histories (and/or, very small
- * traces). Since it's stored in standard Collections, it's limited to 2^31
- * intervals.
+ * The intervals are not kept as objects: their start times, end times and
+ * values are stored in columns of primitive arrays, allocated in fixed-size
+ * chunks as the history grows. Each attribute has an index of its intervals
+ * sorted by end time, which is binary searched by the queries. An interval
+ * takes about 30 bytes and does not add any object to the heap, so large
+ * histories can be kept in memory without long garbage collections. The
+ * interval objects are only created when they are returned by a query.
+ *
+ * String and custom values are stored once, in a table shared by all the
+ * intervals. The number of intervals is limited to 2^31.
  *
  * @author Alexandre Montplaisir
  */
@@ -53,12 +61,45 @@ public class InMemoryBackend implements IStateHistoryBackend {
 
     private static final @NonNull Logger LOGGER = TraceCompassLog.getLogger(InMemoryBackend.class);
 
+    /* The columns are allocated in chunks of this many intervals */
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /* Type of the value of each interval */
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_INTEGER = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_DOUBLE = 3;
+    private static final byte TYPE_OBJECT = 4;
+
     private final @NonNull String ssid;
-    private final NavigableSet<@NonNull ITmfStateInterval> intervals;
     private final long startTime;
 
     private volatile long latestTime;
 
+    /* Lock protecting the columns, the value table and the attribute index */
+    private final ReentrantReadWriteLock fLock = new ReentrantReadWriteLock(false);
+
+    /*
+     * Columns of the intervals, indexed by interval id. The value column holds
+     * the int and long values, the bits of the double values, or the index of
+     * the value in the object table.
+     */
+    private long[][] fStarts = new long[0][];
+    private long[][] fEnds = new long[0][];
+    private long[][] fValues = new long[0][];
+    private byte[][] fTypes = new byte[0][];
+    private int fSize = 0;
+
+    /* String and custom values, each one is stored once */
+    private final List<Object> fObjects = new ArrayList<>();
+    private final Map<Object, Integer> fObjectIndexes = new HashMap<>();
+
+    /* Ids of the intervals of each attribute, sorted by end time */
+    private int[][] fQuarkIntervals = new int[0][];
+    private int[] fQuarkSizes = new int[0];
+
     /**
      * Constructor
      *
@@ -71,14 +112,6 @@ public class InMemoryBackend implements IStateHistoryBackend {
         this.ssid = ssid;
         this.startTime = startTime;
         this.latestTime = startTime;
-        /**
-         * We need to compare the end time and the attribute, because we can
-         * have 2 intervals with the same end time (for different attributes).
-         * And TreeSet needs a unique "key" per element.
-         */
-        this.intervals = new TreeSet<>(Comparator
-                .comparing(ITmfStateInterval::getEndTime)
-                .thenComparing(ITmfStateInterval::getAttribute));
     }
 
     @Override
@@ -105,17 +138,21 @@ public class InMemoryBackend implements IStateHistoryBackend {
 
     @Override
     public void insertPastState(long stateStartTime, long stateEndTime,
-            int quark, Object value) throws TimeRangeException {
+            int quark, @Nullable Object value) throws TimeRangeException {
         /* Make sure the passed start/end times make sense */
         if (stateStartTime > stateEndTime || stateStartTime < startTime) {
             throw new TimeRangeException(ssid + " Interval Start:" + stateStartTime + ", Interval End:" + stateEndTime + ", Backend Start:" + startTime); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
         }
+        if (quark < 0) {
+            throw new IllegalArgumentException(ssid + " Invalid attribute: " + quark); //$NON-NLS-1$
+        }
 
-        ITmfStateInterval interval = new TmfStateInterval(stateStartTime, stateEndTime, quark, value);
-
-        /* Add the interval into the tree */
-        synchronized (intervals) {
-            intervals.add(interval);
+        fLock.writeLock().lock();
+        try {
+            int id = appendInterval(stateStartTime, stateEndTime, value);
+            indexInterval(quark, id, stateEndTime);
+        } finally {
+            fLock.writeLock().unlock();
         }
 
         /* Update the "latest seen time" */
@@ -125,55 +162,39 @@ public class InMemoryBackend implements IStateHistoryBackend {
     }
 
     @Override
-    public void doQuery(List<ITmfStateInterval> currentStateInfo, long t)
+    public void doQuery(List<@Nullable ITmfStateInterval> currentStateInfo, long t)
             throws TimeRangeException {
         if (!checkValidTime(t)) {
             throw new TimeRangeException(ssid + " Time:" + t + ", Start:" + startTime + ", End:" + latestTime); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
         }
 
-        /*
-         * The intervals are sorted by end time, so we can binary search to get
-         * the first possible interval, then only compare their start times.
-         */
-        synchronized (intervals) {
-            Iterator<ITmfStateInterval> iter = searchforEndTime(intervals, 0, t).iterator();
-            for (int modCount = 0; iter.hasNext() && modCount < currentStateInfo.size();) {
-                ITmfStateInterval entry = iter.next();
-                final long entryStartTime = entry.getStartTime();
-                if (entryStartTime <= t) {
-                    /* Add this interval to the returned values */
-                    currentStateInfo.set(entry.getAttribute(), entry);
-                    modCount++;
+        fLock.readLock().lock();
+        try {
+            int nbQuarks = Math.min(currentStateInfo.size(), fQuarkIntervals.length);
+            for (int quark = 0; quark < nbQuarks; quark++) {
+                ITmfStateInterval interval = getInterval(quark, t);
+                if (interval != null) {
+                    currentStateInfo.set(quark, interval);
                 }
             }
+        } finally {
+            fLock.readLock().unlock();
         }
     }
 
     @Override
-    public ITmfStateInterval doSingularQuery(long t, int attributeQuark)
+    public @Nullable ITmfStateInterval doSingularQuery(long t, int attributeQuark)
             throws TimeRangeException {
         if (!checkValidTime(t)) {
             throw new TimeRangeException(ssid + " Time:" + t + ", Start:" + startTime + ", End:" + latestTime); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
         }
 
-        /*
-         * The intervals are sorted by end time, so we can binary search to get
-         * the first possible interval, then only compare their start times.
-         */
-        synchronized (intervals) {
-            Iterable<ITmfStateInterval> iter = searchforEndTime(intervals, attributeQuark, t);
-            for (ITmfStateInterval entry : iter) {
-                final boolean attributeMatches = (entry.getAttribute() == attributeQuark);
-                final long entryStartTime = entry.getStartTime();
-                if (attributeMatches) {
-                    if (entryStartTime <= t) {
-                        /* This is the droid we are looking for */
-                        return entry;
-                    }
-                }
-            }
+        fLock.readLock().lock();
+        try {
+            return getInterval(attributeQuark, t);
+        } finally {
+            fLock.readLock().unlock();
         }
-        return null;
     }
 
     private boolean checkValidTime(long t) {
@@ -186,13 +207,13 @@ public class InMemoryBackend implements IStateHistoryBackend {
     }
 
     @Override
-    public FileInputStream supplyAttributeTreeReader() {
+    public @Nullable FileInputStream supplyAttributeTreeReader() {
         /* Saving to disk not supported */
         return null;
     }
 
     @Override
-    public File supplyAttributeTreeWriterFile() {
+    public @Nullable File supplyAttributeTreeWriterFile() {
         /* Saving to disk not supported */
         return null;
     }
@@ -210,12 +231,21 @@ public class InMemoryBackend implements IStateHistoryBackend {
 
     @Override
     public void dispose() {
-        /* Nothing to do */
-    }
-
-    private static Iterable<@NonNull ITmfStateInterval> searchforEndTime(NavigableSet<@NonNull ITmfStateInterval> tree, int quark, long time) {
-        ITmfStateInterval dummyInterval = new TmfStateInterval(-1, time, quark, (Object) null);
-        return tree.tailSet(dummyInterval);
+        /* Release the columns, the backend may outlive its state system */
+        fLock.writeLock().lock();
+        try {
+            fStarts = new long[0][];
+            fEnds = new long[0][];
+            fValues = new long[0][];
+            fTypes = new byte[0][];
+            fSize = 0;
+            fObjects.clear();
+            fObjectIndexes.clear();
+            fQuarkIntervals = new int[0][];
+            fQuarkSizes = new int[0];
+        } finally {
+            fLock.writeLock().unlock();
+        }
     }
 
     @Override
@@ -225,12 +255,230 @@ public class InMemoryBackend implements IStateHistoryBackend {
                 "ssid", getSSID(), //$NON-NLS-1$
                 "quarks", quarks, //$NON-NLS-1$
                 "times", times)) { //$NON-NLS-1$
-            synchronized (intervals) {
-                return Iterables.filter(searchforEndTime(intervals, quarks.min(), times.min()),
-                        interval -> quarks.test(interval.getAttribute())
-                                && times.intersects(interval.getStartTime(), interval.getEndTime()));
+            return () -> new Query2DIterator(quarks, times);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Columns and index
+    // ------------------------------------------------------------------------
+
+    /* Should only be called with the write lock */
+    private int appendInterval(long start, long end, @Nullable Object value) {
+        if (fSize == Integer.MAX_VALUE) {
+            throw new IllegalStateException(ssid + " Too many intervals for an in-memory history"); //$NON-NLS-1$
+        }
+        int id = fSize;
+        int chunk = id >>> CHUNK_BITS;
+        if (chunk == fStarts.length) {
+            int nbChunks = Math.max(1, chunk * 2);
+            fStarts = Arrays.copyOf(fStarts, nbChunks);
+            fEnds = Arrays.copyOf(fEnds, nbChunks);
+            fValues = Arrays.copyOf(fValues, nbChunks);
+            fTypes = Arrays.copyOf(fTypes, nbChunks);
+        }
+        if (fStarts[chunk] == null) {
+            fStarts[chunk] = new long[CHUNK_SIZE];
+            fEnds[chunk] = new long[CHUNK_SIZE];
+            fValues[chunk] = new long[CHUNK_SIZE];
+            fTypes[chunk] = new byte[CHUNK_SIZE];
+        }
+
+        int offset = id & CHUNK_MASK;
+        fStarts[chunk][offset] = start;
+        fEnds[chunk][offset] = end;
+        if (value == null) {
+            fTypes[chunk][offset] = TYPE_NULL;
+        } else if (value instanceof Integer) {
+            fTypes[chunk][offset] = TYPE_INTEGER;
+            fValues[chunk][offset] = (Integer) value;
+        } else if (value instanceof Long) {
+            fTypes[chunk][offset] = TYPE_LONG;
+            fValues[chunk][offset] = (Long) value;
+        } else if (value instanceof Double) {
+            fTypes[chunk][offset] = TYPE_DOUBLE;
+            fValues[chunk][offset] = Double.doubleToRawLongBits((Double) value);
+        } else {
+            fTypes[chunk][offset] = TYPE_OBJECT;
+            fValues[chunk][offset] = fObjectIndexes.computeIfAbsent(value, v -> {
+                fObjects.add(v);
+                return fObjects.size() - 1;
+            });
+        }
+        fSize++;
+        return id;
+    }
+
+    /* Should only be called with the write lock */
+    private void indexInterval(int quark, int id, long end) {
+        if (quark >= fQuarkIntervals.length) {
+            int nbQuarks = Math.max(quark + 1, fQuarkIntervals.length * 2);
+            fQuarkIntervals = Arrays.copyOf(fQuarkIntervals, nbQuarks);
+            fQuarkSizes = Arrays.copyOf(fQuarkSizes, nbQuarks);
+        }
+        int[] ids = fQuarkIntervals[quark];
+        int size = fQuarkSizes[quark];
+        if (ids == null) {
+            ids = new int[4];
+        } else if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+
+        /*
+         * The intervals of an attribute normally arrive in order, but keep the
+         * index sorted if they do not.
+         */
+        int pos = size;
+        if (size > 0 && getEnd(ids[size - 1]) > end) {
+            pos = searchEnd(ids, size, end, true);
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+        }
+        ids[pos] = id;
+        fQuarkIntervals[quark] = ids;
+        fQuarkSizes[quark] = size + 1;
+    }
+
+    /**
+     * Binary search the index of an attribute for the first interval that ends
+     * at or after a time. Should be called with the lock.
+     *
+     * @param ids
+     *            The interval ids of the attribute, sorted by end time
+     * @param size
+     *            The number of intervals of the attribute
+     * @param t
+     *            The time to search
+     * @param strict
+     *            If true, search for the first interval that ends strictly
+     *            after t
+     * @return The position of the interval in the index, or size if there is
+     *         none
+     */
+    private int searchEnd(int[] ids, int size, long t, boolean strict) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            long end = getEnd(ids[mid]);
+            if (end < t || (strict && end == t)) {
+                low = mid + 1;
+            } else {
+                high = mid;
             }
         }
+        return low;
+    }
+
+    /* Should only be called with the lock */
+    private @Nullable ITmfStateInterval getInterval(int quark, long t) {
+        if (quark < 0 || quark >= fQuarkIntervals.length) {
+            return null;
+        }
+        int[] ids = fQuarkIntervals[quark];
+        int size = fQuarkSizes[quark];
+        if (ids == null) {
+            return null;
+        }
+        /*
+         * The intervals of an attribute do not overlap, so only the first one
+         * that ends after t may contain it.
+         */
+        int pos = searchEnd(ids, size, t, false);
+        if (pos < size && getStart(ids[pos]) <= t) {
+            return createInterval(quark, ids[pos]);
+        }
+        return null;
+    }
+
+    private long getStart(int id) {
+        return fStarts[id >>> CHUNK_BITS][id & CHUNK_MASK];
+    }
+
+    private long getEnd(int id) {
+        return fEnds[id >>> CHUNK_BITS][id & CHUNK_MASK];
+    }
+
+    /* Should only be called with the lock */
+    private @NonNull ITmfStateInterval createInterval(int quark, int id) {
+        int chunk = id >>> CHUNK_BITS;
+        int offset = id & CHUNK_MASK;
+        long value = fValues[chunk][offset];
+        Object object;
+        switch (fTypes[chunk][offset]) {
+        case TYPE_INTEGER:
+            object = (int) value;
+            break;
+        case TYPE_LONG:
+            object = value;
+            break;
+        case TYPE_DOUBLE:
+            object = Double.longBitsToDouble(value);
+            break;
+        case TYPE_OBJECT:
+            object = fObjects.get((int) value);
+            break;
+        case TYPE_NULL:
+        default:
+            object = null;
+            break;
+        }
+        return new TmfStateInterval(fStarts[chunk][offset], fEnds[chunk][offset], quark, object);
     }
 
+    /**
+     * Iterator over the intervals of a 2D query. The attributes are visited in
+     * order, and for each one, only the intervals from the first one that ends
+     * after the start of the time condition are read. The intervals are read
+     * as the iterator advances, so the intervals inserted after the query was
+     * made may be returned.
+     */
+    private class Query2DIterator extends AbstractIterator<@NonNull ITmfStateInterval> {
+
+        private final IntegerRangeCondition fQuarks;
+        private final TimeRangeCondition fTimes;
+        private int fQuark;
+        /* Position in the index of the current attribute, -1 to search it */
+        private int fPos = -1;
+
+        public Query2DIterator(IntegerRangeCondition quarks, TimeRangeCondition times) {
+            fQuarks = quarks;
+            fTimes = times;
+            fQuark = Math.max(0, quarks.min());
+        }
+
+        @Override
+        protected @Nullable ITmfStateInterval computeNext() {
+            fLock.readLock().lock();
+            try {
+                while (fQuark <= fQuarks.max() && fQuark < fQuarkIntervals.length) {
+                    int[] ids = fQuarkIntervals[fQuark];
+                    int size = fQuarkSizes[fQuark];
+                    if (ids != null && fQuarks.test(fQuark)) {
+                        if (fPos < 0) {
+                            fPos = searchEnd(ids, size, fTimes.min(), false);
+                        }
+                        while (fPos < size) {
+                            int id = ids[fPos++];
+                            long start = getStart(id);
+                            if (start > fTimes.max()) {
+                                /* The next intervals start even later */
+                                break;
+                            }
+                            if (fTimes.intersects(start, getEnd(id))) {
+                                return createInterval(fQuark, id);
+                            }
+                        }
+                    }
+                    if (fQuark == Integer.MAX_VALUE) {
+                        break;
+                    }
+                    fQuark++;
+                    fPos = -1;
+                }
+                return endOfData();
+            } finally {
+                fLock.readLock().unlock();
+            }
+        }
+    }
 }
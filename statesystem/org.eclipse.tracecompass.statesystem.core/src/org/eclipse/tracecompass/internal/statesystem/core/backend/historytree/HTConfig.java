@@ -29,6 +29,7 @@ public final class HTConfig {
     private final int maxChildren;
     private final int providerVersion;
     private final long treeStart;
+    private final boolean compressed;
 
     /**
      * Full constructor.
@@ -47,14 +48,42 @@ public final class HTConfig {
      *            uselessly.
      * @param startTime
      *            The start time of the history
+     * @param compressed
+     *            Whether the intervals of the nodes are written in the
+     *            compressed format, with variable-length integers and a string
+     *            dictionary per node
      */
     public HTConfig(File newStateFile, int blockSize, int maxChildren,
-            int providerVersion, long startTime) {
+            int providerVersion, long startTime, boolean compressed) {
         this.stateFile = newStateFile;
         this.blockSize = blockSize;
         this.maxChildren = maxChildren;
         this.providerVersion = providerVersion;
         this.treeStart = startTime;
+        this.compressed = compressed;
+    }
+
+    /**
+     * Constructor for a tree whose nodes are not compressed.
+     *
+     * @param newStateFile
+     *            The name of the history file
+     * @param blockSize
+     *            The size of each "block" on disk. One node will always fit in
+     *            one block.
+     * @param maxChildren
+     *            The maximum number of children allowed per core (non-leaf)
+     *            node.
+     * @param providerVersion
+     *            The version of the state provider. If a file already exists,
+     *            and their versions match, the history file will not be rebuilt
+     *            uselessly.
+     * @param startTime
+     *            The start time of the history
+     */
+    public HTConfig(File newStateFile, int blockSize, int maxChildren,
+            int providerVersion, long startTime) {
+        this(newStateFile, blockSize, maxChildren, providerVersion, startTime, false);
     }
 
     /**
@@ -122,4 +151,13 @@ public final class HTConfig {
     public long getTreeStart() {
         return treeStart;
     }
+
+    /**
+     * Get whether the nodes of the tree are compressed
+     *
+     * @return True if the intervals are written in the compressed format
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
 }
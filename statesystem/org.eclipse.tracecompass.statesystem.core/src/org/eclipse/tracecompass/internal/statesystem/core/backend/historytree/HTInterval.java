@@ -56,8 +56,11 @@ public final class HTInterval implements ITmfStateInterval {
     private final int attribute;
     private final @Nullable Object sv;
 
-    /** Number of bytes used by this interval when it is written to disk */
-    private final int fSizeOnDisk;
+    /*
+     * Number of bytes used by this interval when it is written to disk, or -1
+     * if it was not computed yet
+     */
+    private int fSizeOnDisk;
 
     /**
      * Standard constructor
@@ -133,7 +136,8 @@ public final class HTInterval implements ITmfStateInterval {
      * "Faster" constructor for inner use only. When we build an interval when
      * reading it from disk (with {@link #readFrom}), we already know the size
      * of the strings entry, so there is no need to call
-     * {@link #computeStringsEntrySize()} and do an extra copy.
+     * {@link #computeStringsEntrySize()} and do an extra copy. A size of -1
+     * means it will be computed the first time it is needed.
      */
     private HTInterval(long intervalStart, long intervalEnd, int attribute,
             Object value, int size) throws TimeRangeException {
@@ -148,6 +152,84 @@ public final class HTInterval implements ITmfStateInterval {
         this.fSizeOnDisk = size;
     }
 
+    /**
+     * Reader factory method for the intervals of compressed nodes. Builds the
+     * interval from a buffer positioned on an interval written by
+     * {@link #writeCompressed}.
+     *
+     * The layout of a compressed interval is
+     * <ul>
+     * <li>start, minus the start of the node (variable-length)</li>
+     * <li>duration, end minus start (variable-length)</li>
+     * <li>attribute (variable-length)</li>
+     * <li>sv type (1 byte)</li>
+     * <li>sv (0 bytes for null, zig-zag variable-length for int and long, 8
+     * bytes for double, the variable-length index in the string dictionary of
+     * the node for strings)</li>
+     * </ul>
+     *
+     * @param buffer
+     *            The ByteBuffer from which to read the information
+     * @param nodeStart
+     *            The start time of the node containing the interval
+     * @param strings
+     *            The string dictionary of the node
+     * @return The interval object
+     * @throws IOException
+     *             If there was an error reading from the buffer
+     */
+    public static final HTInterval readCompressedFrom(ByteBuffer buffer, long nodeStart, String[] strings) throws IOException {
+        Object value;
+
+        long intervalStart = nodeStart + HTVarInt.getLong(buffer);
+        long intervalEnd = intervalStart + HTVarInt.getLong(buffer);
+        int attribute = HTVarInt.getInt(buffer);
+
+        byte valueType = buffer.get();
+        switch (valueType) {
+        case TYPE_NULL:
+            value = null;
+            break;
+
+        case TYPE_INTEGER:
+            value = (int) HTVarInt.unZigZag(HTVarInt.getLong(buffer));
+            break;
+
+        case TYPE_STRING: {
+            int index = HTVarInt.getInt(buffer);
+            if (index >= strings.length) {
+                throw new IOException(errMsg);
+            }
+            value = strings[index];
+            break;
+        }
+
+        case TYPE_LONG:
+            value = HTVarInt.unZigZag(HTVarInt.getLong(buffer));
+            break;
+
+        case TYPE_DOUBLE:
+            value = buffer.getDouble();
+            break;
+
+        case TYPE_CUSTOM: {
+            int valueSize = HTVarInt.getInt(buffer);
+            ISafeByteBufferReader safeBuffer = SafeByteBufferFactory.wrapReader(buffer, valueSize);
+            value = CustomStateValue.readSerializedValue(safeBuffer);
+            break;
+        }
+        default:
+            throw new IOException(errMsg);
+        }
+
+        try {
+            /* The uncompressed size is only computed if it is ever needed */
+            return new HTInterval(intervalStart, intervalEnd, attribute, value, -1);
+        } catch (TimeRangeException e) {
+            throw new IOException(errMsg);
+        }
+    }
+
     /**
      * Reader factory method. Builds the interval using an already-allocated
      * ByteBuffer, which normally comes from a NIO FileChannel.
@@ -295,6 +377,135 @@ public final class HTInterval implements ITmfStateInterval {
         }
     }
 
+    /**
+     * Write this interval in the compressed format, read by
+     * {@link #readCompressedFrom}. String values are written as their index in
+     * the dictionary of the node, the strings themselves are written by the
+     * node.
+     *
+     * @param buffer
+     *            The already-allocated ByteBuffer corresponding to a SHT Node
+     * @param nodeStart
+     *            The start time of the node containing the interval
+     * @param stringIndex
+     *            The index of the value in the string dictionary of the node,
+     *            if the value is a string
+     */
+    public void writeCompressed(ByteBuffer buffer, long nodeStart, int stringIndex) {
+        HTVarInt.putLong(buffer, start - nodeStart);
+        HTVarInt.putLong(buffer, end - start);
+        HTVarInt.putInt(buffer, attribute);
+
+        if (sv != null) {
+            @NonNull Object value = sv;
+            if (value instanceof Integer) {
+                buffer.put(TYPE_INTEGER);
+                HTVarInt.putLong(buffer, HTVarInt.zigZag((int) value));
+            } else if (value instanceof Long) {
+                buffer.put(TYPE_LONG);
+                HTVarInt.putLong(buffer, HTVarInt.zigZag((long) value));
+            } else if (value instanceof Double) {
+                buffer.put(TYPE_DOUBLE);
+                buffer.putDouble((double) value);
+            } else if (value instanceof String) {
+                buffer.put(TYPE_STRING);
+                HTVarInt.putInt(buffer, stringIndex);
+            } else if (value instanceof CustomStateValue) {
+                buffer.put(TYPE_CUSTOM);
+                int size = ((CustomStateValue) value).getSerializedSize();
+                HTVarInt.putInt(buffer, size);
+                ISafeByteBufferWriter safeBuffer = SafeByteBufferFactory.wrapWriter(buffer, size);
+                ((CustomStateValue) value).serialize(safeBuffer);
+            } else {
+                throw new IllegalStateException("Type: " + value.getClass() + " is not implemented in the state system"); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+        } else {
+            buffer.put(TYPE_NULL);
+        }
+    }
+
+    /**
+     * Get the number of bytes written by {@link #writeCompressed}. This does
+     * not include the string value itself, which is part of the dictionary of
+     * the node.
+     *
+     * @param nodeStart
+     *            The start time of the node containing the interval
+     * @param stringIndex
+     *            The index of the value in the string dictionary of the node,
+     *            if the value is a string
+     * @return The compressed size of the interval
+     */
+    public int getCompressedSize(long nodeStart, int stringIndex) {
+        int size = HTVarInt.sizeOf(start - nodeStart)
+                + HTVarInt.sizeOf(end - start)
+                + HTVarInt.sizeOf(attribute)
+                + Byte.BYTES;
+
+        Object value = sv;
+        if (value == null) {
+            return size;
+        } else if (value instanceof Integer) {
+            return size + HTVarInt.sizeOf(HTVarInt.zigZag((int) value));
+        } else if (value instanceof Long) {
+            return size + HTVarInt.sizeOf(HTVarInt.zigZag((long) value));
+        } else if (value instanceof Double) {
+            return size + Double.BYTES;
+        } else if (value instanceof String) {
+            return size + HTVarInt.sizeOf(stringIndex);
+        } else if (value instanceof CustomStateValue) {
+            int customSize = ((CustomStateValue) value).getSerializedSize();
+            return size + HTVarInt.sizeOf(customSize) + customSize;
+        }
+        throw new IllegalStateException();
+    }
+
+    /**
+     * Get the number of bytes taken by a string in the dictionary of a
+     * compressed node
+     *
+     * @param string
+     *            The string value
+     * @return The size of the dictionary entry
+     */
+    public static int getDictionaryEntrySize(String string) {
+        int length = string.getBytes(CHARSET).length;
+        return HTVarInt.sizeOf(length) + length;
+    }
+
+    /**
+     * Write a string in the dictionary of a compressed node
+     *
+     * @param buffer
+     *            The buffer to write to
+     * @param string
+     *            The string value
+     */
+    public static void writeDictionaryEntry(ByteBuffer buffer, String string) {
+        byte[] strArray = string.getBytes(CHARSET);
+        HTVarInt.putInt(buffer, strArray.length);
+        buffer.put(strArray);
+    }
+
+    /**
+     * Read a string from the dictionary of a compressed node
+     *
+     * @param buffer
+     *            The buffer to read from
+     * @return The string value
+     * @throws IOException
+     *             If there was an error reading from the buffer
+     */
+    public static String readDictionaryEntry(ByteBuffer buffer) throws IOException {
+        int length = HTVarInt.getInt(buffer);
+        if (length > buffer.remaining()) {
+            throw new IOException(errMsg);
+        }
+        byte[] array = new byte[length];
+        buffer.get(array);
+        return new String(array, CHARSET);
+    }
+
     @Override
     public long getStartTime() {
         return start;
@@ -331,7 +542,12 @@ public final class HTInterval implements ITmfStateInterval {
      * @return The interval size
      */
     public int getSizeOnDisk() {
-        return fSizeOnDisk;
+        int size = fSizeOnDisk;
+        if (size < 0) {
+            size = computeSizeOnDisk(sv);
+            fSizeOnDisk = size;
+        }
+        return size;
     }
 
     @Override
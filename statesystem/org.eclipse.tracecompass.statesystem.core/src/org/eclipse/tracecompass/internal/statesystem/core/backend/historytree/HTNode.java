@@ -22,7 +22,9 @@ import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -140,6 +142,13 @@ public abstract class HTNode {
     /* Vector containing all the intervals contained in this node */
     private final List<HTInterval> fIntervals;
 
+    /*
+     * Indexes of the string values in the dictionary of a compressed node, in
+     * the order they will be written. Only filled while the node is being
+     * built, nodes read from disk do not need it.
+     */
+    private final Map<String, Integer> fStringIndexes;
+
     /* Lock used to protect the accesses to intervals, nodeEnd and such */
     private final ReentrantReadWriteLock fRwl = new ReentrantReadWriteLock(false);
 
@@ -168,9 +177,16 @@ public abstract class HTNode {
         fSequenceNumber = seqNumber;
         fParentSequenceNumber = parentSeqNumber;
 
-        fSizeOfIntervalSection = 0;
         fIsOnDisk = false;
         fIntervals = new ArrayList<>();
+        if (config.isCompressed()) {
+            fStringIndexes = new LinkedHashMap<>();
+            /* The intervals section starts with the size of the dictionary */
+            fSizeOfIntervalSection = HTVarInt.sizeOf(0);
+        } else {
+            fStringIndexes = Collections.emptyMap();
+            fSizeOfIntervalSection = 0;
+        }
     }
 
     /**
@@ -190,8 +206,6 @@ public abstract class HTNode {
      */
     public static final @NonNull HTNode readNode(HTConfig config, FileChannel fc, IHistoryTree.IHTNodeFactory nodeFactory)
             throws IOException {
-        HTNode newNode = null;
-
         ByteBuffer buffer = ByteBuffer.allocate(config.getBlockSize());
         buffer.order(ByteOrder.LITTLE_ENDIAN);
         buffer.clear();
@@ -199,6 +213,29 @@ public abstract class HTNode {
         assert (res == config.getBlockSize());
         buffer.flip();
 
+        return readNode(config, buffer, nodeFactory);
+    }
+
+    /**
+     * Reader factory method. Build a Node object (of the right type) from a
+     * block that is already in memory, for example in a region of the history
+     * file mapped in memory.
+     *
+     * @param config
+     *            Configuration of the History Tree
+     * @param buffer
+     *            Little-endian buffer, ALREADY POSITIONED at the start of the
+     *            node. Its position is moved to the end of the intervals.
+     * @param nodeFactory
+     *            The factory to create the nodes for this tree
+     * @return The node object
+     * @throws IOException
+     *             If the buffer does not contain a valid node
+     */
+    public static final @NonNull HTNode readNode(HTConfig config, ByteBuffer buffer, IHistoryTree.IHTNodeFactory nodeFactory)
+            throws IOException {
+        HTNode newNode = null;
+
         /* Read the common header part */
         byte typeByte = buffer.get();
         NodeType type = NodeType.fromByte(typeByte);
@@ -233,10 +270,14 @@ public abstract class HTNode {
          * At this point, we should be done reading the header and 'buffer'
          * should only have the intervals left
          */
-        for (int i = 0; i < intervalCount; i++) {
-            HTInterval interval = HTInterval.readFrom(buffer);
-            newNode.fIntervals.add(interval);
-            newNode.fSizeOfIntervalSection += interval.getSizeOnDisk();
+        if (config.isCompressed()) {
+            newNode.readCompressedIntervals(buffer, intervalCount);
+        } else {
+            for (int i = 0; i < intervalCount; i++) {
+                HTInterval interval = HTInterval.readFrom(buffer);
+                newNode.fIntervals.add(interval);
+                newNode.fSizeOfIntervalSection += interval.getSizeOnDisk();
+            }
         }
 
         /* Assign the node's other information we have read previously */
@@ -248,6 +289,42 @@ public abstract class HTNode {
         return newNode;
     }
 
+    /**
+     * Build a node from a copy written by {@link #writeCheckpoint(ByteBuffer)}.
+     * The node is still being built: it is not considered written on disk and
+     * can receive new intervals.
+     *
+     * @param config
+     *            Configuration of the History Tree
+     * @param buffer
+     *            Little-endian buffer, positioned at the start of the copy
+     * @param nodeFactory
+     *            The factory to create the nodes for this tree
+     * @return The node object
+     * @throws IOException
+     *             If the buffer does not contain a valid node
+     */
+    public static final @NonNull HTNode readCheckpoint(HTConfig config, ByteBuffer buffer, IHistoryTree.IHTNodeFactory nodeFactory)
+            throws IOException {
+        HTNode node = readNode(config, buffer, nodeFactory);
+        node.fIsOnDisk = false;
+        return node;
+    }
+
+    private void readCompressedIntervals(ByteBuffer buffer, int intervalCount) throws IOException {
+        int sectionStart = buffer.position();
+        String[] strings = new String[HTVarInt.getInt(buffer)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = HTInterval.readDictionaryEntry(buffer);
+            /* Keep the same indexes if this node receives more intervals */
+            fStringIndexes.put(strings[i], i);
+        }
+        for (int i = 0; i < intervalCount; i++) {
+            fIntervals.add(HTInterval.readCompressedFrom(buffer, fNodeStart, strings));
+        }
+        fSizeOfIntervalSection = buffer.position() - sectionStart;
+    }
+
     /**
      * Write this node to the given file channel.
      *
@@ -258,6 +335,35 @@ public abstract class HTNode {
      *             If there was an error writing
      */
     public final void writeSelf(FileChannel fc) throws IOException {
+        final int blockSize = fConfig.getBlockSize();
+
+        ByteBuffer buffer = ByteBuffer.allocate(blockSize);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.clear();
+        writeBlock(buffer);
+
+        /* Finally, write everything in the Buffer to disk */
+        buffer.flip();
+        int res = fc.write(buffer);
+        if (res != blockSize) {
+            throw new IllegalStateException("Wrong size of block written: Actual: " + res + ", Expected: " + blockSize); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        fIsOnDisk = true;
+    }
+
+    /**
+     * Write a copy of the current content of this node in a buffer, for a
+     * checkpoint of the tree. Unlike {@link #writeSelf(FileChannel)}, the node
+     * is not considered written and can still receive intervals.
+     *
+     * @param buffer
+     *            Little-endian buffer with at least a block of space remaining
+     */
+    public final void writeCheckpoint(ByteBuffer buffer) {
+        writeBlock(buffer);
+    }
+
+    private void writeBlock(ByteBuffer buffer) {
         /*
          * Yes, we are taking the *read* lock here, because we are reading the
          * information in the node to write it to disk.
@@ -265,10 +371,7 @@ public abstract class HTNode {
         fRwl.readLock().lock();
         try {
             final int blockSize = fConfig.getBlockSize();
-
-            ByteBuffer buffer = ByteBuffer.allocate(blockSize);
-            buffer.order(ByteOrder.LITTLE_ENDIAN);
-            buffer.clear();
+            final int blockStart = buffer.position();
 
             /* Write the common header part */
             buffer.put(getNodeType().toByte());
@@ -284,30 +387,51 @@ public abstract class HTNode {
             writeSpecificHeader(buffer);
 
             /* Back to us, we write the intervals */
-            for (HTInterval interval : fIntervals) {
-                interval.writeInterval(buffer);
+            if (fConfig.isCompressed()) {
+                writeCompressedIntervals(buffer);
+            } else {
+                for (HTInterval interval : fIntervals) {
+                    interval.writeInterval(buffer);
+                }
             }
-            if (blockSize - buffer.position() != getNodeFreeSpace()) {
-                throw new IllegalStateException("Wrong free space: Actual: " + (blockSize - buffer.position()) + ", Expected: " + getNodeFreeSpace()); //$NON-NLS-1$ //$NON-NLS-2$
+            int usedSpace = buffer.position() - blockStart;
+            if (blockSize - usedSpace != getNodeFreeSpace()) {
+                throw new IllegalStateException("Wrong free space: Actual: " + (blockSize - usedSpace) + ", Expected: " + getNodeFreeSpace()); //$NON-NLS-1$ //$NON-NLS-2$
             }
             /*
              * Fill the rest with zeros
              */
-            while (buffer.position() < blockSize) {
+            while (buffer.position() < blockStart + blockSize) {
                 buffer.put((byte) 0);
             }
-
-            /* Finally, write everything in the Buffer to disk */
-            buffer.flip();
-            int res = fc.write(buffer);
-            if (res != blockSize) {
-                throw new IllegalStateException("Wrong size of block written: Actual: " + res + ", Expected: " + blockSize); //$NON-NLS-1$ //$NON-NLS-2$
-            }
-
         } finally {
             fRwl.readLock().unlock();
         }
-        fIsOnDisk = true;
+    }
+
+    /*
+     * The compressed intervals section is the string dictionary, followed by
+     * the intervals, which refer to the strings by their index.
+     */
+    private void writeCompressedIntervals(ByteBuffer buffer) {
+        HTVarInt.putInt(buffer, fStringIndexes.size());
+        for (String string : fStringIndexes.keySet()) {
+            HTInterval.writeDictionaryEntry(buffer, string);
+        }
+        for (HTInterval interval : fIntervals) {
+            interval.writeCompressed(buffer, fNodeStart, getStringIndex(interval));
+        }
+    }
+
+    private int getStringIndex(HTInterval interval) {
+        Object value = interval.getValue();
+        if (value instanceof String) {
+            Integer index = fStringIndexes.get(value);
+            if (index != null) {
+                return index;
+            }
+        }
+        return -1;
     }
 
     // ------------------------------------------------------------------------
@@ -384,6 +508,51 @@ public abstract class HTNode {
         return fIsOnDisk;
     }
 
+    /**
+     * Get the number of bytes an interval would take in this node. For
+     * compressed nodes, it depends on the start time of the node and on the
+     * strings already in the node's dictionary.
+     *
+     * @param interval
+     *            The interval to add to this node
+     * @return The size of the interval in this node, in bytes
+     */
+    public int getIntervalSize(HTInterval interval) {
+        if (!fConfig.isCompressed()) {
+            return interval.getSizeOnDisk();
+        }
+        fRwl.readLock().lock();
+        try {
+            return getCompressedSize(interval, false);
+        } finally {
+            fRwl.readLock().unlock();
+        }
+    }
+
+    /*
+     * Compressed size of an interval, including the dictionary entry of its
+     * string value if it is not already in the node. Should be called with the
+     * write lock if the string is added to the dictionary.
+     */
+    private int getCompressedSize(HTInterval interval, boolean addString) {
+        Object value = interval.getValue();
+        if (!(value instanceof String)) {
+            return interval.getCompressedSize(fNodeStart, -1);
+        }
+        Integer index = fStringIndexes.get(value);
+        if (index != null) {
+            return interval.getCompressedSize(fNodeStart, index);
+        }
+        String string = (String) value;
+        int nbStrings = fStringIndexes.size();
+        if (addString) {
+            fStringIndexes.put(string, nbStrings);
+        }
+        return interval.getCompressedSize(fNodeStart, nbStrings)
+                + HTInterval.getDictionaryEntrySize(string)
+                + HTVarInt.sizeOf(nbStrings + 1) - HTVarInt.sizeOf(nbStrings);
+    }
+
     /**
      * Add an interval to this node
      *
@@ -394,7 +563,7 @@ public abstract class HTNode {
         fRwl.writeLock().lock();
         try {
             /* Just in case, should be checked before even calling this function */
-            assert (newInterval.getSizeOnDisk() <= getNodeFreeSpace());
+            assert (getIntervalSize(newInterval) <= getNodeFreeSpace());
 
             /* Find the insert position to keep the list sorted */
             int index = 0;
@@ -415,7 +584,7 @@ public abstract class HTNode {
             fNodeEnd = Long.max(fNodeEnd, newInterval.getEndTime());
             fMinQuark = Integer.min(fMinQuark, newInterval.getAttribute());
             fMaxQuark = Integer.max(fMaxQuark, newInterval.getAttribute());
-            fSizeOfIntervalSection += newInterval.getSizeOnDisk();
+            fSizeOfIntervalSection += fConfig.isCompressed() ? getCompressedSize(newInterval, true) : newInterval.getSizeOnDisk();
 
         } finally {
             fRwl.writeLock().unlock();
@@ -595,6 +764,21 @@ public abstract class HTNode {
         }
     }
 
+    /**
+     * Returns the space used in the node, which is the size of the header and
+     * of all the intervals it contains.
+     *
+     * @return The amount of used space in the node (in bytes)
+     */
+    public int getNodeUsedSpace() {
+        fRwl.readLock().lock();
+        try {
+            return getDataSectionEndOffset();
+        } finally {
+            fRwl.readLock().unlock();
+        }
+    }
+
     /**
      * Returns the current space utilization of this node, as a percentage.
      * (used space / total usable space, which excludes the header)
@@ -0,0 +1,307 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.statesystem.core.backend.historytree;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.common.core.log.TraceCompassLog;
+import org.eclipse.tracecompass.common.core.log.TraceCompassLogUtils;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Least-recently-used node cache, weighed by the byte size of the nodes.
+ *
+ * All the caches share a global memory budget, which is divided equally
+ * between the caches that are currently opened. A cache that grows beyond its
+ * fair share evicts its own least recently used nodes, so a tree that is
+ * heavily queried cannot push the nodes of the other trees out of memory.
+ *
+ * The hit, miss and eviction counts of each cache are logged as counters to
+ * the {@link TraceCompassLog} logger of this class.
+ */
+public final class HTNodeCache implements IHTNodeCache {
+
+    private static final @NonNull Logger LOGGER = TraceCompassLog.getLogger(HTNodeCache.class);
+
+    /**
+     * System property to set the global memory budget of the node caches, in
+     * megabytes
+     */
+    public static final String MEMORY_BUDGET_PROPERTY = "org.eclipse.tracecompass.statesystem.nodecache.size"; //$NON-NLS-1$
+
+    private static final long MEGABYTE = 1024L * 1024L;
+    private static final long DEFAULT_MEMORY_BUDGET = 64 * MEGABYTE;
+
+    /**
+     * Minimum share of the budget given to one cache, so that a tree can at
+     * least keep its top levels in memory when many trees are opened.
+     */
+    private static final long MIN_SHARE = MEGABYTE;
+
+    /*
+     * The opened caches. The references are weak so that the share of a tree
+     * that was never closed is given back once the tree is garbage collected.
+     */
+    private static final Set<HTNodeCache> PARTITIONS = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    private static volatile long sMemoryBudget = getDefaultMemoryBudget();
+
+    /**
+     * A node with the weight it had when it was inserted, since nodes of a
+     * tree being built may still grow after they were cached.
+     */
+    private static final class CachedNode {
+        private final HTNode fNode;
+        private final int fSize;
+
+        public CachedNode(HTNode node) {
+            fNode = node;
+            fSize = node.getNodeUsedSpace();
+        }
+    }
+
+    private final String fName;
+
+    /* Nodes in access order, the eldest one is the least recently used */
+    private final Map<Integer, CachedNode> fNodes = new LinkedHashMap<>(16, 0.75f, true);
+
+    /* The following fields are guarded by 'this' */
+    private long fWeight = 0;
+    private long fHits = 0;
+    private long fMisses = 0;
+    private long fEvictions = 0;
+    private boolean fDisposed = false;
+
+    /**
+     * Constructor. The new cache immediately takes its share of the global
+     * memory budget.
+     *
+     * @param name
+     *            The name of this cache, used when logging its counters
+     */
+    public HTNodeCache(String name) {
+        fName = name;
+        PARTITIONS.add(this);
+    }
+
+    // ------------------------------------------------------------------------
+    // Global budget
+    // ------------------------------------------------------------------------
+
+    private static long getDefaultMemoryBudget() {
+        Long size = Long.getLong(MEMORY_BUDGET_PROPERTY);
+        if (size == null || size <= 0) {
+            return DEFAULT_MEMORY_BUDGET;
+        }
+        return size * MEGABYTE;
+    }
+
+    /**
+     * Set the memory budget shared by all the node caches. Caches above their
+     * new share will shrink on their next insertion.
+     *
+     * @param bytes
+     *            The budget, in bytes
+     */
+    public static void setMemoryBudget(long bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("The node cache budget must be positive"); //$NON-NLS-1$
+        }
+        sMemoryBudget = bytes;
+    }
+
+    /**
+     * Get the memory budget shared by all the node caches
+     *
+     * @return The budget, in bytes
+     */
+    public static long getMemoryBudget() {
+        return sMemoryBudget;
+    }
+
+    /**
+     * Get the maximum weight each cache can currently hold, which is its fair
+     * share of the global budget.
+     *
+     * @return The maximum weight of one cache, in bytes
+     */
+    public static long getFairShare() {
+        int nbPartitions = Math.max(1, PARTITIONS.size());
+        return Math.max(MIN_SHARE, sMemoryBudget / nbPartitions);
+    }
+
+    // ------------------------------------------------------------------------
+    // IHTNodeCache
+    // ------------------------------------------------------------------------
+
+    @Override
+    public @NonNull HTNode get(int seqNumber, INodeLoader loader) throws IOException {
+        synchronized (this) {
+            CachedNode cached = fNodes.get(seqNumber);
+            if (cached != null) {
+                fHits++;
+                return cached.fNode;
+            }
+            fMisses++;
+        }
+
+        /* Load outside of the lock, so lookups of other nodes can go on */
+        HTNode node = loader.load(seqNumber);
+        synchronized (this) {
+            /* Another thread may have loaded the same node in the meantime */
+            CachedNode present = fNodes.get(seqNumber);
+            if (present != null) {
+                return present.fNode;
+            }
+            insert(node);
+        }
+        logCounters();
+        return node;
+    }
+
+    @Override
+    public synchronized @Nullable HTNode getIfPresent(int seqNumber) {
+        CachedNode cached = fNodes.get(seqNumber);
+        if (cached == null) {
+            return null;
+        }
+        fHits++;
+        return cached.fNode;
+    }
+
+    @Override
+    public synchronized void put(@NonNull HTNode node) {
+        insert(node);
+    }
+
+    @Override
+    public synchronized void invalidateAll() {
+        fNodes.clear();
+        fWeight = 0;
+    }
+
+    @Override
+    public void dispose() {
+        synchronized (this) {
+            fDisposed = true;
+            fNodes.clear();
+            fWeight = 0;
+        }
+        PARTITIONS.remove(this);
+        logCounters();
+    }
+
+    // ------------------------------------------------------------------------
+    // Statistics
+    // ------------------------------------------------------------------------
+
+    /**
+     * Get the number of lookups that found their node in this cache
+     *
+     * @return The hit count
+     */
+    public synchronized long getHitCount() {
+        return fHits;
+    }
+
+    /**
+     * Get the number of lookups that had to load their node
+     *
+     * @return The miss count
+     */
+    public synchronized long getMissCount() {
+        return fMisses;
+    }
+
+    /**
+     * Get the number of nodes that were evicted to stay within the budget
+     *
+     * @return The eviction count
+     */
+    public synchronized long getEvictionCount() {
+        return fEvictions;
+    }
+
+    /**
+     * Get the total size of the nodes currently in this cache
+     *
+     * @return The weight of the cache, in bytes
+     */
+    public synchronized long getWeight() {
+        return fWeight;
+    }
+
+    /**
+     * Get the number of nodes currently in this cache
+     *
+     * @return The number of nodes
+     */
+    @VisibleForTesting
+    public synchronized int size() {
+        return fNodes.size();
+    }
+
+    // ------------------------------------------------------------------------
+    // Helpers
+    // ------------------------------------------------------------------------
+
+    /* Should only be called with the lock on 'this' */
+    private void insert(HTNode node) {
+        if (fDisposed) {
+            return;
+        }
+        CachedNode cached = new CachedNode(node);
+        CachedNode previous = fNodes.put(node.getSequenceNumber(), cached);
+        if (previous != null) {
+            fWeight -= previous.fSize;
+        }
+        fWeight += cached.fSize;
+
+        /* Evict the least recently used nodes, but always keep the newest one */
+        long share = getFairShare();
+        Iterator<CachedNode> it = fNodes.values().iterator();
+        while (fWeight > share && fNodes.size() > 1) {
+            CachedNode eldest = it.next();
+            it.remove();
+            fWeight -= eldest.fSize;
+            fEvictions++;
+        }
+    }
+
+    private void logCounters() {
+        if (!LOGGER.isLoggable(Level.FINEST)) {
+            return;
+        }
+        long hits, misses, evictions, weight;
+        synchronized (this) {
+            hits = fHits;
+            misses = fMisses;
+            evictions = fEvictions;
+            weight = fWeight;
+        }
+        TraceCompassLogUtils.traceCounter(LOGGER, Level.FINEST, "HTNodeCache:" + fName, //$NON-NLS-1$
+                "hits", hits, //$NON-NLS-1$
+                "misses", misses, //$NON-NLS-1$
+                "evictions", evictions, //$NON-NLS-1$
+                "weight", weight); //$NON-NLS-1$
+    }
+
+}
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.statesystem.core.backend.historytree;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Variable-length encoding of the integers written in the compressed nodes of
+ * the history tree. Each byte holds 7 bits of the value, the least significant
+ * first, and its high bit is set when more bytes follow. Small values, like
+ * time deltas within a node or quarks, then take one or two bytes instead of
+ * eight or four.
+ *
+ * The values are encoded as unsigned. Signed values that may be negative should
+ * go through {@link #zigZag(long)} first.
+ */
+public final class HTVarInt {
+
+    private static final String ERR_MSG = "Invalid variable-length integer. Maybe your file is corrupt?"; //$NON-NLS-1$
+
+    /* A long takes at most 10 bytes of 7 bits */
+    private static final int MAX_LONG_BYTES = 10;
+
+    private HTVarInt() {
+    }
+
+    /**
+     * Get the number of bytes taken by a value once encoded
+     *
+     * @param value
+     *            The value, taken as unsigned
+     * @return The size of the encoded value, between 1 and 10 bytes
+     */
+    public static int sizeOf(long value) {
+        int size = 1;
+        long remaining = value >>> 7;
+        while (remaining != 0) {
+            size++;
+            remaining >>>= 7;
+        }
+        return size;
+    }
+
+    /**
+     * Get the number of bytes taken by an int value once encoded
+     *
+     * @param value
+     *            The value, taken as unsigned
+     * @return The size of the encoded value, between 1 and 5 bytes
+     */
+    public static int sizeOf(int value) {
+        return sizeOf(Integer.toUnsignedLong(value));
+    }
+
+    /**
+     * Write a value in a buffer
+     *
+     * @param buffer
+     *            The buffer to write to
+     * @param value
+     *            The value, taken as unsigned
+     */
+    public static void putLong(ByteBuffer buffer, long value) {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            buffer.put((byte) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        buffer.put((byte) remaining);
+    }
+
+    /**
+     * Write an int value in a buffer
+     *
+     * @param buffer
+     *            The buffer to write to
+     * @param value
+     *            The value, taken as unsigned
+     */
+    public static void putInt(ByteBuffer buffer, int value) {
+        putLong(buffer, Integer.toUnsignedLong(value));
+    }
+
+    /**
+     * Read a value from a buffer
+     *
+     * @param buffer
+     *            The buffer to read from
+     * @return The value
+     * @throws IOException
+     *             If the bytes do not make a valid value
+     */
+    public static long getLong(ByteBuffer buffer) throws IOException {
+        long value = 0;
+        for (int i = 0; i < MAX_LONG_BYTES; i++) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << (7 * i);
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException(ERR_MSG);
+    }
+
+    /**
+     * Read an int value from a buffer
+     *
+     * @param buffer
+     *            The buffer to read from
+     * @return The value
+     * @throws IOException
+     *             If the bytes do not make a valid int value
+     */
+    public static int getInt(ByteBuffer buffer) throws IOException {
+        long value = getLong(buffer);
+        if ((value >>> Integer.SIZE) != 0) {
+            throw new IOException(ERR_MSG);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Map a signed value to an unsigned one, so that values close to zero, of
+     * either sign, are encoded with few bytes.
+     *
+     * @param value
+     *            The signed value
+     * @return The zig-zag encoded value
+     */
+    public static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Reverse of {@link #zigZag(long)}
+     *
+     * @param value
+     *            The zig-zag encoded value
+     * @return The signed value
+     */
+    public static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -14,14 +14,15 @@ package org.eclipse.tracecompass.internal.statesystem.core.backend.historytree;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.util.Deque;
 import java.util.Iterator;
-import java.util.Objects;
-import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -32,10 +33,6 @@ import org.eclipse.tracecompass.common.core.log.TraceCompassLogUtils;
 import org.eclipse.tracecompass.internal.statesystem.core.Activator;
 import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.IHistoryTree.IHTNodeFactory;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
-
 /**
  * This class abstracts inputs/outputs of the HistoryTree nodes.
  *
@@ -51,62 +48,11 @@ public class HT_IO {
 
     private static final @NonNull Logger LOGGER = TraceCompassLog.getLogger(HT_IO.class);
 
-    // ------------------------------------------------------------------------
-    // Global cache of nodes
-    // ------------------------------------------------------------------------
-
-    private static final class CacheKey {
-
-        public final HT_IO fStateHistory;
-        public final int fSeqNumber;
-
-        public CacheKey(HT_IO stateHistory,  int seqNumber) {
-            fStateHistory = stateHistory;
-            fSeqNumber = seqNumber;
-        }
-
-        @Override
-        public int hashCode() {
-            return Objects.hash(fStateHistory, fSeqNumber);
-        }
-
-        @Override
-        public boolean equals(@Nullable Object obj) {
-            if (this == obj) {
-                return true;
-            }
-            if (obj == null) {
-                return false;
-            }
-            if (getClass() != obj.getClass()) {
-                return false;
-            }
-            CacheKey other = (CacheKey) obj;
-            return (fStateHistory.equals(other.fStateHistory) &&
-                    fSeqNumber == other.fSeqNumber);
-        }
-    }
-
-    private static final int CACHE_SIZE = 256;
-
-    private static final CacheLoader<CacheKey, HTNode> NODE_LOADER = new CacheLoader<CacheKey, HTNode>() {
-        @Override
-        public HTNode load(CacheKey key) throws IOException {
-            HT_IO io = key.fStateHistory;
-            int seqNb = key.fSeqNumber;
-
-            TraceCompassLogUtils.traceInstant(LOGGER, Level.FINEST, "Ht_Io:CacheMiss", "seqNum", seqNb); //$NON-NLS-1$ //$NON-NLS-2$
-
-            synchronized (io) {
-                io.seekFCToNodePos(io.fFileChannelIn, seqNb);
-                return HTNode.readNode(io.fConfig, io.fFileChannelIn, key.fStateHistory.fNodeFactory);
-            }
-        }
-    };
-
-    private static final LoadingCache<CacheKey, HTNode> NODE_CACHE = CacheBuilder.newBuilder()
-            .maximumSize(CACHE_SIZE).build(NODE_LOADER);
-
+    /*
+     * Files mapped in memory cannot be deleted on Windows until the buffers are
+     * garbage collected, see http://bugs.java.com/view_bug.do?bug_id=4715154
+     */
+    private static final boolean IS_WIN32 = System.getProperty("os.name").startsWith("Windows"); //$NON-NLS-1$//$NON-NLS-2$
 
     // ------------------------------------------------------------------------
     // Instance fields
@@ -117,12 +63,22 @@ public class HT_IO {
 
     /* Fields related to the file I/O */
     private final FileInputStream fFileInputStream;
-    private final FileOutputStream fFileOutputStream;
+    private final RandomAccessFile fFileOutput;
     private final FileChannel fFileChannelIn;
     private final FileChannel fFileChannelOut;
 
     private final IHTNodeFactory fNodeFactory;
 
+    /* Cache of the nodes of this tree */
+    private final IHTNodeCache fNodeCache;
+
+    /*
+     * Read-only regions of the node section mapped in memory, once the tree is
+     * finished. Each region contains fNodesPerSegment nodes.
+     */
+    private volatile ByteBuffer @Nullable [] fMappedSegments = null;
+    private int fNodesPerSegment;
+
     // ------------------------------------------------------------------------
     // Methods
     // ------------------------------------------------------------------------
@@ -143,7 +99,28 @@ public class HT_IO {
      *             An exception can be thrown when file cannot be accessed
      */
     public HT_IO(HTConfig config, boolean newFile, IHTNodeFactory nodeFactory) throws IOException {
+        this(config, newFile, nodeFactory, new HTNodeCache(config.getStateFile().getName()));
+    }
+
+    /**
+     * Constructor with a specific node cache
+     *
+     * @param config
+     *            The configuration object for the StateHistoryTree
+     * @param newFile
+     *            Flag indicating that the file must be created from scratch
+     * @param nodeFactory
+     *            The factory to create new nodes for this tree
+     * @param nodeCache
+     *            The cache of nodes for this tree. It is disposed when the
+     *            file is closed.
+     *
+     * @throws IOException
+     *             An exception can be thrown when file cannot be accessed
+     */
+    public HT_IO(HTConfig config, boolean newFile, IHTNodeFactory nodeFactory, IHTNodeCache nodeCache) throws IOException {
         fConfig = config;
+        fNodeCache = nodeCache;
 
         File historyTreeFile = config.getStateFile();
         if (newFile) {
@@ -158,18 +135,16 @@ public class HT_IO {
                 throw new IOException("Cannot create new file at " + //$NON-NLS-1$
                         historyTreeFile.getName());
             }
-            fFileInputStream = new FileInputStream(historyTreeFile);
-            fFileOutputStream = new FileOutputStream(historyTreeFile, false);
-        } else {
-            /*
-             * We want to open an existing file, make sure we don't squash the
-             * existing content when opening the fos!
-             */
-            fFileInputStream = new FileInputStream(historyTreeFile);
-            fFileOutputStream = new FileOutputStream(historyTreeFile, true);
         }
+        fFileInputStream = new FileInputStream(historyTreeFile);
+        /*
+         * The file is neither truncated nor opened in append mode, so the nodes
+         * of an existing tree can be rewritten in place when resuming its
+         * construction.
+         */
+        fFileOutput = new RandomAccessFile(historyTreeFile, "rw"); //$NON-NLS-1$
         fFileChannelIn = fFileInputStream.getChannel();
-        fFileChannelOut = fFileOutputStream.getChannel();
+        fFileChannelOut = fFileOutput.getChannel();
         fNodeFactory = nodeFactory;
     }
 
@@ -187,16 +162,12 @@ public class HT_IO {
     public @NonNull HTNode readNode(int seqNumber) throws ClosedChannelException {
         /* Do a cache lookup. If it's not present it will be loaded from disk */
         TraceCompassLogUtils.traceInstant(LOGGER, Level.FINEST, "Ht_Io:CacheLookup", "seqNum", seqNumber); //$NON-NLS-1$ //$NON-NLS-2$
-        CacheKey key = new CacheKey(this, seqNumber);
         try {
-            return Objects.requireNonNull(NODE_CACHE.get(key));
+            return fNodeCache.get(seqNumber, this::loadNode);
 
-        } catch (ExecutionException e) {
-            /* Get the inner exception that was generated */
-            Throwable cause = e.getCause();
-            if (cause instanceof ClosedChannelException) {
-                throw (ClosedChannelException) cause;
-            }
+        } catch (ClosedChannelException e) {
+            throw e;
+        } catch (IOException e) {
             /*
              * Other types of IOExceptions shouldn't happen at this point though.
              */
@@ -205,6 +176,30 @@ public class HT_IO {
         }
     }
 
+    private @NonNull HTNode loadNode(int seqNumber) throws IOException {
+        TraceCompassLogUtils.traceInstant(LOGGER, Level.FINEST, "Ht_Io:CacheMiss", "seqNum", seqNumber); //$NON-NLS-1$ //$NON-NLS-2$
+
+        ByteBuffer[] segments = fMappedSegments;
+        if (segments != null && seqNumber / fNodesPerSegment < segments.length) {
+            int segment = seqNumber / fNodesPerSegment;
+            /*
+             * The mapped file does not change anymore, each reader decodes the
+             * node from its own view of the region without any locking.
+             */
+            int offset = (seqNumber % fNodesPerSegment) * fConfig.getBlockSize();
+            ByteBuffer block = segments[segment].duplicate();
+            block.order(ByteOrder.LITTLE_ENDIAN);
+            block.limit(offset + fConfig.getBlockSize());
+            block.position(offset);
+            return HTNode.readNode(fConfig, block, fNodeFactory);
+        }
+
+        synchronized (this) {
+            seekFCToNodePos(fFileChannelIn, seqNumber);
+            return HTNode.readNode(fConfig, fFileChannelIn, fNodeFactory);
+        }
+    }
+
     /**
      * Read a node from a file on disk
      *
@@ -224,8 +219,7 @@ public class HT_IO {
         Iterator<Integer> iterator = queue.iterator();
         while (iterator.hasNext()) {
             Integer seqNumber = iterator.next();
-            CacheKey key = new CacheKey(this, seqNumber);
-            HTNode node = NODE_CACHE.getIfPresent(key);
+            HTNode node = fNodeCache.getIfPresent(seqNumber);
             if (node != null) {
                 iterator.remove();
                 return node;
@@ -246,8 +240,7 @@ public class HT_IO {
             int seqNumber = node.getSequenceNumber();
 
             /* "Write-back" the node into the cache */
-            CacheKey key = new CacheKey(this, seqNumber);
-            NODE_CACHE.put(key, node);
+            fNodeCache.put(node);
 
             /* Position ourselves at the start of the node and write it */
             synchronized (this) {
@@ -269,6 +262,41 @@ public class HT_IO {
         return fFileChannelOut;
     }
 
+    /**
+     * Force the nodes written so far to the storage device, so they survive a
+     * crash of the application or of the system.
+     *
+     * @throws IOException
+     *             If the file could not be synchronized
+     */
+    public synchronized void force() throws IOException {
+        fFileChannelOut.force(false);
+    }
+
+    /**
+     * Truncate the file after a given number of nodes. This drops the nodes
+     * that were written after them by an interrupted construction, when it is
+     * resumed from an earlier point.
+     *
+     * @param nbWrittenNodes
+     *            The number of nodes that must be in the file: the nodes
+     *            after them were not written yet when the construction was
+     *            interrupted, and are written again later
+     * @param nodeCount
+     *            The number of nodes to keep, at least nbWrittenNodes
+     * @throws IOException
+     *             If the file is shorter than the written nodes, or if it
+     *             could not be truncated
+     */
+    public synchronized void truncate(int nbWrittenNodes, int nodeCount) throws IOException {
+        long blockSize = fConfig.getBlockSize();
+        if (fFileChannelOut.size() < IHistoryTree.TREE_HEADER_SIZE + nbWrittenNodes * blockSize) {
+            throw new IOException("The history file is missing some nodes"); //$NON-NLS-1$
+        }
+        /* Does nothing if the nodes after the written ones are not in the file */
+        fFileChannelOut.truncate(IHistoryTree.TREE_HEADER_SIZE + nodeCount * blockSize);
+    }
+
     /**
      * Retrieve the input stream with which to write the attribute tree.
      *
@@ -290,13 +318,67 @@ public class HT_IO {
         return fFileInputStream;
     }
 
+    /**
+     * Map the node section of the file in memory, in read-only mode. This
+     * should only be called once the tree is finished building and all its
+     * nodes are written, as they must not change anymore. The nodes are then
+     * decoded directly from the mapped regions, so concurrent reads do not
+     * serialize on the file channel and the OS page cache keeps the most used
+     * blocks in memory.
+     *
+     * If the file cannot be mapped, nodes are still read through the file
+     * channel.
+     *
+     * @param nodeCount
+     *            The number of nodes in the file
+     */
+    public synchronized void mapNodes(int nodeCount) {
+        if (IS_WIN32 || nodeCount <= 0 || fMappedSegments != null) {
+            return;
+        }
+        int blockSize = fConfig.getBlockSize();
+        /* Nodes never span two regions */
+        int nodesPerSegment = Integer.MAX_VALUE / blockSize;
+        int nbSegments = (nodeCount + nodesPerSegment - 1) / nodesPerSegment;
+        ByteBuffer[] segments = new ByteBuffer[nbSegments];
+        try {
+            if (fFileChannelIn.size() < IHistoryTree.TREE_HEADER_SIZE + (long) nodeCount * blockSize) {
+                /* The file is incomplete, let the reads report the problem */
+                return;
+            }
+            for (int i = 0; i < nbSegments; i++) {
+                long firstNode = (long) i * nodesPerSegment;
+                long nbNodes = Math.min(nodesPerSegment, nodeCount - firstNode);
+                segments[i] = fFileChannelIn.map(MapMode.READ_ONLY,
+                        IHistoryTree.TREE_HEADER_SIZE + firstNode * blockSize,
+                        nbNodes * blockSize);
+            }
+        } catch (IOException e) {
+            Activator.getDefault().logWarning("Could not map the history file, it will be read from the file channel", e); //$NON-NLS-1$
+            return;
+        }
+        fNodesPerSegment = nodesPerSegment;
+        fMappedSegments = segments;
+    }
+
+    /**
+     * Get the cache of nodes of this tree
+     *
+     * @return The node cache
+     */
+    public IHTNodeCache getNodeCache() {
+        return fNodeCache;
+    }
+
     /**
      * Close all file channels and streams.
      */
     public synchronized void closeFile() {
+        fMappedSegments = null;
+        fNodeCache.dispose();
         try {
             fFileInputStream.close();
-            fFileOutputStream.close();
+            fFileOutput.close();
         } catch (IOException e) {
             Activator.getDefault().logError(e.getMessage(), e);
         }
@@ -15,19 +15,27 @@
 
 package org.eclipse.tracecompass.internal.statesystem.core.backend.historytree;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.common.core.log.TraceCompassLog;
 import org.eclipse.tracecompass.common.core.log.TraceCompassLogUtils;
 import org.eclipse.tracecompass.internal.provisional.datastore.core.condition.IntegerRangeCondition;
@@ -82,7 +90,7 @@ public class HistoryTreeBackend implements IStateHistoryBackend {
 
     /**
      * Constructor for new history files. Use this when creating a new history
-     * from scratch.
+     * from scratch. The nodes of the new history are compressed.
      *
      * @param ssid
      *            The state system's ID
@@ -111,7 +119,7 @@ public class HistoryTreeBackend implements IStateHistoryBackend {
             int maxChildren) throws IOException {
         fSsid = ssid;
         final HTConfig conf = new HTConfig(newStateFile, blockSize, maxChildren,
-                providerVersion, startTime);
+                providerVersion, startTime, true);
         fSht = initializeSHT(conf);
     }
 
@@ -161,6 +169,29 @@ public class HistoryTreeBackend implements IStateHistoryBackend {
         fFinishedBuilding = true;
     }
 
+    /**
+     * Resume constructor. Use this to continue the construction of a history
+     * that was interrupted, from a checkpoint written by
+     * {@link #writeCheckpoint(DataOutput)}.
+     *
+     * @param ssid
+     *            The state system's id
+     * @param stateFile
+     *            The history file of the interrupted construction
+     * @param providerVersion
+     *            Version of the state provider, it must be the one of the
+     *            checkpoint
+     * @param checkpoint
+     *            The input to read the checkpoint from
+     * @throws IOException
+     *             If the checkpoint is not valid or the file cannot be opened
+     */
+    public HistoryTreeBackend(@NonNull String ssid, @NonNull File stateFile, int providerVersion, @NonNull DataInput checkpoint)
+            throws IOException {
+        fSsid = ssid;
+        fSht = HistoryTreeFactory.resumeFromCheckpoint(stateFile, providerVersion, checkpoint);
+    }
+
     /**
      * New-tree initializer for the History Tree wrapped by this backend. Can be
      * overriden to use different implementations.
@@ -245,6 +276,23 @@ public class HistoryTreeBackend implements IStateHistoryBackend {
         fFinishedBuilding = true;
     }
 
+    /**
+     * Write a checkpoint of the history being built, from which its
+     * construction can be resumed with the resume constructor. No state must
+     * be inserted while the checkpoint is being written.
+     *
+     * @param output
+     *            The output to write the checkpoint to
+     * @throws IOException
+     *             If the checkpoint could not be written
+     */
+    public void writeCheckpoint(@NonNull DataOutput output) throws IOException {
+        if (fFinishedBuilding) {
+            throw new IOException("The history is already complete"); //$NON-NLS-1$
+        }
+        getSHT().writeCheckpoint(output);
+    }
+
     @Override
     public FileInputStream supplyAttributeTreeReader() {
         return getSHT().supplyATReader();
@@ -313,6 +361,53 @@ public class HistoryTreeBackend implements IStateHistoryBackend {
          */
     }
 
+    @Override
+    public void doQuery(List<List<ITmfStateInterval>> stateInfos, long[] times)
+            throws TimeRangeException, StateSystemDisposedException {
+        if (times.length == 0) {
+            return;
+        }
+        List<Integer> allTimes = new ArrayList<>(times.length);
+        for (int i = 0; i < times.length; i++) {
+            checkValidTime(times[i]);
+            allTimes.add(i);
+        }
+
+        /*
+         * Nodes to read, with the indexes of the timestamps that go through
+         * each of them. Every node has only one parent, so it is queued, and
+         * read, only once for all the timestamps it covers.
+         */
+        Deque<Integer> queue = new ArrayDeque<>();
+        Map<Integer, List<Integer>> timesPerNode = new HashMap<>();
+
+        int rootSeq = getSHT().getRootNode().getSequenceNumber();
+        queue.add(rootSeq);
+        timesPerNode.put(rootSeq, allTimes);
+
+        try {
+            while (!queue.isEmpty()) {
+                int sequenceNumber = queue.pop();
+                List<Integer> nodeTimes = timesPerNode.remove(sequenceNumber);
+                HTNode currentNode = getSHT().readNode(sequenceNumber);
+                for (int index : nodeTimes) {
+                    long t = times[index];
+                    if (currentNode.getNodeType() == HTNode.NodeType.CORE) {
+                        for (Integer child : ((ParentNode) currentNode).selectNextChildren(t)) {
+                            timesPerNode.computeIfAbsent(child, seq -> {
+                                queue.add(seq);
+                                return new ArrayList<>();
+                            }).add(index);
+                        }
+                    }
+                    currentNode.writeInfoFromNode(stateInfos.get(index), t);
+                }
+            }
+        } catch (ClosedChannelException e) {
+            throw new StateSystemDisposedException(e);
+        }
+    }
+
     @Override
     public ITmfStateInterval doSingularQuery(long t, int attributeQuark)
             throws TimeRangeException, StateSystemDisposedException {
@@ -357,18 +452,36 @@ public class HistoryTreeBackend implements IStateHistoryBackend {
 
     @Override
     public Iterable<@NonNull ITmfStateInterval> query2D(IntegerRangeCondition quarks, TimeRangeCondition times) {
+        return query2D(quarks, times, null);
+    }
+
+    @Override
+    public Iterable<@NonNull ITmfStateInterval> query2D(IntegerRangeCondition quarks, TimeRangeCondition times, @Nullable IProgressMonitor monitor) {
         try (TraceCompassLogUtils.FlowScopeLog log = new TraceCompassLogUtils.FlowScopeLogBuilder(LOGGER, Level.FINER,
                 "HistoryTreeBackend:query2D:init", //$NON-NLS-1$
                 "ssid", getSSID(), //$NON-NLS-1$
                 "quarks", quarks, //$NON-NLS-1$
                 "timeCondition", times).build()) { //$NON-NLS-1$
             return () -> new Iterator<@NonNull ITmfStateInterval>() {
-                private final Deque<Integer> seqNumberQueue = new LinkedList<>(Collections.singleton(getSHT().getRootNode().getSequenceNumber()));
+                /*
+                 * The tree is visited depth first, so the queue only holds the
+                 * remaining siblings of the nodes on the current branch, instead
+                 * of a whole level of the tree.
+                 */
+                private final Deque<Integer> seqNumberQueue = new ArrayDeque<>(Collections.singleton(getSHT().getRootNode().getSequenceNumber()));
+                private final List<Integer> children = new ArrayList<>();
                 private Iterator<@NonNull HTInterval> intervalQueue = Collections.emptyIterator();
 
                 @Override
                 public boolean hasNext() {
                     while (!intervalQueue.hasNext() && !seqNumberQueue.isEmpty()) {
+                        if (monitor != null && monitor.isCanceled()) {
+                            try (TraceCompassLogUtils.FlowScopeLog canceledLog = new TraceCompassLogUtils.FlowScopeLogBuilder(LOGGER, Level.FINER,
+                                    "HistoryTreeBackend:query2D:canceled").setParentScope(log).build()) { //$NON-NLS-1$
+                                seqNumberQueue.clear();
+                                return false;
+                            }
+                        }
                         try {
                             HTNode currentNode = getSHT().readNode(seqNumberQueue);
                             /*
@@ -381,8 +494,12 @@ public class HistoryTreeBackend implements IStateHistoryBackend {
                              */
                             if (quarks.intersects(currentNode.getMinQuark(), currentNode.getMaxQuark()) && subTimes != null) {
                                 if (currentNode.getNodeType() == HTNode.NodeType.CORE) {
-                                    // Queue the relevant children nodes for BFS.
-                                    ((ParentNode) currentNode).queueNextChildren2D(quarks, subTimes, seqNumberQueue);
+                                    // Queue the relevant children nodes in front, for DFS.
+                                    ((ParentNode) currentNode).queueNextChildren2D(quarks, subTimes, children);
+                                    for (int i = children.size() - 1; i >= 0; i--) {
+                                        seqNumberQueue.addFirst(children.get(i));
+                                    }
+                                    children.clear();
                                 }
                                 intervalQueue = currentNode.iterable2D(quarks, subTimes).iterator();
                             }
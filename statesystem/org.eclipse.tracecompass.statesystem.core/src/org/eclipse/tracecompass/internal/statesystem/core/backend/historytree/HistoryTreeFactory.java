@@ -9,6 +9,8 @@
 
 package org.eclipse.tracecompass.internal.statesystem.core.backend.historytree;
 
+import java.io.DataInput;
+import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -46,6 +48,25 @@ public final class HistoryTreeFactory {
         return new HistoryTreeClassic(conf);
     }
 
+    /**
+     * "Resume" factory: re-open a tree whose construction was interrupted, from
+     * a checkpoint written by {@link IHistoryTree#writeCheckpoint}.
+     *
+     * @param stateFile
+     *            The history file of the interrupted construction
+     * @param expectedProviderVersion
+     *            The expected version of the state provider
+     * @param checkpoint
+     *            The input to read the checkpoint from
+     * @return The history tree, ready to receive more intervals
+     * @throws IOException
+     *             If the checkpoint is not valid or the file cannot be opened
+     */
+    public static IHistoryTree resumeFromCheckpoint(File stateFile, int expectedProviderVersion, DataInput checkpoint) throws IOException {
+        /* Only the classic tree writes checkpoints for now */
+        return new HistoryTreeClassic(stateFile, expectedProviderVersion, checkpoint);
+    }
+
     /**
      * "Reader" factory : instantiate a SHTree from an existing tree file on
      * disk
@@ -85,6 +106,7 @@ public final class HistoryTreeFactory {
         int magicNumber = buffer.getInt();
         switch (magicNumber) {
         case HistoryTreeClassic.HISTORY_FILE_MAGIC_NUMBER:
+            /* The tree then checks the version, compressed or not */
             return new HistoryTreeClassic(existingStateFile.toFile(), expectedProviderVersion);
         default:
             throw new IOException("Not a known history tree file"); //$NON-NLS-1$
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.statesystem.core.backend.historytree;
+
+import java.io.IOException;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Cache of the nodes of a single history tree. Every {@link HT_IO} owns one
+ * cache, so that the trees opened at the same time do not evict each other's
+ * nodes.
+ */
+public interface IHTNodeCache {
+
+    /**
+     * Loader used by the cache to read a node that is not present
+     */
+    @FunctionalInterface
+    interface INodeLoader {
+
+        /**
+         * Load a node from its backing storage
+         *
+         * @param seqNumber
+         *            The sequence number of the node to load
+         * @return The node
+         * @throws IOException
+         *             If the node could not be read
+         */
+        @NonNull HTNode load(int seqNumber) throws IOException;
+    }
+
+    /**
+     * Get a node from the cache, loading it with the loader if it is not
+     * present.
+     *
+     * @param seqNumber
+     *            The sequence number of the node
+     * @param loader
+     *            The loader to read the node if it is not in the cache
+     * @return The node
+     * @throws IOException
+     *             Exceptions thrown by the loader
+     */
+    @NonNull HTNode get(int seqNumber, INodeLoader loader) throws IOException;
+
+    /**
+     * Get a node from the cache only if it is already present
+     *
+     * @param seqNumber
+     *            The sequence number of the node
+     * @return The node, or <code>null</code> if it is not in the cache
+     */
+    @Nullable HTNode getIfPresent(int seqNumber);
+
+    /**
+     * Add a node to the cache, replacing any node with the same sequence
+     * number.
+     *
+     * @param node
+     *            The node to add
+     */
+    void put(@NonNull HTNode node);
+
+    /**
+     * Remove all the nodes from this cache
+     */
+    void invalidateAll();
+
+    /**
+     * Release this cache. It will not hold any node after this call and its
+     * share of memory is given back to the other caches.
+     */
+    void dispose();
+}
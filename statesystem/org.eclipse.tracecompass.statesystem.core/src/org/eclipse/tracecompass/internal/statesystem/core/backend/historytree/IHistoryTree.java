@@ -9,6 +9,7 @@
 
 package org.eclipse.tracecompass.internal.statesystem.core.backend.historytree;
 
+import java.io.DataOutput;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -202,6 +203,22 @@ public interface IHistoryTree {
      */
     void insertInterval(HTInterval interval) throws TimeRangeException;
 
+    /**
+     * Save the state of a tree that is still being built, so its construction
+     * can be resumed later from this point, even if the application is stopped
+     * in between. The nodes written so far are forced to disk and a copy of
+     * the nodes that can still change is written to the output.
+     *
+     * No interval must be inserted while the checkpoint is being written.
+     *
+     * @param output
+     *            The output to write the checkpoint to
+     * @throws IOException
+     *             If the nodes could not be synchronized or the checkpoint
+     *             could not be written
+     */
+    void writeCheckpoint(DataOutput output) throws IOException;
+
     /**
      * Get the current size of the history file.
      *
@@ -0,0 +1,432 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.statesystem.core.backend.historytree;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.common.core.log.TraceCompassLog;
+import org.eclipse.tracecompass.common.core.log.TraceCompassLogUtils;
+import org.eclipse.tracecompass.internal.provisional.datastore.core.condition.IntegerRangeCondition;
+import org.eclipse.tracecompass.internal.provisional.datastore.core.condition.TimeRangeCondition;
+import org.eclipse.tracecompass.statesystem.core.backend.IStateHistoryBackend;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
+import org.eclipse.tracecompass.statesystem.core.exceptions.TimeRangeException;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+import org.eclipse.tracecompass.statesystem.core.statevalue.ITmfStateValue;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Iterables;
+
+/**
+ * History backend that splits the quarks between many history trees, the
+ * shards, each one with its own file and its own insertion thread. The
+ * intervals of a quark all go to the shard <code>quark % nbShards</code>, so
+ * the insertion in the trees runs on as many threads as there are shards.
+ *
+ * The queries are sent to every shard that may contain the requested quarks,
+ * and their results are merged. The first shard is written to the history
+ * file itself and holds the attribute tree; the other shards are written next
+ * to it, in files with the same name followed by {@link #SHARD_SUFFIX} and the
+ * index of the shard.
+ */
+public final class ShardedHistoryTreeBackend implements IStateHistoryBackend {
+
+    private static final @NonNull Logger LOGGER = TraceCompassLog.getLogger(ShardedHistoryTreeBackend.class);
+
+    /** Suffix of the history files of the shards, after the first one */
+    public static final String SHARD_SUFFIX = ".shard"; //$NON-NLS-1$
+
+    private final @NonNull String fSsid;
+    private final HistoryTreeBackend[] fShards;
+
+    /**
+     * Constructor for new history files
+     *
+     * @param ssid
+     *            The state system's id
+     * @param newStateFile
+     *            The name of the history file that will be created. The other
+     *            shards are created beside it.
+     * @param providerVersion
+     *            Version of of the state provider
+     * @param startTime
+     *            The earliest timestamp stored in the history
+     * @param queueSize
+     *            The size of the interval insertion queue of each shard
+     * @param nbShards
+     *            The number of shards, and of insertion threads
+     * @throws IOException
+     *             If there was a problem opening the history files for writing
+     */
+    public ShardedHistoryTreeBackend(@NonNull String ssid,
+            File newStateFile,
+            int providerVersion,
+            long startTime,
+            int queueSize,
+            int nbShards) throws IOException {
+        if (nbShards < 1) {
+            throw new IllegalArgumentException("There must be at least one shard"); //$NON-NLS-1$
+        }
+        fSsid = ssid;
+        /* Remove the shards of a previous history that had more of them */
+        deleteShardFiles(newStateFile, nbShards);
+
+        fShards = new HistoryTreeBackend[nbShards];
+        try {
+            for (int i = 0; i < nbShards; i++) {
+                final int shard = i;
+                fShards[i] = new ThreadedHistoryTreeBackend(ssid, getShardFile(newStateFile, i),
+                        providerVersion, startTime, queueSize, quark -> quark % nbShards == shard);
+            }
+        } catch (IOException e) {
+            dispose();
+            throw e;
+        }
+    }
+
+    /**
+     * Existing history constructor. Opens all the shards that were written with
+     * the given history file.
+     *
+     * @param ssid
+     *            The state system's id
+     * @param existingStateFile
+     *            Filename/location of the history we want to load
+     * @param providerVersion
+     *            Expected version of of the state provider plugin.
+     * @throws IOException
+     *             If we can't read one of the files, or if they are not
+     *             recognized
+     */
+    public ShardedHistoryTreeBackend(@NonNull String ssid, @NonNull File existingStateFile, int providerVersion) throws IOException {
+        fSsid = ssid;
+        int nbShards = countShards(existingStateFile);
+        fShards = new HistoryTreeBackend[nbShards];
+        for (int i = 0; i < nbShards; i++) {
+            fShards[i] = new HistoryTreeBackend(ssid, getShardFile(existingStateFile, i), providerVersion);
+        }
+    }
+
+    /**
+     * Resume constructor, to continue the construction of a sharded history
+     * from a checkpoint written by {@link #writeCheckpoint(DataOutput)}.
+     *
+     * @param ssid
+     *            The state system's id
+     * @param stateFile
+     *            The history file of the interrupted construction
+     * @param providerVersion
+     *            Version of the state provider, it must be the one of the
+     *            checkpoint
+     * @param queueSize
+     *            The size of the interval insertion queue of each shard
+     * @param checkpoint
+     *            The input to read the checkpoint from
+     * @throws IOException
+     *             If the checkpoint is not valid or the files cannot be opened
+     */
+    public ShardedHistoryTreeBackend(@NonNull String ssid,
+            @NonNull File stateFile,
+            int providerVersion,
+            int queueSize,
+            @NonNull DataInput checkpoint) throws IOException {
+        fSsid = ssid;
+        int nbShards = checkpoint.readInt();
+        if (nbShards < 1) {
+            throw new IOException("Invalid number of shards in checkpoint"); //$NON-NLS-1$
+        }
+        deleteShardFiles(stateFile, nbShards);
+
+        fShards = new HistoryTreeBackend[nbShards];
+        try {
+            for (int i = 0; i < nbShards; i++) {
+                final int shard = i;
+                fShards[i] = new ThreadedHistoryTreeBackend(ssid, getShardFile(stateFile, i),
+                        providerVersion, queueSize, quark -> quark % nbShards == shard, checkpoint);
+            }
+        } catch (IOException e) {
+            dispose();
+            throw e;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Shard files
+    // ------------------------------------------------------------------------
+
+    /**
+     * Get the file of one of the shards of a history
+     *
+     * @param stateFile
+     *            The history file
+     * @param index
+     *            The index of the shard
+     * @return The file of this shard
+     */
+    public static @NonNull File getShardFile(File stateFile, int index) {
+        if (index == 0) {
+            return stateFile;
+        }
+        return new File(stateFile.getParentFile(), stateFile.getName() + SHARD_SUFFIX + index);
+    }
+
+    /**
+     * Count the shards that were written for a history file. A history that is
+     * not sharded has a single shard, the history file itself.
+     *
+     * @param stateFile
+     *            The history file
+     * @return The number of shards
+     */
+    public static int countShards(File stateFile) {
+        int nbShards = 1;
+        while (getShardFile(stateFile, nbShards).exists()) {
+            nbShards++;
+        }
+        return nbShards;
+    }
+
+    /**
+     * Delete the files of the shards of a history, starting at a given shard.
+     * Index 0 is never deleted since it is the history file itself.
+     *
+     * @param stateFile
+     *            The history file
+     * @param from
+     *            The index of the first shard to delete
+     */
+    public static void deleteShardFiles(File stateFile, int from) {
+        for (int i = Math.max(1, from); getShardFile(stateFile, i).exists(); i++) {
+            if (!getShardFile(stateFile, i).delete()) {
+                TraceCompassLogUtils.traceInstant(LOGGER, Level.WARNING, "ShardedHistoryTreeBackend:DeleteFailed", //$NON-NLS-1$
+                        "file", getShardFile(stateFile, i)); //$NON-NLS-1$
+                return;
+            }
+        }
+    }
+
+    private HistoryTreeBackend getShard(int quark) {
+        return fShards[quark % fShards.length];
+    }
+
+    /**
+     * Get the number of shards of this backend
+     *
+     * @return The number of shards
+     */
+    @VisibleForTesting
+    public int getNbShards() {
+        return fShards.length;
+    }
+
+    // ------------------------------------------------------------------------
+    // IStateHistoryBackend
+    // ------------------------------------------------------------------------
+
+    @Override
+    public String getSSID() {
+        return fSsid;
+    }
+
+    @Override
+    public long getStartTime() {
+        return fShards[0].getStartTime();
+    }
+
+    @Override
+    public long getEndTime() {
+        long endTime = Long.MIN_VALUE;
+        for (HistoryTreeBackend shard : fShards) {
+            endTime = Math.max(endTime, shard.getEndTime());
+        }
+        return endTime;
+    }
+
+    @Deprecated
+    @Override
+    public void insertPastState(long stateStartTime, long stateEndTime,
+            int quark, ITmfStateValue value) throws TimeRangeException {
+        getShard(quark).insertPastState(stateStartTime, stateEndTime, quark, value.unboxValue());
+    }
+
+    @Override
+    public void insertPastState(long stateStartTime, long stateEndTime,
+            int quark, @Nullable Object value) throws TimeRangeException {
+        getShard(quark).insertPastState(stateStartTime, stateEndTime, quark, value);
+    }
+
+    @Override
+    public void finishedBuilding(long endTime) throws TimeRangeException {
+        /*
+         * The insertion threads keep emptying their queue while we wait for
+         * the previous ones, so the shards are closed in parallel.
+         */
+        for (HistoryTreeBackend shard : fShards) {
+            shard.finishedBuilding(endTime);
+        }
+    }
+
+    /**
+     * Write a checkpoint of the history being built, with the checkpoint of
+     * each of its shards. No state must be inserted while the checkpoint is
+     * being written.
+     *
+     * @param output
+     *            The output to write the checkpoint to
+     * @throws IOException
+     *             If the checkpoint could not be written
+     */
+    public void writeCheckpoint(@NonNull DataOutput output) throws IOException {
+        output.writeInt(fShards.length);
+        for (HistoryTreeBackend shard : fShards) {
+            shard.writeCheckpoint(output);
+        }
+    }
+
+    @Override
+    public @Nullable FileInputStream supplyAttributeTreeReader() {
+        return fShards[0].supplyAttributeTreeReader();
+    }
+
+    @Override
+    public @Nullable File supplyAttributeTreeWriterFile() {
+        return fShards[0].supplyAttributeTreeWriterFile();
+    }
+
+    @Override
+    public long supplyAttributeTreeWriterFilePosition() {
+        return fShards[0].supplyAttributeTreeWriterFilePosition();
+    }
+
+    @Override
+    public void removeFiles() {
+        for (HistoryTreeBackend shard : fShards) {
+            if (shard != null) {
+                shard.removeFiles();
+            }
+        }
+    }
+
+    @Override
+    public void dispose() {
+        for (HistoryTreeBackend shard : fShards) {
+            if (shard != null) {
+                shard.dispose();
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Query methods
+    // ------------------------------------------------------------------------
+
+    private void checkValidTime(long t) {
+        long startTime = getStartTime();
+        long endTime = getEndTime();
+        if (t < startTime || t > endTime) {
+            throw new TimeRangeException(String.format("%s Time:%d, Start:%d, End:%d", //$NON-NLS-1$
+                    fSsid, t, startTime, endTime));
+        }
+    }
+
+    @Override
+    public void doQuery(List<@Nullable ITmfStateInterval> currentStateInfo, long t)
+            throws TimeRangeException, StateSystemDisposedException {
+        checkValidTime(t);
+        for (HistoryTreeBackend shard : fShards) {
+            /*
+             * During the build, a shard may not have reached t yet. None of
+             * its intervals can intersect t then.
+             */
+            if (t <= shard.getEndTime()) {
+                shard.doQuery(currentStateInfo, t);
+            }
+        }
+    }
+
+    @Override
+    public void doQuery(List<List<@Nullable ITmfStateInterval>> stateInfos, long[] times)
+            throws TimeRangeException, StateSystemDisposedException {
+        for (long t : times) {
+            checkValidTime(t);
+        }
+        for (HistoryTreeBackend shard : fShards) {
+            long shardEnd = shard.getEndTime();
+            List<List<@Nullable ITmfStateInterval>> shardInfos = new ArrayList<>(times.length);
+            long[] shardTimes = new long[times.length];
+            int nbTimes = 0;
+            for (int i = 0; i < times.length; i++) {
+                if (times[i] <= shardEnd) {
+                    shardInfos.add(stateInfos.get(i));
+                    shardTimes[nbTimes++] = times[i];
+                }
+            }
+            if (nbTimes == times.length) {
+                shard.doQuery(stateInfos, times);
+            } else if (nbTimes > 0) {
+                long[] queryTimes = new long[nbTimes];
+                System.arraycopy(shardTimes, 0, queryTimes, 0, nbTimes);
+                shard.doQuery(shardInfos, queryTimes);
+            }
+        }
+    }
+
+    @Override
+    public @Nullable ITmfStateInterval doSingularQuery(long t, int attributeQuark)
+            throws TimeRangeException, StateSystemDisposedException {
+        checkValidTime(t);
+        HistoryTreeBackend shard = getShard(attributeQuark);
+        if (t > shard.getEndTime()) {
+            return null;
+        }
+        return shard.doSingularQuery(t, attributeQuark);
+    }
+
+    @Override
+    public Iterable<@NonNull ITmfStateInterval> query2D(IntegerRangeCondition quarkCondition, TimeRangeCondition timeCondition)
+            throws TimeRangeException {
+        return query2D(quarkCondition, timeCondition, null);
+    }
+
+    @Override
+    public Iterable<@NonNull ITmfStateInterval> query2D(IntegerRangeCondition quarkCondition, TimeRangeCondition timeCondition, @Nullable IProgressMonitor monitor)
+            throws TimeRangeException {
+        /* Each shard is only read once the previous one is consumed */
+        List<Iterable<@NonNull ITmfStateInterval>> iterables = new ArrayList<>(fShards.length);
+        for (HistoryTreeBackend shard : fShards) {
+            iterables.add(shard.query2D(quarkCondition, timeCondition, monitor));
+        }
+        return Iterables.concat(iterables);
+    }
+
+    /**
+     * Return the total size of the history files of all the shards
+     *
+     * @return The size of the history files in bytes
+     */
+    public long getFileSize() {
+        long size = 0;
+        for (HistoryTreeBackend shard : fShards) {
+            size += shard.getFileSize();
+        }
+        return size;
+    }
+}
@@ -14,13 +14,19 @@
 
 package org.eclipse.tracecompass.internal.statesystem.core.backend.historytree;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.List;
+import java.util.function.IntPredicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.common.core.collect.BufferedBlockingQueue;
 import org.eclipse.tracecompass.common.core.log.TraceCompassLog;
 import org.eclipse.tracecompass.common.core.log.TraceCompassLogUtils;
@@ -54,6 +60,11 @@ public final class ThreadedHistoryTreeBackend extends HistoryTreeBackend
      * consideration intervals in the queue.
      */
     private long fEndTime;
+    /**
+     * The quarks whose intervals are inserted in this backend. The other
+     * quarks are not looked for in the queue when a query misses them.
+     */
+    private final @NonNull IntPredicate fOwnedQuarks;
 
     /**
      * New state history constructor
@@ -92,6 +103,7 @@ public final class ThreadedHistoryTreeBackend extends HistoryTreeBackend
                     throws IOException {
         super(ssid, newStateFile, providerVersion, startTime, blockSize, maxChildren);
         fEndTime = startTime;
+        fOwnedQuarks = quark -> true;
 
         intervalQueue = new BufferedBlockingQueue<>(queueSize / CHUNK_SIZE, CHUNK_SIZE);
         shtThread = new Thread(this, "History Tree Thread"); //$NON-NLS-1$
@@ -125,8 +137,101 @@ public final class ThreadedHistoryTreeBackend extends HistoryTreeBackend
             long startTime,
             int queueSize)
                     throws IOException {
+        this(ssid, newStateFile, providerVersion, startTime, queueSize, quark -> true);
+    }
+
+    /**
+     * New State History constructor for a backend that receives the intervals
+     * of only some of the quarks, like the shards of a
+     * {@link ShardedHistoryTreeBackend}.
+     *
+     * @param ssid
+     *            The state system's id
+     * @param newStateFile
+     *            The name of the history file that will be created
+     * @param providerVersion
+     *            Version of of the state provider
+     * @param startTime
+     *            The earliest timestamp stored in the history
+     * @param queueSize
+     *            The size of the interval insertion queue
+     * @param ownedQuarks
+     *            The quarks whose intervals will be inserted in this backend
+     * @throws IOException
+     *             If there was a problem opening the history file for writing
+     */
+    ThreadedHistoryTreeBackend(@NonNull String ssid,
+            File newStateFile,
+            int providerVersion,
+            long startTime,
+            int queueSize,
+            @NonNull IntPredicate ownedQuarks)
+                    throws IOException {
         super(ssid, newStateFile, providerVersion, startTime);
         fEndTime = startTime;
+        fOwnedQuarks = ownedQuarks;
+
+        intervalQueue = new BufferedBlockingQueue<>(queueSize / CHUNK_SIZE, CHUNK_SIZE);
+        shtThread = new Thread(this, "History Tree Thread"); //$NON-NLS-1$
+        shtThread.start();
+    }
+
+    /**
+     * Resume constructor, to continue the construction of a history from a
+     * checkpoint.
+     *
+     * @param ssid
+     *            The state system's id
+     * @param stateFile
+     *            The history file of the interrupted construction
+     * @param providerVersion
+     *            Version of the state provider, it must be the one of the
+     *            checkpoint
+     * @param queueSize
+     *            The size of the interval insertion queue
+     * @param checkpoint
+     *            The input to read the checkpoint from
+     * @throws IOException
+     *             If the checkpoint is not valid or the file cannot be opened
+     */
+    public ThreadedHistoryTreeBackend(@NonNull String ssid,
+            @NonNull File stateFile,
+            int providerVersion,
+            int queueSize,
+            @NonNull DataInput checkpoint)
+                    throws IOException {
+        this(ssid, stateFile, providerVersion, queueSize, quark -> true, checkpoint);
+    }
+
+    /**
+     * Resume constructor for a backend that receives the intervals of only
+     * some of the quarks.
+     *
+     * @param ssid
+     *            The state system's id
+     * @param stateFile
+     *            The history file of the interrupted construction
+     * @param providerVersion
+     *            Version of the state provider
+     * @param queueSize
+     *            The size of the interval insertion queue
+     * @param ownedQuarks
+     *            The quarks whose intervals will be inserted in this backend
+     * @param checkpoint
+     *            The input to read the checkpoint from
+     * @throws IOException
+     *             If the checkpoint is not valid or the file cannot be opened
+     */
+    ThreadedHistoryTreeBackend(@NonNull String ssid,
+            @NonNull File stateFile,
+            int providerVersion,
+            int queueSize,
+            @NonNull IntPredicate ownedQuarks,
+            @NonNull DataInput checkpoint)
+                    throws IOException {
+        super(ssid, stateFile, providerVersion, checkpoint);
+        fEndTime = getSHT().getTreeEnd();
+        fOwnedQuarks = ownedQuarks;
 
         intervalQueue = new BufferedBlockingQueue<>(queueSize / CHUNK_SIZE, CHUNK_SIZE);
         shtThread = new Thread(this, "History Tree Thread"); //$NON-NLS-1$
@@ -186,6 +291,28 @@ public final class ThreadedHistoryTreeBackend extends HistoryTreeBackend
         return;
     }
 
+    @Override
+    public void writeCheckpoint(DataOutput output) throws IOException {
+        /*
+         * The checkpoint must contain all the intervals inserted so far. The
+         * insertion thread removes an interval from the queue only once it is
+         * in the tree, so wait for the queue to be empty.
+         */
+        intervalQueue.flushInputBuffer();
+        try {
+            while (!intervalQueue.isEmpty()) {
+                if (!shtThread.isAlive()) {
+                    throw new IOException("The history tree thread is not running"); //$NON-NLS-1$
+                }
+                Thread.sleep(1);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        super.writeCheckpoint(output);
+    }
+
     @Override
     public void dispose() {
         if (!isFinishedBuilding()) {
@@ -269,7 +396,7 @@ public final class ThreadedHistoryTreeBackend extends HistoryTreeBackend
          * we missed any.
          */
         for (int i = 0; i < currentStateInfo.size(); i++) {
-            if (currentStateInfo.get(i) == null) {
+            if (currentStateInfo.get(i) == null && fOwnedQuarks.test(i)) {
                 /* Query the missing interval via "unicast" */
                 ITmfStateInterval interval = doSingularQuery(t, i);
                 currentStateInfo.set(i, interval);
@@ -277,6 +404,26 @@ public final class ThreadedHistoryTreeBackend extends HistoryTreeBackend
         }
     }
 
+    @Override
+    public void doQuery(List<List<ITmfStateInterval>> stateInfos, long[] times)
+            throws TimeRangeException, StateSystemDisposedException {
+        super.doQuery(stateInfos, times);
+
+        if (isFinishedBuilding()) {
+            return;
+        }
+
+        /* Look for the intervals that were in the queue during the query */
+        for (int i = 0; i < times.length; i++) {
+            List<ITmfStateInterval> currentStateInfo = stateInfos.get(i);
+            for (int quark = 0; quark < currentStateInfo.size(); quark++) {
+                if (currentStateInfo.get(quark) == null && fOwnedQuarks.test(quark)) {
+                    currentStateInfo.set(quark, doSingularQuery(times[i], quark));
+                }
+            }
+        }
+    }
+
     @Override
     public ITmfStateInterval doSingularQuery(long t, int attributeQuark)
             throws TimeRangeException, StateSystemDisposedException {
@@ -312,6 +459,12 @@ public final class ThreadedHistoryTreeBackend extends HistoryTreeBackend
     @Override
     public Iterable<@NonNull ITmfStateInterval> query2D(IntegerRangeCondition quarks, TimeRangeCondition times)
             throws TimeRangeException {
+        return query2D(quarks, times, null);
+    }
+
+    @Override
+    public Iterable<@NonNull ITmfStateInterval> query2D(IntegerRangeCondition quarks, TimeRangeCondition times, @Nullable IProgressMonitor monitor)
+            throws TimeRangeException {
         try (TraceCompassLogUtils.ScopeLog log = new TraceCompassLogUtils.ScopeLog(LOGGER, Level.FINEST, "ThreadedHistoryTreeBackend:query2D", //$NON-NLS-1$
                 "ssid", getSSID(), //$NON-NLS-1$
                 "quarks", quarks, //$NON-NLS-1$
@@ -324,9 +477,9 @@ public final class ThreadedHistoryTreeBackend extends HistoryTreeBackend
              * isn't done.
              */
             Iterable<@NonNull HTInterval> queuedIntervals = Iterables.filter(intervalQueue,
-                    interval -> !isFinishedBuilding() && quarks.test(interval.getAttribute())
+                    interval -> !isFinishedBuilding() && (monitor == null || !monitor.isCanceled()) && quarks.test(interval.getAttribute())
                             && times.intersects(interval.getStartTime(), interval.getEndTime()));
-            return Iterables.concat(super.query2D(quarks, times), queuedIntervals);
+            return Iterables.concat(super.query2D(quarks, times, monitor), queuedIntervals);
         }
     }
 }
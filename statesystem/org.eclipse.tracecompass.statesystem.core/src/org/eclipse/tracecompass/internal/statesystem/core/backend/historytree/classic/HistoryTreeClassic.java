@@ -14,6 +14,8 @@
 
 package org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.classic;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -56,6 +58,12 @@ public class HistoryTreeClassic implements IHistoryTree {
     /** File format version. Increment when breaking compatibility. */
     private static final int FILE_VERSION = 10;
 
+    /**
+     * Version of the files whose nodes are compressed. Both versions can be
+     * read, the version written depends on {@link HTConfig#isCompressed()}.
+     */
+    private static final int COMPRESSED_FILE_VERSION = 11;
+
     private static final IHTNodeFactory CLASSIC_NODE_FACTORY = new IHTNodeFactory() {
 
         @Override
@@ -148,6 +156,7 @@ public class HistoryTreeClassic implements IHistoryTree {
         int rootNodeSeqNb, res;
         int bs, maxc;
         long startTime;
+        boolean compressed;
 
         /* Java I/O mumbo jumbo... */
         if (!existingStateFile.exists()) {
@@ -181,9 +190,10 @@ public class HistoryTreeClassic implements IHistoryTree {
             }
 
             res = buffer.getInt(); /* File format version number */
-            if (res != FILE_VERSION) {
+            if (res != FILE_VERSION && res != COMPRESSED_FILE_VERSION) {
                 throw new IOException("Mismatching History Tree file format versions"); //$NON-NLS-1$
             }
+            compressed = (res == COMPRESSED_FILE_VERSION);
 
             res = buffer.getInt(); /* Event handler's version number */
             if (res != expProviderVersion &&
@@ -205,7 +215,7 @@ public class HistoryTreeClassic implements IHistoryTree {
             rootNodeSeqNb = buffer.getInt();
             startTime = buffer.getLong();
 
-            fConfig = new HTConfig(existingStateFile, bs, maxc, expProviderVersion, startTime);
+            fConfig = new HTConfig(existingStateFile, bs, maxc, expProviderVersion, startTime, compressed);
         }
 
         /*
@@ -214,6 +224,8 @@ public class HistoryTreeClassic implements IHistoryTree {
          * the SHT otherwise?
          */
         fTreeIO = new HT_IO(fConfig, false, CLASSIC_NODE_FACTORY);
+        /* An existing tree is complete, read its nodes from memory */
+        fTreeIO.mapNodes(fNodeCount);
 
         fLatestBranch = buildLatestBranch(rootNodeSeqNb);
         fTreeEnd = getRootNode().getNodeEnd();
@@ -228,6 +240,82 @@ public class HistoryTreeClassic implements IHistoryTree {
         }
     }
 
+    /**
+     * "Resume" constructor: re-open a tree whose construction was interrupted,
+     * in the state saved by {@link #writeCheckpoint(DataOutput)}. The nodes
+     * written after the checkpoint are discarded and the latest branch is
+     * restored from its copy, so that the tree can receive the intervals that
+     * come after the checkpoint.
+     *
+     * @param stateFile
+     *            The history file of the interrupted construction
+     * @param expProviderVersion
+     *            The expected version of the state provider
+     * @param checkpoint
+     *            The input to read the checkpoint from
+     * @throws IOException
+     *             If the checkpoint is not valid for this file or version
+     */
+    public HistoryTreeClassic(File stateFile, int expProviderVersion, DataInput checkpoint) throws IOException {
+        if (checkpoint.readInt() != HISTORY_FILE_MAGIC_NUMBER) {
+            throw new IOException("Wrong magic number"); //$NON-NLS-1$
+        }
+        int version = checkpoint.readInt();
+        if (version != FILE_VERSION && version != COMPRESSED_FILE_VERSION) {
+            throw new IOException("Mismatching History Tree file format versions"); //$NON-NLS-1$
+        }
+        if (checkpoint.readInt() != expProviderVersion) {
+            /* Unlike complete trees, never resume with another provider */
+            throw new IOException("Mismatching event handler versions"); //$NON-NLS-1$
+        }
+        int blockSize = checkpoint.readInt();
+        int maxChildren = checkpoint.readInt();
+        long startTime = checkpoint.readLong();
+        fConfig = new HTConfig(stateFile, blockSize, maxChildren, expProviderVersion, startTime, version == COMPRESSED_FILE_VERSION);
+
+        fNodeCount = checkpoint.readInt();
+        fTreeEnd = checkpoint.readLong();
+        int depth = checkpoint.readInt();
+        if (fNodeCount <= 0 || depth <= 0 || depth > fNodeCount) {
+            throw new IOException("Invalid history tree checkpoint"); //$NON-NLS-1$
+        }
+        List<@NonNull HTNode> latestBranch = new ArrayList<>(depth);
+        byte[] block = new byte[blockSize];
+        for (int i = 0; i < depth; i++) {
+            checkpoint.readFully(block);
+            ByteBuffer buffer = ByteBuffer.wrap(block);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            latestBranch.add(HTNode.readCheckpoint(fConfig, buffer, CLASSIC_NODE_FACTORY));
+        }
+        fLatestBranch = Collections.synchronizedList(latestBranch);
+
+        /*
+         * The nodes of the latest branch were not written with the checkpoint,
+         * only the closed nodes before the last of them must be in the file
+         */
+        int nbWrittenNodes = fNodeCount;
+        while (nbWrittenNodes > 0 && isInLatestBranch(latestBranch, nbWrittenNodes - 1)) {
+            nbWrittenNodes--;
+        }
+
+        fTreeIO = new HT_IO(fConfig, false, CLASSIC_NODE_FACTORY);
+        try {
+            fTreeIO.truncate(nbWrittenNodes, fNodeCount);
+        } catch (IOException e) {
+            fTreeIO.closeFile();
+            throw e;
+        }
+    }
+
+    private static boolean isInLatestBranch(List<@NonNull HTNode> latestBranch, int seqNb) {
+        for (HTNode node : latestBranch) {
+            if (node.getSequenceNumber() == seqNb) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Rebuild the latestBranch "cache" object by reading the nodes from disk
      * (When we are opening an existing file on disk and want to append to it,
@@ -278,7 +366,7 @@ public class HistoryTreeClassic implements IHistoryTree {
 
                 buffer.putInt(HISTORY_FILE_MAGIC_NUMBER);
 
-                buffer.putInt(FILE_VERSION);
+                buffer.putInt(fConfig.isCompressed() ? COMPRESSED_FILE_VERSION : FILE_VERSION);
                 buffer.putInt(fConfig.getProviderVersion());
 
                 buffer.putInt(fConfig.getBlockSize());
@@ -304,6 +392,35 @@ public class HistoryTreeClassic implements IHistoryTree {
                  */
                 throw new RuntimeException("State system write error"); //$NON-NLS-1$
             }
+
+            /* All the nodes are now on disk and will not change anymore */
+            fTreeIO.mapNodes(fNodeCount);
+        }
+    }
+
+    @Override
+    public void writeCheckpoint(DataOutput output) throws IOException {
+        synchronized (fLatestBranch) {
+            /* The closed nodes must be on disk before the checkpoint is */
+            fTreeIO.force();
+
+            output.writeInt(HISTORY_FILE_MAGIC_NUMBER);
+            output.writeInt(fConfig.isCompressed() ? COMPRESSED_FILE_VERSION : FILE_VERSION);
+            output.writeInt(fConfig.getProviderVersion());
+            output.writeInt(fConfig.getBlockSize());
+            output.writeInt(fConfig.getMaxChildren());
+            output.writeLong(fConfig.getTreeStart());
+
+            output.writeInt(fNodeCount);
+            output.writeLong(fTreeEnd);
+            output.writeInt(fLatestBranch.size());
+            ByteBuffer buffer = ByteBuffer.allocate(fConfig.getBlockSize());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            for (HTNode node : fLatestBranch) {
+                buffer.clear();
+                node.writeCheckpoint(buffer);
+                output.write(buffer.array());
+            }
         }
     }
 
@@ -462,7 +579,7 @@ public class HistoryTreeClassic implements IHistoryTree {
         HTNode targetNode = fLatestBranch.get(indexOfNode);
 
         /* Verify if there is enough room in this node to store this interval */
-        if (interval.getSizeOnDisk() > targetNode.getNodeFreeSpace()) {
+        if (targetNode.getIntervalSize(interval) > targetNode.getNodeFreeSpace()) {
             /* Nope, not enough room. Insert in a new sibling instead. */
             addSiblingNode(indexOfNode, interval.getStartTime());
             tryInsertAtNode(interval, fLatestBranch.size() - 1);
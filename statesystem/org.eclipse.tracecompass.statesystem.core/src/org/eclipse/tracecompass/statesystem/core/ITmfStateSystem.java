@@ -12,9 +12,11 @@
 
 package org.eclipse.tracecompass.statesystem.core;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.statesystem.core.exceptions.AttributeNotFoundException;
@@ -433,6 +435,35 @@ public interface ITmfStateSystem {
     @NonNull List<@NonNull ITmfStateInterval> queryFullState(long t)
             throws StateSystemDisposedException;
 
+    /**
+     * Load the complete state information at each of the given timestamps.
+     * This is equivalent to calling {@link #queryFullState(long)} for every
+     * timestamp, but backends can answer all of them in one pass over the
+     * history, reading each node only once for all the timestamps it covers.
+     *
+     * This is meant for views that sample the state at many points of a time
+     * range, where the timestamps are usually sorted.
+     *
+     * @param times
+     *            The timestamps at which to recreate the state information
+     * @return The List of full states, in the same order as the timestamps.
+     *         In each state, the offset = the quark
+     * @throws TimeRangeException
+     *             If one of the timestamps is outside of the range of the
+     *             state history.
+     * @throws StateSystemDisposedException
+     *             If the query is sent after the state system has been disposed
+     * @since 3.3
+     */
+    default @NonNull List<@NonNull List<@NonNull ITmfStateInterval>> queryFullStates(long @NonNull [] times)
+            throws StateSystemDisposedException {
+        List<@NonNull List<@NonNull ITmfStateInterval>> states = new ArrayList<>(times.length);
+        for (long t : times) {
+            states.add(queryFullState(t));
+        }
+        return states;
+    }
+
     /**
      * Singular query method. This one does not update the whole stateInfo
      * vector, like queryFullState() does. It only searches for one specific
@@ -505,4 +536,64 @@ public interface ITmfStateSystem {
      */
     Iterable<@NonNull ITmfStateInterval> query2D(@NonNull Collection<Integer> quarks,
             long start, long end) throws StateSystemDisposedException, IndexOutOfBoundsException, TimeRangeException;
+
+    /**
+     * Multiple attribute and multiple times iterable query, like
+     * {@link #query2D(Collection, Collection)}, that stops reading the history
+     * as soon as the monitor is canceled. The history is read lazily, as the
+     * iterator advances, so that only a bounded part of it is in memory at
+     * any time.
+     *
+     * @param quarks
+     *            a collection of quarks for which we want information
+     * @param times
+     *            the timestamps at which we want the states
+     * @param monitor
+     *            The progress monitor of the caller. The iteration ends early
+     *            once it is canceled.
+     * @return a lazily evaluated un-ordered iterable over the queried intervals
+     * @throws StateSystemDisposedException
+     *             If the query is sent after the state system has been disposed
+     * @throws IndexOutOfBoundsException
+     *             If the smallest attribute is <0 or if the largest is >= to
+     *             the number of attributes.
+     * @throws TimeRangeException
+     *             If the smallest time is before the state system start time.
+     * @since 3.3
+     */
+    default Iterable<@NonNull ITmfStateInterval> query2D(@NonNull Collection<Integer> quarks,
+            @NonNull Collection<Long> times, @Nullable IProgressMonitor monitor) throws StateSystemDisposedException, IndexOutOfBoundsException, TimeRangeException {
+        return query2D(quarks, times);
+    }
+
+    /**
+     * Multiple attribute and time range iterable query, like
+     * {@link #query2D(Collection, long, long)}, that stops reading the history
+     * as soon as the monitor is canceled. The history is read lazily, as the
+     * iterator advances, so that only a bounded part of it is in memory at
+     * any time.
+     *
+     * @param quarks
+     *            a collection of quarks for which we want information
+     * @param start
+     *            lower bound for the query
+     * @param end
+     *            upper bound for the query
+     * @param monitor
+     *            The progress monitor of the caller. The iteration ends early
+     *            once it is canceled.
+     * @return a lazily evaluated un-ordered iterable over the queried intervals
+     * @throws StateSystemDisposedException
+     *             If the query is sent after the state system has been disposed
+     * @throws IndexOutOfBoundsException
+     *             If the smallest attribute is <0 or if the largest is >= to
+     *             the number of attributes.
+     * @throws TimeRangeException
+     *             If the smallest time is before the state system start time.
+     * @since 3.3
+     */
+    default Iterable<@NonNull ITmfStateInterval> query2D(@NonNull Collection<Integer> quarks,
+            long start, long end, @Nullable IProgressMonitor monitor) throws StateSystemDisposedException, IndexOutOfBoundsException, TimeRangeException {
+        return query2D(quarks, start, end);
+    }
 }
\ No newline at end of file
@@ -12,6 +12,9 @@
 
 package org.eclipse.tracecompass.statesystem.core;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
 import java.io.IOException;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
@@ -64,4 +67,63 @@ public final class StateSystemFactory {
         return new StateSystem(backend, newFile);
     }
 
+    /**
+     * Write a checkpoint of a state system that is being built, from which its
+     * construction can later be resumed with
+     * {@link #resumeFromCheckpoint(String, File, int, int, DataInput)}, for
+     * example after the application was stopped. Only the state systems whose
+     * backend is a history tree, created with
+     * {@link org.eclipse.tracecompass.statesystem.core.backend.StateHistoryBackendFactory#createHistoryTreeBackendNewFile},
+     * support checkpoints.
+     *
+     * This must be called from the thread that builds the state system,
+     * between two state changes. The caller can write its own information, like
+     * its position in the trace, after the checkpoint.
+     *
+     * @param ss
+     *            The state system being built
+     * @param output
+     *            The output to write the checkpoint to
+     * @throws IOException
+     *             If the state system does not support checkpoints or if the
+     *             checkpoint could not be written
+     * @since 3.3
+     */
+    public static void writeCheckpoint(ITmfStateSystemBuilder ss, DataOutput output) throws IOException {
+        if (!(ss instanceof StateSystem)) {
+            throw new IOException("This state system does not support checkpoints"); //$NON-NLS-1$
+        }
+        ((StateSystem) ss).writeCheckpoint(output);
+    }
+
+    /**
+     * Resume the construction of a state system from a checkpoint written by
+     * {@link #writeCheckpoint(ITmfStateSystemBuilder, DataOutput)}. The
+     * history file must be the one that was being built when the checkpoint
+     * was written, what was written to it after the checkpoint is discarded.
+     *
+     * @param ssid
+     *            The state system's id
+     * @param stateFile
+     *            The history file of the interrupted construction
+     * @param providerVersion
+     *            Version of the state provider, it must be the one of the
+     *            checkpoint
+     * @param queueSize
+     *            The size of the interval insertion queue of the backend
+     * @param checkpoint
+     *            The input to read the checkpoint from. It is positioned after
+     *            the checkpoint when this method returns.
+     * @return The state system, ready to receive the state changes that come
+     *         after the checkpoint
+     * @throws IOException
+     *             If the checkpoint is not valid or the history file cannot be
+     *             opened
+     * @since 3.3
+     */
+    public static ITmfStateSystemBuilder resumeFromCheckpoint(String ssid, File stateFile,
+            int providerVersion, int queueSize, DataInput checkpoint) throws IOException {
+        return StateSystem.resumeFromCheckpoint(ssid, stateFile, providerVersion, queueSize, checkpoint);
+    }
+
 }
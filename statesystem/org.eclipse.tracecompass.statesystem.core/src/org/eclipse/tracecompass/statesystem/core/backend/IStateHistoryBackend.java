@@ -16,6 +16,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.util.List;
 
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.internal.provisional.datastore.core.condition.IntegerRangeCondition;
@@ -185,6 +186,32 @@ public interface IStateHistoryBackend {
     void doQuery(@NonNull List<@Nullable ITmfStateInterval> currentStateInfo, long t)
             throws TimeRangeException, StateSystemDisposedException;
 
+    /**
+     * Full queries at many timestamps at once. Each list of 'stateInfos' is an
+     * "out" parameter, filled like {@link #doQuery(List, long)} would fill it
+     * for the timestamp at the same index in 'times'.
+     *
+     * The default implementation runs one query per timestamp. Backends that
+     * can share the work between the timestamps should override it.
+     *
+     * @param stateInfos
+     *            Lists of StateValues (index == quark) to fill up, one per
+     *            timestamp
+     * @param times
+     *            Target timestamps of the queries
+     * @throws TimeRangeException
+     *             If one of the timestamps is outside of the history/trace
+     * @throws StateSystemDisposedException
+     *             If the state system is disposed while a request is ongoing.
+     * @since 3.3
+     */
+    default void doQuery(@NonNull List<@NonNull List<@Nullable ITmfStateInterval>> stateInfos, long @NonNull [] times)
+            throws TimeRangeException, StateSystemDisposedException {
+        for (int i = 0; i < times.length; i++) {
+            doQuery(stateInfos.get(i), times[i]);
+        }
+    }
+
     /**
      * Some providers might want to specify a different way to obtain just a
      * single StateValue instead of updating the whole list. If the method to
@@ -222,4 +249,26 @@ public interface IStateHistoryBackend {
             throws TimeRangeException {
         throw new UnsupportedOperationException("This backend does not support 2D queries"); //$NON-NLS-1$
     }
+
+    /**
+     * Generalized 2D iterable query method, that stops reading the history
+     * once the monitor is canceled. The default implementation ignores the
+     * monitor.
+     *
+     * @param quarkCondition
+     *            Condition on the quarks for returned intervals.
+     * @param timeCondition
+     *            Condition on the times for returned intervals
+     * @param monitor
+     *            The progress monitor of the caller, the iteration ends once
+     *            it is canceled
+     * @return An un-ordered iterable over the queried intervals
+     * @throws TimeRangeException
+     *             if the time bounds are outside the range of the HistoryTree
+     * @since 3.3
+     */
+    default Iterable<@NonNull ITmfStateInterval> query2D(IntegerRangeCondition quarkCondition, TimeRangeCondition timeCondition, @Nullable IProgressMonitor monitor)
+            throws TimeRangeException {
+        return query2D(quarkCondition, timeCondition);
+    }
 }
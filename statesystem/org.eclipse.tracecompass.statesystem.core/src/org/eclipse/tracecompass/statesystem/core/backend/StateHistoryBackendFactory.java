@@ -19,6 +19,7 @@ import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.tracecompass.internal.statesystem.core.backend.InMemoryBackend;
 import org.eclipse.tracecompass.internal.statesystem.core.backend.NullBackend;
 import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.HistoryTreeBackend;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.ShardedHistoryTreeBackend;
 import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.ThreadedHistoryTreeBackend;
 
 /**
@@ -47,7 +48,8 @@ public final class StateHistoryBackendFactory {
 
     /**
      * Create a new in-memory backend. This backend will store all the history
-     * intervals in memory, so it should not be used for anything serious.
+     * intervals in memory, in compact primitive arrays, so it is meant for
+     * histories that should never be written to disk.
      *
      * @param ssid
      *            The ID for this state system
@@ -88,12 +90,51 @@ public final class StateHistoryBackendFactory {
      */
     public static IStateHistoryBackend createHistoryTreeBackendNewFile(String ssid,
             File stateFile, int providerVersion, long startTime, int queueSize) throws IOException {
+        /* Do not reopen this history with the shards of a previous one */
+        ShardedHistoryTreeBackend.deleteShardFiles(stateFile, 1);
         if (queueSize > 0) {
             return new ThreadedHistoryTreeBackend(ssid, stateFile, providerVersion, startTime, queueSize);
         }
         return new HistoryTreeBackend(ssid, stateFile, providerVersion, startTime);
     }
 
+    /**
+     * Create a new backend that splits its intervals between many History
+     * Trees, according to their quark. Each tree has its own file and its own
+     * insertion thread, so the history can be built faster on machines with
+     * many cores.
+     *
+     * If only one shard is requested, this is the same as
+     * {@link #createHistoryTreeBackendNewFile(String, File, int, long, int)}.
+     *
+     * @param ssid
+     *            The state system's id
+     * @param stateFile
+     *            The filename/location where to store the state history (Should
+     *            end in .ht). The other shards are stored in files next to it.
+     * @param providerVersion
+     *            Version of of the state provider. We will only try to reopen
+     *            existing files if this version matches the one in the
+     *            framework.
+     * @param startTime
+     *            The earliest time stamp that will be stored in the history
+     * @param queueSize
+     *            The size of the interval insertion queue of each shard
+     * @param nbShards
+     *            The number of history trees
+     * @return The state system backend
+     * @throws IOException
+     *             Thrown if we can't create the files for some reason
+     * @since 3.3
+     */
+    public static IStateHistoryBackend createHistoryTreeBackendNewFile(String ssid,
+            File stateFile, int providerVersion, long startTime, int queueSize, int nbShards) throws IOException {
+        if (nbShards <= 1) {
+            return createHistoryTreeBackendNewFile(ssid, stateFile, providerVersion, startTime, queueSize);
+        }
+        return new ShardedHistoryTreeBackend(ssid, stateFile, providerVersion, startTime, Math.max(queueSize, 1), nbShards);
+    }
+
     /**
      * Create a new History Tree backend, but attempt to open an existing file
      * on disk. If the file cannot be found or recognized, an IOException will
@@ -113,6 +154,9 @@ public final class StateHistoryBackendFactory {
      */
     public static IStateHistoryBackend createHistoryTreeBackendExistingFile(String ssid, File stateFile,
             int providerVersion) throws IOException {
+        if (ShardedHistoryTreeBackend.countShards(stateFile) > 1) {
+            return new ShardedHistoryTreeBackend(ssid, stateFile, providerVersion);
+        }
         return new HistoryTreeBackend(ssid, stateFile, providerVersion);
     }
 }
@@ -12,6 +12,8 @@
 
 package org.eclipse.tracecompass.statesystem.core.interval;
 
+import java.util.Objects;
+
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
@@ -98,6 +100,32 @@ public final class TmfStateInterval implements ITmfStateInterval {
         return fStart <= timestamp && fEnd >= timestamp;
     }
 
+    /**
+     * @since 3.3
+     */
+    @Override
+    public boolean equals(@Nullable Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        TmfStateInterval other = (TmfStateInterval) obj;
+        return fStart == other.fStart
+                && fEnd == other.fEnd
+                && fAttribute == other.fAttribute
+                && Objects.equals(fValue, other.fValue);
+    }
+
+    /**
+     * @since 3.3
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(fStart, fEnd, fAttribute, fValue);
+    }
+
     @Override
     public String toString() {
         /* Only used for debugging */
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2017 Ericsson
+ * Copyright (c) 2009, 2018 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -18,14 +18,20 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.HashSet;
 import java.util.IllformedLocaleException;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.tracecompass.internal.tmf.core.component.TmfProviderManager;
 import org.eclipse.tracecompass.internal.tmf.core.request.TmfCoalescedEventRequest;
 import org.eclipse.tracecompass.tmf.core.component.ITmfEventProvider;
 import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
+import org.eclipse.tracecompass.tmf.core.event.TmfEvent;
 import org.eclipse.tracecompass.tmf.core.exceptions.TmfTraceException;
+import org.eclipse.tracecompass.tmf.core.request.ITmfEventRequest;
 import org.eclipse.tracecompass.tmf.core.request.ITmfEventRequest.ExecutionType;
 import org.eclipse.tracecompass.tmf.core.request.TmfEventRequest;
 import org.eclipse.tracecompass.tmf.core.signal.TmfSignal;
@@ -35,6 +41,7 @@ import org.eclipse.tracecompass.tmf.core.tests.shared.TmfTestTrace;
 import org.eclipse.tracecompass.tmf.core.timestamp.ITmfTimestamp;
 import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimeRange;
 import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimestamp;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfContext;
 import org.eclipse.tracecompass.tmf.tests.stubs.request.TmfEventRequestStub;
 import org.eclipse.tracecompass.tmf.tests.stubs.trace.TmfTraceStub;
 import org.junit.Before;
@@ -567,4 +574,199 @@ public class TmfCoalescedEventRequestTest {
         fTrace = null;
     }
 
+    // ------------------------------------------------------------------------
+    // Shared reads
+    // ------------------------------------------------------------------------
+
+    private static final int NB_TRACE_EVENTS = 10000;
+    private static final int JOIN_RANK = 2000;
+
+    @Test
+    public void testJoinRunningRequest() throws InterruptedException {
+        fTrace = setupTrace(TEST_TRACE.getFullPath());
+
+        final CountDownLatch reached = new CountDownLatch(1);
+        final CountDownLatch joined = new CountDownLatch(1);
+        TmfEventRequest first = new TmfEventRequest(ITmfEvent.class, range1, 0,
+                ITmfEventRequest.ALL_DATA, ExecutionType.BACKGROUND) {
+            @Override
+            public void handleData(ITmfEvent event) {
+                super.handleData(event);
+                if (getNbRead() == JOIN_RANK) {
+                    reached.countDown();
+                    try {
+                        joined.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        };
+
+        final List<Long> timestamps = new Vector<>();
+        TmfEventRequest second = new TmfEventRequest(ITmfEvent.class, range1, 0,
+                ITmfEventRequest.ALL_DATA, ExecutionType.BACKGROUND) {
+            @Override
+            public void handleData(ITmfEvent event) {
+                super.handleData(event);
+                timestamps.add(event.getTimestamp().getValue());
+            }
+
+            @Override
+            public boolean isOutOfOrderAllowed() {
+                return true;
+            }
+        };
+
+        try {
+            fTrace.sendRequest(first);
+            assertTrue(reached.await(10, TimeUnit.SECONDS));
+            fTrace.sendRequest(second);
+            joined.countDown();
+
+            first.waitForCompletion();
+            second.waitForCompletion();
+
+            assertEquals(NB_TRACE_EVENTS, first.getNbRead());
+            assertTrue(second.isCompleted());
+            assertFalse(second.isCancelled());
+            assertFalse(second.isFailed());
+
+            /* The end of the trace first, then the events which were missed */
+            assertEquals(NB_TRACE_EVENTS, timestamps.size());
+            assertEquals(NB_TRACE_EVENTS, new HashSet<>(timestamps).size());
+            assertEquals(JOIN_RANK + 1, timestamps.get(0).longValue());
+            assertEquals(NB_TRACE_EVENTS, timestamps.get(NB_TRACE_EVENTS - JOIN_RANK - 1).longValue());
+            assertEquals(1, timestamps.get(NB_TRACE_EVENTS - JOIN_RANK).longValue());
+            assertEquals(JOIN_RANK, timestamps.get(NB_TRACE_EVENTS - 1).longValue());
+        } finally {
+            fTrace.dispose();
+            fTrace = null;
+        }
+    }
+
+    @Test
+    public void testJoin() {
+        TmfCoalescedEventRequest coalescedRequest = new TmfCoalescedEventRequest(ITmfEvent.class, range1, 0,
+                ITmfEventRequest.ALL_DATA, ExecutionType.BACKGROUND, 0);
+        final List<ITmfEventRequest> sent = new Vector<>();
+        coalescedRequest.enableJoining(sent::add);
+        TmfEventRequest ordered = new TmfEventRequestStub(ITmfEvent.class, range1, ITmfEventRequest.ALL_DATA, 200, ExecutionType.BACKGROUND, 0);
+        TmfEventRequest unordered = new TmfEventRequestStub(ITmfEvent.class, range1, ITmfEventRequest.ALL_DATA, 200, ExecutionType.BACKGROUND, 0) {
+            @Override
+            public boolean isOutOfOrderAllowed() {
+                return true;
+            }
+        };
+        TmfEventRequest foreground = new TmfEventRequestStub(ITmfEvent.class, range1, ITmfEventRequest.ALL_DATA, 200, ExecutionType.FOREGROUND, 0) {
+            @Override
+            public boolean isOutOfOrderAllowed() {
+                return true;
+            }
+        };
+
+        /* Not running yet */
+        assertFalse(coalescedRequest.join(unordered));
+
+        coalescedRequest.start();
+        assertFalse(coalescedRequest.join(ordered));
+        assertFalse(coalescedRequest.join(foreground));
+        assertTrue(coalescedRequest.join(unordered));
+
+        /* No event was read after it joined, it is sent again as is */
+        coalescedRequest.done();
+        assertEquals(1, sent.size());
+        assertTrue(sent.get(0) == unordered);
+        assertFalse(unordered.isCompleted());
+
+        /* Too late to join */
+        assertFalse(coalescedRequest.join(unordered));
+    }
+
+    private TmfEventRequest createJoiningRequest() {
+        return new TmfEventRequestStub(ITmfEvent.class, range1, ITmfEventRequest.ALL_DATA, 200, ExecutionType.BACKGROUND, 0) {
+            @Override
+            public boolean isOutOfOrderAllowed() {
+                return true;
+            }
+        };
+    }
+
+    @Test
+    public void testCancelWhileJoining() {
+        TmfCoalescedEventRequest coalescedRequest = new TmfCoalescedEventRequest(ITmfEvent.class, range1, 0,
+                ITmfEventRequest.ALL_DATA, ExecutionType.BACKGROUND, 0);
+        final List<ITmfEventRequest> sent = new Vector<>();
+        coalescedRequest.enableJoining(sent::add);
+        TmfEventRequest joining = createJoiningRequest();
+
+        coalescedRequest.start();
+        assertTrue(coalescedRequest.join(joining));
+
+        /* The pending request is cancelled with the request it joined */
+        coalescedRequest.cancel();
+        assertTrue(sent.isEmpty());
+        assertTrue("isCompleted", joining.isCompleted());
+        assertTrue("isCancelled", joining.isCancelled());
+        assertFalse("isFailed", joining.isFailed());
+    }
+
+    @Test
+    public void testFailWhileJoining() {
+        TmfCoalescedEventRequest coalescedRequest = new TmfCoalescedEventRequest(ITmfEvent.class, range1, 0,
+                ITmfEventRequest.ALL_DATA, ExecutionType.BACKGROUND, 0);
+        final List<ITmfEventRequest> sent = new Vector<>();
+        coalescedRequest.enableJoining(sent::add);
+        TmfEventRequest joining = createJoiningRequest();
+
+        coalescedRequest.start();
+        assertTrue(coalescedRequest.join(joining));
+
+        /* The pending request fails with the request it joined */
+        coalescedRequest.fail(new IllformedLocaleException("Hi"));
+        assertTrue(sent.isEmpty());
+        assertTrue("isCompleted", joining.isCompleted());
+        assertTrue("isFailed", joining.isFailed());
+        assertFalse("isCancelled", joining.isCancelled());
+        final Throwable failCause = joining.getFailureCause();
+        assertNotNull("Cause of failure", failCause);
+        assertEquals("Cause of failure message", "Hi", failCause.getMessage());
+    }
+
+    @Test
+    public void testCancelWhileReading() throws InterruptedException {
+        final TmfTraceStub trace = new TmfTraceStub();
+        final ITmfEvent event = new TmfEvent(trace, ITmfContext.UNKNOWN_RANK, TmfTimestamp.fromNanos(1), null, null);
+        try {
+            for (int i = 0; i < 100; i++) {
+                final TmfCoalescedEventRequest coalescedRequest = new TmfCoalescedEventRequest(ITmfEvent.class, range1, 0,
+                        ITmfEventRequest.ALL_DATA, ExecutionType.BACKGROUND, 0);
+                coalescedRequest.enableJoining(request -> { });
+                final List<ITmfEventRequest> joined = new Vector<>();
+                coalescedRequest.start();
+
+                /* Requests keep joining on the reading thread while it is cancelled */
+                Thread reader = new Thread(() -> {
+                    while (!coalescedRequest.isCompleted()) {
+                        TmfEventRequest joining = createJoiningRequest();
+                        joining.setProviderFilter(trace);
+                        if (coalescedRequest.join(joining)) {
+                            joined.add(joining);
+                        }
+                        coalescedRequest.handleData(event);
+                    }
+                });
+                reader.start();
+                coalescedRequest.cancel();
+                reader.join();
+
+                for (ITmfEventRequest request : joined) {
+                    assertTrue("isCompleted", request.isCompleted());
+                    assertTrue("isCancelled", request.isCancelled());
+                }
+            }
+        } finally {
+            trace.dispose();
+        }
+    }
 }
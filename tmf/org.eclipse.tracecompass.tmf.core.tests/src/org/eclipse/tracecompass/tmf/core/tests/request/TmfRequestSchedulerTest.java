@@ -0,0 +1,338 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.tmf.core.tests.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.tracecompass.internal.tmf.core.component.TmfEventThread;
+import org.eclipse.tracecompass.internal.tmf.core.request.TmfRequestScheduler;
+import org.eclipse.tracecompass.tmf.core.component.TmfEventProvider;
+import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
+import org.eclipse.tracecompass.tmf.core.request.ITmfEventRequest;
+import org.eclipse.tracecompass.tmf.core.request.ITmfEventRequest.ExecutionType;
+import org.eclipse.tracecompass.tmf.core.request.TmfEventRequest;
+import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimeRange;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfContext;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+/**
+ * Test the {@link TmfRequestScheduler}, with requests which count their steps
+ * instead of reading events. The time slices are driven by the tests, with a
+ * clock of their own, so the scheduling does not depend on the speed of the
+ * machine.
+ */
+public class TmfRequestSchedulerTest {
+
+    /** Time-out tests after 20 seconds */
+    @Rule
+    public TestRule globalTimeout = new Timeout(20, TimeUnit.SECONDS);
+
+    private static final long WAIT_TIME = 5000;
+
+    private static final TmfEventProvider PROVIDER = new TmfEventProvider() {
+        @Override
+        public ITmfContext armRequest(ITmfEventRequest request) {
+            return null;
+        }
+
+        @Override
+        public ITmfEvent getNext(ITmfContext context) {
+            return null;
+        }
+    };
+
+    private final AtomicLong fClock = new AtomicLong();
+    private TmfRequestScheduler fScheduler;
+
+    private TmfRequestScheduler createScheduler(int lanes) {
+        return new TmfRequestScheduler(lanes, fClock::get);
+    }
+
+    /**
+     * Advance the clock and end the time slice
+     */
+    private void timeSlice(long duration) {
+        fClock.addAndGet(duration);
+        fScheduler.timeSlice();
+    }
+
+    /**
+     * Dispose the scheduler
+     */
+    @After
+    public void tearDown() {
+        if (fScheduler != null) {
+            fScheduler.dispose();
+        }
+    }
+
+    /**
+     * A request thread which runs until it is stopped, or for a number of
+     * steps
+     */
+    private static class StepThread extends TmfEventThread {
+        private final int fNbSteps;
+        private final AtomicInteger fSteps = new AtomicInteger();
+        private final CountDownLatch fStarted = new CountDownLatch(1);
+        private final CountDownLatch fDone = new CountDownLatch(1);
+        private volatile boolean fStop = false;
+
+        public StepThread(ExecutionType type, int nbSteps) {
+            super(PROVIDER, new TmfEventRequest(ITmfEvent.class, TmfTimeRange.ETERNITY, 0, ITmfEventRequest.ALL_DATA, type) {
+            });
+            fNbSteps = nbSteps;
+        }
+
+        @Override
+        public void run() {
+            fStarted.countDown();
+            try {
+                while (!fStop && !getRequest().isCancelled() && fSteps.get() < fNbSteps) {
+                    if (!isPaused()) {
+                        fSteps.incrementAndGet();
+                    }
+                    Thread.sleep(1);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                fDone.countDown();
+            }
+        }
+
+        public void submit(TmfRequestScheduler scheduler, Object owner) {
+            scheduler.submit(owner, this, this);
+        }
+
+        public boolean awaitStart() throws InterruptedException {
+            return fStarted.await(WAIT_TIME, TimeUnit.MILLISECONDS);
+        }
+
+        public boolean awaitDone() throws InterruptedException {
+            return fDone.await(WAIT_TIME, TimeUnit.MILLISECONDS);
+        }
+
+        public boolean isDone() {
+            return fDone.getCount() == 0;
+        }
+
+        public int getSteps() {
+            return fSteps.get();
+        }
+
+        public void stop() {
+            fStop = true;
+        }
+    }
+
+    /**
+     * Test that the requests of different owners run at the same time, up to
+     * the number of lanes
+     *
+     * @throws InterruptedException
+     *             Fails the test
+     */
+    @Test
+    public void testLanes() throws InterruptedException {
+        fScheduler = createScheduler(2);
+        StepThread first = new StepThread(ExecutionType.BACKGROUND, Integer.MAX_VALUE);
+        StepThread second = new StepThread(ExecutionType.BACKGROUND, Integer.MAX_VALUE);
+        StepThread third = new StepThread(ExecutionType.BACKGROUND, Integer.MAX_VALUE);
+        first.submit(fScheduler, "trace1");
+        second.submit(fScheduler, "trace2");
+        third.submit(fScheduler, "trace3");
+        assertTrue(fScheduler.isRunning(first));
+        assertTrue(fScheduler.isRunning(second));
+        assertFalse(fScheduler.isRunning(third));
+        assertEquals(2, fScheduler.getNbRunning());
+        assertTrue(first.awaitStart());
+        assertTrue(second.awaitStart());
+
+        /* The third request gets its turn at the next time slice */
+        timeSlice(TmfRequestScheduler.SLICE_TIME);
+        assertTrue(fScheduler.isRunning(third));
+        assertEquals(2, fScheduler.getNbRunning());
+        assertTrue(third.awaitStart());
+        first.stop();
+        second.stop();
+        third.stop();
+        assertTrue(first.awaitDone());
+        assertTrue(second.awaitDone());
+        assertTrue(third.awaitDone());
+    }
+
+    /**
+     * Test that a foreground request does not wait behind a background request
+     *
+     * @throws InterruptedException
+     *             Fails the test
+     */
+    @Test
+    public void testForegroundPreemption() throws InterruptedException {
+        fScheduler = createScheduler(1);
+        StepThread background = new StepThread(ExecutionType.BACKGROUND, Integer.MAX_VALUE);
+        background.submit(fScheduler, "trace");
+        assertTrue(background.awaitStart());
+
+        StepThread foreground = new StepThread(ExecutionType.FOREGROUND, 20);
+        foreground.submit(fScheduler, "trace");
+        assertTrue(fScheduler.isRunning(foreground));
+        assertFalse(fScheduler.isRunning(background));
+        assertTrue(foreground.awaitDone());
+        assertFalse(background.isDone());
+        background.stop();
+        assertTrue(background.awaitDone());
+    }
+
+    /**
+     * Test that a background request still progresses while a foreground
+     * request runs
+     *
+     * @throws InterruptedException
+     *             Fails the test
+     */
+    @Test
+    public void testAging() throws InterruptedException {
+        fScheduler = createScheduler(1);
+        StepThread foreground = new StepThread(ExecutionType.FOREGROUND, Integer.MAX_VALUE);
+        foreground.submit(fScheduler, "trace");
+        assertTrue(foreground.awaitStart());
+
+        StepThread background = new StepThread(ExecutionType.BACKGROUND, 50);
+        background.submit(fScheduler, "trace");
+        assertFalse(fScheduler.isRunning(background));
+
+        /* Not aged yet */
+        for (long time = TmfRequestScheduler.SLICE_TIME; time < TmfRequestScheduler.AGING_TIME; time += TmfRequestScheduler.SLICE_TIME) {
+            timeSlice(TmfRequestScheduler.SLICE_TIME);
+            assertFalse(fScheduler.isRunning(background));
+            assertTrue(fScheduler.isRunning(foreground));
+        }
+
+        /* Aged, it gets the lane of the foreground request */
+        timeSlice(TmfRequestScheduler.SLICE_TIME);
+        assertTrue(fScheduler.isRunning(background));
+        assertFalse(fScheduler.isRunning(foreground));
+        assertTrue(background.awaitDone());
+        assertFalse(foreground.isDone());
+        foreground.stop();
+        assertTrue(foreground.awaitDone());
+    }
+
+    /**
+     * Test that the lanes are shared between the owners
+     *
+     * @throws InterruptedException
+     *             Fails the test
+     */
+    @Test
+    public void testFairness() throws InterruptedException {
+        fScheduler = createScheduler(2);
+        StepThread[] busy = new StepThread[3];
+        for (int i = 0; i < busy.length; i++) {
+            busy[i] = new StepThread(ExecutionType.FOREGROUND, Integer.MAX_VALUE);
+            busy[i].submit(fScheduler, "busy");
+        }
+        StepThread other = new StepThread(ExecutionType.FOREGROUND, Integer.MAX_VALUE);
+        other.submit(fScheduler, "other");
+        /* Started right away, before the requests of the busy owner */
+        assertTrue(fScheduler.isRunning(other));
+        assertTrue(other.awaitStart());
+
+        /* The busy owner never gets both lanes while the other one waits */
+        for (int i = 0; i < 10; i++) {
+            timeSlice(TmfRequestScheduler.SLICE_TIME);
+            assertTrue(fScheduler.isRunning(other));
+            assertEquals(2, fScheduler.getNbRunning());
+        }
+        other.stop();
+        assertTrue(other.awaitDone());
+        for (StepThread thread : busy) {
+            thread.stop();
+        }
+        for (StepThread thread : busy) {
+            assertTrue(thread.awaitDone());
+        }
+    }
+
+    /**
+     * Test cancelling the requests of an owner, including suspended ones
+     *
+     * @throws InterruptedException
+     *             Fails the test
+     */
+    @Test
+    public void testCancel() throws InterruptedException {
+        fScheduler = createScheduler(1);
+        StepThread first = new StepThread(ExecutionType.FOREGROUND, Integer.MAX_VALUE);
+        StepThread second = new StepThread(ExecutionType.FOREGROUND, Integer.MAX_VALUE);
+        StepThread third = new StepThread(ExecutionType.FOREGROUND, Integer.MAX_VALUE);
+        first.submit(fScheduler, "trace");
+        second.submit(fScheduler, "trace");
+        third.submit(fScheduler, "trace");
+        assertTrue(first.awaitStart());
+
+        /* The first request is suspended for the second one */
+        timeSlice(TmfRequestScheduler.SLICE_TIME);
+        assertTrue(fScheduler.isRunning(second));
+        assertFalse(fScheduler.isRunning(first));
+        assertTrue(second.awaitStart());
+
+        fScheduler.cancel("trace");
+        assertTrue(first.awaitDone());
+        assertTrue(second.awaitDone());
+        assertTrue(first.getRequest().isCancelled());
+        assertTrue(third.getRequest().isCancelled());
+        long deadline = System.currentTimeMillis() + WAIT_TIME;
+        while (fScheduler.getNbTasks("trace") != 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, fScheduler.getNbTasks("trace"));
+    }
+
+    /**
+     * Test that the scheduler runs the requests which are submitted after it
+     * was disposed
+     *
+     * @throws InterruptedException
+     *             Fails the test
+     */
+    @Test
+    public void testSubmitAfterDispose() throws InterruptedException {
+        fScheduler = createScheduler(1);
+        StepThread first = new StepThread(ExecutionType.FOREGROUND, Integer.MAX_VALUE);
+        first.submit(fScheduler, "trace");
+        assertTrue(first.awaitStart());
+
+        /* The running request is cancelled */
+        fScheduler.dispose();
+        assertTrue(first.awaitDone());
+        assertTrue(first.getRequest().isCancelled());
+        assertEquals(0, fScheduler.getNbTasks("trace"));
+
+        StepThread second = new StepThread(ExecutionType.FOREGROUND, 10);
+        second.submit(fScheduler, "trace");
+        assertTrue(second.awaitStart());
+        assertTrue(second.awaitDone());
+        assertEquals(10, second.getSteps());
+        assertFalse(second.getRequest().isCancelled());
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2017 Ericsson
+ * Copyright (c) 2009, 2018 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -747,6 +747,84 @@ public class TmfMultiTraceExperimentTest {
         assertTrue("isCancelled", request.isCancelled());
     }
 
+    @Test
+    public void testCancelAllEvents() throws InterruptedException {
+        final int limit = BLOCK_SIZE;
+        final Vector<ITmfEvent> requestedEvents = new Vector<>();
+
+        final TmfTimeRange range = new TmfTimeRange(TmfTimestamp.BIG_BANG, TmfTimestamp.BIG_CRUNCH);
+        final TmfEventRequest request = new TmfEventRequest(ITmfEvent.class,
+                range, 0, ITmfEventRequest.ALL_DATA, ExecutionType.BACKGROUND) {
+            int nbRead = 0;
+
+            @Override
+            public void handleData(final ITmfEvent event) {
+                super.handleData(event);
+                requestedEvents.add(event);
+                if (++nbRead == limit) {
+                    cancel();
+                }
+            }
+        };
+        fExperiment.sendRequest(request);
+        request.waitForCompletion();
+
+        assertEquals("nbEvents",  limit, requestedEvents.size());
+        assertTrue("isCompleted", request.isCompleted());
+        assertTrue("isCancelled", request.isCancelled());
+
+        for (int i = 0; i < limit; i++) {
+            assertEquals("Distinct events", i+1, requestedEvents.get(i).getTimestamp().getValue());
+        }
+
+        // The traces can still be read after the read-ahead was stopped
+        assertEquals("getTimestamp", TmfTimestamp.create(limit + 1, (byte) -3), fExperiment.getTimestamp(limit));
+    }
+
+    // ------------------------------------------------------------------------
+    // read-ahead
+    // ------------------------------------------------------------------------
+
+    @Test
+    public void testReadAhead() {
+        final TmfTimeRange range = new TmfTimeRange(TmfTimestamp.BIG_BANG, TmfTimestamp.BIG_CRUNCH);
+        ITmfEventRequest request = new TmfEventRequest(ITmfEvent.class,
+                range, 0, ITmfEventRequest.ALL_DATA, ExecutionType.BACKGROUND) {
+        };
+        ITmfContext context = fExperiment.armRequest(request);
+        assertTrue("isReadingAhead", ((TmfExperimentContext) context).isReadingAhead());
+        context.dispose();
+    }
+
+    @Test
+    public void testNoReadAheadForBoundedRequests() {
+        // A bounded foreground request, e.g. to fill the events table
+        final TmfTimeRange range = new TmfTimeRange(TmfTimestamp.BIG_BANG, TmfTimestamp.BIG_CRUNCH);
+        ITmfEventRequest request = new TmfEventRequest(ITmfEvent.class,
+                range, 0, BLOCK_SIZE, ExecutionType.FOREGROUND) {
+        };
+        ITmfContext context = fExperiment.armRequest(request);
+        assertFalse("isReadingAhead", ((TmfExperimentContext) context).isReadingAhead());
+        context.dispose();
+
+        // A foreground request for all the events
+        request = new TmfEventRequest(ITmfEvent.class,
+                range, 0, ITmfEventRequest.ALL_DATA, ExecutionType.FOREGROUND) {
+        };
+        context = fExperiment.armRequest(request);
+        assertFalse("isReadingAhead", ((TmfExperimentContext) context).isReadingAhead());
+        context.dispose();
+
+        // A background request for the events of a time range
+        final TmfTimeRange bounded = new TmfTimeRange(TmfTimestamp.BIG_BANG, TmfTimestamp.create(BLOCK_SIZE, SCALE));
+        request = new TmfEventRequest(ITmfEvent.class,
+                bounded, 0, ITmfEventRequest.ALL_DATA, ExecutionType.BACKGROUND) {
+        };
+        context = fExperiment.armRequest(request);
+        assertFalse("isReadingAhead", ((TmfExperimentContext) context).isReadingAhead());
+        context.dispose();
+    }
+
     // ------------------------------------------------------------------------
     // getTimestamp
     // ------------------------------------------------------------------------
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.tmf.core.tests.trace.indexer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+
+import org.eclipse.tracecompass.internal.tmf.core.trace.indexer.MappedCheckpointArray;
+import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimestamp;
+import org.eclipse.tracecompass.tmf.core.trace.indexer.ITmfPersistentlyIndexable;
+import org.eclipse.tracecompass.tmf.core.trace.indexer.checkpoint.ITmfCheckpoint;
+import org.eclipse.tracecompass.tmf.core.trace.indexer.checkpoint.TmfCheckpoint;
+import org.eclipse.tracecompass.tmf.core.trace.location.TmfLongLocation;
+import org.junit.Test;
+
+/**
+ * Tests for the MappedCheckpointArray class
+ */
+public class MappedCheckpointArrayTest extends AbstractCheckpointCollectionTest {
+
+    private MappedCheckpointArray fArray;
+
+    @Override
+    protected MappedCheckpointArray createCollection() {
+        fCheckpointCollection = fArray = new MappedCheckpointArray(getFile(), (ITmfPersistentlyIndexable) getTrace());
+        return fArray;
+    }
+
+    @Override
+    public boolean isPersistableCollection() {
+        return true;
+    }
+
+    /**
+     * Tests that binarySearch find the correct checkpoint and ends with a
+     * perfect match
+     */
+    @Test
+    public void testBinarySearch() {
+        for (long i = 0; i < CHECKPOINTS_INSERT_NUM; i++) {
+            TmfCheckpoint checkpoint = new TmfCheckpoint(TmfTimestamp.fromSeconds(i), new TmfLongLocation(i), 0);
+            fArray.insert(checkpoint);
+        }
+
+        TmfCheckpoint expectedCheckpoint = new TmfCheckpoint(TmfTimestamp.fromSeconds(122), new TmfLongLocation(122L), 0);
+        int expectedRank = 122;
+
+        long rank = fArray.binarySearch(expectedCheckpoint);
+        ITmfCheckpoint found = fArray.get(rank);
+
+        assertEquals(expectedRank, rank);
+        assertEquals(found, expectedCheckpoint);
+    }
+
+    /**
+     * Test many checkpoint insertions. Make sure they can be found after
+     * re-opening the file
+     */
+    @Test
+    public void testInsertAlotCheckEquals() {
+        ArrayList<Integer> list = insertAlot();
+
+        fArray = createCollection();
+
+        for (int i = 0; i < CHECKPOINTS_INSERT_NUM; i++) {
+            int checkpointIndex = list.get(i);
+            TmfCheckpoint checkpoint = new TmfCheckpoint(TmfTimestamp.fromSeconds(12345 + checkpointIndex),
+                    new TmfLongLocation(123456L + checkpointIndex), checkpointIndex);
+            ITmfCheckpoint found = fArray.get(checkpointIndex);
+            assertEquals(checkpoint, found);
+        }
+        assertNull(fArray.get(CHECKPOINTS_INSERT_NUM));
+    }
+
+    /**
+     * Test searching while checkpoints are inserted, some of them are still
+     * being written and some are in the file
+     */
+    @Test
+    public void testSearchWhileInserting() {
+        for (int i = 0; i < CHECKPOINTS_INSERT_NUM; i++) {
+            fArray.insert(new TmfCheckpoint(TmfTimestamp.fromSeconds(2 * i), new TmfLongLocation(2L * i), i));
+            if (i % 1000 == 0) {
+                TmfCheckpoint searched = new TmfCheckpoint(TmfTimestamp.fromSeconds(i), new TmfLongLocation((long) i), 0);
+                assertEquals(i / 2, fArray.binarySearch(searched));
+                assertEquals(new TmfCheckpoint(TmfTimestamp.fromSeconds(2 * i), new TmfLongLocation(2L * i), i), fArray.get(i));
+            }
+        }
+
+        fArray.dispose();
+        fArray = createCollection();
+        for (int i = CHECKPOINTS_INSERT_NUM; i < 2 * CHECKPOINTS_INSERT_NUM; i++) {
+            fArray.insert(new TmfCheckpoint(TmfTimestamp.fromSeconds(2 * i), new TmfLongLocation(2L * i), i));
+        }
+        for (int i = 0; i < 2 * CHECKPOINTS_INSERT_NUM; i += 999) {
+            TmfCheckpoint searched = new TmfCheckpoint(TmfTimestamp.fromSeconds(2 * i), null, 0);
+            assertEquals(-i - 1, fArray.binarySearch(searched));
+        }
+    }
+
+    /**
+     * Test that a checkpoint out of order does not break the search of the
+     * other checkpoints
+     */
+    @Test
+    public void testCheckpointOutOfOrder() {
+        for (int i = 0; i < CHECKPOINTS_INSERT_NUM; i++) {
+            long time = (i == 100) ? 0 : i;
+            fArray.insert(new TmfCheckpoint(TmfTimestamp.fromSeconds(time), new TmfLongLocation((long) i), i));
+        }
+        for (int i = 200; i < CHECKPOINTS_INSERT_NUM; i += 997) {
+            TmfCheckpoint checkpoint = new TmfCheckpoint(TmfTimestamp.fromSeconds(i), new TmfLongLocation((long) i), i);
+            assertEquals(i, fArray.binarySearch(checkpoint));
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.tmf.core.tests.trace.indexer.checkpoint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
+import org.eclipse.tracecompass.tmf.core.exceptions.TmfTraceException;
+import org.eclipse.tracecompass.tmf.core.timestamp.ITmfTimestamp;
+import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimestamp;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfContext;
+import org.eclipse.tracecompass.tmf.core.trace.TmfTraceUtils;
+import org.eclipse.tracecompass.tmf.core.trace.indexer.ITmfTraceIndexer;
+import org.eclipse.tracecompass.tmf.core.trace.indexer.checkpoint.TmfEventCountSummary;
+import org.eclipse.tracecompass.tmf.tests.stubs.trace.TmfTraceStub;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test suite for the TmfCheckpointIndexer class, with a trace where a burst of
+ * events is followed by sparse events
+ */
+public class TmfCheckpointIndexTimeTest {
+
+    private static final int BLOCK_SIZE = 100;
+    private static final int NB_BURST_EVENTS = 400;
+    private static final int NB_EVENTS = 600;
+    private static final long SPARSE_INTERVAL = 100;
+
+    private File fFile;
+    private TestTrace fTrace;
+
+    private static class TestTrace extends TmfTraceStub {
+        public TestTrace(String path) throws TmfTraceException {
+            super(path, BLOCK_SIZE, false, null);
+        }
+
+        @Override
+        public ITmfTraceIndexer getIndexer() {
+            return super.getIndexer();
+        }
+    }
+
+    /**
+     * Get the time of the event at a rank, in milliseconds: one millisecond
+     * apart in the burst, then {@link #SPARSE_INTERVAL} milliseconds apart
+     */
+    private static long getTime(long rank) {
+        if (rank < NB_BURST_EVENTS) {
+            return rank + 1;
+        }
+        return NB_BURST_EVENTS + (rank - NB_BURST_EVENTS + 1) * SPARSE_INTERVAL;
+    }
+
+    /**
+     * Create and index the trace
+     *
+     * @throws IOException
+     *             Fails the test
+     * @throws TmfTraceException
+     *             Fails the test
+     */
+    @Before
+    public void setUp() throws IOException, TmfTraceException {
+        fFile = File.createTempFile("sparse", "trace");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fFile)))) {
+            for (int rank = 0; rank < NB_EVENTS; rank++) {
+                out.writeLong(getTime(rank));
+                out.writeUTF("Source");
+                out.writeUTF("Type-0");
+                out.writeInt(rank + 1);
+            }
+        }
+        fTrace = new TestTrace(fFile.getAbsolutePath());
+        fTrace.indexTrace(true);
+    }
+
+    /**
+     * Dispose the trace
+     */
+    @After
+    public void tearDown() {
+        fTrace.dispose();
+        fFile.delete();
+    }
+
+    /**
+     * Test that seeking a timestamp among sparse events starts from a
+     * checkpoint closer than the checkpoints at fixed intervals
+     */
+    @Test
+    public void testSeekTimestamp() {
+        assertEquals(NB_EVENTS, fTrace.getNbEvents());
+        ITmfTimestamp timestamp = TmfTimestamp.fromMillis(getTime(550));
+        ITmfContext context = fTrace.getIndexer().seekIndex(timestamp);
+        long rank = context.getRank();
+        assertTrue("rank " + rank, rank > 500 && rank < 550);
+        ITmfEvent event = fTrace.getNext(context);
+        assertNotNull(event);
+        assertEquals(getTime(rank), event.getTimestamp().toNanos() / 1000000);
+        context.dispose();
+
+        context = fTrace.seekEvent(timestamp);
+        event = fTrace.getNext(context);
+        assertNotNull(event);
+        assertEquals(0, timestamp.compareTo(event.getTimestamp()));
+        context.dispose();
+
+        /* In the burst, the checkpoints are at fixed intervals */
+        context = fTrace.getIndexer().seekIndex(TmfTimestamp.fromMillis(getTime(350)));
+        assertEquals(300, context.getRank());
+        context.dispose();
+    }
+
+    /**
+     * Test that seeking a rank among sparse events starts from a checkpoint
+     * closer than the checkpoints at fixed intervals
+     */
+    @Test
+    public void testSeekRank() {
+        ITmfContext context = fTrace.getIndexer().seekIndex(550);
+        long rank = context.getRank();
+        assertTrue("rank " + rank, rank > 500 && rank <= 550);
+        ITmfEvent event = fTrace.getNext(context);
+        assertNotNull(event);
+        assertEquals(getTime(rank), event.getTimestamp().toNanos() / 1000000);
+        context.dispose();
+
+        context = fTrace.seekEvent(550);
+        event = fTrace.getNext(context);
+        assertNotNull(event);
+        assertEquals(getTime(550), event.getTimestamp().toNanos() / 1000000);
+        context.dispose();
+    }
+
+    /**
+     * Test the event count summary built while indexing
+     */
+    @Test
+    public void testEventCountSummary() {
+        TmfEventCountSummary summary = TmfTraceUtils.getEventCountSummary(fTrace);
+        assertNotNull(summary);
+        assertTrue(summary.isComplete());
+        assertEquals(NB_EVENTS, summary.getNbEvents());
+        assertEquals(0, summary.getNbLostEvents());
+        assertEquals(NB_EVENTS, summary.getCount(0, Long.MAX_VALUE));
+        List<Long> histogram = summary.histogramQuery(0, getTime(NB_EVENTS - 1) * 1000000, 10);
+        assertEquals(10, histogram.size());
+        assertEquals(NB_EVENTS, histogram.stream().mapToLong(Long::longValue).sum());
+    }
+}
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.tmf.core.tests.trace.indexer.checkpoint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.eclipse.tracecompass.tmf.core.trace.indexer.checkpoint.TmfEventCountSummary;
+import org.junit.Test;
+
+/**
+ * Test suite for the {@link TmfEventCountSummary} class
+ */
+public class TmfEventCountSummaryTest {
+
+    private static final int MAX_BUCKETS = 4;
+
+    private static TmfEventCountSummary createSummary(int nbEvents) {
+        TmfEventCountSummary summary = new TmfEventCountSummary(MAX_BUCKETS);
+        for (int i = 0; i < nbEvents; i++) {
+            summary.add(i, false);
+        }
+        return summary;
+    }
+
+    /**
+     * Test an empty summary
+     */
+    @Test
+    public void testEmpty() {
+        TmfEventCountSummary summary = new TmfEventCountSummary(MAX_BUCKETS);
+        assertEquals(0, summary.getNbEvents());
+        assertEquals(0, summary.getCount(0, Long.MAX_VALUE));
+        assertTrue(summary.isExact(0, 100));
+        assertFalse(summary.isComplete());
+        assertEquals(Arrays.asList(0L, 0L), summary.histogramQuery(0, 100, 2));
+    }
+
+    /**
+     * Test that the buckets are merged when the trace grows, and that the
+     * counts on bucket boundaries are exact
+     */
+    @Test
+    public void testCounts() {
+        TmfEventCountSummary summary = createSummary(100);
+        assertEquals(100, summary.getNbEvents());
+        assertEquals(32, summary.getResolution());
+
+        assertTrue(summary.isExact(0, 31));
+        assertEquals(32, summary.getCount(0, 31));
+        assertTrue(summary.isExact(32, 95));
+        assertEquals(64, summary.getCount(32, 95));
+        assertTrue(summary.isExact(-10, 1000));
+        assertEquals(100, summary.getCount(-10, 1000));
+        assertEquals(100, summary.getCount(0, Long.MAX_VALUE));
+        assertEquals(0, summary.getCount(200, 300));
+
+        /* Within a bucket, the count is interpolated */
+        assertFalse(summary.isExact(0, 47));
+        assertEquals(48, summary.getCount(0, 47));
+    }
+
+    /**
+     * Test histogram queries
+     */
+    @Test
+    public void testHistogramQuery() {
+        TmfEventCountSummary summary = createSummary(100);
+        assertEquals(Arrays.asList(32L, 32L, 32L, 4L), summary.histogramQuery(0, 128, 4));
+        assertEquals(Arrays.asList(64L, 36L), summary.histogramQuery(0, 128, 2));
+    }
+
+    /**
+     * Test that the lost events are counted separately
+     */
+    @Test
+    public void testLostEvents() {
+        TmfEventCountSummary summary = createSummary(10);
+        summary.add(10, true);
+        assertEquals(11, summary.getNbEvents());
+        assertEquals(1, summary.getNbLostEvents());
+    }
+
+    /**
+     * Test that an event before the first one is counted in the first bucket
+     */
+    @Test
+    public void testOutOfOrder() {
+        TmfEventCountSummary summary = new TmfEventCountSummary(MAX_BUCKETS);
+        summary.add(10, false);
+        summary.add(5, false);
+        assertEquals(2, summary.getNbEvents());
+        assertEquals(2, summary.getCount(0, 20));
+        assertEquals(0, summary.getCount(0, 4));
+        assertFalse(summary.isExact(7, 20));
+    }
+
+    /**
+     * Test the coverage of a summary being built
+     */
+    @Test
+    public void testCovers() {
+        TmfEventCountSummary summary = createSummary(10);
+        assertTrue(summary.covers(5));
+        assertFalse(summary.covers(20));
+        summary.setComplete(true);
+        assertTrue(summary.covers(20));
+    }
+
+    /**
+     * Test that an invalid summary stays empty
+     */
+    @Test
+    public void testInvalidate() {
+        TmfEventCountSummary summary = createSummary(10);
+        summary.invalidate();
+        summary.add(10, false);
+        summary.setComplete(true);
+        assertEquals(0, summary.getNbEvents());
+        assertFalse(summary.isComplete());
+        assertFalse(summary.covers(5));
+    }
+
+    /**
+     * Test that a reset summary is empty and valid again
+     */
+    @Test
+    public void testReset() {
+        TmfEventCountSummary summary = createSummary(100);
+        summary.invalidate();
+        summary.reset();
+        assertEquals(0, summary.getNbEvents());
+        assertEquals(1, summary.getResolution());
+        for (int i = 0; i < 10; i++) {
+            summary.add(i, false);
+        }
+        summary.setComplete(true);
+        assertEquals(10, summary.getNbEvents());
+        assertTrue(summary.isComplete());
+        assertTrue(summary.covers(5));
+    }
+}
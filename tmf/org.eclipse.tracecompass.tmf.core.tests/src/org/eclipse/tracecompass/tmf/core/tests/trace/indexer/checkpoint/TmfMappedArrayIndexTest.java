@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.tmf.core.tests.trace.indexer.checkpoint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.eclipse.tracecompass.internal.tmf.core.trace.indexer.MappedCheckpointArray;
+import org.eclipse.tracecompass.tmf.core.trace.TmfTraceManager;
+import org.eclipse.tracecompass.tmf.core.trace.TmfTraceUtils;
+import org.eclipse.tracecompass.tmf.core.trace.indexer.TmfMappedArrayTraceIndexer;
+import org.eclipse.tracecompass.tmf.core.trace.indexer.checkpoint.ITmfCheckpointIndex;
+import org.eclipse.tracecompass.tmf.core.trace.indexer.checkpoint.TmfCheckpointIndexer;
+import org.eclipse.tracecompass.tmf.core.trace.indexer.checkpoint.TmfEventCountSummary;
+import org.junit.Test;
+
+/**
+ * Test suite for the TmfMappedArrayTraceIndexer class.
+ */
+public class TmfMappedArrayIndexTest extends AbstractIndexTest {
+
+    /**
+     * Create the indexer for testing
+     *
+     * @param trace
+     *            the trace
+     * @return the indexer for testing
+     */
+    @Override
+    protected ITestIndexer createTestIndexer(TestTrace trace) {
+        return new TestMappedArrayIndexer(trace);
+    }
+
+    private static class TestMappedArrayIndexer extends TmfMappedArrayTraceIndexer implements ITestIndexer {
+        public TestMappedArrayIndexer(TestTrace testTrace) {
+            super(testTrace, BLOCK_SIZE);
+        }
+
+        @Override
+        public ITmfCheckpointIndex getCheckpoints() {
+            return getTraceIndex();
+        }
+
+        public static File getSummaryFile(TestTrace trace) {
+            return new File(TmfTraceManager.getSupplementaryFileDir(trace) + TmfCheckpointIndexer.SUMMARY_FILE_NAME);
+        }
+    }
+
+    private static void verifySummary() {
+        TmfEventCountSummary summary = TmfTraceUtils.getEventCountSummary(fTrace);
+        assertNotNull(summary);
+        assertTrue(summary.isComplete());
+        long endTime = fTrace.getEndTime().toNanos();
+        assertTrue(summary.covers(endTime));
+        assertEquals(NB_EVENTS, summary.getNbEvents());
+        assertEquals(NB_EVENTS, summary.getCount(fTrace.getStartTime().toNanos(), endTime));
+    }
+
+    /**
+     * Test that a fully built index has the same content when reloaded from disk
+     *
+     * @throws Exception when error occurs
+     */
+    @Test
+    public void testReopenIndex() throws Exception {
+        fTrace.dispose();
+        fTrace = createTrace(getTracePath());
+        assertFalse(fTrace.getIndexer().getCheckpoints().isCreatedFromScratch());
+        fTrace.indexTrace(true);
+
+        verifyIndexContent();
+    }
+
+    /**
+     * Test that the event count summary is restored with an index reloaded
+     * from disk
+     *
+     * @throws Exception
+     *             when error occurs
+     */
+    @Test
+    public void testReopenSummary() throws Exception {
+        verifySummary();
+        fTrace.dispose();
+        assertTrue(TestMappedArrayIndexer.getSummaryFile(fTrace).exists());
+        fTrace = createTrace(getTracePath());
+        assertFalse(fTrace.getIndexer().getCheckpoints().isCreatedFromScratch());
+
+        verifySummary();
+        verifyIndexContent();
+    }
+
+    /**
+     * Test that the event count summary is rebuilt when an index is reloaded
+     * from disk without it
+     *
+     * @throws Exception
+     *             when error occurs
+     */
+    @Test
+    public void testReopenWithoutSummary() throws Exception {
+        fTrace.dispose();
+        TestMappedArrayIndexer.getSummaryFile(fTrace).delete();
+        fTrace = createTrace(getTracePath());
+        assertFalse(fTrace.getIndexer().getCheckpoints().isCreatedFromScratch());
+
+        verifySummary();
+        verifyIndexContent();
+    }
+
+    /**
+     * Test that the indexer can resume from a partially built index reloaded
+     * from disk
+     *
+     * @throws Exception
+     *             when error occurs
+     */
+    @Test
+    public void testInsertAfterReopenIndex() throws Exception {
+        // Make sure we start from a completely non-existing index
+        fTrace.dispose();
+        String directory = TmfTraceManager.getSupplementaryFileDir(fTrace);
+        new File(directory + MappedCheckpointArray.INDEX_FILE_NAME).delete();
+
+        // Index half of the trace
+        fNbEventsLimit = NB_EVENTS / 2;
+        fTrace = createTrace(getTracePath());
+        assertTrue(fTrace.getIndexer().getCheckpoints().isCreatedFromScratch());
+        // The trace should not have been indexed completely
+        assertEquals(fNbEventsLimit, fTrace.getNbEvents());
+
+        // Finish indexing the trace
+        fNbEventsLimit = Long.MAX_VALUE;
+        fTrace = createTrace(getTracePath());
+        assertFalse(fTrace.getIndexer().getCheckpoints().isCreatedFromScratch());
+
+        verifyIndexContent();
+        verifySummary();
+    }
+
+}
@@ -1,5 +1,5 @@
 /**********************************************************************
- * Copyright (c) 2017 Ericsson
+ * Copyright (c) 2017, 2018 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -41,7 +41,10 @@ import org.eclipse.tracecompass.tmf.core.statistics.ITmfStatistics;
 import org.eclipse.tracecompass.tmf.core.statistics.TmfStateStatistics.Attributes;
 import org.eclipse.tracecompass.tmf.core.statistics.TmfStatisticsEventTypesModule;
 import org.eclipse.tracecompass.tmf.core.statistics.TmfStatisticsModule;
+import org.eclipse.tracecompass.tmf.core.statistics.TmfStatisticsTotalsModule;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+import org.eclipse.tracecompass.tmf.core.trace.TmfTraceUtils;
+import org.eclipse.tracecompass.tmf.core.trace.indexer.checkpoint.TmfEventCountSummary;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
@@ -118,7 +121,7 @@ public class HistogramDataProvider extends AbstractTmfTraceDataProvider implemen
 
         final ITmfStatistics stats = Objects.requireNonNull(fModule.getStatistics());
         if (selected.contains(fTotalId)) {
-            List<Long> values = stats.histogramQuery(filter.getStart(), filter.getEnd(), n);
+            List<Long> values = getTotals(stats, filter.getStart(), filter.getEnd(), n);
 
             double[] y = new double[n];
             Arrays.setAll(y, values::get);
@@ -140,6 +143,21 @@ public class HistogramDataProvider extends AbstractTmfTraceDataProvider implemen
         return TmfXyResponseFactory.create(TITLE, xValues, builder.build(), completed);
     }
 
+    /**
+     * Get the event counts from the statistics, or from the summary built by
+     * the indexer while the statistics do not reach the end of the query yet
+     */
+    private List<Long> getTotals(ITmfStatistics stats, long start, long end, int n) {
+        ITmfStateSystem totalsSs = fModule.getStateSystem(TmfStatisticsTotalsModule.ID);
+        if (totalsSs != null && !totalsSs.waitUntilBuilt(0) && totalsSs.getCurrentEndTime() < end) {
+            TmfEventCountSummary summary = TmfTraceUtils.getEventCountSummary(getTrace());
+            if (summary != null && summary.covers(end)) {
+                return summary.histogramQuery(start, end, n);
+            }
+        }
+        return stats.histogramQuery(start, end, n);
+    }
+
     private YModel getLostEvents(ITmfStateSystem ss, long[] times) throws StateSystemDisposedException {
         int leEndQuark = ss.optQuarkAbsolute(Attributes.LOST_EVENTS);
         int leCountQuark = ss.optQuarkAbsolute(Attributes.EVENT_TYPES, "Lost event"); //$NON-NLS-1$
@@ -21,6 +21,8 @@ public class Messages extends NLS {
     public static String CounterAspect_HelpPrefix;
     public static String TmfCheckpointIndexer_EventsPerSecond;
     public static String TmfCheckpointIndexer_Indexing;
+    public static String TmfCheckpointIndexer_IOErrorReadingSummary;
+    public static String TmfCheckpointIndexer_IOErrorWritingSummary;
 
     static {
         // initialize resource bundle
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2015 Ericsson
+ * Copyright (c) 2009, 2018 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -19,8 +19,14 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
+import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.internal.tmf.core.Activator;
 import org.eclipse.tracecompass.internal.tmf.core.TmfCoreTracer;
 import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
@@ -40,8 +46,11 @@ public class TmfCoalescedEventRequest extends TmfEventRequest {
     // Attributes
     // ------------------------------------------------------------------------
 
-    /** The list of coalesced requests */
-    private final List<ITmfEventRequest> fRequests = new ArrayList<>();
+    /**
+     * The list of coalesced requests. The requests which join are added by
+     * the thread reading the events, while other threads may cancel them.
+     */
+    private final List<ITmfEventRequest> fRequests = new CopyOnWriteArrayList<>();
 
     /**
      * We do not use super.fRange, because in the case of coalesced requests,
@@ -54,6 +63,21 @@ public class TmfCoalescedEventRequest extends TmfEventRequest {
      */
     private Map<String, Set<ITmfEventRequest>> fRequestsCache = new HashMap<>();
 
+    /**
+     * The requests which joined while the events are read, until they are
+     * added to the sub-requests by the thread reading the events.
+     */
+    private final Queue<ITmfEventRequest> fJoiningRequests = new ConcurrentLinkedQueue<>();
+
+    /** The rank of the first event received by the requests which joined */
+    private final Map<ITmfEventRequest, Long> fJoinRanks = new HashMap<>();
+
+    /** Sends the wrap-around requests, null if requests cannot join */
+    private @Nullable Consumer<ITmfEventRequest> fWrapAroundSender = null;
+
+    /** Whether the events are all read, so that requests can no longer join */
+    private boolean fIsReadDone = false;
+
     // ------------------------------------------------------------------------
     // Constructor
     // ------------------------------------------------------------------------
@@ -106,6 +130,42 @@ public class TmfCoalescedEventRequest extends TmfEventRequest {
         return fRange;
     }
 
+    /**
+     * The content of an event type is needed if any of the sub-requests needs
+     * it.
+     */
+    @Override
+    public synchronized @Nullable Predicate<String> getEventTypeFilter() {
+        List<Predicate<String>> filters = new ArrayList<>();
+        for (ITmfEventRequest request : fRequests) {
+            Predicate<String> filter = request.getEventTypeFilter();
+            if (filter == null) {
+                return null;
+            }
+            filters.add(filter);
+        }
+        if (filters.isEmpty()) {
+            return null;
+        }
+        return type -> filters.stream().anyMatch(filter -> filter.test(type));
+    }
+
+    /**
+     * The events can only be recycled if none of the sub-requests keeps them.
+     */
+    @Override
+    public synchronized boolean isEventRecyclingAllowed() {
+        if (fRequests.isEmpty()) {
+            return false;
+        }
+        for (ITmfEventRequest request : fRequests) {
+            if (!request.isEventRecyclingAllowed()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     // ------------------------------------------------------------------------
     // Management
     // ------------------------------------------------------------------------
@@ -206,6 +266,86 @@ public class TmfCoalescedEventRequest extends TmfEventRequest {
         return result.toString();
     }
 
+    // ------------------------------------------------------------------------
+    // Shared reads
+    // ------------------------------------------------------------------------
+
+    /**
+     * Allow requests to join this request while its events are read. A
+     * request which joins receives the events from the current position to
+     * the end of this request, then the events it missed are read by a
+     * {@link TmfWrapAroundEventRequest}.
+     *
+     * @param sender
+     *            sends the wrap-around requests, and the requests which joined
+     *            too late to receive any event, to the event provider which
+     *            reads this request
+     */
+    public synchronized void enableJoining(Consumer<ITmfEventRequest> sender) {
+        fWrapAroundSender = sender;
+    }
+
+    /**
+     * Join a request to this one while its events are read
+     *
+     * @param request
+     *            the request to join
+     * @return true if the request joined, false if it must be read separately
+     */
+    public synchronized boolean join(ITmfEventRequest request) {
+        if (fWrapAroundSender == null || fIsReadDone || !isRunning() || isCompleted() ||
+                !isJoinable(request)) {
+            return false;
+        }
+        fJoiningRequests.add(request);
+        if (TmfCoreTracer.isRequestTraced()) {
+            TmfCoreTracer.traceRequest(request.getRequestId(), "JOINED " + getRequestId()); //$NON-NLS-1$
+        }
+        return true;
+    }
+
+    /**
+     * Check if a request can join this one. The request must accept the
+     * events out of order, and this request must read all the events that the
+     * request needs, with at least the content it needs.
+     */
+    private boolean isJoinable(ITmfEventRequest request) {
+        if (!request.isOutOfOrderAllowed() ||
+                request.getExecType() != getExecType() ||
+                request.getDependencyLevel() != getDependencyLevel() ||
+                request.getNbRequested() != ITmfEventRequest.ALL_DATA ||
+                fNbRequested != ITmfEventRequest.ALL_DATA ||
+                request.getIndex() < fIndex) {
+            return false;
+        }
+        TmfTimeRange range = request.getRange();
+        if (!fRange.contains(range.getStartTime()) || !fRange.contains(range.getEndTime())) {
+            return false;
+        }
+        /* The trace was armed with the filter and recycling of this request */
+        if (isEventRecyclingAllowed() && !request.isEventRecyclingAllowed()) {
+            return false;
+        }
+        return getEventTypeFilter() == null;
+    }
+
+    /**
+     * Add the requests which joined to the sub-requests, they receive the
+     * events from the given rank
+     */
+    private void addJoiningRequests(long rank) {
+        ITmfEventRequest request = fJoiningRequests.poll();
+        while (request != null) {
+            fRequests.add(request);
+            fJoinRanks.put(request, rank);
+            fRequestsCache.clear();
+            if (!request.isCompleted()) {
+                request.start();
+            }
+            request = fJoiningRequests.poll();
+        }
+    }
+
     // ------------------------------------------------------------------------
     // ITmfEventRequest
     // ------------------------------------------------------------------------
@@ -216,6 +356,12 @@ public class TmfCoalescedEventRequest extends TmfEventRequest {
 
         long index = getIndex() + getNbRead() - 1;
 
+        if (!fJoiningRequests.isEmpty()) {
+            synchronized (this) {
+                addJoiningRequests(index);
+            }
+        }
+
         String traceName = data.getTrace().getName();
         Set<ITmfEventRequest> requests = fRequestsCache.get(traceName);
 
@@ -268,10 +414,49 @@ public class TmfCoalescedEventRequest extends TmfEventRequest {
     }
 
     @Override
-    public synchronized void done() {
-        for (ITmfEventRequest request : fRequests) {
-            if (!request.isCompleted()) {
-                request.done();
+    public void done() {
+        List<ITmfEventRequest> toSend = new ArrayList<>();
+        List<ITmfEventRequest> joining;
+        List<ITmfEventRequest> toStop = new ArrayList<>();
+        Consumer<ITmfEventRequest> sender;
+        /* Only the requests which were read to the end are sent again */
+        boolean isCancelled = super.isCancelled();
+        boolean isFailed = isFailed();
+        synchronized (this) {
+            fIsReadDone = true;
+            sender = fWrapAroundSender;
+            joining = new ArrayList<>(fJoiningRequests);
+            fJoiningRequests.clear();
+            for (ITmfEventRequest request : fRequests) {
+                if (!request.isCompleted()) {
+                    Long joinRank = fJoinRanks.get(request);
+                    if (isCancelled || isFailed) {
+                        /* Joined after the others were cancelled or failed */
+                        toStop.add(request);
+                    } else if (sender != null && joinRank != null && joinRank > request.getIndex()) {
+                        toSend.add(new TmfWrapAroundEventRequest(request, joinRank));
+                    } else {
+                        request.done();
+                    }
+                }
+            }
+        }
+        /* The requests which joined too late to receive any event end like this one */
+        toStop.addAll(joining);
+        if (isCancelled) {
+            toStop.forEach(ITmfEventRequest::cancel);
+        } else if (isFailed) {
+            Throwable cause = getFailureCause();
+            Exception e = (cause instanceof Exception) ? (Exception) cause : new Exception(cause);
+            toStop.forEach(request -> request.fail(e));
+        } else {
+            /* Otherwise they are sent again */
+            toSend.addAll(joining);
+        }
+        /* Sent outside of the lock, the event provider locks itself before joining */
+        if (sender != null) {
+            for (ITmfEventRequest request : toSend) {
+                sender.accept(request);
             }
         }
         super.done();
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2014 Ericsson
+ * Copyright (c) 2009, 2018 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -14,15 +14,7 @@
 
 package org.eclipse.tracecompass.internal.tmf.core.request;
 
-import static org.eclipse.tracecompass.common.core.NonNullUtils.checkNotNull;
-
-import java.util.Queue;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Executor;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -33,66 +25,57 @@ import org.eclipse.tracecompass.common.core.log.TraceCompassLogUtils.FlowScopeLo
 import org.eclipse.tracecompass.common.core.log.TraceCompassLogUtils.FlowScopeLogBuilder;
 import org.eclipse.tracecompass.internal.tmf.core.TmfCoreTracer;
 import org.eclipse.tracecompass.internal.tmf.core.component.TmfEventThread;
-import org.eclipse.tracecompass.tmf.core.request.ITmfEventRequest.ExecutionType;
 
 /**
- * The request scheduler works with 5 slots with a specific time. It has 4 slots
- * for foreground requests and 1 slot for background requests, and it passes
- * through all the slots (foreground first and background after).
- *
- * Example: if we have one foreground and one background request, the foreground
- * request will be executed four times more often than the background request.
+ * The request executor of an event provider. The requests of all the providers
+ * are run by a shared {@link TmfRequestScheduler}, which runs several requests
+ * at the same time, up to the number of processors, and shares the lanes
+ * between the providers. Foreground requests are scheduled before background
+ * requests, and background requests which waited for some time are scheduled
+ * like foreground requests. The requests which do not have a lane are
+ * suspended, and the requests take turns at each time slice.
  *
  * @author Francois Chouinard
  * @author Simon Delisle
- * @version 1.1
+ * @version 1.2
  */
 public class TmfRequestExecutor implements Executor {
 
     private static final @NonNull Logger LOGGER = TraceCompassLog.getLogger(TmfRequestExecutor.class);
     private static final @NonNull String LOG_CATEGORY = "RequestExecutor"; //$NON-NLS-1$
 
-    // ------------------------------------------------------------------------
-    // Constants
-    // ------------------------------------------------------------------------
-
-    private static final long REQUEST_TIME = 100;
-    private static final int FOREGROUND_SLOT = 4;
-
     // ------------------------------------------------------------------------
     // Attributes
     // ------------------------------------------------------------------------
 
-    // The request executor
-    private final ExecutorService fExecutor = Executors.newCachedThreadPool();
+    // The request scheduler
+    private final @NonNull TmfRequestScheduler fScheduler;
     private final String fExecutorName;
 
-    // The request queues
-    private final Queue<TmfEventThread> fForegroundTasks = new ArrayBlockingQueue<>(10);
-    private final Queue<TmfEventThread> fBackgroundTasks = new ArrayBlockingQueue<>(10);
-
-    // The tasks
-    private TmfEventThread fActiveTask;
-
-    private Timer fTimer;
-    private TimerTask fTimerTask;
-
-    private int fForegroundCycle = 0;
+    private volatile boolean fIsShutdown = false;
 
     // ------------------------------------------------------------------------
     // Constructors
     // ------------------------------------------------------------------------
 
     /**
-     * Default constructor
+     * Default constructor, using the scheduler shared by all the providers
      */
     public TmfRequestExecutor() {
-        // We know the canonical name is not null because we use ExecutorService
-        // only
-        String canonicalName = checkNotNull(fExecutor.getClass().getCanonicalName());
-        fExecutorName = canonicalName.substring(canonicalName.lastIndexOf('.') + 1);
+        this(TmfRequestScheduler.getInstance());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param scheduler
+     *            the scheduler which runs the requests
+     */
+    public TmfRequestExecutor(@NonNull TmfRequestScheduler scheduler) {
+        fScheduler = scheduler;
+        fExecutorName = TmfRequestScheduler.class.getSimpleName();
         if (TmfCoreTracer.isComponentTraced()) {
-            TmfCoreTracer.trace(fExecutor + " created"); //$NON-NLS-1$
+            TmfCoreTracer.trace(this + " created"); //$NON-NLS-1$
         }
     }
 
@@ -104,14 +87,14 @@ public class TmfRequestExecutor implements Executor {
      * @return the shutdown state (i.e. if it is accepting new requests)
      */
     public boolean isShutdown() {
-        return fExecutor.isShutdown();
+        return fIsShutdown;
     }
 
     /**
      * @return the termination state
      */
     public boolean isTerminated() {
-        return fExecutor.isTerminated();
+        return fIsShutdown && fScheduler.getNbTasks(this) == 0;
     }
 
     // ------------------------------------------------------------------------
@@ -122,17 +105,11 @@ public class TmfRequestExecutor implements Executor {
      * Initialize the executor
      */
     public void init() {
-        if (fTimer != null) {
-            return;
-        }
-        // Initialize the timer for the schedSwitch
-        fTimerTask = new SchedSwitch();
-        fTimer = new Timer(true);
-        fTimer.schedule(fTimerTask, 0, REQUEST_TIME);
+        // The shared scheduler is started with the first executor
     }
 
     @Override
-    public synchronized void execute(final Runnable command) {
+    public void execute(final Runnable command) {
 
         // We are expecting MyEventThread:s
         if (!(command instanceof TmfEventThread)) {
@@ -140,177 +117,43 @@ public class TmfRequestExecutor implements Executor {
             return;
         }
 
+        TmfEventThread thread = (TmfEventThread) command;
+        if (fIsShutdown) {
+            thread.cancel();
+            return;
+        }
+
         try (FlowScopeLog scope = new FlowScopeLogBuilder(LOGGER, Level.FINE, "RequestExecutor:CreatingThread").setCategory(LOG_CATEGORY).build()) { //$NON-NLS-1$
-            // Wrap the thread in a MyThread
-            TmfEventThread thread = (TmfEventThread) command;
-            TmfEventThread wrapper = new TmfEventThread(thread) {
-                @Override
-                public void run() {
-                    try (FlowScopeLog log = new FlowScopeLogBuilder(LOGGER, Level.FINE, "RequestExecutor:RunningRequest", "thread", thread.getThread(), "execution type", thread.getExecType()).setParentScope(scope).build()) { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-                        thread.run();
-                    } finally {
-                        scheduleNext();
-                    }
+            // Wrap the thread to log its execution
+            Runnable wrapper = () -> {
+                try (FlowScopeLog log = new FlowScopeLogBuilder(LOGGER, Level.FINE, "RequestExecutor:RunningRequest", "thread", thread, "execution type", thread.getExecType()).setParentScope(scope).build()) { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                    thread.run();
                 }
             };
-
-            // Add the thread to the appropriate queue
-            ExecutionType priority = thread.getExecType();
-
-            if (priority == ExecutionType.FOREGROUND) {
-                if (!fForegroundTasks.offer(wrapper)) {
-                    wrapper.cancel();
-                }
-            } else {
-                if (!fBackgroundTasks.offer(wrapper)) {
-                    wrapper.cancel();
-                }
-            }
+            fScheduler.submit(this, thread, wrapper);
         }
     }
 
     /**
-     * Timer task to trigger scheduleNext()
+     * Executes the next pending requests, if applicable.
      */
-    private class SchedSwitch extends TimerTask {
-
-        SchedSwitch() {
-        }
-
-        @Override
-        public void run() {
-            scheduleNext();
-        }
-    }
-
-    /**
-     * Executes the next pending request, if applicable.
-     */
-    protected synchronized void scheduleNext() {
+    protected void scheduleNext() {
         if (!isShutdown()) {
-            if (fActiveTask == null) {
-                schedule();
-            } else if (fActiveTask.getExecType() == ExecutionType.FOREGROUND) {
-                if (fActiveTask.getThread().isCompleted()) {
-                    fActiveTask = null;
-                    schedule();
-                } else {
-                    if (hasTasks()) {
-                        fActiveTask.getThread().suspend();
-                        if (!fForegroundTasks.offer(fActiveTask)) {
-                            fActiveTask.cancel();
-                            fActiveTask = null;
-                        }
-                        schedule();
-                    }
-                }
-
-            } else if (fActiveTask.getExecType() == ExecutionType.BACKGROUND) {
-                if (fActiveTask.getThread().isCompleted()) {
-                    fActiveTask = null;
-                    schedule();
-                } else {
-                    if (hasTasks()) {
-                        fActiveTask.getThread().suspend();
-                        if (!fBackgroundTasks.offer(fActiveTask)) {
-                            fActiveTask.cancel();
-                            fActiveTask = null;
-                        }
-                        schedule();
-                    }
-                }
-            }
+            fScheduler.schedule();
         }
     }
 
     /**
      * Stops the executor
      */
-    public synchronized void stop() {
-        if (fTimerTask != null) {
-            fTimerTask.cancel();
-        }
-
-        if (fTimer != null) {
-            fTimer.cancel();
-        }
-
-        if (fActiveTask != null) {
-            fActiveTask.cancel();
-        }
-
-        while ((fActiveTask = fForegroundTasks.poll()) != null) {
-            fActiveTask.cancel();
-        }
-        while ((fActiveTask = fBackgroundTasks.poll()) != null) {
-            fActiveTask.cancel();
-        }
-
-        fExecutor.shutdown();
+    public void stop() {
+        fIsShutdown = true;
+        fScheduler.cancel(this);
         if (TmfCoreTracer.isComponentTraced()) {
-            TmfCoreTracer.trace(fExecutor + " terminated"); //$NON-NLS-1$
-        }
-    }
-
-    // ------------------------------------------------------------------------
-    // Helper methods
-    // ------------------------------------------------------------------------
-
-    /**
-     * Determine which type of request (foreground or background) we schedule
-     * next
-     */
-    private void schedule() {
-        if (!fForegroundTasks.isEmpty()) {
-            scheduleNextForeground();
-        } else {
-            scheduleNextBackground();
-        }
-    }
-
-    /**
-     * Schedule the next foreground request
-     */
-    private void scheduleNextForeground() {
-        if (fForegroundCycle < FOREGROUND_SLOT || fBackgroundTasks.isEmpty()) {
-            ++fForegroundCycle;
-            fActiveTask = fForegroundTasks.poll();
-            executefActiveTask();
-        } else {
-            fActiveTask = null;
-            scheduleNextBackground();
+            TmfCoreTracer.trace(this + " terminated"); //$NON-NLS-1$
         }
     }
 
-    /**
-     * Schedule the next background request
-     */
-    private void scheduleNextBackground() {
-        fForegroundCycle = 0;
-        if (!fBackgroundTasks.isEmpty()) {
-            fActiveTask = fBackgroundTasks.poll();
-            executefActiveTask();
-        }
-    }
-
-    /**
-     * Execute or resume the active task
-     */
-    private void executefActiveTask() {
-        if (fActiveTask.getThread().isPaused()) {
-            fActiveTask.getThread().resume();
-        } else {
-            fExecutor.execute(fActiveTask);
-        }
-    }
-
-    /**
-     * Check if the scheduler has tasks
-     */
-    private boolean hasTasks() {
-        return !(fForegroundTasks.isEmpty() && fBackgroundTasks.isEmpty());
-    }
-
     // ------------------------------------------------------------------------
     // Object
     // ------------------------------------------------------------------------
@@ -0,0 +1,416 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.tmf.core.request;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.LongSupplier;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.internal.tmf.core.component.TmfEventThread;
+import org.eclipse.tracecompass.tmf.core.request.ITmfEventRequest.ExecutionType;
+
+/**
+ * Scheduler of the requests of all the event providers.
+ *
+ * The requests run on a number of lanes, one per processor by default. When
+ * there are more requests than lanes, the lanes are given in this order:
+ * <ul>
+ * <li>foreground requests before background requests. A background request
+ * which has been waiting for a few time slices is aged to the foreground
+ * class, so it still progresses while foreground requests keep coming.</li>
+ * <li>requests of the providers which have the fewest lanes so far, so that
+ * each trace gets its share and independent traces are read in
+ * parallel.</li>
+ * <li>requests which have been waiting the longest.</li>
+ * </ul>
+ * The choice is made again at every time slice, and when a request is
+ * submitted or completed. The requests which do not get a lane are suspended
+ * between two events, the same way they were by the single-lane scheduler,
+ * so a coalesced request is never split.
+ */
+@NonNullByDefault
+public final class TmfRequestScheduler {
+
+    // ------------------------------------------------------------------------
+    // Constants
+    // ------------------------------------------------------------------------
+
+    /** Duration of a time slice, in milliseconds */
+    public static final long SLICE_TIME = 100;
+
+    /** Waiting time after which a background request is aged, in milliseconds */
+    public static final long AGING_TIME = 4 * SLICE_TIME;
+
+    private static final TmfRequestScheduler INSTANCE = new TmfRequestScheduler(Runtime.getRuntime().availableProcessors());
+
+    private enum State {
+        /** Not started yet */
+        NEW,
+        /** Has a lane */
+        RUNNING,
+        /** Started, and suspended */
+        PAUSED
+    }
+
+    /**
+     * A request, its owner, and its scheduling state
+     */
+    private final class Task implements Runnable {
+        private final Object fOwner;
+        private final TmfEventThread fThread;
+        private final Runnable fBody;
+        private State fState = State.NEW;
+        /** Time since which the task is waiting for a lane */
+        private long fWaitingSince;
+
+        public Task(Object owner, TmfEventThread thread, Runnable body, long now) {
+            fOwner = owner;
+            fThread = thread;
+            fBody = body;
+            fWaitingSince = now;
+        }
+
+        @Override
+        public void run() {
+            try {
+                fBody.run();
+            } finally {
+                completed(this);
+            }
+        }
+
+        /**
+         * Priority class of the task, lower is scheduled first
+         */
+        public int getPriorityClass(long now) {
+            if (fThread.getExecType() == ExecutionType.FOREGROUND) {
+                return 0;
+            }
+            if (fState != State.RUNNING && now - fWaitingSince >= AGING_TIME) {
+                return 0;
+            }
+            return 1;
+        }
+
+        /**
+         * Time since which the task waits, the running tasks are considered
+         * as not waiting
+         */
+        public long getWaitingSince(long now) {
+            return (fState == State.RUNNING) ? now : fWaitingSince;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Attributes
+    // ------------------------------------------------------------------------
+
+    private final int fLanes;
+
+    /** The clock, in milliseconds */
+    private final LongSupplier fClock;
+
+    /** Whether the time slices are timed */
+    private final boolean fTimed;
+
+    /**
+     * The timer of the time slices, null if they are not timed or if the
+     * scheduler is not started, guarded by this
+     */
+    private @Nullable Timer fTimer;
+
+    /** The threads of the requests, null if the scheduler is not started, guarded by this */
+    private @Nullable ExecutorService fThreads;
+
+    /** The tasks which are not completed, guarded by this */
+    private final List<Task> fTasks = new ArrayList<>();
+
+    // ------------------------------------------------------------------------
+    // Constructors
+    // ------------------------------------------------------------------------
+
+    /**
+     * Constructor, the scheduler of the event providers is
+     * {@link #getInstance()}
+     *
+     * @param lanes
+     *            the number of requests which can run at the same time
+     */
+    public TmfRequestScheduler(int lanes) {
+        fLanes = Math.max(1, lanes);
+        fClock = System::currentTimeMillis;
+        fTimed = true;
+    }
+
+    /**
+     * Constructor for a scheduler whose time slices are not timed: they only
+     * happen when {@link #timeSlice()} is called, and the waiting times are
+     * measured with the given clock.
+     *
+     * @param lanes
+     *            the number of requests which can run at the same time
+     * @param clock
+     *            the clock, in milliseconds
+     */
+    public TmfRequestScheduler(int lanes, LongSupplier clock) {
+        fLanes = Math.max(1, lanes);
+        fClock = clock;
+        fTimed = false;
+    }
+
+    /**
+     * Get the scheduler shared by the event providers
+     *
+     * @return the scheduler
+     */
+    public static TmfRequestScheduler getInstance() {
+        return INSTANCE;
+    }
+
+    // ------------------------------------------------------------------------
+    // Operations
+    // ------------------------------------------------------------------------
+
+    /**
+     * Get the number of lanes
+     *
+     * @return the number of requests which can run at the same time
+     */
+    public int getLanes() {
+        return fLanes;
+    }
+
+    /**
+     * Submit a request
+     *
+     * @param owner
+     *            the owner of the request, usually the executor of its event
+     *            provider. The lanes are shared fairly between the owners.
+     * @param thread
+     *            the thread of the request, which is suspended and resumed
+     * @param body
+     *            the runnable which runs the thread
+     */
+    public synchronized void submit(Object owner, TmfEventThread thread, Runnable body) {
+        start();
+        fTasks.add(new Task(owner, thread, body, fClock.getAsLong()));
+        schedule();
+    }
+
+    /**
+     * Cancel all the requests of an owner. The requests which were started are
+     * resumed, so they can stop and complete.
+     *
+     * @param owner
+     *            the owner of the requests
+     */
+    public synchronized void cancel(Object owner) {
+        Iterator<Task> iter = fTasks.iterator();
+        while (iter.hasNext()) {
+            Task task = iter.next();
+            if (task.fOwner == owner) {
+                task.fThread.cancel();
+                if (task.fState == State.NEW) {
+                    iter.remove();
+                }
+            }
+        }
+        schedule();
+    }
+
+    /**
+     * Get the number of requests of an owner which are not completed
+     *
+     * @param owner
+     *            the owner of the requests
+     * @return the number of requests
+     */
+    public synchronized int getNbTasks(Object owner) {
+        int count = 0;
+        for (Task task : fTasks) {
+            if (task.fOwner == owner) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the number of requests which are running, and not suspended
+     *
+     * @return the number of running requests
+     */
+    public synchronized int getNbRunning() {
+        int count = 0;
+        for (Task task : fTasks) {
+            if (task.fState == State.RUNNING) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get whether a request has a lane, and is not suspended
+     *
+     * @param thread
+     *            the thread of the request
+     * @return true if the request is running
+     */
+    public synchronized boolean isRunning(TmfEventThread thread) {
+        for (Task task : fTasks) {
+            if (task.fThread == thread) {
+                return task.fState == State.RUNNING;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stop the scheduler. The requests which are not completed are cancelled.
+     * The scheduler starts again if more requests are submitted.
+     */
+    public synchronized void dispose() {
+        Timer timer = fTimer;
+        if (timer != null) {
+            timer.cancel();
+            fTimer = null;
+        }
+        for (Task task : fTasks) {
+            task.fThread.cancel();
+            if (task.fState == State.PAUSED) {
+                task.fThread.resume();
+            }
+        }
+        fTasks.clear();
+        ExecutorService threads = fThreads;
+        if (threads != null) {
+            threads.shutdown();
+            fThreads = null;
+        }
+    }
+
+    /**
+     * Choose again the requests which run
+     */
+    public synchronized void schedule() {
+        long now = fClock.getAsLong();
+        List<Task> candidates = new ArrayList<>(fTasks);
+        List<Task> selected = new ArrayList<>();
+        Map<Object, Integer> lanesPerOwner = new HashMap<>();
+        while (selected.size() < fLanes && !candidates.isEmpty()) {
+            Task best = null;
+            for (Task task : candidates) {
+                if (best == null || compare(task, best, lanesPerOwner, now) < 0) {
+                    best = task;
+                }
+            }
+            if (best == null) {
+                break;
+            }
+            candidates.remove(best);
+            selected.add(best);
+            lanesPerOwner.merge(best.fOwner, 1, Integer::sum);
+        }
+
+        /* Suspend first, so that the lanes are never over-subscribed */
+        for (Task task : candidates) {
+            if (task.fThread.getRequest().isCancelled()) {
+                /* Let a cancelled request complete, it stops at its next event */
+                if (task.fState == State.PAUSED) {
+                    task.fState = State.RUNNING;
+                    task.fThread.resume();
+                }
+            } else if (task.fState == State.RUNNING && !task.fThread.isCompleted()) {
+                task.fThread.suspend();
+                task.fState = State.PAUSED;
+                task.fWaitingSince = now;
+            }
+        }
+        for (Task task : selected) {
+            if (task.fState == State.NEW) {
+                task.fState = State.RUNNING;
+                start().execute(task);
+            } else if (task.fState == State.PAUSED) {
+                task.fState = State.RUNNING;
+                task.fThread.resume();
+            }
+        }
+    }
+
+    /**
+     * End a time slice, which gives the lanes to the requests which waited
+     * the longest. It is called every {@link #SLICE_TIME} milliseconds, unless
+     * the time slices are not timed.
+     */
+    public synchronized void timeSlice() {
+        /* Only needed when some requests are waiting for a lane */
+        if (fTasks.size() > fLanes) {
+            schedule();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Helpers
+    // ------------------------------------------------------------------------
+
+    private static int compare(Task task, Task other, Map<Object, Integer> lanesPerOwner, long now) {
+        int result = Integer.compare(task.getPriorityClass(now), other.getPriorityClass(now));
+        if (result != 0) {
+            return result;
+        }
+        result = Integer.compare(lanesPerOwner.getOrDefault(task.fOwner, 0), lanesPerOwner.getOrDefault(other.fOwner, 0));
+        if (result != 0) {
+            return result;
+        }
+        return Long.compare(task.getWaitingSince(now), other.getWaitingSince(now));
+    }
+
+    /**
+     * Start the threads, and the timer of the time slices if they are timed,
+     * unless they are already started
+     */
+    private synchronized ExecutorService start() {
+        ExecutorService threads = fThreads;
+        if (threads == null) {
+            threads = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "Request Scheduler Worker"); //$NON-NLS-1$
+                thread.setDaemon(true);
+                return thread;
+            });
+            fThreads = threads;
+        }
+        if (fTimed && fTimer == null) {
+            Timer timer = new Timer("Request Scheduler Timer", true); //$NON-NLS-1$
+            timer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    timeSlice();
+                }
+            }, SLICE_TIME, SLICE_TIME);
+            fTimer = timer;
+        }
+        return threads;
+    }
+
+    private synchronized void completed(Task task) {
+        fTasks.remove(task);
+        schedule();
+    }
+}
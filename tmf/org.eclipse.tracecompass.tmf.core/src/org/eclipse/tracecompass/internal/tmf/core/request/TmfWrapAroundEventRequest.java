@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.tmf.core.request;
+
+import java.util.function.Predicate;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
+import org.eclipse.tracecompass.tmf.core.filter.ITmfFilter;
+import org.eclipse.tracecompass.tmf.core.request.ITmfEventRequest;
+import org.eclipse.tracecompass.tmf.core.request.TmfEventRequest;
+
+/**
+ * The second part of a request which joined a read of the trace in progress:
+ * it reads the events of the request which are before the rank where it
+ * joined, and gives them to the request, which is completed with this one.
+ */
+public class TmfWrapAroundEventRequest extends TmfEventRequest {
+
+    /** The request which joined the read */
+    private final ITmfEventRequest fRequest;
+
+    /** Rank of the first event the request received from the read */
+    private final long fJoinRank;
+
+    /**
+     * Constructor
+     *
+     * @param request
+     *            the request which joined a read in progress
+     * @param joinRank
+     *            the rank of the first event the request received from the
+     *            read
+     */
+    public TmfWrapAroundEventRequest(ITmfEventRequest request, long joinRank) {
+        super(request.getDataType(), request.getRange(), request.getIndex(),
+                getNbRequested(request.getIndex(), joinRank),
+                request.getExecType(), request.getDependencyLevel());
+        fRequest = request;
+        fJoinRank = joinRank;
+    }
+
+    private static int getNbRequested(long index, long joinRank) {
+        return (int) Math.max(0, Math.min(joinRank - index, ITmfEventRequest.ALL_DATA));
+    }
+
+    /**
+     * Get the request which joined the read
+     *
+     * @return the request
+     */
+    public ITmfEventRequest getRequest() {
+        return fRequest;
+    }
+
+    /**
+     * The trace sets the start index when it seeks the start time of the
+     * range, the events from there to the join rank are requested.
+     */
+    @Override
+    public void setStartIndex(int index) {
+        super.setStartIndex(index);
+        fNbRequested = getNbRequested(index, fJoinRank);
+    }
+
+    @Override
+    public ITmfFilter getProviderFilter() {
+        return fRequest.getProviderFilter();
+    }
+
+    @Override
+    public @Nullable Predicate<String> getEventTypeFilter() {
+        return fRequest.getEventTypeFilter();
+    }
+
+    @Override
+    public boolean isEventRecyclingAllowed() {
+        return fRequest.isEventRecyclingAllowed();
+    }
+
+    // ------------------------------------------------------------------------
+    // ITmfEventRequest
+    // ------------------------------------------------------------------------
+
+    @Override
+    public void handleData(ITmfEvent data) {
+        super.handleData(data);
+        if (!fRequest.isCompleted()) {
+            fRequest.handleData(data);
+        }
+    }
+
+    @Override
+    public synchronized void done() {
+        if (!fRequest.isCompleted()) {
+            fRequest.done();
+        }
+        super.done();
+    }
+
+    @Override
+    public void fail(Exception e) {
+        if (!fRequest.isCompleted()) {
+            fRequest.fail(e);
+        }
+        super.fail(e);
+    }
+
+    @Override
+    public void cancel() {
+        if (!fRequest.isCompleted()) {
+            fRequest.cancel();
+        }
+        super.cancel();
+    }
+
+    @Override
+    public synchronized boolean isCompleted() {
+        return super.isCompleted() || fRequest.isCompleted();
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return super.isCancelled() || fRequest.isCancelled();
+    }
+
+    // ------------------------------------------------------------------------
+    // Object
+    // ------------------------------------------------------------------------
+
+    @Override
+    @SuppressWarnings("nls")
+    public String toString() {
+        return "[TmfWrapAroundEventRequest(" + getRequestId() + "," + getIndex() + "," + getNbRequested()
+                + "," + fJoinRank + ", " + fRequest + ")]";
+    }
+}
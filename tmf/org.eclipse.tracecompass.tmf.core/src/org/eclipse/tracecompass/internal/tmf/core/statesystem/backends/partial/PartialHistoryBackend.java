@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013, 2016 Ericsson
+ * Copyright (c) 2013, 2018 Ericsson
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
  * accompanies this distribution, and is available at
@@ -16,9 +16,12 @@ import static org.eclipse.tracecompass.common.core.NonNullUtils.checkNotNullCont
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.NavigableSet;
+import java.util.TreeSet;
 import java.util.concurrent.CountDownLatch;
 import java.util.stream.Collectors;
 
@@ -44,20 +47,36 @@ import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
  * Partial state history back-end.
  *
  * This is a shim inserted between the real state system and a "real" history
- * back-end. It will keep checkpoints, every n trace events (where n is called
- * the granularity) and will only forward to the real state history the state
- * intervals that crosses at least one checkpoint. Every other interval will
- * be discarded.
+ * back-end. It will keep checkpoints, at most every n trace events (where n is
+ * called the granularity) and will only forward to the real state history the
+ * state intervals that crosses at least one checkpoint. Every other interval
+ * will be discarded.
+ *
+ * The checkpoints are placed according to the trace's contents: in sparse
+ * parts of the trace, where each checkpoint would cover a long time range,
+ * they are placed after fewer events, and parts of the trace with many state
+ * changes per event get additional checkpoints while the history is built.
  *
  * This would mean that it can only answer queries exactly at the checkpoints.
  * For any other timestamps (ie, most of the time), it will load the closest
  * earlier checkpoint, and will re-feed the state-change-input with events from
- * the trace, to restore the real state at the time that was requested.
+ * the trace, to restore the real state at the time that was requested. The
+ * last restored states are kept, so that queries close to a previous one only
+ * need to re-read the events since that query.
  *
  * @author Alexandre Montplaisir
  */
 public class PartialHistoryBackend implements IStateHistoryBackend {
 
+    /**
+     * Minimum number of events between two checkpoints, as a fraction of the
+     * granularity
+     */
+    private static final int MIN_CHECKPOINT_DIVISOR = 16;
+
+    /** Number of restored states kept for the next queries */
+    private static final int CACHE_SIZE = 16;
+
     private final @NonNull String fSSID;
 
     /**
@@ -75,8 +94,8 @@ public class PartialHistoryBackend implements IStateHistoryBackend {
     /** Reference to the "real" state history that is used for storage */
     private final @NonNull IStateHistoryBackend fInnerHistory;
 
-    /** Checkpoints map, <Timestamp, Rank in the trace> */
-    private final @NonNull TreeMap<Long, Long> fCheckpoints = new TreeMap<>();
+    /** Timestamps of the checkpoints */
+    private final @NonNull NavigableSet<Long> fCheckpoints = new TreeSet<>();
 
     /** Latch tracking if the initial checkpoint registration is done */
     private final @NonNull CountDownLatch fCheckpointsReady = new CountDownLatch(1);
@@ -85,6 +104,23 @@ public class PartialHistoryBackend implements IStateHistoryBackend {
 
     private long fLatestTime;
 
+    /* Checkpoint of the latest inserted intervals and the state changes since */
+    private long fLastCheckpoint;
+    private long fChangesSinceCheckpoint = 0;
+
+    /**
+     * States restored by the last queries, by timestamp, in access order. Only
+     * accessed with the partial state system's query lock.
+     */
+    private final Map<Long, List<@NonNull ITmfStateInterval>> fRestoredStates = new LinkedHashMap<Long, List<@NonNull ITmfStateInterval>>(CACHE_SIZE, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, List<@NonNull ITmfStateInterval>> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
     /**
      * Constructor
      *
@@ -102,7 +138,7 @@ public class PartialHistoryBackend implements IStateHistoryBackend {
      *            modular, so it should be able to be of any type.
      * @param granularity
      *            Configuration parameter indicating how many trace events there
-     *            should be between each checkpoint
+     *            should be at most between each checkpoint
      */
     public PartialHistoryBackend(@NonNull String ssid,
             ITmfStateProvider partialInput,
@@ -124,6 +160,7 @@ public class PartialHistoryBackend implements IStateHistoryBackend {
         fGranularity = granularity;
 
         fLatestTime = startTime;
+        fLastCheckpoint = startTime;
 
         registerCheckpoints();
     }
@@ -161,6 +198,29 @@ public class PartialHistoryBackend implements IStateHistoryBackend {
             int quark, Object value) throws TimeRangeException {
         waitForCheckpoints();
 
+        /*
+         * FIXME since intervals are inserted in order of end time, we could
+         * avoid doing a set lookup every time here (just compare with the
+         * known next one).
+         */
+        long checkpoint = fCheckpoints.floor(stateEndTime);
+        if (checkpoint != fLastCheckpoint) {
+            fLastCheckpoint = checkpoint;
+            fChangesSinceCheckpoint = 0;
+        } else if (fChangesSinceCheckpoint >= fGranularity && stateEndTime > fLatestTime) {
+            /*
+             * Many state changes since the last checkpoint, re-reading from it
+             * would be expensive, so add one at this interval's end. All the
+             * intervals inserted so far end before it, the ones that cross it
+             * are still to come.
+             */
+            fCheckpoints.add(stateEndTime);
+            checkpoint = stateEndTime;
+            fLastCheckpoint = checkpoint;
+            fChangesSinceCheckpoint = 0;
+        }
+        fChangesSinceCheckpoint++;
+
         /* Update the latest time */
         if (stateEndTime > fLatestTime) {
             fLatestTime = stateEndTime;
@@ -169,12 +229,8 @@ public class PartialHistoryBackend implements IStateHistoryBackend {
         /*
          * Check if the interval intersects the previous checkpoint. If so,
          * insert it in the real history back-end.
-         *
-         * FIXME since intervals are inserted in order of rank, we could avoid
-         * doing a map lookup every time here (just compare with the known
-         * previous one).
          */
-        if (stateStartTime <= fCheckpoints.floorKey(stateEndTime)) {
+        if (stateStartTime <= checkpoint) {
             fInnerHistory.insertPastState(stateStartTime, stateEndTime, quark, value);
         }
     }
@@ -222,53 +278,84 @@ public class PartialHistoryBackend implements IStateHistoryBackend {
             throw new TimeRangeException(fSSID + " Time:" + t + ", Start:" + getStartTime() + ", End:" + getEndTime()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
         }
 
-        /* Reload the previous checkpoint */
-        long checkpointTime = fCheckpoints.floorKey(t);
-        fInnerHistory.doQuery(currentStateInfo, checkpointTime);
-
-        /*
-         * Set the initial contents of the partial state system (which is the
-         * contents of the query at the checkpoint).
-         */
-        List<@NonNull ITmfStateInterval> filledStateInfo =
-                checkNotNullContents(currentStateInfo.stream()).collect(Collectors.toList());
+        long checkpointTime = fCheckpoints.floor(t);
 
         fPartialSS.takeQueryLock();
-        fPartialSS.replaceOngoingState(filledStateInfo);
-
-        /* Send an event request to update the state system to the target time. */
-        TmfTimeRange range = new TmfTimeRange(
-                /*
-                 * The state at the checkpoint already includes any state change
-                 * caused by the event(s) happening exactly at 'checkpointTime',
-                 * if any. We must not include those events in the query.
-                 */
-                TmfTimestamp.fromNanos(checkpointTime + 1),
-                TmfTimestamp.fromNanos(t));
-        ITmfEventRequest request = new PartialStateSystemRequest(fPartialInput, range);
-        fPartialInput.getTrace().sendRequest(request);
-
         try {
-            request.waitForCompletion();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+            /*
+             * Start from the latest state restored since the checkpoint, if
+             * there is one, or else from the checkpoint itself.
+             */
+            long restoredTime = checkpointTime;
+            List<@NonNull ITmfStateInterval> restored = null;
+            for (Map.Entry<Long, List<@NonNull ITmfStateInterval>> entry : fRestoredStates.entrySet()) {
+                long time = entry.getKey();
+                if (time >= restoredTime && time <= t) {
+                    restoredTime = time;
+                    restored = entry.getValue();
+                }
+            }
+            if (restored != null) {
+                /* Update the entry's place in the access order */
+                fRestoredStates.get(restoredTime);
+                if (restoredTime == t) {
+                    for (int i = 0; i < currentStateInfo.size(); i++) {
+                        currentStateInfo.set(i, restored.get(i));
+                    }
+                    return;
+                }
+            } else {
+                /* Reload the previous checkpoint */
+                fInnerHistory.doQuery(currentStateInfo, checkpointTime);
+                restored = checkNotNullContents(currentStateInfo.stream()).collect(Collectors.toList());
+            }
 
-        /*
-         * Now the partial state system should have the ongoing time we are
-         * looking for. However, the method expects a List of *state intervals*,
-         * not state values, so we'll create intervals with a dummy end time.
-         */
-        for (int i = 0; i < currentStateInfo.size(); i++) {
-            long start = 0;
-            start = ((ITmfStateSystem) fPartialSS).getOngoingStartTime(i);
-            @Nullable Object val = ((ITmfStateSystem) fPartialSS).queryOngoing(i);
+            /*
+             * Set the initial contents of the partial state system (which is
+             * the contents of the query at the checkpoint or at the restored
+             * time).
+             */
+            fPartialSS.replaceOngoingState(restored);
+
+            /* Send an event request to update the state system to the target time. */
+            TmfTimeRange range = new TmfTimeRange(
+                    /*
+                     * The state at the checkpoint already includes any state
+                     * change caused by the event(s) happening exactly at
+                     * 'restoredTime', if any. We must not include those events
+                     * in the query.
+                     */
+                    TmfTimestamp.fromNanos(restoredTime + 1),
+                    TmfTimestamp.fromNanos(t));
+            ITmfEventRequest request = new PartialStateSystemRequest(fPartialInput, range);
+            fPartialInput.getTrace().sendRequest(request);
+
+            try {
+                request.waitForCompletion();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
 
-            ITmfStateInterval interval = new TmfStateInterval(start, t, i, val);
-            currentStateInfo.set(i, interval);
+            /*
+             * Now the partial state system should have the ongoing time we are
+             * looking for. However, the method expects a List of *state
+             * intervals*, not state values, so we'll create intervals with a
+             * dummy end time.
+             */
+            List<@NonNull ITmfStateInterval> states = new ArrayList<>(currentStateInfo.size());
+            for (int i = 0; i < currentStateInfo.size(); i++) {
+                long start = 0;
+                start = ((ITmfStateSystem) fPartialSS).getOngoingStartTime(i);
+                @Nullable Object val = ((ITmfStateSystem) fPartialSS).queryOngoing(i);
+
+                ITmfStateInterval interval = new TmfStateInterval(start, t, i, val);
+                currentStateInfo.set(i, interval);
+                states.add(interval);
+            }
+            fRestoredStates.put(t, states);
+        } finally {
+            fPartialSS.releaseQueryLock();
         }
-
-        fPartialSS.releaseQueryLock();
     }
 
     /**
@@ -296,13 +383,22 @@ public class PartialHistoryBackend implements IStateHistoryBackend {
     // Event requests types
     // ------------------------------------------------------------------------
 
+    /**
+     * Request placing the checkpoints every granularity events, or after fewer
+     * events when they cover more time than the average time of that many
+     * events in the trace so far. Queries spread over time then do not all
+     * re-read many events from the sparse parts of the trace.
+     */
     private class CheckpointsRequest extends TmfEventRequest {
         private final ITmfTrace trace;
-        private final Map<Long, Long> checkpts;
+        private final NavigableSet<Long> checkpts;
+        private final long startTime;
+        private final long minEvents;
         private long eventCount;
         private long lastCheckpointAt;
+        private long lastCheckpointTime;
 
-        public CheckpointsRequest(ITmfStateProvider input, Map<Long, Long> checkpoints) {
+        public CheckpointsRequest(ITmfStateProvider input, NavigableSet<Long> checkpoints) {
             super(ITmfEvent.class,
                     TmfTimeRange.ETERNITY,
                     0,
@@ -311,11 +407,14 @@ public class PartialHistoryBackend implements IStateHistoryBackend {
             checkpoints.clear();
             this.trace = input.getTrace();
             this.checkpts = checkpoints;
+            startTime = input.getStartTime();
+            minEvents = Math.max(1, fGranularity / MIN_CHECKPOINT_DIVISOR);
             eventCount = 0;
             lastCheckpointAt = 0;
+            lastCheckpointTime = startTime;
 
             /* Insert a checkpoint at the start of the trace */
-            checkpoints.put(input.getStartTime(), 0L);
+            checkpoints.add(startTime);
         }
 
         @Override
@@ -323,15 +422,27 @@ public class PartialHistoryBackend implements IStateHistoryBackend {
             super.handleData(event);
             if (event.getTrace() == trace) {
                 eventCount++;
+                long events = eventCount - lastCheckpointAt;
+                long time = event.getTimestamp().getValue();
 
                 /* Check if we need to register a new checkpoint */
-                if (eventCount >= lastCheckpointAt + fGranularity) {
-                    checkpts.put(event.getTimestamp().getValue(), eventCount);
+                if (events >= fGranularity || (events >= minEvents && isSparse(events, time))) {
+                    checkpts.add(time);
                     lastCheckpointAt = eventCount;
+                    lastCheckpointTime = time;
                 }
             }
         }
 
+        /*
+         * Whether the events since the last checkpoint cover more time than
+         * the granularity's worth of events does on average
+         */
+        private boolean isSparse(long events, long time) {
+            double averageSpan = (double) (time - startTime) / eventCount;
+            return (time - lastCheckpointTime) >= averageSpan * fGranularity;
+        }
+
         @Override
         public void handleCompleted() {
             super.handleCompleted();
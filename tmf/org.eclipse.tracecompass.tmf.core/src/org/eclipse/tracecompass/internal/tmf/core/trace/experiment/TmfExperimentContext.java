@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2014 Ericsson
+ * Copyright (c) 2009, 2018 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -15,12 +15,18 @@
 package org.eclipse.tracecompass.internal.tmf.core.trace.experiment;
 
 import java.util.Arrays;
-import java.util.PriorityQueue;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
 
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.common.core.collect.LoserTree;
 import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfContext;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
 import org.eclipse.tracecompass.tmf.core.trace.TmfContext;
+import org.eclipse.tracecompass.tmf.core.trace.location.ITmfLocation;
 
 import com.google.common.annotations.VisibleForTesting;
 
@@ -35,6 +41,10 @@ import com.google.common.annotations.VisibleForTesting;
  * <p>
  * The last trace refers to the trace from which the last event was "consumed"
  * at the experiment level.
+ * <p>
+ * The location of the experiment is kept as the location and rank of each
+ * trace, which are updated in place when an event is consumed. The
+ * {@link TmfExperimentLocation} is only built when it is asked for.
  */
 public final class TmfExperimentContext extends TmfContext {
 
@@ -47,11 +57,16 @@ public final class TmfExperimentContext extends TmfContext {
         private final int fIndex;
         private final @NonNull ITmfEvent fEvent;
         private final @NonNull ITmfContext fContext;
+        /* Location and rank of the trace after the event */
+        private final @Nullable ITmfLocation fNextLocation;
+        private final long fNextRank;
 
-        private ContextTuple(int index, @NonNull ITmfEvent event, @NonNull ITmfContext context) {
+        private ContextTuple(int index, @NonNull ITmfEvent event, @NonNull ITmfContext context, @Nullable ITmfLocation nextLocation, long nextRank) {
             fIndex = index;
             fEvent = event;
             fContext = context;
+            fNextLocation = nextLocation;
+            fNextRank = nextRank;
         }
 
         /**
@@ -99,12 +114,29 @@ public final class TmfExperimentContext extends TmfContext {
     // Attributes
     // ------------------------------------------------------------------------
 
+    private static final int NONE = -1;
+
     private final ITmfContext[] fContexts;
     /**
-     * fPriority is a PriorityQueue of initial capacity fContexts.length,
-     * ordered by increasing timestamps of the ContextTuple events.
+     * fTree is a tournament tree with one slot per trace, containing the
+     * ContextTuple of its next event, ordered by increasing timestamps.
+     */
+    private final LoserTree<ContextTuple> fTree;
+    /**
+     * Index of the trace whose tuple was returned by {@link #getNext()}, and
+     * not replaced yet by {@link #setContent}. It stays in the tree until then,
+     * so that the next event of the same trace only replays its matches.
      */
-    private final PriorityQueue<ContextTuple> fPriority;
+    private int fConsumed = NONE;
+
+    /* Location and rank of each trace, null if the location is not set */
+    private ITmfLocation @Nullable [] fLocations = null;
+    private long @Nullable [] fRanks = null;
+    /* The location built from the arrays, null until it is asked for */
+    private @Nullable TmfExperimentLocation fLocation = null;
+
+    /* The traces which are read ahead, null if none */
+    private TmfTraceReadAhead @Nullable [] fReadAheads = null;
 
     // ------------------------------------------------------------------------
     // Constructors
@@ -122,11 +154,23 @@ public final class TmfExperimentContext extends TmfContext {
             throw new IllegalArgumentException("TmfExperimentContext size cannot be negative"); //$NON-NLS-1$
         }
         fContexts = new ITmfContext[nbTraces];
-        fPriority = new PriorityQueue<>(Math.max(1, nbTraces), null);
+        fTree = new LoserTree<>(Comparator.naturalOrder());
+        for (int i = 0; i < nbTraces; i++) {
+            fTree.add(null);
+        }
     }
 
     @Override
     public void dispose() {
+        TmfTraceReadAhead[] readAheads = fReadAheads;
+        if (readAheads != null) {
+            for (TmfTraceReadAhead readAhead : readAheads) {
+                if (readAhead != null) {
+                    readAhead.dispose();
+                }
+            }
+            fReadAheads = null;
+        }
         for (ITmfContext context : fContexts) {
             context.dispose();
         }
@@ -137,6 +181,113 @@ public final class TmfExperimentContext extends TmfContext {
     // Accessors
     // ------------------------------------------------------------------------
 
+    @Override
+    public void setLocation(ITmfLocation location) {
+        super.setLocation(location);
+        if (location instanceof TmfExperimentLocation) {
+            TmfLocationArray locationArray = ((TmfExperimentLocation) location).getLocationInfo();
+            fLocations = locationArray.getLocations();
+            fRanks = locationArray.getRanks();
+            fLocation = (TmfExperimentLocation) location;
+        } else {
+            fLocations = null;
+            fRanks = null;
+            fLocation = null;
+        }
+    }
+
+    @Override
+    public @Nullable ITmfLocation getLocation() {
+        ITmfLocation[] locations = fLocations;
+        long[] ranks = fRanks;
+        if (locations == null || ranks == null) {
+            return super.getLocation();
+        }
+        TmfExperimentLocation location = fLocation;
+        if (location == null) {
+            location = new TmfExperimentLocation(new TmfLocationArray(locations, ranks));
+            fLocation = location;
+        }
+        return location;
+    }
+
+    /**
+     * Update the location of the experiment after the event of a tuple was
+     * consumed, the trace of the tuple is then at the location following its
+     * event.
+     *
+     * @param tuple
+     *            The tuple returned by {@link #getNext()}
+     * @return true if the location was updated, false if this context has no
+     *         experiment location
+     */
+    public boolean updateLocation(ContextTuple tuple) {
+        ITmfLocation[] locations = fLocations;
+        long[] ranks = fRanks;
+        if (locations == null || ranks == null) {
+            return false;
+        }
+        locations[tuple.fIndex] = tuple.fNextLocation;
+        ranks[tuple.fIndex] = tuple.fNextRank;
+        fLocation = null;
+        return true;
+    }
+
+    /**
+     * Start reading the traces ahead, in parallel, for a context which is read
+     * sequentially until it is disposed. The contexts of the traces are then
+     * only used by the read-ahead tasks.
+     *
+     * @param traces
+     *            The traces of the experiment, in the order of their index
+     */
+    public void startReadAhead(List<@NonNull ITmfTrace> traces) {
+        if (fReadAheads != null || traces.size() != fContexts.length) {
+            return;
+        }
+        TmfTraceReadAhead[] readAheads = new TmfTraceReadAhead[fContexts.length];
+        for (int i = 0; i < fContexts.length; i++) {
+            ContextTuple tuple = fTree.get(i);
+            /* The traces which are already at their end have nothing to read */
+            if (tuple != null && i != fConsumed) {
+                readAheads[i] = new TmfTraceReadAhead(traces.get(i), tuple.fContext, fContexts.length);
+            }
+        }
+        fReadAheads = readAheads;
+    }
+
+    /**
+     * Get whether the traces are read ahead for this context
+     *
+     * @return true if the traces are read ahead
+     */
+    public boolean isReadingAhead() {
+        return fReadAheads != null;
+    }
+
+    /**
+     * Queue the next event of a trace which is read ahead
+     *
+     * @param traceIndex
+     *            The index of the trace in the experiment
+     * @return true if the trace is read ahead and its next event was queued,
+     *         false if the trace is not read ahead
+     */
+    public boolean readAhead(int traceIndex) {
+        TmfTraceReadAhead[] readAheads = fReadAheads;
+        TmfTraceReadAhead readAhead = (readAheads != null) ? readAheads[traceIndex] : null;
+        if (readAhead == null) {
+            return false;
+        }
+        ITmfContext ctx = fContexts[traceIndex];
+        ITmfEvent event = readAhead.next();
+        if (traceIndex == fConsumed) {
+            fConsumed = NONE;
+        }
+        fTree.set(traceIndex, (event != null) ? new ContextTuple(traceIndex, event, ctx, readAhead.getLocation(), readAhead.getRank()) : null);
+        return true;
+    }
+
     /**
      * Set the context and event of a trace
      *
@@ -149,9 +300,10 @@ public final class TmfExperimentContext extends TmfContext {
      */
     public void setContent(int traceIndex, ITmfContext ctx, ITmfEvent event) {
         fContexts[traceIndex] = ctx;
-        if (event != null && ctx != null) {
-            fPriority.add(new ContextTuple(traceIndex, event, ctx));
+        if (traceIndex == fConsumed) {
+            fConsumed = NONE;
         }
+        fTree.set(traceIndex, (event != null && ctx != null) ? new ContextTuple(traceIndex, event, ctx, ctx.getLocation(), ctx.getRank()) : null);
     }
 
     /**
@@ -160,10 +312,21 @@ public final class TmfExperimentContext extends TmfContext {
      * Experiment in case of indetermination.
      *
      * @return The information concerning the next trace in the context's
-     *         priority queue.
+     *         tournament tree, which is removed from the tree unless the
+     *         trace's next event is set with {@link #setContent}.
      */
     public ContextTuple getNext() {
-        return fPriority.poll();
+        if (fConsumed != NONE) {
+            /* The trace of the previous tuple has no next event */
+            fTree.set(fConsumed, null);
+            fConsumed = NONE;
+        }
+        int winner = fTree.getWinnerIndex();
+        if (winner == NONE) {
+            return null;
+        }
+        fConsumed = winner;
+        return fTree.get(winner);
     }
 
     /**
@@ -190,14 +353,13 @@ public final class TmfExperimentContext extends TmfContext {
         if (this == other) {
             return true;
         }
-        if (!super.equals(other)) {
-            return false;
-        }
         if (!(other instanceof TmfExperimentContext)) {
             return false;
         }
         TmfExperimentContext o = (TmfExperimentContext) other;
-        return Arrays.equals(fContexts, o.fContexts);
+        return getRank() == o.getRank()
+                && Objects.equals(getLocation(), o.getLocation())
+                && Arrays.equals(fContexts, o.fContexts);
     }
 
     @Override
@@ -0,0 +1,244 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.tmf.core.trace.experiment;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfContext;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+import org.eclipse.tracecompass.tmf.core.trace.location.ITmfLocation;
+
+/**
+ * Reads the events of a trace of an experiment ahead, on a thread of a pool
+ * shared by all the experiments, so that the traces are parsed in parallel
+ * while the experiment merges their events.
+ *
+ * The events are read in batches, and at most {@link #MAX_BATCHES} batches
+ * are read ahead of the experiment. The reading tasks never wait, so the pool
+ * can serve any number of traces with a few threads.
+ */
+@NonNullByDefault
+public final class TmfTraceReadAhead {
+
+    /** Number of batches which are read ahead of the experiment */
+    private static final int MAX_BATCHES = 2;
+
+    /** Number of events read ahead for all the traces of an experiment */
+    private static final int MAX_EVENTS = 16384;
+
+    private static final int MIN_BATCH_SIZE = 16;
+    private static final int MAX_BATCH_SIZE = 1024;
+
+    private static final ThreadPoolExecutor EXECUTOR;
+
+    static {
+        int nbThreads = Runtime.getRuntime().availableProcessors();
+        EXECUTOR = new ThreadPoolExecutor(nbThreads, nbThreads, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "Experiment Read-Ahead"); //$NON-NLS-1$
+            thread.setDaemon(true);
+            return thread;
+        });
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Events read by a task, with the location and rank of the trace context
+     * after each one
+     */
+    private static final class Batch {
+        private final @Nullable ITmfEvent[] fEvents;
+        private final @Nullable ITmfLocation[] fLocations;
+        private final long[] fRanks;
+        private int fSize = 0;
+        private int fPosition = 0;
+
+        public Batch(int size) {
+            fEvents = new ITmfEvent[size];
+            fLocations = new ITmfLocation[size];
+            fRanks = new long[size];
+        }
+
+        public void add(ITmfEvent event, @Nullable ITmfLocation location, long rank) {
+            fEvents[fSize] = event;
+            fLocations[fSize] = location;
+            fRanks[fSize] = rank;
+            fSize++;
+        }
+    }
+
+    private final ITmfTrace fTrace;
+    private final ITmfContext fContext;
+    private final int fBatchSize;
+
+    /* Guarded by this */
+    private final Deque<Batch> fBatches = new ArrayDeque<>();
+    private boolean fIsFetching = false;
+    private boolean fIsEnded = false;
+    private boolean fIsDisposed = false;
+    private @Nullable RuntimeException fError = null;
+
+    /* Only used by the thread of the experiment */
+    private @Nullable Batch fCurrent = null;
+    private @Nullable ITmfLocation fLocation = null;
+    private long fRank = ITmfContext.UNKNOWN_RANK;
+
+    /**
+     * Constructor, starts reading the trace
+     *
+     * @param trace
+     *            the trace to read
+     * @param context
+     *            the context of the trace, which is only used by this object
+     *            until it is disposed
+     * @param nbTraces
+     *            the number of traces read ahead for the experiment, which
+     *            share the events read ahead
+     */
+    public TmfTraceReadAhead(ITmfTrace trace, ITmfContext context, int nbTraces) {
+        fTrace = trace;
+        fContext = context;
+        fBatchSize = Math.max(MIN_BATCH_SIZE, Math.min(MAX_BATCH_SIZE, MAX_EVENTS / (MAX_BATCHES * Math.max(1, nbTraces))));
+        synchronized (this) {
+            scheduleFetch();
+        }
+    }
+
+    /**
+     * Get the next event of the trace, waiting for it to be read if needed
+     *
+     * @return the event, or null at the end of the trace
+     */
+    public @Nullable ITmfEvent next() {
+        Batch batch = fCurrent;
+        if (batch == null || batch.fPosition == batch.fSize) {
+            batch = takeBatch();
+            fCurrent = batch;
+            if (batch == null) {
+                return null;
+            }
+        }
+        int position = batch.fPosition++;
+        @Nullable ITmfEvent event = batch.fEvents[position];
+        fLocation = batch.fLocations[position];
+        fRank = batch.fRanks[position];
+        /* Let the event be collected once consumed */
+        batch.fEvents[position] = null;
+        return event;
+    }
+
+    /**
+     * Get the location of the trace context after the last event returned by
+     * {@link #next()}
+     *
+     * @return the location
+     */
+    public @Nullable ITmfLocation getLocation() {
+        return fLocation;
+    }
+
+    /**
+     * Get the rank of the trace context after the last event returned by
+     * {@link #next()}
+     *
+     * @return the rank
+     */
+    public long getRank() {
+        return fRank;
+    }
+
+    /**
+     * Stop reading ahead, and wait for the current task to finish, so that
+     * the context can be disposed
+     */
+    public synchronized void dispose() {
+        fIsDisposed = true;
+        fBatches.clear();
+        fCurrent = null;
+        boolean interrupted = false;
+        while (fIsFetching) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized @Nullable Batch takeBatch() {
+        while (fBatches.isEmpty()) {
+            RuntimeException error = fError;
+            if (error != null) {
+                throw error;
+            }
+            if (fIsEnded || fIsDisposed) {
+                return null;
+            }
+            scheduleFetch();
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while reading " + fTrace.getName(), e); //$NON-NLS-1$
+            }
+        }
+        Batch batch = fBatches.poll();
+        scheduleFetch();
+        return batch;
+    }
+
+    /* Must be called with the lock held */
+    private void scheduleFetch() {
+        if (!fIsFetching && !fIsEnded && !fIsDisposed && fBatches.size() < MAX_BATCHES) {
+            fIsFetching = true;
+            EXECUTOR.execute(this::fetch);
+        }
+    }
+
+    private void fetch() {
+        Batch batch = new Batch(fBatchSize);
+        boolean ended = false;
+        RuntimeException error = null;
+        try {
+            while (batch.fSize < fBatchSize) {
+                ITmfEvent event = fTrace.getNext(fContext);
+                if (event == null) {
+                    ended = true;
+                    break;
+                }
+                batch.add(event, fContext.getLocation(), fContext.getRank());
+            }
+        } catch (RuntimeException e) {
+            error = e;
+            ended = true;
+        }
+        synchronized (this) {
+            if (batch.fSize > 0 && !fIsDisposed) {
+                fBatches.add(batch);
+            }
+            if (error != null) {
+                fError = error;
+            }
+            fIsEnded |= ended;
+            fIsFetching = false;
+            scheduleFetch();
+            notifyAll();
+        }
+    }
+}
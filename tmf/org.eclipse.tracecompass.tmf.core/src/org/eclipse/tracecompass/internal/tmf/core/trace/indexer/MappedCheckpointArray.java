@@ -0,0 +1,374 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.tmf.core.trace.indexer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.text.MessageFormat;
+import java.util.Arrays;
+
+import org.eclipse.tracecompass.internal.tmf.core.Activator;
+import org.eclipse.tracecompass.tmf.core.timestamp.ITmfTimestamp;
+import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimestamp;
+import org.eclipse.tracecompass.tmf.core.trace.indexer.ITmfPersistentlyIndexable;
+import org.eclipse.tracecompass.tmf.core.trace.indexer.checkpoint.ITmfCheckpoint;
+import org.eclipse.tracecompass.tmf.core.trace.indexer.checkpoint.TmfCheckpoint;
+import org.eclipse.tracecompass.tmf.core.trace.location.ITmfLocation;
+
+/**
+ * An array of checkpoints stored on disk, built for checkpoints which are
+ * inserted in rank and time order.
+ * <p>
+ * The checkpoints are appended to the file through a write buffer, so the
+ * file is written sequentially in large blocks. Each record starts with a key,
+ * the time stamp of the checkpoint in nanoseconds, followed by the serialized
+ * checkpoint. Every {@link #SUMMARY_STRIDE}th key is also kept in memory, so a
+ * search by time stamp only reads the keys of one block of records, and then
+ * decodes the few checkpoints which have the same key.
+ * <p>
+ * The records which are written are read from read-only regions of the file
+ * mapped in memory, the checkpoints are decoded directly from the mapped
+ * regions. The records are never modified once written, so the mapped regions
+ * stay valid while the array grows.
+ * <p>
+ * Note: The keys are the running maximum of the time stamps, so checkpoints
+ * with time stamps out of order only make the search less precise, but the
+ * search by time stamp is only exact for traces whose events are in order.
+ */
+public class MappedCheckpointArray extends AbstractFileCheckpointCollection {
+
+    /**
+     * Typical MappedCheckpointArray file name
+     */
+    public static final String INDEX_FILE_NAME = "checkpoint_mapped.idx"; //$NON-NLS-1$
+
+    private static final boolean IS_WIN32 = System.getProperty("os.name").startsWith("Windows"); //$NON-NLS-1$//$NON-NLS-2$
+
+    /** Number of records per key of the summary */
+    private static final int SUMMARY_STRIDE = 32;
+
+    /** Size of the write buffer, in bytes */
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final int fCheckpointSize;
+    private final int fRecordSize;
+
+    /* Keys of the records at multiples of SUMMARY_STRIDE */
+    private long[] fSummary = new long[64];
+    private int fSummarySize = 0;
+    private long fLastKey = Long.MIN_VALUE;
+
+    /* Records which are not written yet */
+    private final ByteBuffer fWriteBuffer;
+    private long fNbWritten = 0;
+
+    /* Read-only regions of the first fNbMapped records */
+    private ByteBuffer[] fSegments = new ByteBuffer[0];
+    private final int fRecordsPerSegment;
+    private long fNbMapped = 0;
+    private boolean fCanMap = !IS_WIN32;
+
+    /* Used to read the records through the file channel when not mapped */
+    private final ByteBuffer fReadBuffer;
+
+    /**
+     * Constructs a MappedCheckpointArray for a given trace from scratch or
+     * from an existing file. When the array is created from scratch, it is
+     * populated by subsequent calls to {@link #insert}.
+     *
+     * @param file
+     *            the file to use as the persistent storage
+     * @param trace
+     *            the trace
+     */
+    public MappedCheckpointArray(File file, ITmfPersistentlyIndexable trace) {
+        super(file, trace);
+        fCheckpointSize = getTrace().getCheckpointSize();
+        fRecordSize = LONG_SIZE + fCheckpointSize;
+        fRecordsPerSegment = Integer.MAX_VALUE / fRecordSize;
+        fWriteBuffer = ByteBuffer.allocate(Math.max(1, WRITE_BUFFER_SIZE / fRecordSize) * fRecordSize);
+        fReadBuffer = ByteBuffer.allocate(fRecordSize);
+
+        if (!isCreatedFromScratch() && getRandomAccessFile() != null) {
+            restore();
+        }
+    }
+
+    private void restore() {
+        int size = size();
+        try {
+            if (getFileChannel().size() < getHeader().getSize() + (long) size * fRecordSize) {
+                /* Not expected since the version is written last */
+                Activator.logError(MessageFormat.format(Messages.MappedCheckpointArray_IOErrorReading, getFile()));
+                getHeader().fSize = 0;
+                return;
+            }
+        } catch (IOException e) {
+            Activator.logError(MessageFormat.format(Messages.MappedCheckpointArray_IOErrorReading, getFile()), e);
+            getHeader().fSize = 0;
+            return;
+        }
+        fNbWritten = size;
+        mapRecords();
+        for (long i = 0; i < size; i += SUMMARY_STRIDE) {
+            addToSummary(getKey(i));
+        }
+        if (size > 0) {
+            fLastKey = getKey(size - 1);
+        }
+    }
+
+    /**
+     * Append a checkpoint to the array
+     *
+     * @param checkpoint
+     *            the checkpoint to insert
+     */
+    @Override
+    public synchronized void insert(ITmfCheckpoint checkpoint) {
+        markDirty();
+        if (!fWriteBuffer.hasRemaining()) {
+            flush();
+        }
+        ITmfTimestamp timestamp = checkpoint.getTimestamp();
+        long key = Math.max(fLastKey, timestamp == null ? Long.MIN_VALUE : timestamp.toNanos());
+        fLastKey = key;
+        CheckpointCollectionFileHeader header = getHeader();
+        if (header.fSize % SUMMARY_STRIDE == 0) {
+            addToSummary(key);
+        }
+
+        int position = fWriteBuffer.position();
+        fWriteBuffer.putLong(key);
+        checkpoint.serialize(fWriteBuffer);
+        /* The records have a fixed size */
+        fWriteBuffer.position(position + fRecordSize);
+        ++header.fSize;
+    }
+
+    /**
+     * Get a checkpoint from a rank
+     *
+     * @param rank
+     *            the rank to search
+     * @return the checkpoint that has been found or null if not found
+     */
+    public synchronized ITmfCheckpoint get(long rank) {
+        if (rank < 0 || rank >= size()) {
+            return null;
+        }
+        ByteBuffer record = getRecord(rank);
+        if (record == null) {
+            return null;
+        }
+        /* Skip the key, the checkpoint is decoded in place */
+        record.position(record.position() + LONG_SIZE);
+        ITmfLocation location = getTrace().restoreLocation(record);
+        ITmfTimestamp timeStamp = TmfTimestamp.create(record);
+        return new TmfCheckpoint(timeStamp, location, record);
+    }
+
+    /**
+     * Search for a checkpoint and return the rank.
+     *
+     * @param checkpoint
+     *            the checkpoint to search
+     * @return the checkpoint rank of the searched checkpoint, if it is
+     *         contained in the index; otherwise, (-(insertion point) - 1).
+     */
+    @Override
+    public synchronized long binarySearch(ITmfCheckpoint checkpoint) {
+        long lower = 0;
+        long upper = size();
+        ITmfTimestamp timestamp = checkpoint.getTimestamp();
+        if (timestamp != null) {
+            /* Only the checkpoints with the same key need to be decoded */
+            long key = timestamp.toNanos();
+            lower = searchKey(key, false);
+            upper = searchKey(key, true);
+        }
+
+        /* First checkpoint which is not before the searched one */
+        while (lower < upper) {
+            long middle = (lower + upper) >>> 1;
+            ITmfCheckpoint found = get(middle);
+            incCacheMisses();
+            if (found == null) {
+                break;
+            }
+            if (found.compareTo(checkpoint) < 0) {
+                lower = middle + 1;
+            } else {
+                upper = middle;
+            }
+        }
+        if (lower < size()) {
+            ITmfCheckpoint found = get(lower);
+            if (found != null && found.compareTo(checkpoint) == 0) {
+                return lower;
+            }
+        }
+        return -(lower) - 1;
+    }
+
+    /**
+     * Write the records and the header, and release the mapped regions
+     */
+    @Override
+    public synchronized void dispose() {
+        if (getRandomAccessFile() != null) {
+            flush();
+        }
+        fSegments = new ByteBuffer[0];
+        fNbMapped = 0;
+        super.dispose();
+    }
+
+    // ------------------------------------------------------------------------
+    // Helpers
+    // ------------------------------------------------------------------------
+
+    private void addToSummary(long key) {
+        if (fSummarySize == fSummary.length) {
+            fSummary = Arrays.copyOf(fSummary, fSummary.length * 2);
+        }
+        fSummary[fSummarySize++] = key;
+    }
+
+    /**
+     * Get the index of the first record whose key is greater than or equal to
+     * the key, or strictly greater if after is true
+     */
+    private long searchKey(long key, boolean after) {
+        /* First block whose first key is past the key */
+        int lowerBlock = 0;
+        int upperBlock = fSummarySize;
+        while (lowerBlock < upperBlock) {
+            int middle = (lowerBlock + upperBlock) >>> 1;
+            if (isPast(fSummary[middle], key, after)) {
+                upperBlock = middle;
+            } else {
+                lowerBlock = middle + 1;
+            }
+        }
+        if (lowerBlock == 0) {
+            return 0;
+        }
+        /* The record is in the previous block, after its first record */
+        long lower = (long) (lowerBlock - 1) * SUMMARY_STRIDE + 1;
+        long upper = Math.min((long) lowerBlock * SUMMARY_STRIDE, size());
+        while (lower < upper) {
+            long middle = (lower + upper) >>> 1;
+            if (isPast(getKey(middle), key, after)) {
+                upper = middle;
+            } else {
+                lower = middle + 1;
+            }
+        }
+        return lower;
+    }
+
+    private static boolean isPast(long recordKey, long key, boolean after) {
+        return after ? recordKey > key : recordKey >= key;
+    }
+
+    private long getKey(long index) {
+        if (index < fNbMapped) {
+            return fSegments[(int) (index / fRecordsPerSegment)].getLong((int) (index % fRecordsPerSegment) * fRecordSize);
+        }
+        ByteBuffer record = getRecord(index);
+        return (record == null) ? Long.MAX_VALUE : record.getLong(record.position());
+    }
+
+    /**
+     * Get a buffer positioned at the start of a record. The buffer must only
+     * be used until the next read.
+     */
+    private ByteBuffer getRecord(long index) {
+        if (index >= fNbWritten) {
+            /* Still in the write buffer */
+            ByteBuffer record = fWriteBuffer.duplicate();
+            record.position((int) (index - fNbWritten) * fRecordSize);
+            return record;
+        }
+        if (index >= fNbMapped) {
+            mapRecords();
+        }
+        if (index < fNbMapped) {
+            ByteBuffer record = fSegments[(int) (index / fRecordsPerSegment)].duplicate();
+            record.position((int) (index % fRecordsPerSegment) * fRecordSize);
+            return record;
+        }
+        try {
+            FileChannel channel = getFileChannel();
+            fReadBuffer.clear();
+            long position = getHeader().getSize() + index * fRecordSize;
+            while (fReadBuffer.hasRemaining()) {
+                if (channel.read(fReadBuffer, position + fReadBuffer.position()) < 0) {
+                    return null;
+                }
+            }
+            fReadBuffer.flip();
+            return fReadBuffer;
+        } catch (IOException e) {
+            Activator.logError(MessageFormat.format(Messages.MappedCheckpointArray_IOErrorReading, getFile()), e);
+        }
+        return null;
+    }
+
+    /**
+     * Write the records of the write buffer at the end of the file
+     */
+    private void flush() {
+        fWriteBuffer.flip();
+        try {
+            FileChannel channel = getFileChannel();
+            long position = getHeader().getSize() + fNbWritten * fRecordSize;
+            while (fWriteBuffer.hasRemaining()) {
+                position += channel.write(fWriteBuffer, position);
+            }
+        } catch (IOException e) {
+            Activator.logError(MessageFormat.format(Messages.MappedCheckpointArray_IOErrorWriting, getFile()), e);
+        }
+        fNbWritten += fWriteBuffer.limit() / fRecordSize;
+        fWriteBuffer.clear();
+    }
+
+    /**
+     * Map the written records which are not mapped yet. Records never span
+     * two regions, the last region is mapped again when it grows.
+     */
+    private void mapRecords() {
+        if (!fCanMap || fNbMapped == fNbWritten || getRandomAccessFile() == null) {
+            return;
+        }
+        int nbSegments = (int) ((fNbWritten + fRecordsPerSegment - 1) / fRecordsPerSegment);
+        ByteBuffer[] segments = Arrays.copyOf(fSegments, nbSegments);
+        try {
+            FileChannel channel = getFileChannel();
+            for (int i = (int) (fNbMapped / fRecordsPerSegment); i < nbSegments; i++) {
+                long firstRecord = (long) i * fRecordsPerSegment;
+                long nbRecords = Math.min(fRecordsPerSegment, fNbWritten - firstRecord);
+                segments[i] = channel.map(MapMode.READ_ONLY,
+                        getHeader().getSize() + firstRecord * fRecordSize,
+                        nbRecords * fRecordSize);
+            }
+        } catch (IOException e) {
+            Activator.logWarning("Could not map the checkpoint index, it will be read from the file channel", e); //$NON-NLS-1$
+            fCanMap = false;
+            return;
+        }
+        fSegments = segments;
+        fNbMapped = fNbWritten;
+    }
+}
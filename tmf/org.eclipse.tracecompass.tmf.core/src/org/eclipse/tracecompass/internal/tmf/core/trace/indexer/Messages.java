@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013, 2014 Ericsson
+ * Copyright (c) 2013, 2018 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -57,6 +57,14 @@ public class Messages extends NLS {
      * I/O Error writing to disk
      */
     public static String FlatArray_IOErrorWriting;
+    /**
+     * I/O Error reading from disk
+     */
+    public static String MappedCheckpointArray_IOErrorReading;
+    /**
+     * I/O Error writing to disk
+     */
+    public static String MappedCheckpointArray_IOErrorWriting;
     static {
         // initialize resource bundle
         NLS.initializeMessages(BUNDLE_NAME, Messages.class);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2017 Ericsson
+ * Copyright (c) 2009, 2018 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -70,6 +70,9 @@ public abstract class TmfEventProvider extends TmfComponent implements ITmfEvent
     /** List of coalesced requests */
     private final List<TmfCoalescedEventRequest> fPendingCoalescedRequests = new LinkedList<>();
 
+    /** List of queued coalesced requests, which other requests can join */
+    private final List<TmfCoalescedEventRequest> fRunningCoalescedRequests = new LinkedList<>();
+
     /** The type of event handled by this provider */
     private Class<? extends ITmfEvent> fType;
 
@@ -193,6 +196,10 @@ public abstract class TmfEventProvider extends TmfComponent implements ITmfEvent
                 request.setProviderFilter(this);
             }
 
+            if (joinRunningRequest(request)) {
+                return;
+            }
+
             if (sendWithParent(request)) {
                 return;
             }
@@ -333,6 +340,26 @@ public abstract class TmfEventProvider extends TmfComponent implements ITmfEvent
         }
     }
 
+    /*
+     * Joins a request to a coalesced request whose events are being read, so
+     * that the events are not read once more for it.
+     */
+    private boolean joinRunningRequest(ITmfEventRequest request) {
+        if (!request.isOutOfOrderAllowed()) {
+            return false;
+        }
+        Iterator<TmfCoalescedEventRequest> iter = fRunningCoalescedRequests.iterator();
+        while (iter.hasNext()) {
+            TmfCoalescedEventRequest runningRequest = iter.next();
+            if (runningRequest.isCompleted()) {
+                iter.remove();
+            } else if (runningRequest.join(request)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /*
      * Sends a request with the parent if compatible.
      */
@@ -407,6 +434,14 @@ public abstract class TmfEventProvider extends TmfComponent implements ITmfEvent
             return;
         }
 
+        if (request instanceof TmfCoalescedEventRequest) {
+            TmfCoalescedEventRequest coalescedRequest = (TmfCoalescedEventRequest) request;
+            coalescedRequest.enableJoining(this::sendRequest);
+            synchronized (fLock) {
+                fRunningCoalescedRequests.add(coalescedRequest);
+            }
+        }
+
         TmfEventThread thread = new TmfEventThread(this, request);
 
         if (TmfCoreTracer.isRequestTraced()) {
@@ -618,6 +653,7 @@ public abstract class TmfEventProvider extends TmfComponent implements ITmfEvent
      */
     private void  clearPendingRequests() {
         fPendingCoalescedRequests.clear();
+        fRunningCoalescedRequests.clear();
     }
 
     /**
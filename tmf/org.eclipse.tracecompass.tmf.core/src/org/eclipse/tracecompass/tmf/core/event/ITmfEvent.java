@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2012, 2015 Ericsson
+ * Copyright (c) 2012, 2018 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -72,4 +72,18 @@ public interface ITmfEvent extends IAdaptable {
      * @since 1.0
      */
     @NonNull String getName();
+
+    /**
+     * Gets an event which can be kept by the caller. Traces may give recycled
+     * events to the requests which allow it, see
+     * {@link org.eclipse.tracecompass.tmf.core.request.ITmfEventRequest#isEventRecyclingAllowed()},
+     * whose content changes once they are handled. Such requests must copy the
+     * events they keep.
+     *
+     * @return this event if it is not recycled, or a copy of it
+     * @since 3.4
+     */
+    default @NonNull ITmfEvent copy() {
+        return this;
+    }
 }
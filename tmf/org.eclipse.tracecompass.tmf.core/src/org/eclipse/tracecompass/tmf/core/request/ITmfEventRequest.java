@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2015 Ericsson
+ * Copyright (c) 2009, 2018 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -13,6 +13,8 @@
 
 package org.eclipse.tracecompass.tmf.core.request;
 
+import java.util.function.Predicate;
+
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
@@ -114,6 +116,48 @@ public interface ITmfEventRequest {
      */
     void setProviderFilter(ITmfFilter filter);
 
+    /**
+     * Gets the types of events whose content is needed by this request. All
+     * the events are still given to {@link #handleData(ITmfEvent)}, but the
+     * trace may skip reading the fields of the events of other types, if it
+     * supports it.
+     *
+     * @return a predicate on the event type names, or null if the content of
+     *         all the events is needed
+     * @since 3.4
+     */
+    default @Nullable Predicate<String> getEventTypeFilter() {
+        return null;
+    }
+
+    /**
+     * Gets whether the trace may give recycled event objects to
+     * {@link #handleData(ITmfEvent)}, instead of allocating an event for each
+     * one. A recycled event is only valid until handleData returns: the request
+     * must not keep it, or give it to another thread, without calling
+     * {@link ITmfEvent#copy()}.
+     *
+     * @return true if the events given to this request can be recycled
+     * @since 3.4
+     */
+    default boolean isEventRecyclingAllowed() {
+        return false;
+    }
+
+    /**
+     * Gets whether the events may be given to {@link #handleData(ITmfEvent)}
+     * out of chronological order. Such a request can join a read of the trace
+     * which is already in progress: it receives the events from the current
+     * position of the read to its end, then the events it missed, from its own
+     * start. Each event is still given only once.
+     *
+     * @return true if the request does not depend on the order of the events
+     * @since 3.4
+     */
+    default boolean isOutOfOrderAllowed() {
+        return false;
+    }
+
     // ------------------------------------------------------------------------
     // Request state predicates
     // ------------------------------------------------------------------------
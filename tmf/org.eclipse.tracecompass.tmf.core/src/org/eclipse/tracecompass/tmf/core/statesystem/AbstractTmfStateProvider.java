@@ -219,6 +219,19 @@ public abstract class AbstractTmfStateProvider implements ITmfStateProvider {
         }
     }
 
+    /**
+     * Run an action in the thread that handles the events, once the events
+     * received so far are handled and before the next ones are. The state
+     * system is then in a consistent state, for example to write a
+     * checkpoint.
+     *
+     * @param action
+     *            The action to run
+     */
+    void runBetweenEvents(Runnable action) {
+        fEventsQueue.put(new ActionEvent(action));
+    }
+
     // ------------------------------------------------------------------------
     // Special event types
     // ------------------------------------------------------------------------
@@ -239,6 +252,16 @@ public abstract class AbstractTmfStateProvider implements ITmfStateProvider {
         }
     }
 
+    /** Fake event carrying an action to run between two real events */
+    private static class ActionEvent extends TmfEvent {
+        private final Runnable fAction;
+
+        public ActionEvent(Runnable action) {
+            super(null, ITmfContext.UNKNOWN_RANK, null, null, null);
+            fAction = action;
+        }
+    }
+
     private static final EndEvent END_EVENT = new EndEvent();
     private static final EmptyQueueEvent EMPTY_QUEUE_EVENT = new EmptyQueueEvent();
 
@@ -274,6 +297,11 @@ public abstract class AbstractTmfStateProvider implements ITmfStateProvider {
                     event = fEventsQueue.take();
                     continue;
                 }
+                if (event instanceof ActionEvent) {
+                    ((ActionEvent) event).fAction.run();
+                    event = fEventsQueue.take();
+                    continue;
+                }
                 currentEvent = event;
                 fSafeTime = event.getTimestamp().toNanos() - 1;
                 eventHandle(event);
@@ -12,6 +12,11 @@
 
 package org.eclipse.tracecompass.tmf.core.statesystem;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.function.Predicate;
+
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
 import org.eclipse.tracecompass.statesystem.core.ITmfStateSystemBuilder;
@@ -138,4 +143,64 @@ public interface ITmfStateProvider {
     default @Nullable Throwable getFailureCause() {
         return null;
     }
+
+    /**
+     * Whether the construction of the state system by this provider can be
+     * interrupted and resumed later from a checkpoint. The checkpoint contains
+     * the state system and the position in the trace, so a provider whose only
+     * state is in the state system can return true as is. A provider that keeps
+     * other state between the events must also save it with
+     * {@link #saveCheckpoint(DataOutput)} and restore it with
+     * {@link #loadCheckpoint(DataInput)}.
+     *
+     * @return True if the provider supports checkpoints, false by default
+     * @since 3.4
+     */
+    default boolean supportsCheckpoints() {
+        return false;
+    }
+
+    /**
+     * Save the internal state of this provider in a checkpoint. This is called
+     * between two events, in the thread that handles the events.
+     *
+     * @param output
+     *            The output to write the state to
+     * @throws IOException
+     *             If the state could not be written
+     * @since 3.4
+     */
+    default void saveCheckpoint(DataOutput output) throws IOException {
+        // Nothing to save by default
+    }
+
+    /**
+     * Restore the internal state of this provider from a checkpoint written by
+     * {@link #saveCheckpoint(DataOutput)}, before it receives the events that
+     * follow the checkpoint.
+     *
+     * @param input
+     *            The input to read the state from
+     * @throws IOException
+     *             If the state could not be read
+     * @since 3.4
+     */
+    default void loadCheckpoint(DataInput input) throws IOException {
+        // Nothing to load by default
+    }
+
+    /**
+     * Get the types of events whose content this provider reads. The provider
+     * still receives all the events, but the trace may skip reading the fields
+     * of the events of other types, which then have no content. A provider that
+     * only looks at a known set of event types can return a filter on their
+     * names to speed up the construction of its state system.
+     *
+     * @return a predicate on the event type names, or null if the provider
+     *         reads the content of all the events, which is the default
+     * @since 3.4
+     */
+    default @Nullable Predicate<String> getEventTypeFilter() {
+        return null;
+    }
 }
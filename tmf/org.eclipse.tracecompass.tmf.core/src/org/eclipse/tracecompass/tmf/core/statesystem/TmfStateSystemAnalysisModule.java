@@ -13,14 +13,23 @@
 
 package org.eclipse.tracecompass.tmf.core.statesystem;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.concurrent.CountDownLatch;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -32,6 +41,7 @@ import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.common.core.NonNullUtils;
 import org.eclipse.tracecompass.common.core.log.TraceCompassLog;
+import org.eclipse.tracecompass.common.core.log.TraceCompassLogUtils;
 import org.eclipse.tracecompass.common.core.log.TraceCompassLogUtils.ScopeLog;
 import org.eclipse.tracecompass.internal.tmf.core.statesystem.backends.partial.PartialHistoryBackend;
 import org.eclipse.tracecompass.internal.tmf.core.statesystem.backends.partial.PartialStateSystem;
@@ -78,6 +88,25 @@ public abstract class TmfStateSystemAnalysisModule extends TmfAbstractAnalysisMo
 
     private static final String EXTENSION = ".ht"; //$NON-NLS-1$
 
+    /**
+     * System property to set the number of history trees that the full
+     * histories are split into by default
+     */
+    private static final String HISTORY_SHARDS_PROPERTY = "org.eclipse.tracecompass.tmf.core.statesystem.shards"; //$NON-NLS-1$
+
+    /** Extension of the checkpoint file, appended to the history file name */
+    private static final String CHECKPOINT_EXTENSION = ".ckpt"; //$NON-NLS-1$
+
+    /**
+     * System property to set the number of events between two checkpoints of
+     * a full history being built, 0 to disable them
+     */
+    private static final String CHECKPOINT_INTERVAL_PROPERTY = "org.eclipse.tracecompass.tmf.core.statesystem.checkpoint"; //$NON-NLS-1$
+    private static final int DEFAULT_CHECKPOINT_INTERVAL = 1000000;
+
+    /* Size of the blocking queue to use when building a full history */
+    private static final int FULL_HISTORY_QUEUE_SIZE = 10000;
+
     private final CountDownLatch fInitialized = new CountDownLatch(1);
     private final Object fRequestSyncObj = new Object();
 
@@ -91,6 +120,10 @@ public abstract class TmfStateSystemAnalysisModule extends TmfAbstractAnalysisMo
     private volatile @Nullable ITmfStateProvider fStateProvider;
     private @Nullable Integer fProviderVersion = null;
 
+    /* Checkpoint file of the history being built, null if not checkpointed */
+    private volatile @Nullable File fCheckpointFile = null;
+    private int fCheckpointInterval = 0;
+
     /**
      * State system backend types
      *
@@ -99,7 +132,7 @@ public abstract class TmfStateSystemAnalysisModule extends TmfAbstractAnalysisMo
     protected enum StateSystemBackendType {
         /** Full history in file */
         FULL,
-        /** In memory state system */
+        /** In memory state system, it is rebuilt every time the trace is opened */
         INMEM,
         /** Null history */
         NULL,
@@ -153,6 +186,39 @@ public abstract class TmfStateSystemAnalysisModule extends TmfAbstractAnalysisMo
         return StateSystemBackendType.FULL;
     }
 
+    /**
+     * Get the number of history trees that a full history is split into when it
+     * is built. Each tree has its own insertion thread, so analyses whose
+     * building is limited by the insertion in the history can build faster on
+     * machines with many cores. The default is 1, unless the
+     * "org.eclipse.tracecompass.tmf.core.statesystem.shards" system property
+     * says otherwise.
+     *
+     * @return The number of history trees
+     * @since 3.4
+     */
+    protected int getNbHistoryShards() {
+        return Math.max(1, Integer.getInteger(HISTORY_SHARDS_PROPERTY, 1));
+    }
+
+    /**
+     * Get the number of events between two checkpoints of a full history being
+     * built. From a checkpoint, an interrupted construction, for example when
+     * the application was stopped, resumes where it was instead of starting
+     * over. Only the state providers that
+     * {@link ITmfStateProvider#supportsCheckpoints() support checkpoints} get
+     * them. The default is 1000000, unless the
+     * "org.eclipse.tracecompass.tmf.core.statesystem.checkpoint" system
+     * property says otherwise.
+     *
+     * @return The number of events between two checkpoints, or 0 for no
+     *         checkpoints
+     * @since 3.4
+     */
+    protected int getCheckpointInterval() {
+        return Math.max(0, Integer.getInteger(CHECKPOINT_INTERVAL_PROPERTY, DEFAULT_CHECKPOINT_INTERVAL));
+    }
+
     /**
      * Get the supplementary file name where to save this state system. The default
      * is the ID of the analysis followed by the extension.
@@ -334,7 +400,8 @@ public abstract class TmfStateSystemAnalysisModule extends TmfAbstractAnalysisMo
 
     /*
      * Load the history file matching the target trace. If the file already exists,
-     * it will be opened directly. If not, it will be created from scratch.
+     * it will be opened directly, or its construction resumed if it was
+     * interrupted. If not, it will be created from scratch.
      */
     private void createFullHistory(String id, ITmfStateProvider provider, File htFile) throws TmfTraceException {
 
@@ -342,6 +409,7 @@ public abstract class TmfStateSystemAnalysisModule extends TmfAbstractAnalysisMo
         // TODO for now we assume it's complete. Might be a good idea to check
         // at least if its range matches the trace's range.
 
+        File checkpointFile = getCheckpointFile(htFile);
         if (htFile.exists()) {
             /* Load an existing history */
             final int version = provider.getVersion();
@@ -349,26 +417,30 @@ public abstract class TmfStateSystemAnalysisModule extends TmfAbstractAnalysisMo
                 IStateHistoryBackend backend = StateHistoryBackendFactory.createHistoryTreeBackendExistingFile(
                         id, htFile, version);
                 fStateSystem = StateSystemFactory.newStateSystem(backend, false);
+                deleteCheckpoint(checkpointFile);
                 analysisReady(true);
                 return;
             } catch (IOException e) {
                 /*
                  * There was an error opening the existing file. Perhaps it was corrupted,
-                 * perhaps it's an old version? We'll just fall-through and try to build a new
-                 * one from scratch instead.
+                 * perhaps it's an old version, or its construction was interrupted? We'll
+                 * try to resume it from its checkpoint, or build a new one from scratch
+                 * instead.
                  */
             }
+            if (resumeFullHistory(id, provider, htFile, checkpointFile)) {
+                return;
+            }
         }
-
-        /* Size of the blocking queue to use when building a state history */
-        final int QUEUE_SIZE = 10000;
+        deleteCheckpoint(checkpointFile);
 
         try {
             IStateHistoryBackend backend = StateHistoryBackendFactory.createHistoryTreeBackendNewFile(
-                    id, htFile, provider.getVersion(), provider.getStartTime(), QUEUE_SIZE);
+                    id, htFile, provider.getVersion(), provider.getStartTime(), FULL_HISTORY_QUEUE_SIZE, getNbHistoryShards());
             fStateSystem = StateSystemFactory.newStateSystem(backend);
             provider.assignTargetStateSystem(fStateSystem);
-            build(provider);
+            enableCheckpoints(provider, checkpointFile);
+            build(provider, true);
         } catch (IOException e) {
             /*
              * If it fails here however, it means there was a problem writing to the disk,
@@ -378,6 +450,102 @@ public abstract class TmfStateSystemAnalysisModule extends TmfAbstractAnalysisMo
         }
     }
 
+    /*
+     * Resume the construction of a full history from its last checkpoint, if
+     * there is one. The trace is read again from the first event after the
+     * checkpoint.
+     */
+    private boolean resumeFullHistory(String id, ITmfStateProvider provider, File htFile, File checkpointFile) {
+        if (!checkpointFile.exists() || !provider.supportsCheckpoints()) {
+            return false;
+        }
+        ITmfStateSystemBuilder ss = null;
+        long rank;
+        try (ScopeLog log = new ScopeLog(LOGGER, Level.FINE, "StateSystemAnalysis:resuming", "id", id); //$NON-NLS-1$ //$NON-NLS-2$
+                DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(checkpointFile)))) {
+            ss = StateSystemFactory.resumeFromCheckpoint(id, htFile, provider.getVersion(), FULL_HISTORY_QUEUE_SIZE, input);
+            rank = input.readLong();
+            if (rank < 0 || rank > Integer.MAX_VALUE) {
+                throw new IOException("Invalid rank in checkpoint: " + rank); //$NON-NLS-1$
+            }
+            provider.loadCheckpoint(input);
+        } catch (IOException e) {
+            TraceCompassLogUtils.traceInstant(LOGGER, Level.WARNING, "StateSystemAnalysis:ResumeFailed", //$NON-NLS-1$
+                    "id", id, "cause", e); //$NON-NLS-1$ //$NON-NLS-2$
+            if (ss != null) {
+                ss.dispose();
+            }
+            return false;
+        }
+        fStateSystem = ss;
+        fNbRead = (int) rank;
+        provider.assignTargetStateSystem(ss);
+        enableCheckpoints(provider, checkpointFile);
+        /* The initial state is already in the resumed state system */
+        build(provider, false);
+        return true;
+    }
+
+    private void enableCheckpoints(ITmfStateProvider provider, File checkpointFile) {
+        fCheckpointInterval = getCheckpointInterval();
+        if (fCheckpointInterval > 0 && provider.supportsCheckpoints() && provider instanceof AbstractTmfStateProvider) {
+            fCheckpointFile = checkpointFile;
+        }
+    }
+
+    private static File getCheckpointFile(File htFile) {
+        return new File(htFile.getPath() + CHECKPOINT_EXTENSION);
+    }
+
+    private static void deleteCheckpoint(File checkpointFile) {
+        if (checkpointFile.exists() && !checkpointFile.delete()) {
+            TraceCompassLogUtils.traceInstant(LOGGER, Level.WARNING, "StateSystemAnalysis:DeleteCheckpointFailed", //$NON-NLS-1$
+                    "file", checkpointFile); //$NON-NLS-1$
+        }
+    }
+
+    /*
+     * Ask the provider to write a checkpoint once it has handled the events
+     * sent so far, the next event to read being at the given rank.
+     */
+    private void scheduleCheckpoint(ITmfStateProvider provider, long nextRank) {
+        ITmfStateSystemBuilder ss = fStateSystem;
+        if (fCheckpointFile == null || ss == null || !(provider instanceof AbstractTmfStateProvider)) {
+            return;
+        }
+        ((AbstractTmfStateProvider) provider).runBetweenEvents(() -> writeCheckpoint(provider, ss, nextRank));
+    }
+
+    private void writeCheckpoint(ITmfStateProvider provider, ITmfStateSystemBuilder ss, long nextRank) {
+        File checkpointFile = fCheckpointFile;
+        if (checkpointFile == null) {
+            return;
+        }
+        /*
+         * Write a new file and replace the previous checkpoint with it, so there
+         * is always a complete checkpoint if the application stops meanwhile.
+         */
+        File newFile = new File(checkpointFile.getPath() + ".new"); //$NON-NLS-1$
+        try (ScopeLog log = new ScopeLog(LOGGER, Level.FINE, "StateSystemAnalysis:checkpoint", "id", getId(), "rank", nextRank)) { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            try (FileOutputStream fos = new FileOutputStream(newFile);
+                    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fos))) {
+                StateSystemFactory.writeCheckpoint(ss, output);
+                output.writeLong(nextRank);
+                provider.saveCheckpoint(output);
+                output.flush();
+                fos.getFD().sync();
+            }
+            Files.move(newFile.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            /* Keep building, but without checkpoints */
+            TraceCompassLogUtils.traceInstant(LOGGER, Level.WARNING, "StateSystemAnalysis:CheckpointFailed", //$NON-NLS-1$
+                    "id", getId(), "cause", e); //$NON-NLS-1$ //$NON-NLS-2$
+            fCheckpointFile = null;
+            deleteCheckpoint(newFile);
+            deleteCheckpoint(checkpointFile);
+        }
+    }
+
     /*
      * Create a new state system backed with a partial history. A partial history is
      * similar to a "full" one (which you get with {@link #newFullHistory}), except
@@ -489,6 +657,12 @@ public abstract class TmfStateSystemAnalysisModule extends TmfAbstractAnalysisMo
             }
         }
         fStateProvider = null;
+        /* The history is either complete or deleted, it cannot be resumed */
+        File checkpointFile = fCheckpointFile;
+        fCheckpointFile = null;
+        if (checkpointFile != null) {
+            deleteCheckpoint(checkpointFile);
+        }
         if (shouldDeleteFiles && (fStateSystem != null)) {
             fStateSystem.removeFiles();
         }
@@ -511,6 +685,10 @@ public abstract class TmfStateSystemAnalysisModule extends TmfAbstractAnalysisMo
     }
 
     private void build(ITmfStateProvider provider) {
+        build(provider, true);
+    }
+
+    private void build(ITmfStateProvider provider, boolean loadInitialState) {
         if (fStateSystem == null) {
             throw new IllegalArgumentException();
         }
@@ -520,7 +698,9 @@ public abstract class TmfStateSystemAnalysisModule extends TmfAbstractAnalysisMo
          * signal listener below will start sending real trace events through the state
          * provider.
          */
-        loadInitialState(provider);
+        if (loadInitialState) {
+            loadInitialState(provider);
+        }
 
         /* Continue on initializing the event request to read trace events. */
         ITmfEventRequest request = fRequest;
@@ -636,6 +816,11 @@ public abstract class TmfStateSystemAnalysisModule extends TmfAbstractAnalysisMo
 
         }
 
+        @Override
+        public @Nullable Predicate<String> getEventTypeFilter() {
+            return sci.getEventTypeFilter();
+        }
+
         @Override
         public void handleData(final ITmfEvent event) {
             super.handleData(event);
@@ -652,6 +837,10 @@ public abstract class TmfStateSystemAnalysisModule extends TmfAbstractAnalysisMo
                     }
                 }
             }
+            int interval = fCheckpointInterval;
+            if (interval > 0 && getNbRead() % interval == 0) {
+                scheduleCheckpoint(sci, getIndex() + getNbRead());
+            }
         }
 
         @Override
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2012, 2014 Ericsson
+ * Copyright (c) 2012, 2018 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -22,6 +22,7 @@ import java.util.Map;
 import java.util.TreeMap;
 
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
 import org.eclipse.tracecompass.tmf.core.event.ITmfLostEvent;
 import org.eclipse.tracecompass.tmf.core.request.ITmfEventRequest;
@@ -30,6 +31,9 @@ import org.eclipse.tracecompass.tmf.core.timestamp.ITmfTimestamp;
 import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimeRange;
 import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimestamp;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+import org.eclipse.tracecompass.tmf.core.trace.TmfTraceUtils;
+import org.eclipse.tracecompass.tmf.core.trace.experiment.TmfExperiment;
+import org.eclipse.tracecompass.tmf.core.trace.indexer.checkpoint.TmfEventCountSummary;
 
 /**
  * Implementation of ITmfStatistics which uses event requests to the trace to
@@ -37,7 +41,9 @@ import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
  *
  * There is almost no setup time, but queries themselves are longer than with a
  * TmfStateStatistics. Queries are O(n * m), where n is the size of the trace,
- * and m is the portion of the trace covered by the selected interval.
+ * and m is the portion of the trace covered by the selected interval. The
+ * event counts which the summary built by the indexer knows exactly are taken
+ * from it instead.
  *
  * @author Alexandre Montplaisir
  */
@@ -96,6 +102,10 @@ public class TmfEventsStatistics implements ITmfStatistics {
 
     @Override
     public long getEventsTotal() {
+        TmfEventCountSummary summary = getSummary();
+        if (summary != null) {
+            return summary.getNbEvents() - summary.getNbLostEvents();
+        }
         StatsTotalRequest request = new StatsTotalRequest(trace, TmfTimeRange.ETERNITY);
         sendAndWait(request);
 
@@ -112,6 +122,10 @@ public class TmfEventsStatistics implements ITmfStatistics {
 
     @Override
     public long getEventsInRange(long start, long end) {
+        TmfEventCountSummary summary = getSummary();
+        if (summary != null && summary.getNbLostEvents() == 0 && summary.isExact(start, end)) {
+            return summary.getCount(start, end);
+        }
         ITmfTimestamp startTS = TmfTimestamp.create(start, SCALE);
         ITmfTimestamp endTS = TmfTimestamp.create(end, SCALE);
         TmfTimeRange range = new TmfTimeRange(startTS, endTS);
@@ -134,6 +148,18 @@ public class TmfEventsStatistics implements ITmfStatistics {
         return request.getResults();
     }
 
+    /**
+     * Get the event count summary of the trace, if it has all the events. The
+     * events of an experiment belong to its traces, so they are not counted.
+     */
+    private @Nullable TmfEventCountSummary getSummary() {
+        if (trace instanceof TmfExperiment) {
+            return null;
+        }
+        TmfEventCountSummary summary = TmfTraceUtils.getEventCountSummary(trace);
+        return (summary != null && summary.isComplete()) ? summary : null;
+    }
+
     private void sendAndWait(TmfEventRequest request) {
         trace.sendRequest(request);
         try {
@@ -162,6 +188,17 @@ public class TmfEventsStatistics implements ITmfStatistics {
             return total;
         }
 
+        @Override
+        public boolean isEventRecyclingAllowed() {
+            return true;
+        }
+
+        /* The events are only counted */
+        @Override
+        public boolean isOutOfOrderAllowed() {
+            return true;
+        }
+
         @Override
         public void handleData(final ITmfEvent event) {
             super.handleData(event);
@@ -190,6 +227,17 @@ public class TmfEventsStatistics implements ITmfStatistics {
             return stats;
         }
 
+        @Override
+        public boolean isEventRecyclingAllowed() {
+            return true;
+        }
+
+        /* The events are only counted */
+        @Override
+        public boolean isOutOfOrderAllowed() {
+            return true;
+        }
+
         @Override
         public void handleData(final ITmfEvent event) {
             super.handleData(event);
@@ -260,6 +308,17 @@ public class TmfEventsStatistics implements ITmfStatistics {
             return results.values();
         }
 
+        @Override
+        public boolean isEventRecyclingAllowed() {
+            return true;
+        }
+
+        /* The events are only counted */
+        @Override
+        public boolean isOutOfOrderAllowed() {
+            return true;
+        }
+
         @Override
         public void handleData(ITmfEvent event) {
             super.handleData(event);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013, 2015 Ericsson
+ * Copyright (c) 2013, 2018 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -103,6 +103,12 @@ public class TmfStatisticsTotalsModule extends TmfStateSystemAnalysisModule {
             return VERSION;
         }
 
+        /* All the state is in the state system */
+        @Override
+        public boolean supportsCheckpoints() {
+            return true;
+        }
+
         @Override
         public StatsProviderTotals getNewInstance() {
             return new StatsProviderTotals(this.getTrace());
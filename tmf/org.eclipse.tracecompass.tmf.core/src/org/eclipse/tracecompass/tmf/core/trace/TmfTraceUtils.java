@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2014 Ericsson
+ * Copyright (c) 2014, 2018 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -34,6 +34,8 @@ import org.eclipse.tracecompass.tmf.core.component.ITmfEventProvider;
 import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
 import org.eclipse.tracecompass.tmf.core.event.aspect.ITmfEventAspect;
 import org.eclipse.tracecompass.tmf.core.request.TmfEventRequest;
+import org.eclipse.tracecompass.tmf.core.trace.indexer.ITmfTraceIndexer;
+import org.eclipse.tracecompass.tmf.core.trace.indexer.checkpoint.TmfEventCountSummary;
 
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
@@ -305,6 +307,25 @@ public final class TmfTraceUtils {
         return true;
     }
 
+    /**
+     * Get the summary of the event counts of a trace, built by its indexer
+     *
+     * @param trace
+     *            the trace
+     * @return the event count summary, or null if the indexer of the trace
+     *         does not build one
+     * @since 3.4
+     */
+    public static @Nullable TmfEventCountSummary getEventCountSummary(ITmfTrace trace) {
+        if (trace instanceof TmfTrace) {
+            ITmfTraceIndexer indexer = ((TmfTrace) trace).getIndexer();
+            if (indexer != null) {
+                return indexer.getEventCountSummary();
+            }
+        }
+        return null;
+    }
+
     // ------------------------------------------------------------------------
     // Event matching methods
     // ------------------------------------------------------------------------
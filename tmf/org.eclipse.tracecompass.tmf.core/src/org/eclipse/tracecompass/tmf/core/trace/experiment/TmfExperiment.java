@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2015 Ericsson, École Polytechnique de Montréal
+ * Copyright (c) 2009, 2018 Ericsson, École Polytechnique de Montréal
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -50,6 +50,7 @@ import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
 import org.eclipse.tracecompass.tmf.core.exceptions.TmfTraceException;
 import org.eclipse.tracecompass.tmf.core.project.model.ITmfPropertiesProvider;
 import org.eclipse.tracecompass.tmf.core.request.ITmfEventRequest;
+import org.eclipse.tracecompass.tmf.core.request.ITmfEventRequest.ExecutionType;
 import org.eclipse.tracecompass.tmf.core.signal.TmfSignalHandler;
 import org.eclipse.tracecompass.tmf.core.signal.TmfTraceOpenedSignal;
 import org.eclipse.tracecompass.tmf.core.signal.TmfTraceRangeUpdatedSignal;
@@ -373,11 +374,29 @@ public class TmfExperiment extends TmfTrace implements ITmfPersistentlyIndexable
                 && request.getIndex() == 0) {
             final ITmfContext context = seekEvent(request.getRange().getStartTime());
             request.setStartIndex((int) context.getRank());
+            startReadAhead(request, context);
             return context;
 
         }
 
-        return seekEvent(request.getIndex());
+        ITmfContext context = seekEvent(request.getIndex());
+        startReadAhead(request, context);
+        return context;
+    }
+
+    /**
+     * Read the traces ahead in parallel for the background requests which
+     * read the experiment to its end, such as the indexing request. The
+     * foreground requests are usually bounded, and would pay for reading
+     * events they do not need.
+     */
+    private void startReadAhead(ITmfEventRequest request, ITmfContext context) {
+        if (request.getExecType() == ExecutionType.BACKGROUND
+                && request.getNbRequested() == ITmfEventRequest.ALL_DATA
+                && TmfTimestamp.BIG_CRUNCH.equals(request.getRange().getEndTime())
+                && getNbChildren() > 1 && context instanceof TmfExperimentContext) {
+            ((TmfExperimentContext) context).startReadAhead(getChildren(ITmfTrace.class));
+        }
     }
 
     // ------------------------------------------------------------------------
@@ -485,17 +504,14 @@ public class TmfExperiment extends TmfTrace implements ITmfPersistentlyIndexable
             experimentContext.increaseRank();
 
             // Update the experiment location
-            ITmfLocation location = experimentContext.getLocation();
-            if (location instanceof TmfExperimentLocation) {
+            if (experimentContext.updateLocation(next)) {
                 int trace = next.getIndex();
-                ITmfContext traceContext = next.getContext();
-                TmfLocationArray locationArray = new TmfLocationArray(
-                        ((TmfExperimentLocation) location).getLocationInfo(),
-                        trace, traceContext.getLocation(), traceContext.getRank());
-                experimentContext.setLocation(new TmfExperimentLocation(locationArray));
-                // queue the next event
-                ITmfEvent nextEvent = ((ITmfTrace) getChild(trace)).getNext(traceContext);
-                experimentContext.setContent(trace, traceContext, nextEvent);
+                // queue the next event, unless the trace is read ahead
+                if (!experimentContext.readAhead(trace)) {
+                    ITmfContext traceContext = next.getContext();
+                    ITmfEvent nextEvent = ((ITmfTrace) getChild(trace)).getNext(traceContext);
+                    experimentContext.setContent(trace, traceContext, nextEvent);
+                }
             }
         }
 
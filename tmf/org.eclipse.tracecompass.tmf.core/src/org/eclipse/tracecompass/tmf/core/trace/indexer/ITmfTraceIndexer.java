@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2012, 2014 Ericsson
+ * Copyright (c) 2012, 2018 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -17,6 +17,7 @@ import org.eclipse.tracecompass.tmf.core.timestamp.ITmfTimestamp;
 import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimeRange;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfContext;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+import org.eclipse.tracecompass.tmf.core.trace.indexer.checkpoint.TmfEventCountSummary;
 
 /**
  * The generic trace indexer in TMF with support for incremental indexing.
@@ -104,6 +105,17 @@ public interface ITmfTraceIndexer {
      */
     ITmfContext seekIndex(long rank);
 
+    /**
+     * Returns the summary of the event counts built while indexing the trace,
+     * if the indexer builds one.
+     *
+     * @return the event count summary, or null
+     * @since 3.4
+     */
+    default TmfEventCountSummary getEventCountSummary() {
+        return null;
+    }
+
     /**
      * Perform cleanup when the indexer is no longer required.
      */
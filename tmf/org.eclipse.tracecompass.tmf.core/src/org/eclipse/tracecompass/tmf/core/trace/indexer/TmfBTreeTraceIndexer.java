@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013, 2014 Ericsson
+ * Copyright (c) 2013, 2018 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -12,7 +12,10 @@
 
 package org.eclipse.tracecompass.tmf.core.trace.indexer;
 
+import java.io.File;
+
 import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+import org.eclipse.tracecompass.tmf.core.trace.TmfTraceManager;
 import org.eclipse.tracecompass.tmf.core.trace.indexer.checkpoint.ITmfCheckpointIndex;
 import org.eclipse.tracecompass.tmf.core.trace.indexer.checkpoint.TmfCheckpointIndexer;
 
@@ -39,4 +42,9 @@ public class TmfBTreeTraceIndexer extends TmfCheckpointIndexer {
     protected ITmfCheckpointIndex createIndex(ITmfTrace trace) {
         return new TmfBTreeTraceIndex(trace);
     }
+
+    @Override
+    protected File getSummaryFile() {
+        return new File(TmfTraceManager.getSupplementaryFileDir(fTrace) + SUMMARY_FILE_NAME);
+    }
 }
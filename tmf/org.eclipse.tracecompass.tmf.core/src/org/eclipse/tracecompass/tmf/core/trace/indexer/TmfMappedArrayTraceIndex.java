@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.tmf.core.trace.indexer;
+
+import java.io.File;
+
+import org.eclipse.tracecompass.internal.tmf.core.trace.indexer.MappedCheckpointArray;
+import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimeRange;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+import org.eclipse.tracecompass.tmf.core.trace.TmfTraceManager;
+import org.eclipse.tracecompass.tmf.core.trace.indexer.checkpoint.ITmfCheckpoint;
+import org.eclipse.tracecompass.tmf.core.trace.indexer.checkpoint.ITmfCheckpointIndex;
+
+/**
+ * <p>
+ * A checkpoint index that stores the checkpoints in a single file, written
+ * sequentially as the trace is indexed and read from memory-mapped regions.
+ * The checkpoints are searched by checkpoint rank in O(1) and by time stamp
+ * with a summary of the time stamps kept in memory.
+ * </p>
+ *
+ * <p>
+ * Note: The search by time stamp is only exact for traces whose events are in
+ * time stamp order.
+ * </p>
+ *
+ * @since 3.4
+ */
+public class TmfMappedArrayTraceIndex implements ITmfCheckpointIndex {
+
+    private final MappedCheckpointArray fCheckpoints;
+
+    /**
+     * Creates an index for the given trace
+     *
+     * @param trace
+     *            the trace
+     */
+    public TmfMappedArrayTraceIndex(ITmfTrace trace) {
+        fCheckpoints = new MappedCheckpointArray(getIndexFile(trace, MappedCheckpointArray.INDEX_FILE_NAME), (ITmfPersistentlyIndexable) trace);
+    }
+
+    private static File getIndexFile(ITmfTrace trace, String fileName) {
+        String directory = TmfTraceManager.getSupplementaryFileDir(trace);
+        return new File(directory + fileName);
+    }
+
+    @Override
+    public void dispose() {
+        fCheckpoints.dispose();
+    }
+
+    @Override
+    public void insert(ITmfCheckpoint checkpoint) {
+        fCheckpoints.insert(checkpoint);
+    }
+
+    @Override
+    public ITmfCheckpoint get(long checkpoint) {
+        return fCheckpoints.get(checkpoint);
+    }
+
+    @Override
+    public long binarySearch(ITmfCheckpoint checkpoint) {
+        return fCheckpoints.binarySearch(checkpoint);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public int size() {
+        return fCheckpoints.size();
+    }
+
+    @Override
+    public boolean isCreatedFromScratch() {
+        return fCheckpoints.isCreatedFromScratch();
+    }
+
+    @Override
+    public void setTimeRange(TmfTimeRange timeRange) {
+        fCheckpoints.setTimeRange(timeRange);
+    }
+
+    @Override
+    public void setNbEvents(long nbEvents) {
+        fCheckpoints.setNbEvents(nbEvents);
+    }
+
+    @Override
+    public TmfTimeRange getTimeRange() {
+        return fCheckpoints.getTimeRange();
+    }
+
+    @Override
+    public long getNbEvents() {
+        return fCheckpoints.getNbEvents();
+    }
+}
@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.tmf.core.trace.indexer;
+
+import java.io.File;
+
+import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+import org.eclipse.tracecompass.tmf.core.trace.TmfTraceManager;
+import org.eclipse.tracecompass.tmf.core.trace.indexer.checkpoint.ITmfCheckpointIndex;
+import org.eclipse.tracecompass.tmf.core.trace.indexer.checkpoint.TmfCheckpointIndexer;
+
+/**
+ * An indexer that uses a memory-mapped array index to store checkpoints, for
+ * traces whose events are in time stamp order
+ *
+ * @since 3.4
+ */
+public class TmfMappedArrayTraceIndexer extends TmfCheckpointIndexer {
+
+    /**
+     * Full trace indexer
+     *
+     * @param trace
+     *            the trace to index
+     * @param interval
+     *            the checkpoints interval
+     */
+    public TmfMappedArrayTraceIndexer(ITmfTrace trace, int interval) {
+        super(trace, interval);
+    }
+
+    @Override
+    protected ITmfCheckpointIndex createIndex(ITmfTrace trace) {
+        return new TmfMappedArrayTraceIndex(trace);
+    }
+
+    @Override
+    protected File getSummaryFile() {
+        return new File(TmfTraceManager.getSupplementaryFileDir(fTrace) + SUMMARY_FILE_NAME);
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2012, 2016 Ericsson
+ * Copyright (c) 2012, 2018 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -13,6 +13,20 @@
 
 package org.eclipse.tracecompass.tmf.core.trace.indexer.checkpoint;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -22,6 +36,7 @@ import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.common.core.log.TraceCompassLog;
 import org.eclipse.tracecompass.common.core.log.TraceCompassLogUtils;
 import org.eclipse.tracecompass.internal.tmf.core.Activator;
@@ -30,6 +45,7 @@ import org.eclipse.tracecompass.internal.tmf.core.TmfCoreTracer;
 import org.eclipse.tracecompass.internal.tmf.core.trace.indexer.TmfMemoryIndex;
 import org.eclipse.tracecompass.tmf.core.component.TmfEventProvider;
 import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
+import org.eclipse.tracecompass.tmf.core.event.ITmfLostEvent;
 import org.eclipse.tracecompass.tmf.core.request.ITmfEventRequest;
 import org.eclipse.tracecompass.tmf.core.request.TmfEventRequest;
 import org.eclipse.tracecompass.tmf.core.signal.TmfTraceUpdatedSignal;
@@ -39,6 +55,7 @@ import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimestamp;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfContext;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfTraceKnownSize;
+import org.eclipse.tracecompass.tmf.core.trace.indexer.ITmfPersistentlyIndexable;
 import org.eclipse.tracecompass.tmf.core.trace.indexer.ITmfTraceIndexer;
 import org.eclipse.tracecompass.tmf.core.trace.location.ITmfLocation;
 
@@ -54,6 +71,13 @@ import org.eclipse.tracecompass.tmf.core.trace.location.ITmfLocation;
  * <p>
  * Locating a specific checkpoint is trivial for both rank (rank % interval) and
  * timestamp (bsearch in the array). *
+ * <p>
+ * When the events are sparse, the checkpoints taken at fixed intervals can be
+ * far apart in time, and seeking a timestamp between them replays many events.
+ * While the trace is read for the first time, additional checkpoints are kept
+ * in memory when the time since the previous checkpoint exceeds the average
+ * time between the checkpoints, provided a minimum number of events were read
+ * since. The indexing pass also builds a {@link TmfEventCountSummary}.
  *
  * @see ITmfTrace
  * @see ITmfEvent
@@ -64,6 +88,16 @@ public class TmfCheckpointIndexer implements ITmfTraceIndexer {
 
     private static final @NonNull Logger LOGGER = TraceCompassLog.getLogger(TmfCheckpointIndexer.class);
 
+    /**
+     * The name of the file in which the time checkpoints and the event count
+     * summary are saved with a persistent index
+     *
+     * @since 3.4
+     */
+    protected static final String SUMMARY_FILE_NAME = "checkpoint_summary.idx"; //$NON-NLS-1$
+
+    private static final int SUMMARY_FILE_VERSION = 1;
+
     // ------------------------------------------------------------------------
     // Attributes
     // ------------------------------------------------------------------------
@@ -91,6 +125,28 @@ public class TmfCheckpointIndexer implements ITmfTraceIndexer {
     /** Whether or not the index was built once */
     private boolean fBuiltOnce;
 
+    /**
+     * The checkpoints added because of the time elapsed since the previous
+     * checkpoint, in rank and timestamp order. Their checkpoint rank is the
+     * rank of their event.
+     */
+    private final List<ITmfCheckpoint> fTimeCheckpoints = new ArrayList<>();
+
+    /** The minimum number of events between time checkpoints */
+    private final int fMinTimeCheckpointInterval;
+
+    /* The next rank read for the first time, and the first one of those */
+    private long fNextRank = 0;
+    private long fFirstRank = -1;
+    private long fFirstTime;
+
+    /* The rank and time of the last checkpoint of either kind */
+    private long fLastCheckpointRank;
+    private long fLastCheckpointTime;
+
+    /** The event counts, updated by the indexing request */
+    private final TmfEventCountSummary fSummary = new TmfEventCountSummary();
+
     // ------------------------------------------------------------------------
     // Construction
     // ------------------------------------------------------------------------
@@ -117,6 +173,7 @@ public class TmfCheckpointIndexer implements ITmfTraceIndexer {
     public TmfCheckpointIndexer(final ITmfTrace trace, final int interval) {
         fTrace = trace;
         fCheckpointInterval = interval;
+        fMinTimeCheckpointInterval = Math.max(1, interval / 8);
         fTraceIndex = createIndex(trace);
         fIsIndexing = false;
     }
@@ -133,12 +190,26 @@ public class TmfCheckpointIndexer implements ITmfTraceIndexer {
         return new TmfMemoryIndex(trace);
     }
 
+    /**
+     * Gets the file in which the time checkpoints and the event count summary
+     * are saved, so that they are restored with a persistent index. Classes
+     * which create a persistent index should override this. Without this file,
+     * a restored index has no event count summary.
+     *
+     * @return the file, or null if the index is not persistent
+     * @since 3.4
+     */
+    protected @Nullable File getSummaryFile() {
+        return null;
+    }
+
     @Override
     public void dispose() {
         if ((fIndexingRequest != null) && !fIndexingRequest.isCompleted()) {
             fIndexingRequest.cancel();
         }
 
+        saveSummary();
         fTraceIndex.dispose();
     }
 
@@ -177,6 +248,23 @@ public class TmfCheckpointIndexer implements ITmfTraceIndexer {
             // Set some trace attributes that depends on indexing
             TmfTraceUpdatedSignal signal = new TmfTraceUpdatedSignal(this, fTrace, new TmfTimeRange(fTraceIndex.getTimeRange().getStartTime(), fTraceIndex.getTimeRange().getEndTime()), indexingOffset);
             fTrace.broadcast(signal);
+            // Without the summary of the indexed events, read them again
+            if (getSummaryFile() != null && !restoreSummary(indexingOffset)) {
+                indexingOffset = 0;
+                indexingTimeRange = range;
+            }
+        }
+
+        synchronized (this) {
+            if (indexingOffset == 0) {
+                fSummary.reset();
+            } else if (indexingOffset != fSummary.getNbEvents()) {
+                // The summary must have all the events before the offset
+                fSummary.invalidate();
+            }
+            fSummary.setComplete(false);
+            // A restored index has no time checkpoints before the offset
+            fNextRank = Math.max(fNextRank, indexingOffset);
         }
 
         TmfCoreTracer.traceIndexer("buildIndex. offset: " + indexingOffset + " (requested " + offset + ")" + " time range: " + range); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
@@ -195,14 +283,22 @@ public class TmfCheckpointIndexer implements ITmfTraceIndexer {
             @Override
             public void handleData(final ITmfEvent event) {
                 super.handleData(event);
+                fSummary.add(event.getTimestamp().toNanos(), event instanceof ITmfLostEvent);
                 // Update the trace status at regular intervals
                 if ((getNbRead() % fCheckpointInterval) == 0) {
                     updateTraceStatus();
                 }
             }
 
+            /* The index only keeps the timestamps and locations */
+            @Override
+            public boolean isEventRecyclingAllowed() {
+                return true;
+            }
+
             @Override
             public void handleSuccess() {
+                fSummary.setComplete(fSummary.getNbEvents() == fTrace.getNbEvents());
                 updateTraceStatus();
             }
 
@@ -251,6 +347,95 @@ public class TmfCheckpointIndexer implements ITmfTraceIndexer {
         fTrace.broadcast(new TmfTraceUpdatedSignal(fTrace, fTrace, new TmfTimeRange(startTime, endTime), fTrace.getNbEvents()));
     }
 
+    // ------------------------------------------------------------------------
+    // Summary file
+    // ------------------------------------------------------------------------
+
+    /**
+     * Restore the time checkpoints and the event count summary saved with the
+     * index
+     *
+     * @param nbEvents
+     *            the number of events of the restored index
+     * @return true if they were restored for this number of events
+     */
+    private synchronized boolean restoreSummary(long nbEvents) {
+        File file = getSummaryFile();
+        if (file == null || !file.exists() || !(fTrace instanceof ITmfPersistentlyIndexable)) {
+            return false;
+        }
+        ITmfPersistentlyIndexable trace = (ITmfPersistentlyIndexable) fTrace;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != SUMMARY_FILE_VERSION || in.readInt() != fCheckpointInterval || in.readInt() != trace.getCheckpointSize()) {
+                return false;
+            }
+            long nextRank = in.readLong();
+            long firstRank = in.readLong();
+            long firstTime = in.readLong();
+            long lastCheckpointRank = in.readLong();
+            long lastCheckpointTime = in.readLong();
+            int nbCheckpoints = in.readInt();
+            List<ITmfCheckpoint> checkpoints = new ArrayList<>(nbCheckpoints);
+            byte[] bytes = new byte[trace.getCheckpointSize()];
+            for (int i = 0; i < nbCheckpoints; i++) {
+                in.readFully(bytes);
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                ITmfLocation location = trace.restoreLocation(buffer);
+                ITmfTimestamp timestamp = TmfTimestamp.create(buffer);
+                checkpoints.add(new TmfCheckpoint(timestamp, location, buffer));
+            }
+            if (!fSummary.read(in) || fSummary.getNbEvents() != nbEvents || nextRank != nbEvents) {
+                fSummary.reset();
+                return false;
+            }
+            fTimeCheckpoints.clear();
+            fTimeCheckpoints.addAll(checkpoints);
+            fNextRank = nextRank;
+            fFirstRank = firstRank;
+            fFirstTime = firstTime;
+            fLastCheckpointRank = lastCheckpointRank;
+            fLastCheckpointTime = lastCheckpointTime;
+            TmfCoreTracer.traceIndexer("Restored checkpoint summary. nbEvents: " + nbEvents + " time checkpoints: " + nbCheckpoints); //$NON-NLS-1$ //$NON-NLS-2$
+            return true;
+        } catch (IOException | RuntimeException e) {
+            Activator.logError(MessageFormat.format(Messages.TmfCheckpointIndexer_IOErrorReadingSummary, file), e);
+            fSummary.reset();
+            return false;
+        }
+    }
+
+    /**
+     * Save the time checkpoints and the event count summary with the index
+     */
+    private synchronized void saveSummary() {
+        File file = getSummaryFile();
+        if (file == null || !(fTrace instanceof ITmfPersistentlyIndexable)) {
+            return;
+        }
+        int checkpointSize = ((ITmfPersistentlyIndexable) fTrace).getCheckpointSize();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(SUMMARY_FILE_VERSION);
+            out.writeInt(fCheckpointInterval);
+            out.writeInt(checkpointSize);
+            out.writeLong(fNextRank);
+            out.writeLong(fFirstRank);
+            out.writeLong(fFirstTime);
+            out.writeLong(fLastCheckpointRank);
+            out.writeLong(fLastCheckpointTime);
+            out.writeInt(fTimeCheckpoints.size());
+            ByteBuffer buffer = ByteBuffer.allocate(checkpointSize);
+            for (ITmfCheckpoint checkpoint : fTimeCheckpoints) {
+                buffer.clear();
+                checkpoint.serialize(buffer);
+                out.write(buffer.array());
+            }
+            fSummary.write(out);
+        } catch (IOException | RuntimeException e) {
+            Activator.logError(MessageFormat.format(Messages.TmfCheckpointIndexer_IOErrorWritingSummary, file), e);
+            file.delete();
+        }
+    }
+
     // ------------------------------------------------------------------------
     // ITmfTraceIndexer - updateIndex
     // ------------------------------------------------------------------------
@@ -267,6 +452,48 @@ public class TmfCheckpointIndexer implements ITmfTraceIndexer {
                 fTraceIndex.insert(checkpoint);
             }
         }
+        if (context.getRank() == fNextRank) {
+            fNextRank++;
+            updateTimeCheckpoints(context, timestamp);
+        }
+    }
+
+    /**
+     * Add a time checkpoint if the event, read for the first time, is long
+     * enough after the previous checkpoint
+     */
+    private void updateTimeCheckpoints(final ITmfContext context, final ITmfTimestamp timestamp) {
+        long rank = context.getRank();
+        long time = timestamp.toNanos();
+        if (fFirstRank < 0) {
+            fFirstRank = rank;
+            fFirstTime = time;
+            fLastCheckpointRank = rank;
+            fLastCheckpointTime = time;
+            return;
+        }
+        if ((rank % fCheckpointInterval) == 0) {
+            fLastCheckpointRank = rank;
+            fLastCheckpointTime = time;
+            return;
+        }
+        if (rank - fLastCheckpointRank < fMinTimeCheckpointInterval) {
+            return;
+        }
+        // The average time between the checkpoints at fixed intervals so far
+        double averageGap = (double) (time - fFirstTime) * fCheckpointInterval / (rank - fFirstRank);
+        if (time - fLastCheckpointTime <= averageGap) {
+            return;
+        }
+        // Keep the time checkpoints in timestamp order
+        if (!fTimeCheckpoints.isEmpty() && fTimeCheckpoints.get(fTimeCheckpoints.size() - 1).getTimestamp().compareTo(timestamp) > 0) {
+            return;
+        }
+        TmfCheckpoint checkpoint = new TmfCheckpoint(timestamp, context.getLocation(), rank);
+        TmfCoreTracer.traceIndexer("Inserting time checkpoint: " + checkpoint); //$NON-NLS-1$
+        fTimeCheckpoints.add(checkpoint);
+        fLastCheckpointRank = rank;
+        fLastCheckpointTime = time;
     }
 
     // ------------------------------------------------------------------------
@@ -295,6 +522,21 @@ public class TmfCheckpointIndexer implements ITmfTraceIndexer {
             index = Math.max(0, index - 1);
         }
 
+        // Use the last time checkpoint before the timestamp if it is closer
+        int timeIndex = Collections.binarySearch(fTimeCheckpoints, new TmfCheckpoint(timestamp, null, 0), Comparator.comparing(ITmfCheckpoint::getTimestamp));
+        if (timeIndex < 0) {
+            timeIndex = -(timeIndex + 1);
+        }
+        while (timeIndex > 0 && fTimeCheckpoints.get(timeIndex - 1).getTimestamp().compareTo(timestamp) >= 0) {
+            timeIndex--;
+        }
+        if (timeIndex > 0) {
+            ITmfCheckpoint checkpoint = fTimeCheckpoints.get(timeIndex - 1);
+            if (checkpoint.getCheckpointRank() > getCheckpointRank(index)) {
+                return restoreCheckpoint(checkpoint);
+            }
+        }
+
         // Position the trace at the checkpoint
         return restoreCheckpoint(index);
     }
@@ -310,10 +552,50 @@ public class TmfCheckpointIndexer implements ITmfTraceIndexer {
         // Find the checkpoint at or before the requested rank.
         final int index = (int) rank / fCheckpointInterval;
 
+        // Use the last time checkpoint at or before the rank if it is closer
+        ITmfCheckpoint timeCheckpoint = null;
+        synchronized (this) {
+            int timeIndex = Collections.binarySearch(fTimeCheckpoints, new TmfCheckpoint(null, null, rank), Comparator.comparingLong(ITmfCheckpoint::getCheckpointRank));
+            timeIndex = (timeIndex < 0) ? -(timeIndex + 2) : timeIndex;
+            if (timeIndex >= 0 && fTimeCheckpoints.get(timeIndex).getCheckpointRank() > getCheckpointRank(index)) {
+                timeCheckpoint = fTimeCheckpoints.get(timeIndex);
+            }
+        }
+        if (timeCheckpoint != null) {
+            return restoreCheckpoint(timeCheckpoint);
+        }
+
         // Position the trace at the checkpoint
         return restoreCheckpoint(index);
     }
 
+    /**
+     * Get the rank of the event of a checkpoint taken at fixed intervals, as
+     * restored by {@link #restoreCheckpoint(long)}
+     */
+    private long getCheckpointRank(final long checkpointIndex) {
+        synchronized (fTraceIndex) {
+            if (fTraceIndex.isEmpty()) {
+                return 0;
+            }
+            return Math.min(checkpointIndex, fTraceIndex.size() - 1) * fCheckpointInterval;
+        }
+    }
+
+    /**
+     * Position the trace at the given time checkpoint
+     *
+     * @param checkpoint
+     *            the checkpoint, whose rank is the rank of its event
+     * @return the corresponding context
+     */
+    private ITmfContext restoreCheckpoint(final ITmfCheckpoint checkpoint) {
+        TmfCoreTracer.traceIndexer("Restored time checkpoint: " + checkpoint); //$NON-NLS-1$
+        final ITmfContext context = fTrace.seekEvent(checkpoint.getLocation());
+        context.setRank(checkpoint.getCheckpointRank());
+        return context;
+    }
+
     /**
      * Position the trace at the given checkpoint
      *
@@ -354,6 +636,11 @@ public class TmfCheckpointIndexer implements ITmfTraceIndexer {
         return fTraceIndex;
     }
 
+    @Override
+    public TmfEventCountSummary getEventCountSummary() {
+        return fSummary;
+    }
+
     private final class TmfIndexingJob extends Job {
         private Exception fException = null;
         private final ITmfTraceKnownSize fTraceWithSize;
@@ -0,0 +1,402 @@
+/*******************************************************************************
+ * Copyright (c) 2018 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.tmf.core.trace.indexer.checkpoint;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+/**
+ * A compact summary of the number of events of a trace over time, built by the
+ * {@link TmfCheckpointIndexer} while it indexes the trace, so that event counts
+ * can be estimated without reading the trace again.
+ * <p>
+ * The events are counted in buckets of a fixed duration, starting at the first
+ * event. The number of buckets is bounded: when the trace goes past the last
+ * bucket, the duration of the buckets is doubled by merging them two by two,
+ * so the resolution adapts to the length of the trace. Queries at any coarser
+ * resolution are answered from the cumulative counts of the buckets.
+ * <p>
+ * The counts are exact for time ranges whose bounds are on bucket boundaries,
+ * or outside the time range of the trace. Within a bucket, the events are
+ * assumed to be evenly distributed.
+ *
+ * @since 3.4
+ */
+public class TmfEventCountSummary {
+
+    /** Default maximum number of buckets */
+    private static final int DEFAULT_MAX_BUCKETS = 1 << 14;
+
+    private static final int INITIAL_SIZE = 64;
+
+    private final int fMaxBuckets;
+
+    private long[] fCounts = new long[INITIAL_SIZE];
+    private int fNbBuckets = 0;
+    /* The duration of a bucket is 2^fShift nanoseconds */
+    private int fShift = 0;
+    private long fOrigin = 0;
+
+    private long fNbEvents = 0;
+    private long fNbLostEvents = 0;
+    private long fStartTime = Long.MAX_VALUE;
+    private long fEndTime = Long.MIN_VALUE;
+
+    private boolean fIsValid = true;
+    private boolean fIsComplete = false;
+
+    /* Counts of the events before each bucket, computed on query */
+    private long[] fCumulative = null;
+
+    /**
+     * Constructor with the default maximum number of buckets
+     */
+    public TmfEventCountSummary() {
+        this(DEFAULT_MAX_BUCKETS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxBuckets
+     *            the maximum number of buckets, at least 2
+     */
+    public TmfEventCountSummary(int maxBuckets) {
+        if (maxBuckets < 2) {
+            throw new IllegalArgumentException("At least two buckets are needed: " + maxBuckets); //$NON-NLS-1$
+        }
+        fMaxBuckets = maxBuckets;
+    }
+
+    // ------------------------------------------------------------------------
+    // Building
+    // ------------------------------------------------------------------------
+
+    /**
+     * Count an event. The events should be added in time order: an event
+     * before the first one is counted in the first bucket.
+     *
+     * @param time
+     *            the time of the event, in nanoseconds
+     * @param isLostEvent
+     *            whether the event is a lost event record
+     */
+    public synchronized void add(long time, boolean isLostEvent) {
+        if (!fIsValid) {
+            return;
+        }
+        if (fNbEvents == 0) {
+            fOrigin = time;
+        }
+        long offset = Math.max(0, time - fOrigin);
+        long bucket = offset >>> fShift;
+        while (bucket >= fMaxBuckets) {
+            coarsen();
+            bucket = offset >>> fShift;
+        }
+        int index = (int) bucket;
+        if (index >= fCounts.length) {
+            fCounts = Arrays.copyOf(fCounts, Math.min(fMaxBuckets, Math.max(index + 1, fCounts.length * 2)));
+        }
+        fCounts[index]++;
+        fNbBuckets = Math.max(fNbBuckets, index + 1);
+        fNbEvents++;
+        if (isLostEvent) {
+            fNbLostEvents++;
+        }
+        fStartTime = Math.min(fStartTime, time);
+        fEndTime = Math.max(fEndTime, time);
+        fCumulative = null;
+    }
+
+    /**
+     * Double the duration of the buckets, merging them two by two
+     */
+    private void coarsen() {
+        int nbBuckets = (fNbBuckets + 1) / 2;
+        for (int i = 0; i < nbBuckets; i++) {
+            int first = 2 * i;
+            fCounts[i] = fCounts[first] + (first + 1 < fNbBuckets ? fCounts[first + 1] : 0);
+        }
+        Arrays.fill(fCounts, nbBuckets, fNbBuckets, 0);
+        fNbBuckets = nbBuckets;
+        fShift++;
+    }
+
+    /**
+     * Set whether the summary covers all the events of the trace
+     *
+     * @param isComplete
+     *            true if all the events of the trace were added
+     */
+    public synchronized void setComplete(boolean isComplete) {
+        fIsComplete = isComplete && fIsValid;
+    }
+
+    /**
+     * Mark the summary as invalid, when some events of the trace will not be
+     * added to it. An invalid summary stays empty and is never complete, until
+     * it is reset.
+     */
+    public synchronized void invalidate() {
+        clear();
+        fIsValid = false;
+    }
+
+    /**
+     * Empty the summary, before all the events of the trace are added to it
+     * again. An invalid summary becomes valid.
+     */
+    public synchronized void reset() {
+        clear();
+        fIsValid = true;
+    }
+
+    private void clear() {
+        fIsComplete = false;
+        fCounts = new long[INITIAL_SIZE];
+        fNbBuckets = 0;
+        fShift = 0;
+        fOrigin = 0;
+        fNbEvents = 0;
+        fNbLostEvents = 0;
+        fStartTime = Long.MAX_VALUE;
+        fEndTime = Long.MIN_VALUE;
+        fCumulative = null;
+    }
+
+    // ------------------------------------------------------------------------
+    // Serialization
+    // ------------------------------------------------------------------------
+
+    /**
+     * Write the summary, so that it can be saved with a persistent index
+     *
+     * @param out
+     *            the output
+     * @throws IOException
+     *             if the summary could not be written
+     */
+    synchronized void write(DataOutput out) throws IOException {
+        out.writeBoolean(fIsValid);
+        out.writeInt(fShift);
+        out.writeLong(fOrigin);
+        out.writeLong(fNbEvents);
+        out.writeLong(fNbLostEvents);
+        out.writeLong(fStartTime);
+        out.writeLong(fEndTime);
+        out.writeInt(fNbBuckets);
+        for (int i = 0; i < fNbBuckets; i++) {
+            out.writeLong(fCounts[i]);
+        }
+    }
+
+    /**
+     * Replace the content of the summary with a summary written by
+     * {@link #write(DataOutput)}. The summary is not complete until the
+     * indexing of the trace is.
+     *
+     * @param in
+     *            the input
+     * @return true if the summary was read, false if it is not valid or has
+     *         more buckets than this summary can have, in which case this
+     *         summary is reset
+     * @throws IOException
+     *             if the summary could not be read
+     */
+    synchronized boolean read(DataInput in) throws IOException {
+        reset();
+        boolean isValid = in.readBoolean();
+        int shift = in.readInt();
+        long origin = in.readLong();
+        long nbEvents = in.readLong();
+        long nbLostEvents = in.readLong();
+        long startTime = in.readLong();
+        long endTime = in.readLong();
+        int nbBuckets = in.readInt();
+        if (!isValid || shift < 0 || shift >= Long.SIZE - 1 || nbBuckets < 0 || nbBuckets > fMaxBuckets) {
+            return false;
+        }
+        long[] counts = new long[Math.max(INITIAL_SIZE, nbBuckets)];
+        for (int i = 0; i < nbBuckets; i++) {
+            counts[i] = in.readLong();
+        }
+        fCounts = counts;
+        fNbBuckets = nbBuckets;
+        fShift = shift;
+        fOrigin = origin;
+        fNbEvents = nbEvents;
+        fNbLostEvents = nbLostEvents;
+        fStartTime = startTime;
+        fEndTime = endTime;
+        return true;
+    }
+
+    // ------------------------------------------------------------------------
+    // Queries
+    // ------------------------------------------------------------------------
+
+    /**
+     * Get whether the summary covers all the events of the trace
+     *
+     * @return true if the summary is complete
+     */
+    public synchronized boolean isComplete() {
+        return fIsComplete;
+    }
+
+    /**
+     * Get whether the summary covers all the events of the trace up to a
+     * time. It can be used while the trace is being indexed.
+     *
+     * @param time
+     *            the time, in nanoseconds
+     * @return true if the events up to this time were all added
+     */
+    public synchronized boolean covers(long time) {
+        return fIsComplete || (fIsValid && fNbEvents > 0 && time < fEndTime);
+    }
+
+    /**
+     * Get the number of events added to the summary, including the lost event
+     * records
+     *
+     * @return the number of events
+     */
+    public synchronized long getNbEvents() {
+        return fNbEvents;
+    }
+
+    /**
+     * Get the number of lost event records added to the summary
+     *
+     * @return the number of lost event records
+     */
+    public synchronized long getNbLostEvents() {
+        return fNbLostEvents;
+    }
+
+    /**
+     * Get the duration of a bucket, which is the resolution of the summary
+     *
+     * @return the duration in nanoseconds
+     */
+    public synchronized long getResolution() {
+        return 1L << fShift;
+    }
+
+    /**
+     * Get whether the number of events in a time range is exact, rather than
+     * estimated
+     *
+     * @param start
+     *            the start time of the range, in nanoseconds
+     * @param end
+     *            the end time of the range, inclusive, in nanoseconds
+     * @return true if the count of the events in the range is exact
+     */
+    public synchronized boolean isExact(long start, long end) {
+        return isBoundary(start) && (end == Long.MAX_VALUE || isBoundary(end + 1));
+    }
+
+    private boolean isBoundary(long time) {
+        if (fNbEvents == 0 || time <= fStartTime || time > fEndTime) {
+            return true;
+        }
+        return time > fOrigin && ((time - fOrigin) & ((1L << fShift) - 1)) == 0;
+    }
+
+    /**
+     * Get the number of events in a time range, including the lost event
+     * records
+     *
+     * @param start
+     *            the start time of the range, in nanoseconds
+     * @param end
+     *            the end time of the range, inclusive, in nanoseconds
+     * @return the number of events, estimated unless
+     *         {@link #isExact(long, long)}
+     */
+    public synchronized long getCount(long start, long end) {
+        if (end < start) {
+            return 0;
+        }
+        long after = (end == Long.MAX_VALUE) ? fNbEvents : getCountBefore(end + 1);
+        return after - getCountBefore(start);
+    }
+
+    /**
+     * Get the number of events in consecutive time ranges, as
+     * {@link org.eclipse.tracecompass.tmf.core.statistics.ITmfStatistics#histogramQuery(long, long, int)}
+     * does.
+     *
+     * @param start
+     *            the start time of the query, in nanoseconds
+     * @param end
+     *            the end time of the query, in nanoseconds
+     * @param nb
+     *            the number of ranges
+     * @return the number of events in each range
+     */
+    public synchronized List<@NonNull Long> histogramQuery(long start, long end, int nb) {
+        List<@NonNull Long> list = new ArrayList<>(nb);
+        long increment = (end - start) / nb;
+        long prevTotal = getCountBefore(start);
+        long curTime = start + increment;
+        for (int i = 0; i < nb - 1; i++) {
+            long curTotal = getCountBefore(curTime);
+            list.add(curTotal - prevTotal);
+            curTime += increment;
+            prevTotal = curTotal;
+        }
+        /* The last range is stretched to the end of the query */
+        long curTotal = (end == Long.MAX_VALUE) ? fNbEvents : getCountBefore(end + 1);
+        list.add(curTotal - prevTotal);
+        return list;
+    }
+
+    /**
+     * Get the number of events before a time, interpolated within its bucket
+     */
+    private long getCountBefore(long time) {
+        if (fNbEvents == 0 || time <= fStartTime) {
+            return 0;
+        }
+        if (time > fEndTime) {
+            return fNbEvents;
+        }
+        long[] cumulative = fCumulative;
+        if (cumulative == null) {
+            cumulative = new long[fNbBuckets + 1];
+            for (int i = 0; i < fNbBuckets; i++) {
+                cumulative[i + 1] = cumulative[i] + fCounts[i];
+            }
+            fCumulative = cumulative;
+        }
+        long offset = time - fOrigin;
+        if (offset <= 0) {
+            return 0;
+        }
+        long bucket = offset >>> fShift;
+        if (bucket >= fNbBuckets) {
+            return fNbEvents;
+        }
+        int index = (int) bucket;
+        long remainder = offset - (bucket << fShift);
+        double fraction = (double) remainder / (1L << fShift);
+        return cumulative[index] + Math.round(fCounts[index] * fraction);
+    }
+}